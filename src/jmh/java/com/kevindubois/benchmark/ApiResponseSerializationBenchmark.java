@@ -0,0 +1,116 @@
+package com.kevindubois.benchmark;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.kevindubois.dto.ApiResponse;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the former per-call ObjectMapper serialization of an API response with the shared writers.
+ * Run with: mvn -Pbenchmark test-compile exec:exec -Dbenchmark=ApiResponseSerializationBenchmark
+ * Allocation rates are reported with: -Dbenchmark="ApiResponseSerializationBenchmark -prof gc"
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ApiResponseSerializationBenchmark {
+
+    private ApiResponse<Map<String, Object>> response;
+    private ObjectWriter prettyWriter;
+    private ObjectWriter compactWriter;
+
+    @Setup
+    public void setup() {
+        // A day of 5-minute readings, as returned by get_historical_weather
+        List<Map<String, Object>> values = new ArrayList<>();
+        long start = 1_700_000_000L;
+        for (int i = 0; i < 288; i++) {
+            Map<String, Object> row = new LinkedHashMap<>();
+            row.put("timestamp", "2023-11-14 " + (i / 12) + ":" + (i % 12) * 5);
+            row.put("timeUtc", start + i * 300L);
+            row.put("indoorTemperature", 20.0 + (i % 30) / 10.0);
+            row.put("indoorHumidity", 45 + i % 10);
+            row.put("co2", 600 + i % 200);
+            row.put("outdoorTemperature", 8.0 + (i % 50) / 10.0);
+            values.add(row);
+        }
+        Map<String, Object> data = new LinkedHashMap<>();
+        data.put("values", values);
+        data.put("totalDataPoints", values.size());
+        response = ApiResponse.success(data, "Historical data retrieved successfully");
+
+        ObjectMapper objectMapper = new ObjectMapper();
+        prettyWriter = objectMapper.writerWithDefaultPrettyPrinter();
+        compactWriter = objectMapper.writer();
+    }
+
+    @Benchmark
+    public String newMapperPerCall() throws IOException {
+        ObjectMapper mapper = new ObjectMapper();
+        mapper.enable(SerializationFeature.INDENT_OUTPUT);
+        return mapper.writeValueAsString(response);
+    }
+
+    @Benchmark
+    public String sharedPrettyWriter() throws IOException {
+        return prettyWriter.writeValueAsString(response);
+    }
+
+    @Benchmark
+    public String sharedCompactWriter() throws IOException {
+        return compactWriter.writeValueAsString(response);
+    }
+
+    @Benchmark
+    public byte[] sharedCompactBytes() throws IOException {
+        return compactWriter.writeValueAsBytes(response);
+    }
+
+    @Benchmark
+    public void sharedCompactStream(Blackhole blackhole) throws IOException {
+        compactWriter.writeValue(new BlackholeOutputStream(blackhole), response);
+    }
+
+    /**
+     * Stream that consumes the written bytes without keeping them
+     */
+    private static final class BlackholeOutputStream extends OutputStream {
+        private final Blackhole blackhole;
+
+        BlackholeOutputStream(Blackhole blackhole) {
+            this.blackhole = blackhole;
+        }
+
+        @Override
+        public void write(int b) {
+            blackhole.consume(b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            blackhole.consume(b);
+        }
+    }
+}
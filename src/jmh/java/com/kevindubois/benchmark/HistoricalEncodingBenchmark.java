@@ -0,0 +1,110 @@
+package com.kevindubois.benchmark;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.cbor.CBORGenerator;
+import com.kevindubois.util.ColumnarSeries;
+import com.kevindubois.util.WeatherUtil;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares encoding historical data points as JSON objects with the CBOR typed array encoding.
+ * Run with: mvn -Pbenchmark test-compile exec:exec -Dbenchmark=HistoricalEncodingBenchmark
+ * The encoded sizes are printed once per parameter set before the measurements start.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class HistoricalEncodingBenchmark {
+
+    @Param({"1024", "50000"})
+    int points;
+
+    private List<Object> dataPoints;
+    private ColumnarSeries series;
+    private ObjectWriter jsonWriter;
+    private CBORFactory cborFactory;
+
+    @Setup
+    public void setup() throws IOException {
+        // Hourly points as produced by WeatherUtil.processDataPoints
+        dataPoints = new ArrayList<>(points);
+        long start = 1_600_000_000L;
+        for (int i = 0; i < points; i++) {
+            double daily = Math.sin(i * Math.PI / 12);
+            long timeUtc = start + i * 3600L;
+            Map<String, Object> point = new HashMap<>();
+            point.put("timestamp", WeatherUtil.formatTimestamp(timeUtc, "yyyy-MM-dd HH:mm"));
+            point.put("timeUtc", timeUtc);
+            point.put("indoorTemperature", Math.round((21.3 + daily * 1.7) * 10) / 10.0);
+            point.put("indoorHumidity", 48 + (int) (daily * 6));
+            point.put("indoorPressure", Math.round((1013.2 + Math.cos(i / 50.0) * 8.4) * 10) / 10.0);
+            point.put("outdoorTemperature", Math.round((14.6 + daily * 6.3) * 10) / 10.0);
+            point.put("outdoorHumidity", 71 - (int) (daily * 15));
+            dataPoints.add(point);
+        }
+        series = toSeries();
+        jsonWriter = new ObjectMapper().writer();
+        cborFactory = new CBORFactory();
+
+        System.out.printf("%n%d points: JSON %d bytes, CBOR typed arrays %d bytes%n",
+            points, json().length, cborColumnar().length);
+    }
+
+    private ColumnarSeries toSeries() {
+        ColumnarSeries result = new ColumnarSeries(dataPoints.size());
+        for (Object dataPoint : dataPoints) {
+            @SuppressWarnings("unchecked")
+            Map<String, Object> point = (Map<String, Object>) dataPoint;
+            result.add(point);
+        }
+        return result;
+    }
+
+    private byte[] writeCbor(ColumnarSeries columns) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(columns.size() * 32);
+        try (CBORGenerator generator = cborFactory.createGenerator(out)) {
+            generator.writeStartObject();
+            columns.writeCbor(generator);
+            generator.writeEndObject();
+        }
+        return out.toByteArray();
+    }
+
+    @Benchmark
+    public byte[] json() throws IOException {
+        return jsonWriter.writeValueAsBytes(Map.of("values", dataPoints));
+    }
+
+    @Benchmark
+    public byte[] cborColumnar() throws IOException {
+        return writeCbor(series);
+    }
+
+    @Benchmark
+    public byte[] cborFromDataPoints() throws IOException {
+        return writeCbor(toSeries());
+    }
+}
@@ -0,0 +1,131 @@
+package com.kevindubois.benchmark;
+
+import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.http.HttpClient;
+import io.vertx.core.http.HttpClientOptions;
+import io.vertx.core.http.HttpClientResponse;
+import io.vertx.core.http.HttpMethod;
+import io.vertx.core.http.HttpServer;
+import io.vertx.core.http.HttpServerOptions;
+import io.vertx.core.http.HttpVersion;
+import io.vertx.core.http.PoolOptions;
+import io.vertx.core.net.PfxOptions;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the handshake cost that pooled connections remove from a Netatmo call, against a local TLS server
+ * standing in for api.netatmo.com. A client without keep-alive opens a new TCP and TLS connection per request,
+ * as the OAuth refresh did with a new client per call; the pooled HTTP/1.1 and HTTP/2 clients reuse
+ * connections opened before the measurement, as the pre-warmed shared pool does.
+ * The clients use Vert.x directly with the options the REST clients are configured with.
+ * Run with: mvn -Pbenchmark test-compile exec:exec -Dbenchmark=NetatmoConnectionBenchmark
+ * Needs keytool on the PATH to create the self-signed server certificate.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class NetatmoConnectionBenchmark {
+
+    private static final String PASSWORD = "benchmark";
+    private static final Buffer BODY = Buffer.buffer(
+        "{\"access_token\":\"token\",\"expires_in\":10800,\"refresh_token\":\"refresh\",\"scope\":[\"read_station\"]}");
+
+    private Path keyStoreDir;
+    private Vertx vertx;
+    private HttpServer server;
+    private int port;
+    private HttpClient newConnectionClient;
+    private HttpClient pooledClient;
+    private HttpClient http2Client;
+
+    @Setup
+    public void setup() throws Exception {
+        keyStoreDir = Files.createTempDirectory("netatmo-benchmark");
+        Path keyStore = createKeyStore(keyStoreDir);
+
+        vertx = Vertx.vertx();
+        server = vertx.createHttpServer(new HttpServerOptions()
+                .setSsl(true)
+                .setUseAlpn(true)
+                .setKeyCertOptions(new PfxOptions().setPath(keyStore.toString()).setPassword(PASSWORD)))
+            .requestHandler(request -> request.response().putHeader("Content-Type", "application/json").end(BODY));
+        port = server.listen(0, "localhost").toCompletionStage().toCompletableFuture().get().actualPort();
+
+        newConnectionClient = client(new HttpClientOptions().setKeepAlive(false));
+        pooledClient = client(new HttpClientOptions().setKeepAlive(true));
+        http2Client = client(new HttpClientOptions().setProtocolVersion(HttpVersion.HTTP_2).setUseAlpn(true));
+
+        // Pre-warm the pooled clients, as NetatmoConnectionWarmer does at startup
+        call(pooledClient);
+        call(http2Client);
+    }
+
+    private HttpClient client(HttpClientOptions options) {
+        options.setSsl(true).setTrustAll(true).setVerifyHost(false);
+        return vertx.createHttpClient(options, new PoolOptions().setHttp1MaxSize(16));
+    }
+
+    private static Path createKeyStore(Path dir) throws IOException, InterruptedException {
+        Path keyStore = dir.resolve("server.p12");
+        Process keytool = new ProcessBuilder("keytool", "-genkeypair", "-alias", "localhost", "-keyalg", "EC",
+            "-groupname", "secp256r1", "-dname", "CN=localhost", "-ext", "SAN=dns:localhost", "-validity", "1",
+            "-storetype", "PKCS12", "-keystore", keyStore.toString(), "-storepass", PASSWORD, "-keypass", PASSWORD)
+            .inheritIO()
+            .start();
+        if (keytool.waitFor() != 0) {
+            throw new IllegalStateException("keytool failed with exit code " + keytool.exitValue());
+        }
+        return keyStore;
+    }
+
+    private int call(HttpClient client) throws Exception {
+        return client.request(HttpMethod.POST, port, "localhost", "/oauth2/token")
+            .compose(request -> request.send().compose(HttpClientResponse::body))
+            .toCompletionStage().toCompletableFuture().get().length();
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        vertx.close().toCompletionStage().toCompletableFuture().get();
+        try (var files = Files.list(keyStoreDir)) {
+            for (Path file : files.toList()) {
+                Files.delete(file);
+            }
+        }
+        Files.delete(keyStoreDir);
+    }
+
+    @Benchmark
+    public int newConnectionPerRequest() throws Exception {
+        return call(newConnectionClient);
+    }
+
+    @Benchmark
+    public int pooledKeepAlive() throws Exception {
+        return call(pooledClient);
+    }
+
+    @Benchmark
+    public int pooledHttp2() throws Exception {
+        return call(http2Client);
+    }
+}
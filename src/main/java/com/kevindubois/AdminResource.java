@@ -0,0 +1,157 @@
+package com.kevindubois;
+
+import jakarta.inject.Inject;
+import jakarta.ws.rs.GET;
+import jakarta.ws.rs.POST;
+import jakarta.ws.rs.Path;
+import jakarta.ws.rs.Produces;
+import jakarta.ws.rs.core.MediaType;
+import jakarta.ws.rs.core.Response;
+
+import com.kevindubois.dto.ApiResponse;
+import com.kevindubois.service.HistoryBackfillService;
+import com.kevindubois.service.NetatmoAccounts;
+import com.kevindubois.service.NetatmoAuthService;
+import com.kevindubois.service.NetatmoCallHedger;
+import com.kevindubois.service.NetatmoCallScheduler;
+import com.kevindubois.service.NetatmoCircuitBreaker;
+import com.kevindubois.service.NetatmoConcurrencyLimit;
+import com.kevindubois.service.NetatmoQuota;
+import com.kevindubois.service.NetatmoRetryPolicy;
+import com.kevindubois.service.ResponseCache;
+import com.kevindubois.service.StationPoller;
+import com.kevindubois.service.WeatherService;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+@Path("/admin")
+public class AdminResource {
+
+    @Inject
+    HistoryBackfillService backfillService;
+
+    @Inject
+    NetatmoAccounts accounts;
+
+    @Inject
+    NetatmoAuthService authService;
+
+    @Inject
+    NetatmoCallScheduler callScheduler;
+
+    @Inject
+    NetatmoCircuitBreaker circuitBreaker;
+
+    @Inject
+    NetatmoCallHedger callHedger;
+
+    @Inject
+    NetatmoRetryPolicy retryPolicy;
+
+    @Inject
+    NetatmoConcurrencyLimit concurrencyLimit;
+
+    @Inject
+    NetatmoQuota quota;
+
+    @Inject
+    WeatherService weatherService;
+
+    @Inject
+    ResponseCache responseCache;
+
+    @Inject
+    StationPoller stationPoller;
+
+    /**
+     * Resource usage per account since startup, for sizing pods by the number of accounts they serve
+     */
+    @GET
+    @Path("/accounts")
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response getAccounts() {
+        List<Map<String, Object>> result = new ArrayList<>();
+        for (String id : accounts.ids()) {
+            Map<String, Object> account = new LinkedHashMap<>();
+            account.put("id", id);
+            account.put("weight", accounts.get(id).weight());
+            account.put("tokenExpiry", authService.getTokenExpiry(id));
+            account.put("callsLastHour", quota.callsLastHour(id));
+            account.put("netatmoCalls", callScheduler.getUsage(id));
+            account.put("cachedResponses", weatherService.countCacheEntries(id) + responseCache.countEntries(id));
+            account.put("bufferedReadings", stationPoller.countBufferedReadings(id));
+            result.add(account);
+        }
+        return ApiResponse.success(result, "Successfully retrieved account usage").toResponse();
+    }
+
+    /**
+     * State of the circuit breaker around the Netatmo API
+     */
+    @GET
+    @Path("/circuit")
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response getCircuit() {
+        return ApiResponse.success(circuitBreaker.getStatus(), "Successfully retrieved circuit breaker status").toResponse();
+    }
+
+    /**
+     * Hedged calls and calls that ran past their request deadline
+     */
+    @GET
+    @Path("/hedging")
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response getHedging() {
+        return ApiResponse.success(callHedger.getStatus(), "Successfully retrieved hedging status").toResponse();
+    }
+
+    /**
+     * Retried Netatmo calls, the errors the retries prevented and the time they took
+     */
+    @GET
+    @Path("/retries")
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response getRetries() {
+        return ApiResponse.success(retryPolicy.getStatus(), "Successfully retrieved retry status").toResponse();
+    }
+
+    /**
+     * Adaptive limit of concurrent Netatmo calls, with the calls running and waiting for a slot
+     */
+    @GET
+    @Path("/concurrency")
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response getConcurrency() {
+        Map<String, Object> status = new LinkedHashMap<>(concurrencyLimit.getStatus());
+        status.putAll(callScheduler.getLoad());
+        return ApiResponse.success(status, "Successfully retrieved concurrency status").toResponse();
+    }
+
+    @GET
+    @Path("/backfill")
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response getBackfillStatus() {
+        return ApiResponse.success(backfillService.getStatus(), "Successfully retrieved backfill status").toResponse();
+    }
+
+    @POST
+    @Path("/backfill/start")
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response startBackfill() {
+        try {
+            return ApiResponse.success(backfillService.start(), "Historical backfill started").toResponse();
+        } catch (Exception e) {
+            return ApiResponse.serverError("Error starting historical backfill: " + e.getMessage()).toResponse();
+        }
+    }
+
+    @POST
+    @Path("/backfill/pause")
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response pauseBackfill() {
+        return ApiResponse.success(backfillService.pause(), "Historical backfill paused").toResponse();
+    }
+}
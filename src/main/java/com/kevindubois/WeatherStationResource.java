@@ -1,17 +1,52 @@
 package com.kevindubois;
 
 import jakarta.inject.Inject;
+import jakarta.ws.rs.Consumes;
 import jakarta.ws.rs.GET;
+import jakarta.ws.rs.HeaderParam;
+import jakarta.ws.rs.POST;
 import jakarta.ws.rs.Path;
 import jakarta.ws.rs.Produces;
 import jakarta.ws.rs.QueryParam;
+import jakarta.ws.rs.core.CacheControl;
+import jakarta.ws.rs.core.Context;
+import jakarta.ws.rs.core.EntityTag;
+import jakarta.ws.rs.core.HttpHeaders;
 import jakarta.ws.rs.core.MediaType;
+import jakarta.ws.rs.core.Request;
 import jakarta.ws.rs.core.Response;
+import jakarta.ws.rs.core.StreamingOutput;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.dataformat.cbor.CBORGenerator;
+
+import com.kevindubois.service.CurrentWeatherBroadcaster;
+import com.kevindubois.service.HistoricalBatchService;
+import com.kevindubois.service.NetatmoAccounts;
+import com.kevindubois.service.ResponseCache;
+import com.kevindubois.service.ResponseCompressor;
+import com.kevindubois.service.ResponseSerializer;
 import com.kevindubois.service.WeatherService;
 import com.kevindubois.dto.ApiResponse;
+import com.kevindubois.dto.CurrentWeatherData;
+import com.kevindubois.dto.HistoricalBatchQuery;
+import com.kevindubois.dto.StationsSnapshot;
+import com.kevindubois.exception.NetatmoUnavailableException;
 import com.kevindubois.exception.WeatherApiException;
+import com.kevindubois.util.ColumnarSeries;
+import com.kevindubois.util.WeatherUtil;
+import io.smallrye.mutiny.Multi;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.jboss.resteasy.reactive.RestStreamElementType;
 
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Date;
+import java.util.List;
 import java.util.logging.Logger;
 
 @Path("/weather")
@@ -19,9 +54,45 @@ public class WeatherStationResource {
 
     private static final Logger logger = Logger.getLogger(WeatherStationResource.class.getName());
 
+    // Media types of the historical export
+    public static final String NDJSON = "application/x-ndjson";
+    public static final String CSV = "text/csv";
+
+    // Binary columnar encoding of historical data
+    public static final String CBOR = "application/cbor";
+    private static final MediaType CBOR_TYPE = MediaType.valueOf(CBOR);
+
+    // Columns of the CSV export
+    private static final List<String> EXPORT_COLUMNS = List.of(
+        "timestamp", "timeUtc", "indoorTemperature", "indoorHumidity", "indoorPressure",
+        "outdoorTemperature", "outdoorHumidity", "rain", "windStrength", "windAngle", "gustStrength", "gustAngle"
+    );
+
     @Inject
     WeatherService weatherService;
 
+    @Inject
+    ResponseCache responseCache;
+
+    @Inject
+    ResponseSerializer responseSerializer;
+
+    @Inject
+    ResponseCompressor responseCompressor;
+
+    @Inject
+    CurrentWeatherBroadcaster currentWeatherBroadcaster;
+
+    @Inject
+    HistoricalBatchService historicalBatchService;
+
+    @Inject
+    NetatmoAccounts accounts;
+
+    // Most data points of a CBOR response, which are collected in memory before the columns are written
+    @ConfigProperty(name = "netatmo.cbor.max-points", defaultValue = "100000")
+    int cborMaxPoints;
+
     @GET
     @Produces(MediaType.TEXT_PLAIN)
     public String hello() {
@@ -33,8 +104,12 @@ public class WeatherStationResource {
     @Produces(MediaType.APPLICATION_JSON)
     public Response getStationsData() {
         try {
-            var data = weatherService.fetchAllStations();
-            return ApiResponse.success(data, "Successfully retrieved all stations data").toResponse();
+            StationsSnapshot snapshot = weatherService.fetchAllStationsSnapshot();
+            var response = ApiResponse.success(snapshot.response(), "Successfully retrieved all stations data")
+                .withStaleness(snapshot.staleness());
+            return snapshot.isStale() ? staleResponse(response) : response.toResponse();
+        } catch (NetatmoUnavailableException e) {
+            return ApiResponse.unavailable(e.getMessage(), e.getRetryAfterSeconds()).toResponse();
         } catch (WeatherApiException e) {
             return ApiResponse.error(e.getMessage(), e.getStatus()).toResponse();
         } catch (Exception e) {
@@ -45,23 +120,176 @@ public class WeatherStationResource {
     @GET
     @Path("/current")
     @Produces(MediaType.APPLICATION_JSON)
-    public Response getCurrentWeatherData() {
+    public Response getCurrentWeatherData(@Context Request request,
+                                          @HeaderParam(HttpHeaders.ACCEPT_ENCODING) String acceptEncoding) {
         try {
-            var result = weatherService.getCurrentWeather();
+            StationsSnapshot snapshot = weatherService.getStationsSnapshot();
+            if (!snapshot.isStale()) {
+                Response notModified = evaluatePreconditions(request, snapshot, ResponseCache.CURRENT_WEATHER_KEY);
+                if (notModified != null) {
+                    return notModified;
+                }
+
+                byte[] cached = responseCache.getJson(ResponseCache.CURRENT_WEATHER_KEY, snapshot.version());
+                if (cached != null) {
+                    return okWithCacheHeaders(cached, snapshot, ResponseCache.CURRENT_WEATHER_KEY, acceptEncoding);
+                }
+            }
+
+            var result = weatherService.getCurrentWeather(snapshot);
             
             if (!result.isSuccess()) {
                 return result.toResponse();
             }
             
-            return ApiResponse.success(result.getData(), "Successfully retrieved current weather data").toResponse();
+            if (result.getStale() != null) {
+                return staleResponse(ApiResponse.success(result.getData(), "Successfully retrieved current weather data")
+                    .withStaleness(result.getStale()));
+            }
+            byte[] json = responseCache.putJson(ResponseCache.CURRENT_WEATHER_KEY, snapshot.version(),
+                ApiResponse.success(result.getData(), "Successfully retrieved current weather data"));
+            return okWithCacheHeaders(json, snapshot, ResponseCache.CURRENT_WEATHER_KEY, acceptEncoding);
+        } catch (NetatmoUnavailableException e) {
+            return ApiResponse.unavailable("Error retrieving current weather data: " + e.getMessage(), e.getRetryAfterSeconds()).toResponse();
         } catch (Exception e) {
             return ApiResponse.serverError("Error retrieving current weather data: " + e.getMessage()).toResponse();
         }
     }
 
+    /**
+     * Current readings of every device and module as one table, built from a single stations data payload.
+     * Without device_id the response is cached per snapshot like /current; devices that are not in the payload are
+     * fetched concurrently.
+     */
     @GET
-    @Path("/historical")
+    @Path("/current/all")
     @Produces(MediaType.APPLICATION_JSON)
+    public Response getAllCurrentWeatherData(@Context Request request,
+                                             @HeaderParam(HttpHeaders.ACCEPT_ENCODING) String acceptEncoding,
+                                             @QueryParam("device_id") List<String> deviceIds) {
+        try {
+            if (deviceIds != null && !deviceIds.isEmpty()) {
+                var result = weatherService.getAllCurrentWeather(deviceIds);
+                return result.isSuccess()
+                    ? ApiResponse.success(result.getData(), "Successfully retrieved current weather data")
+                        .withStaleness(result.getStale()).toResponse()
+                    : result.toResponse();
+            }
+
+            StationsSnapshot snapshot = weatherService.getStationsSnapshot();
+            if (!snapshot.isStale()) {
+                Response notModified = evaluatePreconditions(request, snapshot, ResponseCache.ALL_CURRENT_WEATHER_KEY);
+                if (notModified != null) {
+                    return notModified;
+                }
+
+                byte[] cached = responseCache.getJson(ResponseCache.ALL_CURRENT_WEATHER_KEY, snapshot.version());
+                if (cached != null) {
+                    return okWithCacheHeaders(cached, snapshot, ResponseCache.ALL_CURRENT_WEATHER_KEY, acceptEncoding);
+                }
+            }
+
+            var result = weatherService.getAllCurrentWeather(snapshot, null);
+
+            if (!result.isSuccess()) {
+                return result.toResponse();
+            }
+
+            if (result.getStale() != null) {
+                return staleResponse(ApiResponse.success(result.getData(), "Successfully retrieved current weather data")
+                    .withStaleness(result.getStale()));
+            }
+            byte[] json = responseCache.putJson(ResponseCache.ALL_CURRENT_WEATHER_KEY, snapshot.version(),
+                ApiResponse.success(result.getData(), "Successfully retrieved current weather data"));
+            return okWithCacheHeaders(json, snapshot, ResponseCache.ALL_CURRENT_WEATHER_KEY, acceptEncoding);
+        } catch (NetatmoUnavailableException e) {
+            return ApiResponse.unavailable("Error retrieving current weather data: " + e.getMessage(), e.getRetryAfterSeconds()).toResponse();
+        } catch (Exception e) {
+            return ApiResponse.serverError("Error retrieving current weather data: " + e.getMessage()).toResponse();
+        }
+    }
+
+    /**
+     * Answer a conditional request from the snapshot alone, before any service or serialization work.
+     * The client may hold the JSON or the gzip variant, either is still current.
+     * @return A 304 response if the client's copy is still current, otherwise null
+     */
+    private Response evaluatePreconditions(Request request, StationsSnapshot snapshot, String key) {
+        if (request == null) {
+            return null;
+        }
+        EntityTag etag = responseCache.etag(key, snapshot.version());
+        Response.ResponseBuilder builder = request.evaluatePreconditions(new Date(snapshot.lastModified()), etag);
+        if (builder == null) {
+            etag = responseCache.gzipEtag(key, snapshot.version());
+            builder = request.evaluatePreconditions(new Date(snapshot.lastModified()), etag);
+        }
+        if (builder == null) {
+            return null;
+        }
+        return builder
+            .header(HttpHeaders.VARY, accounts.varyHeaders())
+            .tag(etag)
+            .lastModified(new Date(snapshot.lastModified()))
+            .cacheControl(cacheControl(snapshot))
+            .build();
+    }
+
+    /**
+     * Build a JSON response with an ETag, Last-Modified and a max-age until the next expected sensor reading.
+     * Clients accepting gzip get the compressed bytes, which are cached along with the JSON and have an ETag of
+     * their own.
+     */
+    private Response okWithCacheHeaders(byte[] json, StationsSnapshot snapshot, String key, String acceptEncoding) {
+        Response.ResponseBuilder builder;
+        EntityTag etag;
+        if (responseCompressor.acceptsGzip(acceptEncoding) && responseCompressor.shouldCompress(json.length)) {
+            builder = Response.ok(responseCache.getGzipJson(key, snapshot.version(), json), MediaType.APPLICATION_JSON)
+                .header(HttpHeaders.CONTENT_ENCODING, ResponseCompressor.GZIP);
+            etag = responseCache.gzipEtag(key, snapshot.version());
+        } else {
+            builder = Response.ok(json, MediaType.APPLICATION_JSON);
+            etag = responseCache.etag(key, snapshot.version());
+        }
+        return builder
+            .header(HttpHeaders.VARY, accounts.varyHeaders())
+            .tag(etag)
+            .lastModified(new Date(snapshot.lastModified()))
+            .cacheControl(cacheControl(snapshot))
+            .build();
+    }
+
+    /**
+     * Stale data is neither cached nor validated, clients get fresh data as soon as Netatmo is available again
+     */
+    private static Response staleResponse(ApiResponse<?> response) {
+        CacheControl cacheControl = new CacheControl();
+        cacheControl.setNoCache(true);
+        return Response.status(response.getStatus()).entity(response).cacheControl(cacheControl).build();
+    }
+
+    private static CacheControl cacheControl(StationsSnapshot snapshot) {
+        CacheControl cacheControl = new CacheControl();
+        cacheControl.setNoTransform(false);
+        cacheControl.setMaxAge((int) Math.min(Integer.MAX_VALUE, snapshot.maxAgeSeconds()));
+        return cacheControl;
+    }
+
+    /**
+     * Push current weather data as server-sent events: the latest reading on connect, then every change.
+     * All subscribers share the station poller, so the number of clients does not affect upstream calls.
+     */
+    @GET
+    @Path("/current/stream")
+    @Produces(MediaType.SERVER_SENT_EVENTS)
+    @RestStreamElementType(MediaType.APPLICATION_JSON)
+    public Multi<CurrentWeatherData> streamCurrentWeatherData() {
+        return currentWeatherBroadcaster.stream();
+    }
+
+    @GET
+    @Path("/historical")
+    @Produces({MediaType.APPLICATION_JSON, CBOR})
     public Response getHistoricalWeatherData(
             @QueryParam("device_id") String deviceId,
             @QueryParam("module_id") String moduleId,
@@ -69,8 +297,16 @@ public class WeatherStationResource {
             @QueryParam("type") String sensorTypes,
             @QueryParam("date_begin") String dateBegin,
             @QueryParam("date_end") String dateEnd,
-            @QueryParam("limit") Integer limit
+            @QueryParam("limit") Integer limit,
+            @QueryParam("stream") boolean stream,
+            @Context HttpHeaders headers
     ) {
+        if (headers != null && prefersCbor(headers.getAcceptableMediaTypes())) {
+            return getHistoricalWeatherCbor(deviceId, moduleId, scale, sensorTypes, dateBegin, dateEnd, limit);
+        }
+        if (stream) {
+            return streamHistoricalWeatherData(deviceId, moduleId, scale, sensorTypes, dateBegin, dateEnd, limit);
+        }
         try {
             var result = weatherService.getHistoricalWeather(deviceId, moduleId, scale, sensorTypes, dateBegin, dateEnd, limit);
             
@@ -78,24 +314,327 @@ public class WeatherStationResource {
                 return result.toResponse();
             }
             
-            return ApiResponse.success(result.getData(), "Successfully retrieved historical weather data").toResponse();
+            return ApiResponse.success(result.getData(), "Successfully retrieved historical weather data")
+                .withStaleness(result.getStale()).toResponse();
+        } catch (Exception e) {
+            return ApiResponse.serverError("Error retrieving historical weather data: " + e.getMessage()).toResponse();
+        }
+    }
+
+    /**
+     * Run several historical data queries in one request, see HistoricalBatchService
+     */
+    @POST
+    @Path("/historical/batch")
+    @Consumes(MediaType.APPLICATION_JSON)
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response getHistoricalWeatherBatch(List<HistoricalBatchQuery> queries) {
+        try {
+            var result = historicalBatchService.getHistoricalWeatherBatch(queries);
+
+            if (!result.isSuccess()) {
+                return result.toResponse();
+            }
+
+            return ApiResponse.success(result.getData(), "Successfully retrieved historical weather data batch").toResponse();
+        } catch (Exception e) {
+            return ApiResponse.serverError("Error retrieving historical weather data batch: " + e.getMessage()).toResponse();
+        }
+    }
+
+    /**
+     * Check whether the client asks for CBOR rather than JSON, wildcards select JSON
+     * @param acceptable The media types the client accepts, most preferred first
+     */
+    public static boolean prefersCbor(List<MediaType> acceptable) {
+        for (MediaType type : acceptable) {
+            if (type.isCompatible(CBOR_TYPE) && !type.isWildcardType() && !type.isWildcardSubtype()) {
+                return true;
+            }
+            if (type.isCompatible(MediaType.APPLICATION_JSON_TYPE)) {
+                return false;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Return the historical data as a CBOR document with one typed array per column.
+     * Like the streamed JSON, the range is fetched in windows and the whole range is returned unless a limit is given,
+     * but the points are collected in primitive arrays first, since every column is written in one piece.
+     * Ranges with more points than the CBOR maximum are rejected with 400, so the arrays stay bounded.
+     */
+    private Response getHistoricalWeatherCbor(String deviceId, String moduleId, String scale, String sensorTypes,
+                                              String dateBegin, String dateEnd, Integer limit) {
+        WeatherService.HistoricalQuery query;
+        ColumnarSeries series;
+        try {
+            query = weatherService.resolveHistoricalQuery(deviceId, moduleId, scale, sensorTypes, dateBegin, dateEnd, limit);
+            long stepSeconds = WeatherUtil.getScaleSeconds(query.scale());
+            long expectedPoints = (query.end() - query.begin()) / stepSeconds + 1;
+            long points = limit != null && limit > 0 ? Math.min(expectedPoints, limit) : expectedPoints;
+            int maxPoints = Math.max(1, cborMaxPoints);
+            if (points > maxPoints) {
+                throw tooManyCborPoints(points, maxPoints);
+            }
+            series = new ColumnarSeries((int) points);
+            // Fetch one point past the maximum, in case the range holds more points than its scale suggests
+            weatherService.streamHistoricalData(new WeatherService.HistoricalQuery(query.deviceId(), query.moduleId(),
+                query.scale(), query.sensorTypes(), query.begin(), query.end(),
+                (int) Math.min(limit != null && limit > 0 ? limit : Long.MAX_VALUE, maxPoints + 1L)),
+                series::add);
+            if (series.size() > maxPoints) {
+                throw tooManyCborPoints(series.size(), maxPoints);
+            }
+        } catch (WeatherApiException e) {
+            // Errors are always reported as JSON
+            return Response.fromResponse(ApiResponse.error(e.getMessage(), e.getStatus()).toResponse())
+                .type(MediaType.APPLICATION_JSON).build();
+        } catch (Exception e) {
+            return Response.fromResponse(ApiResponse.serverError("Error retrieving historical weather data: " + e.getMessage()).toResponse())
+                .type(MediaType.APPLICATION_JSON).build();
+        }
+
+        StreamingOutput output = out -> {
+            try (CBORGenerator generator = responseSerializer.createCborGenerator(out)) {
+                generator.writeStartObject();
+                generator.writeBooleanField("success", true);
+                generator.writeStringField("message", "Successfully retrieved historical weather data");
+                generator.writeObjectFieldStart("data");
+                generator.writeStringField("deviceId", query.deviceId());
+                generator.writeStringField("scale", query.scale());
+                generator.writeNumberField("beginTimeTimestamp", query.begin());
+                generator.writeNumberField("endTimeTimestamp", query.end());
+                generator.writeNumberField("stepTime", WeatherUtil.getScaleSeconds(query.scale()));
+                generator.writeNumberField("totalDataPoints", series.size());
+                series.writeCbor(generator);
+                generator.writeEndObject();
+                generator.writeNumberField("status", Response.Status.OK.getStatusCode());
+                generator.writeEndObject();
+            }
+        };
+        return Response.ok(output, CBOR).build();
+    }
+
+    private static WeatherApiException tooManyCborPoints(long points, int maxPoints) {
+        return new WeatherApiException("The range has " + points + " data points, a CBOR response holds at most "
+            + maxPoints + ": pass a limit, a shorter range or a coarser scale, or use stream=true for JSON",
+            Response.Status.BAD_REQUEST);
+    }
+
+    /**
+     * Write the historical data as it is fetched, window by window, using chunked transfer encoding.
+     * The response has the same fields as the buffered one, but success and status follow the data points,
+     * so an error while fetching a later window can still be reported.
+     */
+    private Response streamHistoricalWeatherData(String deviceId, String moduleId, String scale, String sensorTypes,
+                                                 String dateBegin, String dateEnd, Integer limit) {
+        WeatherService.HistoricalQuery query;
+        try {
+            query = weatherService.resolveHistoricalQuery(deviceId, moduleId, scale, sensorTypes, dateBegin, dateEnd, limit);
+        } catch (WeatherApiException e) {
+            return ApiResponse.error(e.getMessage(), e.getStatus()).toResponse();
         } catch (Exception e) {
             return ApiResponse.serverError("Error retrieving historical weather data: " + e.getMessage()).toResponse();
         }
+
+        StreamingOutput output = out -> {
+            try (JsonGenerator generator = responseSerializer.createGenerator(out)) {
+                generator.writeStartObject();
+                generator.writeObjectFieldStart("data");
+                generator.writeStringField("deviceId", query.deviceId());
+                generator.writeStringField("scale", query.scale());
+                generator.writeArrayFieldStart("sensorTypes");
+                for (String type : query.sensorTypes().split(",")) {
+                    generator.writeString(type);
+                }
+                generator.writeEndArray();
+                generator.writeNumberField("beginTimeTimestamp", query.begin());
+                generator.writeNumberField("endTimeTimestamp", query.end());
+                generator.writeStringField("beginTime", WeatherUtil.formatTimestamp(query.begin(), "yyyy-MM-dd HH:mm:ss"));
+                generator.writeStringField("endTime", WeatherUtil.formatTimestamp(query.end(), "yyyy-MM-dd HH:mm:ss"));
+                generator.writeNumberField("stepTime", WeatherUtil.getScaleSeconds(query.scale()));
+
+                generator.writeArrayFieldStart("values");
+                int count = 0;
+                String error = null;
+                try {
+                    count = weatherService.streamHistoricalData(query, dataPoint -> responseSerializer.writeValue(generator, dataPoint));
+                } catch (IOException e) {
+                    // The client went away, nothing more can be written
+                    throw e;
+                } catch (Exception e) {
+                    logger.warning("Error streaming historical weather data: " + e.getMessage());
+                    error = "Error retrieving historical weather data: " + e.getMessage();
+                }
+                generator.writeEndArray();
+                generator.writeNumberField("totalDataPoints", count);
+                generator.writeEndObject();
+
+                generator.writeBooleanField("success", error == null);
+                generator.writeStringField("message", error == null ? "Successfully retrieved historical weather data" : error);
+                generator.writeNumberField("status", error == null ? Response.Status.OK.getStatusCode()
+                                                                   : Response.Status.BAD_GATEWAY.getStatusCode());
+                generator.writeEndObject();
+            }
+        };
+        return Response.ok(output, MediaType.APPLICATION_JSON).build();
+    }
+
+    @GET
+    @Path("/historical/export")
+    @Produces(NDJSON)
+    public Response exportHistoricalWeatherNdjson(
+            @QueryParam("device_id") String deviceId,
+            @QueryParam("module_id") String moduleId,
+            @QueryParam("scale") String scale,
+            @QueryParam("type") String sensorTypes,
+            @QueryParam("date_begin") String dateBegin,
+            @QueryParam("date_end") String dateEnd,
+            @QueryParam("limit") Integer limit
+    ) {
+        return exportHistoricalWeatherData(deviceId, moduleId, scale, sensorTypes, dateBegin, dateEnd, limit, NDJSON,
+            (query, out) -> {
+                try (JsonGenerator generator = responseSerializer.createLineGenerator(out)) {
+                    int count = weatherService.streamHistoricalData(query,
+                        dataPoint -> responseSerializer.writeValue(generator, dataPoint));
+                    if (count > 0) {
+                        generator.writeRaw('\n');
+                    }
+                }
+            });
+    }
+
+    @GET
+    @Path("/historical/export")
+    @Produces(CSV)
+    public Response exportHistoricalWeatherCsv(
+            @QueryParam("device_id") String deviceId,
+            @QueryParam("module_id") String moduleId,
+            @QueryParam("scale") String scale,
+            @QueryParam("type") String sensorTypes,
+            @QueryParam("date_begin") String dateBegin,
+            @QueryParam("date_end") String dateEnd,
+            @QueryParam("limit") Integer limit
+    ) {
+        return exportHistoricalWeatherData(deviceId, moduleId, scale, sensorTypes, dateBegin, dateEnd, limit, CSV,
+            (query, out) -> {
+                Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+                writer.write(String.join(",", EXPORT_COLUMNS));
+                writer.write("\r\n");
+                weatherService.streamHistoricalData(query, dataPoint -> {
+                    for (int i = 0; i < EXPORT_COLUMNS.size(); i++) {
+                        if (i > 0) {
+                            writer.write(',');
+                        }
+                        Object value = dataPoint.get(EXPORT_COLUMNS.get(i));
+                        if (value != null) {
+                            writer.write(value.toString());
+                        }
+                    }
+                    writer.write("\r\n");
+                });
+                writer.flush();
+            });
+    }
+
+    /**
+     * Writes the rows of an export, fetching them window by window while writing
+     */
+    @FunctionalInterface
+    private interface ExportWriter {
+        void write(WeatherService.HistoricalQuery query, OutputStream out) throws IOException;
+    }
+
+    /**
+     * Stream an export of historical data. Each window is fetched only after the previous one has been written,
+     * so a slow client holds back the Netatmo calls instead of filling up memory.
+     * A failure after the first rows aborts the response, which clients see as an incomplete transfer.
+     */
+    private Response exportHistoricalWeatherData(String deviceId, String moduleId, String scale, String sensorTypes,
+                                                 String dateBegin, String dateEnd, Integer limit,
+                                                 String mediaType, ExportWriter exportWriter) {
+        WeatherService.HistoricalQuery query;
+        try {
+            query = weatherService.resolveHistoricalQuery(deviceId, moduleId, scale, sensorTypes, dateBegin, dateEnd, limit);
+        } catch (WeatherApiException e) {
+            return ApiResponse.error(e.getMessage(), e.getStatus()).toResponse();
+        } catch (Exception e) {
+            return ApiResponse.serverError("Error exporting historical weather data: " + e.getMessage()).toResponse();
+        }
+
+        StreamingOutput output = out -> {
+            try {
+                exportWriter.write(query, out);
+            } catch (IOException e) {
+                throw e;
+            } catch (Exception e) {
+                logger.warning("Error exporting historical weather data: " + e.getMessage());
+                throw new IOException("Error exporting historical weather data: " + e.getMessage(), e);
+            }
+        };
+        String extension = CSV.equals(mediaType) ? "csv" : "ndjson";
+        return Response.ok(output, mediaType)
+            .header("Content-Disposition", "attachment; filename=\"historical-" + query.deviceId().replace(":", "")
+                + "." + extension + "\"")
+            .build();
+    }
+
+    @GET
+    @Path("/recent")
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response getRecentReadings(
+            @QueryParam("device_id") String deviceId,
+            @QueryParam("module_id") String moduleId,
+            @QueryParam("limit") Integer limit
+    ) {
+        try {
+            var result = weatherService.getRecentReadings(deviceId, moduleId, limit);
+            
+            if (!result.isSuccess()) {
+                return result.toResponse();
+            }
+            
+            return ApiResponse.success(result.getData(), "Successfully retrieved recent readings").toResponse();
+        } catch (Exception e) {
+            return ApiResponse.serverError("Error retrieving recent readings: " + e.getMessage()).toResponse();
+        }
     }
 
     @GET
     @Path("/devices")
     @Produces(MediaType.APPLICATION_JSON)
-    public Response getAvailableDevices() {
+    public Response getAvailableDevices(@Context Request request,
+                                        @HeaderParam(HttpHeaders.ACCEPT_ENCODING) String acceptEncoding) {
         try {
-            var result = weatherService.getAvailableDevices();
+            StationsSnapshot snapshot = weatherService.getStationsSnapshot();
+            if (!snapshot.isStale()) {
+                Response notModified = evaluatePreconditions(request, snapshot, ResponseCache.DEVICE_LIST_KEY);
+                if (notModified != null) {
+                    return notModified;
+                }
+
+                byte[] cached = responseCache.getJson(ResponseCache.DEVICE_LIST_KEY, snapshot.version());
+                if (cached != null) {
+                    return okWithCacheHeaders(cached, snapshot, ResponseCache.DEVICE_LIST_KEY, acceptEncoding);
+                }
+            }
+
+            var result = weatherService.getAvailableDevices(snapshot);
             
             if (!result.isSuccess()) {
                 return result.toResponse();
             }
             
-            return ApiResponse.success(result.getData(), "Successfully retrieved available devices").toResponse();
+            if (result.getStale() != null) {
+                return staleResponse(ApiResponse.success(result.getData(), "Successfully retrieved available devices")
+                    .withStaleness(result.getStale()));
+            }
+            byte[] json = responseCache.putJson(ResponseCache.DEVICE_LIST_KEY, snapshot.version(),
+                ApiResponse.success(result.getData(), "Successfully retrieved available devices"));
+            return okWithCacheHeaders(json, snapshot, ResponseCache.DEVICE_LIST_KEY, acceptEncoding);
+        } catch (NetatmoUnavailableException e) {
+            return ApiResponse.unavailable("Error retrieving available devices: " + e.getMessage(), e.getRetryAfterSeconds()).toResponse();
         } catch (Exception e) {
             return ApiResponse.serverError("Error retrieving available devices: " + e.getMessage()).toResponse();
         }
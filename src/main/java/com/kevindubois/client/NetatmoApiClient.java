@@ -9,12 +9,15 @@ import jakarta.ws.rs.core.MediaType;
 import com.kevindubois.dto.NetatmoStationsDataResponse;
 import com.kevindubois.dto.NetatmoHistoricalDataResponse;
 import com.kevindubois.filter.NetatmoAuthFilter;
+import com.kevindubois.filter.NetatmoQuotaFilter;
 import org.eclipse.microprofile.rest.client.annotation.RegisterProvider;
 import org.eclipse.microprofile.rest.client.inject.RegisterRestClient;
 
 @Path("/api")
 @RegisterRestClient(configKey = "netatmo-api")
 @RegisterProvider(NetatmoAuthFilter.class)
+@RegisterProvider(NetatmoQuotaFilter.class)
+@NetatmoCall
 public interface NetatmoApiClient {
 
     @GET
@@ -0,0 +1,43 @@
+package com.kevindubois.client;
+
+import jakarta.annotation.Priority;
+import jakarta.inject.Inject;
+import jakarta.interceptor.AroundInvoke;
+import jakarta.interceptor.Interceptor;
+import jakarta.interceptor.InvocationContext;
+
+import com.kevindubois.service.NetatmoCallHedger;
+import com.kevindubois.service.NetatmoCallScheduler;
+import com.kevindubois.service.NetatmoCircuitBreaker;
+import com.kevindubois.service.NetatmoRetryPolicy;
+
+/**
+ * Runs every Netatmo API call through the circuit breaker, the retry policy, the hedger and the call scheduler,
+ * which holds calls beyond the adaptive concurrency limit.
+ * The breaker comes first, so calls fail fast during an outage instead of queueing for a slot, and it sees the
+ * outcome of a call after its retries. Each retry and each attempt of a hedged call takes a slot of its own.
+ */
+@NetatmoCall
+@Interceptor
+@Priority(Interceptor.Priority.APPLICATION)
+public class NetatmoCallInterceptor {
+
+    @Inject
+    NetatmoCircuitBreaker circuitBreaker;
+
+    @Inject
+    NetatmoRetryPolicy retryPolicy;
+
+    @Inject
+    NetatmoCallHedger hedger;
+
+    @Inject
+    NetatmoCallScheduler scheduler;
+
+    @AroundInvoke
+    Object schedule(InvocationContext context) throws Exception {
+        String operation = context.getMethod().getName();
+        return circuitBreaker.execute(() -> retryPolicy.execute(operation,
+            () -> hedger.execute(operation, () -> scheduler.execute(operation, context::proceed))));
+    }
+}
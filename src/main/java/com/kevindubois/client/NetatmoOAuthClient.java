@@ -0,0 +1,39 @@
+package com.kevindubois.client;
+
+import jakarta.ws.rs.Consumes;
+import jakarta.ws.rs.FormParam;
+import jakarta.ws.rs.HEAD;
+import jakarta.ws.rs.POST;
+import jakarta.ws.rs.Path;
+import jakarta.ws.rs.Produces;
+import jakarta.ws.rs.core.MediaType;
+import jakarta.ws.rs.core.Response;
+
+import org.eclipse.microprofile.rest.client.inject.RegisterRestClient;
+
+import java.util.concurrent.CompletionStage;
+
+/**
+ * Token endpoint of the Netatmo API. It shares its connection pool with NetatmoApiClient, see application.properties.
+ */
+@Path("/")
+@RegisterRestClient(configKey = "netatmo-oauth")
+public interface NetatmoOAuthClient {
+
+    @POST
+    @Path("/oauth2/token")
+    @Consumes(MediaType.APPLICATION_FORM_URLENCODED)
+    @Produces(MediaType.APPLICATION_JSON)
+    String refreshToken(
+        @FormParam("grant_type") String grantType,
+        @FormParam("refresh_token") String refreshToken,
+        @FormParam("client_id") String clientId,
+        @FormParam("client_secret") String clientSecret
+    );
+
+    /**
+     * Open a connection to the API host without calling the API, the response itself is not used
+     */
+    @HEAD
+    CompletionStage<Response> ping();
+}
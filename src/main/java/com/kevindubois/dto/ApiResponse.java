@@ -1,12 +1,19 @@
 package com.kevindubois.dto;
 
+import jakarta.ws.rs.core.HttpHeaders;
 import jakarta.ws.rs.core.Response;
 import io.quarkiverse.mcp.server.TextContent;
 import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
 import io.quarkus.runtime.annotations.RegisterForReflection;
 
+import java.util.LinkedHashMap;
+import java.util.Map;
+
 /**
  * Generic API response wrapper for consistent response format
  * @param <T> The type of data contained in the response
@@ -14,6 +21,9 @@ import io.quarkus.runtime.annotations.RegisterForReflection;
 @RegisterForReflection
 @JsonInclude(JsonInclude.Include.NON_NULL)
 public class ApiResponse<T> {
+    // Shared writer for callers without access to the injected serializer, writers are immutable and thread-safe
+    private static final ObjectWriter PRETTY_WRITER = new ObjectMapper().writerWithDefaultPrettyPrinter();
+
     @JsonProperty("success")
     private final boolean success;
     
@@ -26,6 +36,14 @@ public class ApiResponse<T> {
     @JsonProperty("status")
     private final int status;
 
+    // Set when the data is the last known copy because Netatmo is unavailable
+    @JsonProperty("stale")
+    private final Staleness stale;
+
+    // Sent as the Retry-After header of a 503, not part of the body
+    @JsonIgnore
+    private final Long retryAfterSeconds;
+
     /**
      * Default constructor
      */
@@ -36,16 +54,30 @@ public class ApiResponse<T> {
     /**
      * Constructor with all fields
      */
+    public ApiResponse(boolean success, String message, T data, int status) {
+        this(success, message, data, status, null);
+    }
+
+    /**
+     * Constructor with all fields, including the staleness marker
+     */
     @JsonCreator
     public ApiResponse(
             @JsonProperty("success") boolean success, 
             @JsonProperty("message") String message, 
             @JsonProperty("data") T data, 
-            @JsonProperty("status") int status) {
+            @JsonProperty("status") int status,
+            @JsonProperty("stale") Staleness stale) {
+        this(success, message, data, status, stale, null);
+    }
+
+    private ApiResponse(boolean success, String message, T data, int status, Staleness stale, Long retryAfterSeconds) {
         this.success = success;
         this.message = message;
         this.data = data;
         this.status = status;
+        this.stale = stale;
+        this.retryAfterSeconds = retryAfterSeconds;
     }
     
     /**
@@ -76,6 +108,14 @@ public class ApiResponse<T> {
         return error(message, Response.Status.INTERNAL_SERVER_ERROR);
     }
     
+    /**
+     * Creates a service unavailable response (503) telling clients when to retry
+     */
+    public static <T> ApiResponse<T> unavailable(String message, long retryAfterSeconds) {
+        return new ApiResponse<>(false, message, null, Response.Status.SERVICE_UNAVAILABLE.getStatusCode(), null,
+            retryAfterSeconds);
+    }
+
     /**
      * Creates a bad request error response (400)
      */
@@ -83,22 +123,47 @@ public class ApiResponse<T> {
         return error(message, Response.Status.BAD_REQUEST);
     }
     
+    /**
+     * Creates a copy of this response marked as stale
+     * @param stale The staleness marker, null for fresh data
+     */
+    public ApiResponse<T> withStaleness(Staleness stale) {
+        return new ApiResponse<>(success, message, data, status, stale, retryAfterSeconds);
+    }
+
     /**
      * Creates a Response object from this ApiResponse
      */
     public Response toResponse() {
-        return Response.status(this.status).entity(this).build();
+        Response.ResponseBuilder builder = Response.status(this.status).entity(this);
+        if (retryAfterSeconds != null) {
+            builder.header(HttpHeaders.RETRY_AFTER, retryAfterSeconds);
+        }
+        return builder.build();
     }
     
     /**
      * Creates a TextContent object for MCP tools
      */
     public TextContent toTextContent() {
+        return toTextContent(PRETTY_WRITER);
+    }
+    
+    /**
+     * Creates a TextContent object for MCP tools, serializing the data with the given writer
+     */
+    public TextContent toTextContent(ObjectWriter writer) {
         if (this.success) {
             if (this.data != null) {
                 try {
-                    // Convert data to JSON string
-                    return new TextContent(toJsonString(this.data));
+                    // Convert data to JSON string, stale data is wrapped so the marker comes first
+                    if (this.stale != null) {
+                        Map<String, Object> marked = new LinkedHashMap<>();
+                        marked.put("stale", this.stale);
+                        marked.put("data", this.data);
+                        return new TextContent(writer.writeValueAsString(marked));
+                    }
+                    return new TextContent(writer.writeValueAsString(this.data));
                 } catch (Exception e) {
                     // Fallback to toString if JSON conversion fails
                     return new TextContent(this.data.toString());
@@ -127,9 +192,7 @@ public class ApiResponse<T> {
      * Converts any object to a JSON string
      */
     public static String toJsonString(Object obj) throws Exception {
-        return new com.fasterxml.jackson.databind.ObjectMapper()
-            .enable(com.fasterxml.jackson.databind.SerializationFeature.INDENT_OUTPUT)
-            .writeValueAsString(obj);
+        return PRETTY_WRITER.writeValueAsString(obj);
     }
 
     // Getters
@@ -144,6 +207,12 @@ public class ApiResponse<T> {
     
     @JsonProperty("status")
     public int getStatus() { return status; }
+
+    @JsonProperty("stale")
+    public Staleness getStale() { return stale; }
+
+    @JsonIgnore
+    public Long getRetryAfterSeconds() { return retryAfterSeconds; }
     
     public String getErrorMessage() { return !success ? message : null; }
 }
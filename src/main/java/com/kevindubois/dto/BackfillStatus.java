@@ -0,0 +1,33 @@
+package com.kevindubois.dto;
+
+import java.util.List;
+
+/**
+ * Record for the progress and throughput of the historical backfill
+ */
+public record BackfillStatus(
+    boolean running,
+    long requestsMade,
+    long rowsStored,
+    long errors,
+    double requestsPerHour,
+    double rowsPerSecond,
+    int quotaCallsLastHour,
+    double quotaShare,
+    int targetsDone,
+    int targetsTotal,
+    String lastError,
+    List<TargetStatus> targets
+) {
+    /**
+     * Record for the progress of a single device/module/scale series
+     */
+    public record TargetStatus(
+        String deviceId,
+        String moduleId,
+        String scale,
+        Long reachedTimestamp,
+        String reachedTime,
+        boolean done
+    ) {}
+}
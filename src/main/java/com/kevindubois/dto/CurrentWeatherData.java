@@ -3,6 +3,8 @@ package com.kevindubois.dto;
 import com.fasterxml.jackson.annotation.JsonCreator;
 import com.fasterxml.jackson.annotation.JsonProperty;
 
+import java.util.List;
+
 /**
  * Record for current weather data
  */
@@ -17,13 +19,24 @@ public record CurrentWeatherData(
     Double outdoorTemperature,
     Integer outdoorHumidity,
     Double outdoorMaxTemperature,
-    Double outdoorMinTemperature
+    Double outdoorMinTemperature,
+    List<ModuleReading> modules
 ) {
     /**
      * Default constructor for empty data
      */
     public CurrentWeatherData() {
-        this(null, null, null, null, null, null, null, null, null, null, null);
+        this(null, null, null, null, null, null, null, null, null, null, null, null);
+    }
+
+    /**
+     * Constructor without module readings
+     */
+    public CurrentWeatherData(String stationName, Double indoorTemperature, Integer indoorHumidity, Double pressure,
+                              Integer co2, Integer noise, Long timeUtc, Double outdoorTemperature,
+                              Integer outdoorHumidity, Double outdoorMaxTemperature, Double outdoorMinTemperature) {
+        this(stationName, indoorTemperature, indoorHumidity, pressure, co2, noise, timeUtc, outdoorTemperature,
+             outdoorHumidity, outdoorMaxTemperature, outdoorMinTemperature, null);
     }
 
     /**
@@ -41,7 +54,8 @@ public record CurrentWeatherData(
         @JsonProperty("outdoorTemperature") Double outdoorTemperature,
         @JsonProperty("outdoorHumidity") Integer outdoorHumidity,
         @JsonProperty("outdoorMaxTemperature") Double outdoorMaxTemperature,
-        @JsonProperty("outdoorMinTemperature") Double outdoorMinTemperature
+        @JsonProperty("outdoorMinTemperature") Double outdoorMinTemperature,
+        @JsonProperty("modules") List<ModuleReading> modules
     ) {
         this.stationName = stationName;
         this.indoorTemperature = indoorTemperature;
@@ -54,6 +68,7 @@ public record CurrentWeatherData(
         this.outdoorHumidity = outdoorHumidity;
         this.outdoorMaxTemperature = outdoorMaxTemperature;
         this.outdoorMinTemperature = outdoorMinTemperature;
+        this.modules = modules;
     }
     
     /**
@@ -61,7 +76,7 @@ public record CurrentWeatherData(
      */
     public CurrentWeatherData withStationName(String stationName) {
         return new CurrentWeatherData(stationName, indoorTemperature, indoorHumidity, pressure, co2, noise,
-                                     timeUtc, outdoorTemperature, outdoorHumidity, outdoorMaxTemperature, outdoorMinTemperature);
+                                     timeUtc, outdoorTemperature, outdoorHumidity, outdoorMaxTemperature, outdoorMinTemperature, modules);
     }
     
     /**
@@ -69,7 +84,7 @@ public record CurrentWeatherData(
      */
     public CurrentWeatherData withIndoorTemperature(Double indoorTemperature) {
         return new CurrentWeatherData(stationName, indoorTemperature, indoorHumidity, pressure, co2, noise,
-                                     timeUtc, outdoorTemperature, outdoorHumidity, outdoorMaxTemperature, outdoorMinTemperature);
+                                     timeUtc, outdoorTemperature, outdoorHumidity, outdoorMaxTemperature, outdoorMinTemperature, modules);
     }
     
     /**
@@ -77,7 +92,7 @@ public record CurrentWeatherData(
      */
     public CurrentWeatherData withIndoorHumidity(Integer indoorHumidity) {
         return new CurrentWeatherData(stationName, indoorTemperature, indoorHumidity, pressure, co2, noise,
-                                     timeUtc, outdoorTemperature, outdoorHumidity, outdoorMaxTemperature, outdoorMinTemperature);
+                                     timeUtc, outdoorTemperature, outdoorHumidity, outdoorMaxTemperature, outdoorMinTemperature, modules);
     }
     
     /**
@@ -85,7 +100,7 @@ public record CurrentWeatherData(
      */
     public CurrentWeatherData withPressure(Double pressure) {
         return new CurrentWeatherData(stationName, indoorTemperature, indoorHumidity, pressure, co2, noise,
-                                     timeUtc, outdoorTemperature, outdoorHumidity, outdoorMaxTemperature, outdoorMinTemperature);
+                                     timeUtc, outdoorTemperature, outdoorHumidity, outdoorMaxTemperature, outdoorMinTemperature, modules);
     }
     
     /**
@@ -93,7 +108,7 @@ public record CurrentWeatherData(
      */
     public CurrentWeatherData withCo2(Integer co2) {
         return new CurrentWeatherData(stationName, indoorTemperature, indoorHumidity, pressure, co2, noise,
-                                     timeUtc, outdoorTemperature, outdoorHumidity, outdoorMaxTemperature, outdoorMinTemperature);
+                                     timeUtc, outdoorTemperature, outdoorHumidity, outdoorMaxTemperature, outdoorMinTemperature, modules);
     }
     
     /**
@@ -101,7 +116,7 @@ public record CurrentWeatherData(
      */
     public CurrentWeatherData withNoise(Integer noise) {
         return new CurrentWeatherData(stationName, indoorTemperature, indoorHumidity, pressure, co2, noise,
-                                     timeUtc, outdoorTemperature, outdoorHumidity, outdoorMaxTemperature, outdoorMinTemperature);
+                                     timeUtc, outdoorTemperature, outdoorHumidity, outdoorMaxTemperature, outdoorMinTemperature, modules);
     }
     
     /**
@@ -109,7 +124,7 @@ public record CurrentWeatherData(
      */
     public CurrentWeatherData withTimeUtc(Long timeUtc) {
         return new CurrentWeatherData(stationName, indoorTemperature, indoorHumidity, pressure, co2, noise,
-                                     timeUtc, outdoorTemperature, outdoorHumidity, outdoorMaxTemperature, outdoorMinTemperature);
+                                     timeUtc, outdoorTemperature, outdoorHumidity, outdoorMaxTemperature, outdoorMinTemperature, modules);
     }
     
     /**
@@ -117,7 +132,7 @@ public record CurrentWeatherData(
      */
     public CurrentWeatherData withOutdoorTemperature(Double outdoorTemperature) {
         return new CurrentWeatherData(stationName, indoorTemperature, indoorHumidity, pressure, co2, noise,
-                                     timeUtc, outdoorTemperature, outdoorHumidity, outdoorMaxTemperature, outdoorMinTemperature);
+                                     timeUtc, outdoorTemperature, outdoorHumidity, outdoorMaxTemperature, outdoorMinTemperature, modules);
     }
     
     /**
@@ -125,7 +140,7 @@ public record CurrentWeatherData(
      */
     public CurrentWeatherData withOutdoorHumidity(Integer outdoorHumidity) {
         return new CurrentWeatherData(stationName, indoorTemperature, indoorHumidity, pressure, co2, noise,
-                                     timeUtc, outdoorTemperature, outdoorHumidity, outdoorMaxTemperature, outdoorMinTemperature);
+                                     timeUtc, outdoorTemperature, outdoorHumidity, outdoorMaxTemperature, outdoorMinTemperature, modules);
     }
     
     /**
@@ -133,7 +148,7 @@ public record CurrentWeatherData(
      */
     public CurrentWeatherData withOutdoorMaxTemperature(Double outdoorMaxTemperature) {
         return new CurrentWeatherData(stationName, indoorTemperature, indoorHumidity, pressure, co2, noise,
-                                     timeUtc, outdoorTemperature, outdoorHumidity, outdoorMaxTemperature, outdoorMinTemperature);
+                                     timeUtc, outdoorTemperature, outdoorHumidity, outdoorMaxTemperature, outdoorMinTemperature, modules);
     }
     
     /**
@@ -141,6 +156,14 @@ public record CurrentWeatherData(
      */
     public CurrentWeatherData withOutdoorMinTemperature(Double outdoorMinTemperature) {
         return new CurrentWeatherData(stationName, indoorTemperature, indoorHumidity, pressure, co2, noise,
-                                     timeUtc, outdoorTemperature, outdoorHumidity, outdoorMaxTemperature, outdoorMinTemperature);
+                                     timeUtc, outdoorTemperature, outdoorHumidity, outdoorMaxTemperature, outdoorMinTemperature, modules);
+    }
+
+    /**
+     * Create a new instance with updated modules
+     */
+    public CurrentWeatherData withModules(List<ModuleReading> modules) {
+        return new CurrentWeatherData(stationName, indoorTemperature, indoorHumidity, pressure, co2, noise,
+                                     timeUtc, outdoorTemperature, outdoorHumidity, outdoorMaxTemperature, outdoorMinTemperature, modules);
     }
 }
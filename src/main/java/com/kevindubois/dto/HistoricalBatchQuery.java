@@ -0,0 +1,21 @@
+package com.kevindubois.dto;
+
+/**
+ * Record for a single query of a historical data batch, with the same parameters as a historical data request
+ */
+public record HistoricalBatchQuery(
+    String deviceId,
+    String moduleId,
+    String scale,
+    String sensorTypes,
+    String beginDate,
+    String endDate,
+    Integer limit
+) {
+    /**
+     * Default constructor
+     */
+    public HistoricalBatchQuery() {
+        this(null, null, null, null, null, null, null);
+    }
+}
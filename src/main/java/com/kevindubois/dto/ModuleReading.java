@@ -0,0 +1,49 @@
+package com.kevindubois.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+/**
+ * Record for the current readings of a station module, only the measurements of its type are set
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public record ModuleReading(
+    String id,
+    String name,
+    String type,
+    Long timeUtc,
+    Double temperature,
+    Integer humidity,
+    Integer co2,
+    Double minTemperature,
+    Double maxTemperature,
+    Double rain,
+    Double rainLastHour,
+    Double rainLastDay,
+    Integer windStrength,
+    Integer windAngle,
+    Integer gustStrength,
+    Integer gustAngle
+) {
+    /**
+     * Create the readings of a module from its dashboard data
+     */
+    public static ModuleReading of(NetatmoStationsDataResponse.Module module) {
+        var data = module.getDashboardData();
+        if (data == null) {
+            return new ModuleReading(module.getId(), module.getModuleName(), module.getType(),
+                null, null, null, null, null, null, null, null, null, null, null, null, null);
+        }
+        return new ModuleReading(module.getId(), module.getModuleName(), module.getType(),
+            data.getTimeUtc(), data.getTemperature(), data.getHumidity(), data.getCo2(),
+            data.getMinTemp(), data.getMaxTemp(), data.getRain(), data.getSumRain1(), data.getSumRain24(),
+            data.getWindStrength(), data.getWindAngle(), data.getGustStrength(), data.getGustAngle());
+    }
+
+    /**
+     * Create a new instance with updated timeUtc
+     */
+    public ModuleReading withTimeUtc(Long timeUtc) {
+        return new ModuleReading(id, name, type, timeUtc, temperature, humidity, co2, minTemperature, maxTemperature,
+            rain, rainLastHour, rainLastDay, windStrength, windAngle, gustStrength, gustAngle);
+    }
+}
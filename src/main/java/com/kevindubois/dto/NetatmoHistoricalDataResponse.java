@@ -4,6 +4,7 @@ import com.fasterxml.jackson.annotation.JsonProperty;
 import com.fasterxml.jackson.annotation.JsonCreator;
 import io.quarkus.runtime.annotations.RegisterForReflection;
 
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 
@@ -106,26 +107,56 @@ public class NetatmoHistoricalDataResponse {
     }
 
     // Helper method to get properly parsed measurement data
+    // With optimize=true Netatmo splits the series into several blocks when there are gaps,
+    // these are merged onto the time grid of the first block with null values for the gaps
     @SuppressWarnings("unchecked")
     public NetatmoMeasurementData getParsedMeasurementData() {
-        Map<String, Object> measurementData = getMeasurementData();
-        if (measurementData != null) {
-            // Convert to Long to handle larger timestamps
-            Long beginTime = null;
-            Object beginTimeObj = measurementData.get("beg_time");
-            if (beginTimeObj instanceof Integer) {
-                beginTime = ((Integer) beginTimeObj).longValue();
-            } else if (beginTimeObj instanceof Long) {
-                beginTime = (Long) beginTimeObj;
+        if (!(body instanceof List) || ((List<?>) body).isEmpty()) {
+            return null;
+        }
+
+        Long beginTime = null;
+        Integer stepTime = null;
+        List<Object> values = null;
+
+        for (Object block : (List<?>) body) {
+            if (!(block instanceof Map)) {
+                continue;
             }
-            
-            Integer stepTime = (Integer) measurementData.get("step_time");
-            List<Object> values = (List<Object>) measurementData.get("value");
-            
-            if (beginTime != null && stepTime != null && values != null) {
-                return new NetatmoMeasurementData(beginTime, stepTime, values);
+            Map<String, Object> measurementData = (Map<String, Object>) block;
+            Long blockBegin = toLong(measurementData.get("beg_time"));
+            Long blockStep = toLong(measurementData.get("step_time"));
+            List<Object> blockValues = (List<Object>) measurementData.get("value");
+
+            if (blockBegin == null || blockValues == null) {
+                continue;
+            }
+
+            if (values == null) {
+                if (blockStep == null) {
+                    continue;
+                }
+                beginTime = blockBegin;
+                stepTime = blockStep.intValue();
+                values = new ArrayList<>(blockValues);
+            } else {
+                if (stepTime > 0) {
+                    long expected = beginTime + (long) values.size() * stepTime;
+                    for (long t = expected; t < blockBegin; t += stepTime) {
+                        values.add(null);
+                    }
+                }
+                values.addAll(blockValues);
             }
         }
-        return null;
+
+        if (values == null) {
+            return null;
+        }
+        return new NetatmoMeasurementData(beginTime, stepTime, values);
+    }
+
+    private static Long toLong(Object value) {
+        return value instanceof Number ? ((Number) value).longValue() : null;
     }
 }
\ No newline at end of file
@@ -2,6 +2,7 @@ package com.kevindubois.dto;
 
 import com.fasterxml.jackson.annotation.JsonProperty;
 import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonInclude;
 import io.quarkus.runtime.annotations.RegisterForReflection;
 
 import java.util.List;
@@ -216,7 +217,42 @@ public class NetatmoStationsDataResponse extends BaseResult {
 
         @JsonProperty("max_temp")
         private final Double maxTemp;
-        
+
+        // Rain and wind gauge measurements, only set for those module types
+        @JsonProperty("Rain")
+        @JsonInclude(JsonInclude.Include.NON_NULL)
+        private final Double rain;
+
+        @JsonProperty("sum_rain_1")
+        @JsonInclude(JsonInclude.Include.NON_NULL)
+        private final Double sumRain1;
+
+        @JsonProperty("sum_rain_24")
+        @JsonInclude(JsonInclude.Include.NON_NULL)
+        private final Double sumRain24;
+
+        @JsonProperty("WindStrength")
+        @JsonInclude(JsonInclude.Include.NON_NULL)
+        private final Integer windStrength;
+
+        @JsonProperty("WindAngle")
+        @JsonInclude(JsonInclude.Include.NON_NULL)
+        private final Integer windAngle;
+
+        @JsonProperty("GustStrength")
+        @JsonInclude(JsonInclude.Include.NON_NULL)
+        private final Integer gustStrength;
+
+        @JsonProperty("GustAngle")
+        @JsonInclude(JsonInclude.Include.NON_NULL)
+        private final Integer gustAngle;
+
+        public DashboardData(Double temperature, Integer humidity, Double pressure, Integer co2, Integer noise,
+                             Long timeUtc, Double minTemp, Double maxTemp) {
+            this(temperature, humidity, pressure, co2, noise, timeUtc, minTemp, maxTemp,
+                 null, null, null, null, null, null, null);
+        }
+
         @JsonCreator
         public DashboardData(
                 @JsonProperty("Temperature") Double temperature,
@@ -226,7 +262,14 @@ public class NetatmoStationsDataResponse extends BaseResult {
                 @JsonProperty("Noise") Integer noise,
                 @JsonProperty("time_utc") Long timeUtc,
                 @JsonProperty("min_temp") Double minTemp,
-                @JsonProperty("max_temp") Double maxTemp) {
+                @JsonProperty("max_temp") Double maxTemp,
+                @JsonProperty("Rain") Double rain,
+                @JsonProperty("sum_rain_1") Double sumRain1,
+                @JsonProperty("sum_rain_24") Double sumRain24,
+                @JsonProperty("WindStrength") Integer windStrength,
+                @JsonProperty("WindAngle") Integer windAngle,
+                @JsonProperty("GustStrength") Integer gustStrength,
+                @JsonProperty("GustAngle") Integer gustAngle) {
             this.temperature = temperature;
             this.humidity = humidity;
             this.pressure = pressure;
@@ -235,6 +278,13 @@ public class NetatmoStationsDataResponse extends BaseResult {
             this.timeUtc = timeUtc;
             this.minTemp = minTemp;
             this.maxTemp = maxTemp;
+            this.rain = rain;
+            this.sumRain1 = sumRain1;
+            this.sumRain24 = sumRain24;
+            this.windStrength = windStrength;
+            this.windAngle = windAngle;
+            this.gustStrength = gustStrength;
+            this.gustAngle = gustAngle;
         }
 
         public Double getTemperature() {
@@ -268,6 +318,34 @@ public class NetatmoStationsDataResponse extends BaseResult {
         public Double getMaxTemp() {
             return maxTemp;
         }
+
+        public Double getRain() {
+            return rain;
+        }
+
+        public Double getSumRain1() {
+            return sumRain1;
+        }
+
+        public Double getSumRain24() {
+            return sumRain24;
+        }
+
+        public Integer getWindStrength() {
+            return windStrength;
+        }
+
+        public Integer getWindAngle() {
+            return windAngle;
+        }
+
+        public Integer getGustStrength() {
+            return gustStrength;
+        }
+
+        public Integer getGustAngle() {
+            return gustAngle;
+        }
     }
 }
 
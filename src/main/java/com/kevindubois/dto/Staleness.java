@@ -0,0 +1,21 @@
+package com.kevindubois.dto;
+
+/**
+ * Marks data served from the last known copy because the Netatmo API is unavailable
+ *
+ * @param reason Why fresh data could not be fetched
+ * @param fetchedAt Time the data was fetched from Netatmo, in seconds since epoch
+ * @param ageSeconds Age of the data when it was served
+ */
+public record Staleness(String reason, long fetchedAt, long ageSeconds) {
+
+    /**
+     * Create the marker of data fetched at a given time
+     * @param fetchedAtMillis Time the data was fetched, in milliseconds since epoch
+     * @param reason Why fresh data could not be fetched
+     */
+    public static Staleness of(long fetchedAtMillis, String reason) {
+        return new Staleness(reason, fetchedAtMillis / 1000,
+            Math.max(0, (System.currentTimeMillis() - fetchedAtMillis) / 1000));
+    }
+}
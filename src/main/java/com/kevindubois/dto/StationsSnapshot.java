@@ -0,0 +1,65 @@
+package com.kevindubois.dto;
+
+/**
+ * Record for an in-memory copy of the stations data
+ *
+ * @param response The stations data as returned by Netatmo
+ * @param version Increases every time a module reports a new reading
+ * @param fetchedAt Time the data was fetched, in milliseconds since epoch
+ * @param expiresAt Time the next sensor reading is expected, in milliseconds since epoch
+ * @param lastModified Time of the most recent sensor reading, in milliseconds since epoch
+ * @param staleness Set when the snapshot is served after its expiry because Netatmo is unavailable
+ */
+public record StationsSnapshot(
+    NetatmoStationsDataResponse response,
+    long version,
+    long fetchedAt,
+    long expiresAt,
+    long lastModified,
+    Staleness staleness
+) {
+    public StationsSnapshot(NetatmoStationsDataResponse response, long version, long fetchedAt, long expiresAt,
+                            long lastModified) {
+        this(response, version, fetchedAt, expiresAt, lastModified, null);
+    }
+
+    /**
+     * Get a copy of this snapshot marked as stale
+     * @param reason Why a fresh snapshot could not be fetched
+     */
+    public StationsSnapshot asStale(String reason) {
+        return new StationsSnapshot(response, version, fetchedAt, expiresAt, lastModified,
+            Staleness.of(fetchedAt, reason));
+    }
+
+    /**
+     * Check whether this snapshot is served while Netatmo is unavailable
+     */
+    public boolean isStale() {
+        return staleness != null;
+    }
+
+    /**
+     * Get the age of this snapshot
+     * @return The age in milliseconds
+     */
+    public long ageMillis() {
+        return System.currentTimeMillis() - fetchedAt;
+    }
+
+    /**
+     * Check whether a newer reading may be available upstream
+     * @return true if the expected time of the next reading has passed
+     */
+    public boolean isExpired() {
+        return System.currentTimeMillis() >= expiresAt;
+    }
+
+    /**
+     * Get how long clients may reuse a response built from this snapshot
+     * @return The seconds until the next sensor reading is expected, 0 if it is overdue
+     */
+    public long maxAgeSeconds() {
+        return Math.max(0, (expiresAt - System.currentTimeMillis()) / 1000);
+    }
+}
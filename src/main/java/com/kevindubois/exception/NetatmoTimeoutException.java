@@ -0,0 +1,19 @@
+package com.kevindubois.exception;
+
+import jakarta.ws.rs.core.Response;
+
+/**
+ * Thrown when a Netatmo call that was sent did not answer before the deadline of its request.
+ * Unlike a call that ran out of time while waiting locally, it shows the API is slow.
+ */
+public class NetatmoTimeoutException extends WeatherApiException {
+
+    /**
+     * Creates a new NetatmoTimeoutException with the specified message
+     *
+     * @param message The error message
+     */
+    public NetatmoTimeoutException(String message) {
+        super(message, Response.Status.GATEWAY_TIMEOUT);
+    }
+}
@@ -0,0 +1,44 @@
+package com.kevindubois.exception;
+
+import jakarta.ws.rs.core.Response;
+
+/**
+ * Thrown instead of calling the Netatmo API while it is considered unavailable.
+ * Callers holding an earlier copy of the data can serve it as stale instead of failing.
+ */
+public class NetatmoUnavailableException extends WeatherApiException {
+
+    // Retry-After for calls shed under load, which may succeed as soon as the queue drains
+    private static final long DEFAULT_RETRY_AFTER_SECONDS = 5;
+
+    private final long retryAfterSeconds;
+
+    /**
+     * Creates a new NetatmoUnavailableException with the specified message
+     *
+     * @param message The error message
+     */
+    public NetatmoUnavailableException(String message) {
+        this(message, DEFAULT_RETRY_AFTER_SECONDS);
+    }
+
+    /**
+     * Creates a new NetatmoUnavailableException with the specified message and time until the API may be called again
+     *
+     * @param message The error message
+     * @param retryAfterSeconds Seconds after which clients may retry
+     */
+    public NetatmoUnavailableException(String message, long retryAfterSeconds) {
+        super(message, Response.Status.SERVICE_UNAVAILABLE);
+        this.retryAfterSeconds = Math.max(1, retryAfterSeconds);
+    }
+
+    /**
+     * Gets the seconds after which clients may retry, for the Retry-After header
+     *
+     * @return The seconds, at least 1
+     */
+    public long getRetryAfterSeconds() {
+        return retryAfterSeconds;
+    }
+}
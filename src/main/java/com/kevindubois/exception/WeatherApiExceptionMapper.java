@@ -20,6 +20,9 @@ public class WeatherApiExceptionMapper implements ExceptionMapper<WeatherApiExce
     @Override
     public Response toResponse(WeatherApiException exception) {
         logger.severe("Weather API error: " + exception.getMessage());
+        if (exception instanceof NetatmoUnavailableException unavailable) {
+            return ApiResponse.unavailable(exception.getMessage(), unavailable.getRetryAfterSeconds()).toResponse();
+        }
         return ApiResponse.error(exception.getMessage(), exception.getStatus()).toResponse();
     }
 }
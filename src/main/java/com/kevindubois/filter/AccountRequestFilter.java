@@ -0,0 +1,63 @@
+package com.kevindubois.filter;
+
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.enterprise.event.Observes;
+import jakarta.inject.Inject;
+import jakarta.ws.rs.core.HttpHeaders;
+import jakarta.ws.rs.core.MediaType;
+
+import com.kevindubois.dto.ApiResponse;
+import com.kevindubois.service.AccountContext;
+import com.kevindubois.service.NetatmoAccounts;
+import com.kevindubois.service.ResponseSerializer;
+import io.quarkus.vertx.http.runtime.filters.Filters;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.ext.web.RoutingContext;
+
+/**
+ * Selects the Netatmo account of every HTTP request, REST and MCP alike, from the X-Netatmo-Account header.
+ * Requests without the header use the default account; unknown accounts are rejected before any work is done.
+ */
+@ApplicationScoped
+public class AccountRequestFilter {
+
+    private static final int PRIORITY = 100;
+
+    @Inject
+    NetatmoAccounts accounts;
+
+    @Inject
+    ResponseSerializer responseSerializer;
+
+    void register(@Observes Filters filters) {
+        filters.register(this::selectAccount, PRIORITY);
+    }
+
+    void selectAccount(RoutingContext context) {
+        String account = context.request().getHeader(AccountContext.HEADER);
+        if (account == null || account.isBlank()) {
+            context.next();
+            return;
+        }
+
+        account = account.trim();
+        if (!accounts.exists(account)) {
+            reject(context, "Unknown Netatmo account: " + account);
+            return;
+        }
+        AccountContext.setForRequest(context, account);
+        context.next();
+    }
+
+    private void reject(RoutingContext context, String message) {
+        try {
+            byte[] body = responseSerializer.toBytes(ApiResponse.badRequest(message), ResponseSerializer.Profile.COMPACT);
+            context.response()
+                .setStatusCode(400)
+                .putHeader(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON)
+                .end(Buffer.buffer(body));
+        } catch (Exception e) {
+            context.response().setStatusCode(400).end(message);
+        }
+    }
+}
@@ -0,0 +1,23 @@
+package com.kevindubois.filter;
+
+import jakarta.inject.Inject;
+import jakarta.ws.rs.client.ClientRequestContext;
+import jakarta.ws.rs.client.ClientRequestFilter;
+import jakarta.ws.rs.ext.Provider;
+
+import com.kevindubois.service.NetatmoQuota;
+
+/**
+ * Records every Netatmo API call against the rate limit quota
+ */
+@Provider
+public class NetatmoQuotaFilter implements ClientRequestFilter {
+
+    @Inject
+    NetatmoQuota quota;
+
+    @Override
+    public void filter(ClientRequestContext requestContext) {
+        quota.record();
+    }
+}
@@ -0,0 +1,123 @@
+package com.kevindubois.filter;
+
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.enterprise.event.Observes;
+import jakarta.inject.Inject;
+import jakarta.ws.rs.core.HttpHeaders;
+import jakarta.ws.rs.core.MediaType;
+
+import com.kevindubois.WeatherStationResource;
+import com.kevindubois.dto.ApiResponse;
+import com.kevindubois.service.RequestDeadline;
+import com.kevindubois.service.ResponseSerializer;
+import io.quarkus.vertx.http.runtime.filters.Filters;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.ext.web.RoutingContext;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Gives every HTTP request, REST and MCP alike, a deadline for the Netatmo calls made on its behalf.
+ * Clients may shorten the configured request timeout with the X-Request-Timeout header.
+ * Requests that read a whole date range, the streams, exports, streamed and CBOR historical data, make calls for as
+ * long as the range takes, so they only get the deadline the client asked for with the header, if any.
+ */
+@ApplicationScoped
+public class RequestDeadlineFilter {
+
+    private static final int PRIORITY = 90;
+    private static final List<String> UNBOUNDED_PATHS = List.of("/weather/current/stream", "/weather/historical/export");
+    private static final String HISTORICAL_PATH = "/weather/historical";
+
+    @ConfigProperty(name = "netatmo.request.timeout", defaultValue = "30s")
+    Duration timeout;
+
+    @Inject
+    ResponseSerializer responseSerializer;
+
+    void register(@Observes Filters filters) {
+        filters.register(this::setDeadline, PRIORITY);
+    }
+
+    void setDeadline(RoutingContext context) {
+        long now = System.currentTimeMillis();
+        long requestedDeadline = RequestDeadline.NONE;
+        String requested = context.request().getHeader(RequestDeadline.HEADER);
+        if (requested != null && !requested.isBlank()) {
+            try {
+                long requestedMillis = Long.parseLong(requested.trim());
+                if (requestedMillis <= 0) {
+                    throw new NumberFormatException();
+                }
+                requestedDeadline = now + requestedMillis;
+            } catch (NumberFormatException e) {
+                reject(context, "Invalid " + RequestDeadline.HEADER + " header, expected a positive number of milliseconds");
+                return;
+            }
+        }
+
+        long deadline = timeout.isZero() || readsWholeRange(context)
+            ? requestedDeadline
+            : Math.min(requestedDeadline, now + timeout.toMillis());
+        RequestDeadline.setForRequest(context, deadline, requestedDeadline);
+        context.next();
+    }
+
+    /**
+     * Check whether the request reads a whole date range rather than a single page of it
+     */
+    private static boolean readsWholeRange(RoutingContext context) {
+        String path = context.normalizedPath();
+        if (UNBOUNDED_PATHS.stream().anyMatch(path::startsWith)) {
+            return true;
+        }
+        if (!path.equals(HISTORICAL_PATH) && !path.equals(HISTORICAL_PATH + "/")) {
+            return false;
+        }
+        return "true".equalsIgnoreCase(context.request().getParam("stream"))
+            || WeatherStationResource.prefersCbor(acceptableMediaTypes(context.request().getHeader(HttpHeaders.ACCEPT)));
+    }
+
+    /**
+     * Parse an Accept header into its media types, most preferred first
+     */
+    private static List<MediaType> acceptableMediaTypes(String accept) {
+        List<MediaType> types = new ArrayList<>();
+        if (accept == null) {
+            return types;
+        }
+        for (String value : accept.split(",")) {
+            try {
+                types.add(MediaType.valueOf(value.trim()));
+            } catch (IllegalArgumentException e) {
+                // JAX-RS skips malformed types as well
+            }
+        }
+        types.sort(Comparator.comparingDouble(RequestDeadlineFilter::quality).reversed());
+        return types;
+    }
+
+    private static double quality(MediaType type) {
+        try {
+            return Double.parseDouble(type.getParameters().getOrDefault("q", "1"));
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    private void reject(RoutingContext context, String message) {
+        try {
+            byte[] body = responseSerializer.toBytes(ApiResponse.badRequest(message), ResponseSerializer.Profile.COMPACT);
+            context.response()
+                .setStatusCode(400)
+                .putHeader(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON)
+                .end(Buffer.buffer(body));
+        } catch (Exception e) {
+            context.response().setStatusCode(400).end(message);
+        }
+    }
+}
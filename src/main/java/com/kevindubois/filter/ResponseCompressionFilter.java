@@ -0,0 +1,108 @@
+package com.kevindubois.filter;
+
+import jakarta.inject.Inject;
+import jakarta.ws.rs.container.ContainerRequestContext;
+import jakarta.ws.rs.container.ContainerResponseContext;
+import jakarta.ws.rs.container.ContainerResponseFilter;
+import jakarta.ws.rs.core.HttpHeaders;
+import jakarta.ws.rs.core.MediaType;
+import jakarta.ws.rs.core.StreamingOutput;
+import jakarta.ws.rs.ext.Provider;
+
+import com.kevindubois.service.NetatmoAccounts;
+import com.kevindubois.service.ResponseCompressor;
+import com.kevindubois.service.ResponseSerializer;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Compresses response bodies with gzip when the client accepts it.
+ * Bodies of a known size are only compressed from the minimum size on. JSON entities are serialized here to learn
+ * their size and the bytes are sent either way, so they are not serialized again; streamed bodies are always
+ * compressed since they are only used for large responses.
+ * Responses that already have a Content-Encoding, like the pre-compressed cached responses, are left alone.
+ * Responses vary with the account header as well when several accounts are served.
+ */
+@Provider
+public class ResponseCompressionFilter implements ContainerResponseFilter {
+
+    @Inject
+    ResponseCompressor responseCompressor;
+
+    @Inject
+    ResponseSerializer responseSerializer;
+
+    @Inject
+    NetatmoAccounts accounts;
+
+    @Override
+    public void filter(ContainerRequestContext requestContext, ContainerResponseContext responseContext) throws IOException {
+        Object entity = responseContext.getEntity();
+        if (entity == null || responseContext.getHeaders().containsKey(HttpHeaders.CONTENT_ENCODING)) {
+            return;
+        }
+        if (!responseContext.getHeaders().containsKey(HttpHeaders.VARY)) {
+            responseContext.getHeaders().putSingle(HttpHeaders.VARY, accounts.varyHeaders());
+        }
+        if (!responseCompressor.acceptsGzip(requestContext.getHeaderString(HttpHeaders.ACCEPT_ENCODING))) {
+            return;
+        }
+
+        if (entity instanceof StreamingOutput streamingOutput) {
+            responseContext.setEntity((StreamingOutput) out -> {
+                try (GZIPOutputStream gzip = responseCompressor.newGzipStream(new NonClosingOutputStream(out))) {
+                    streamingOutput.write(gzip);
+                }
+            });
+            setGzipEncoding(responseContext);
+            return;
+        }
+
+        byte[] body;
+        if (entity instanceof byte[] bytes) {
+            body = bytes;
+        } else if (entity instanceof String text) {
+            body = text.getBytes(StandardCharsets.UTF_8);
+        } else if (responseContext.getMediaType() != null
+                && responseContext.getMediaType().isCompatible(MediaType.APPLICATION_JSON_TYPE)) {
+            body = responseSerializer.toBytes(entity, ResponseSerializer.Profile.COMPACT);
+            responseContext.setEntity(body, responseContext.getEntityAnnotations(), responseContext.getMediaType());
+        } else {
+            return;
+        }
+
+        if (responseCompressor.shouldCompress(body.length)) {
+            responseContext.setEntity(responseCompressor.gzip(body));
+            setGzipEncoding(responseContext);
+        }
+    }
+
+    private static void setGzipEncoding(ContainerResponseContext responseContext) {
+        responseContext.getHeaders().putSingle(HttpHeaders.CONTENT_ENCODING, ResponseCompressor.GZIP);
+        responseContext.getHeaders().remove(HttpHeaders.CONTENT_LENGTH);
+    }
+
+    /**
+     * Lets the gzip stream write its trailer without closing the container's stream
+     */
+    private static class NonClosingOutputStream extends FilterOutputStream {
+
+        NonClosingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+        }
+
+        @Override
+        public void close() throws IOException {
+            out.flush();
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package com.kevindubois.mcp;
+
+import io.quarkiverse.mcp.server.Cancellation;
+import io.quarkiverse.mcp.server.Progress;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import com.kevindubois.service.WeatherService;
+
+/**
+ * Follows a long-running historical fetch on behalf of an MCP tool call.
+ * Sends a progress notification after every window if the client asked for progress, and aborts the fetch
+ * when the client cancels the call: no further windows are requested, and a Netatmo call that is in flight
+ * is interrupted so the tool returns right away.
+ */
+class ToolCallMonitor implements WeatherService.FetchListener, AutoCloseable {
+
+    private static final long CHECK_INTERVAL_MS = 200;
+
+    // Shared by all tool calls, the checks only read the cancellation state
+    private static final ScheduledExecutorService WATCHER = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "mcp-cancellation-watcher");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final Progress progress;
+    private final Cancellation cancellation;
+    private final Thread caller;
+    private final ScheduledFuture<?> watch;
+    private boolean closed;
+    private volatile boolean cancelled;
+
+    /**
+     * Start following the tool call running on the current thread
+     * @param progress The progress of the tool call, may be null
+     * @param cancellation The cancellation of the tool call, may be null
+     */
+    ToolCallMonitor(Progress progress, Cancellation cancellation) {
+        this.progress = progress;
+        this.cancellation = cancellation;
+        this.caller = Thread.currentThread();
+        this.watch = cancellation != null
+            ? WATCHER.scheduleWithFixedDelay(this::interruptIfCancelled, CHECK_INTERVAL_MS, CHECK_INTERVAL_MS, TimeUnit.MILLISECONDS)
+            : null;
+    }
+
+    @Override
+    public void windowFetched(int windows, int totalWindows, int dataPoints) {
+        if (progress != null && progress.token().isPresent()) {
+            progress.notificationBuilder()
+                .setProgress(windows)
+                .setTotal(totalWindows)
+                .setMessage("Fetched " + dataPoints + " data points")
+                .build()
+                .sendAndForget();
+        }
+    }
+
+    @Override
+    public boolean isCancelled() {
+        if (!cancelled && cancellation != null && cancellation.check().isRequested()) {
+            cancelled = true;
+        }
+        return cancelled;
+    }
+
+    private synchronized void interruptIfCancelled() {
+        if (!closed && !cancelled && isCancelled()) {
+            caller.interrupt();
+        }
+    }
+
+    /**
+     * Stop following the call and clear an interrupt that was meant for it
+     */
+    @Override
+    public void close() {
+        synchronized (this) {
+            closed = true;
+        }
+        if (watch != null) {
+            watch.cancel(false);
+        }
+        if (cancelled) {
+            Thread.interrupted();
+        }
+    }
+}
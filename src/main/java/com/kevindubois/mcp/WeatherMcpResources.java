@@ -0,0 +1,152 @@
+package com.kevindubois.mcp;
+
+import io.quarkiverse.mcp.server.RequestUri;
+import io.quarkiverse.mcp.server.Resource;
+import io.quarkiverse.mcp.server.ResourceManager;
+import io.quarkiverse.mcp.server.ResourceResponse;
+import io.quarkiverse.mcp.server.TextResourceContents;
+import io.quarkus.runtime.StartupEvent;
+import jakarta.enterprise.event.Observes;
+import jakarta.inject.Inject;
+import jakarta.inject.Singleton;
+
+import java.util.List;
+import java.util.function.Function;
+import java.util.logging.Logger;
+
+import com.kevindubois.dto.ApiResponse;
+import com.kevindubois.dto.StationsSnapshot;
+import com.kevindubois.service.AccountContext;
+import com.kevindubois.service.CurrentWeatherBroadcaster;
+import com.kevindubois.service.NetatmoAccounts;
+import com.kevindubois.service.ResponseCache;
+import com.kevindubois.service.ResponseSerializer;
+import com.kevindubois.service.WeatherService;
+
+/**
+ * Stations data and current readings as MCP resources.
+ * Clients subscribed to a resource get a resources/updated notification when the station poller
+ * stores new readings, so agents can watch conditions without calling the tools over and over.
+ * The resources are notified for the default account; every other account has its own copies under
+ * netatmo://accounts/&lt;id&gt;/, notified for that account only.
+ */
+@Singleton
+public class WeatherMcpResources {
+
+    private static final Logger logger = Logger.getLogger(WeatherMcpResources.class.getName());
+
+    public static final String STATIONS_URI = "netatmo://stations";
+    public static final String CURRENT_WEATHER_URI = "netatmo://weather/current";
+    private static final String ACCOUNT_URI_PREFIX = "netatmo://accounts/";
+
+    private static final String JSON = "application/json";
+
+    @Inject
+    WeatherService weatherService;
+
+    @Inject
+    ResponseCache responseCache;
+
+    @Inject
+    ResponseSerializer responseSerializer;
+
+    @Inject
+    WeatherMcpTools weatherMcpTools;
+
+    @Inject
+    CurrentWeatherBroadcaster currentWeatherBroadcaster;
+
+    @Inject
+    ResourceManager resourceManager;
+
+    @Inject
+    NetatmoAccounts accounts;
+
+    @Resource(uri = STATIONS_URI, name = "stations", mimeType = JSON,
+        description = "Latest data of all Netatmo weather station devices and their modules, updated when new readings arrive")
+    public TextResourceContents stations(RequestUri uri) {
+        try {
+            StationsSnapshot snapshot = weatherService.getStationsSnapshot();
+            if (snapshot.isStale()) {
+                return new TextResourceContents(uri.value(), responseSerializer.toTextContent(
+                    ApiResponse.success(snapshot.response(), "Successfully retrieved all stations data")
+                        .withStaleness(snapshot.staleness())).text(), JSON);
+            }
+            String text = responseCache.getText(ResponseCache.STATIONS_KEY, snapshot.version());
+            if (text == null) {
+                text = responseCache.putText(ResponseCache.STATIONS_KEY, snapshot.version(),
+                    ApiResponse.success(snapshot.response(), "Successfully retrieved all stations data"));
+            }
+            return new TextResourceContents(uri.value(), text, JSON);
+        } catch (Exception e) {
+            return new TextResourceContents(uri.value(), "Error: " + e.getMessage(), JSON);
+        }
+    }
+
+    @Resource(uri = CURRENT_WEATHER_URI, name = "current_weather", mimeType = JSON,
+        description = "Current weather data from the Netatmo weather station, updated when a value changes")
+    public TextResourceContents currentWeather(RequestUri uri) {
+        return new TextResourceContents(uri.value(), weatherMcpTools.getCurrentWeather().text(), JSON);
+    }
+
+    /**
+     * Get the URI of a resource for an account, the default account keeps the plain URI
+     */
+    static String accountUri(String account, String uri) {
+        return AccountContext.DEFAULT_ACCOUNT.equals(account)
+            ? uri : ACCOUNT_URI_PREFIX + account + "/" + uri.substring("netatmo://".length());
+    }
+
+    /**
+     * Register the resources of the other accounts, and follow the shared current weather updates of every account,
+     * which only publish actual changes
+     */
+    void onStart(@Observes StartupEvent event) {
+        for (String account : accounts.ids()) {
+            if (!AccountContext.DEFAULT_ACCOUNT.equals(account)) {
+                register(account, "stations", STATIONS_URI, "Latest data of all weather station devices of account "
+                    + account + " and their modules, updated when new readings arrive", this::stations);
+                register(account, "current_weather", CURRENT_WEATHER_URI, "Current weather data of account "
+                    + account + ", updated when a value changes", this::currentWeather);
+            }
+            String uri = accountUri(account, CURRENT_WEATHER_URI);
+            AccountContext.runAs(account, () -> currentWeatherBroadcaster.stream().subscribe().with(
+                data -> sendUpdate(uri),
+                failure -> logger.warning("Current weather updates of account " + account + " stopped: "
+                    + failure.getMessage())));
+        }
+    }
+
+    private void register(String account, String name, String uri, String description,
+                          Function<RequestUri, TextResourceContents> read) {
+        resourceManager.newResource(name + "_" + account)
+            .setUri(accountUri(account, uri))
+            .setMimeType(JSON)
+            .setDescription(description)
+            .setHandler(arguments -> {
+                RequestUri requestUri = arguments.requestUri();
+                TextResourceContents contents;
+                try {
+                    contents = AccountContext.callAs(account, () -> read.apply(requestUri));
+                } catch (Exception e) {
+                    contents = new TextResourceContents(requestUri.value(), "Error: " + e.getMessage(), JSON);
+                }
+                return new ResourceResponse(List.of(contents));
+            })
+            .register();
+    }
+
+    /**
+     * Every new snapshot contains new readings of at least one module of the account it was fired for
+     */
+    void onSnapshot(@Observes StationsSnapshot snapshot) {
+        sendUpdate(accountUri(AccountContext.current(), STATIONS_URI));
+    }
+
+    private void sendUpdate(String uri) {
+        ResourceManager.ResourceInfo resource = resourceManager.getResource(uri);
+        if (resource != null) {
+            resource.sendUpdateAndForget();
+        }
+    }
+}
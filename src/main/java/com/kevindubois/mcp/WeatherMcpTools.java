@@ -1,34 +1,106 @@
 package com.kevindubois.mcp;
 
+import io.quarkiverse.mcp.server.Cancellation;
+import io.quarkiverse.mcp.server.Progress;
 import io.quarkiverse.mcp.server.TextContent;
 import io.quarkiverse.mcp.server.Tool;
 import io.quarkiverse.mcp.server.ToolArg;
 import jakarta.inject.Inject;
 import jakarta.inject.Singleton;
 
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CancellationException;
 
 import com.kevindubois.dto.ApiResponse;
+import com.kevindubois.dto.StationsSnapshot;
+import com.kevindubois.dto.HistoricalBatchQuery;
+import com.kevindubois.service.HistoricalBatchService;
+import com.kevindubois.service.RequestDeadline;
+import com.kevindubois.service.ResponseCache;
+import com.kevindubois.service.ResponseSerializer;
 import com.kevindubois.service.WeatherService;
+import com.kevindubois.service.WeatherService.HistoricalQuery;
+import com.kevindubois.util.CompactSeriesEncoder;
+import com.kevindubois.util.HistoricalCursor;
 
 @Singleton
 public class WeatherMcpTools {
 
+    // Common base temperature of heating degree-days in Europe
+    private static final double DEFAULT_DEGREE_DAY_BASE = 18.0;
+
+    // maxDataPoints value that asks for the whole date range
+    private static final String ALL_POINTS = "all";
+
     @Inject
     WeatherService weatherService;
 
+    @Inject
+    ResponseCache responseCache;
+
+    @Inject
+    ResponseSerializer responseSerializer;
+
+    @Inject
+    HistoricalBatchService historicalBatchService;
+
     @Tool(name = "get_current_weather", description = "Get current weather data from Netatmo weather station")
     public TextContent getCurrentWeather() {
         try {
-            var apiResponse = weatherService.getCurrentWeather();
+            StationsSnapshot snapshot = weatherService.getStationsSnapshot();
+            long version = snapshot.version();
+            String cached = snapshot.isStale() ? null : responseCache.getText(ResponseCache.CURRENT_WEATHER_KEY, version);
+            if (cached != null) {
+                return new TextContent(cached);
+            }
+
+            var apiResponse = weatherService.getCurrentWeather(snapshot);
             
             if (!apiResponse.isSuccess()) {
                 return new TextContent("Error: " + apiResponse.getMessage());
             }
             
-            // Return JSON data instead of formatted text
-            return ApiResponse.success(apiResponse.getData(), "Successfully retrieved current weather data").toTextContent();
+            // Return JSON data instead of formatted text, stale data is not cached
+            var response = ApiResponse.success(apiResponse.getData(), "Successfully retrieved current weather data");
+            if (apiResponse.getStale() != null) {
+                return responseSerializer.toTextContent(response.withStaleness(apiResponse.getStale()));
+            }
+            return new TextContent(responseCache.putText(ResponseCache.CURRENT_WEATHER_KEY, version, response));
+        } catch (Exception e) {
+            return new TextContent("Error: " + e.getMessage());
+        }
+    }
+
+    @Tool(name = "get_all_current_weather", description = "Get the current readings of all Netatmo devices and their modules (outdoor, rain, wind, additional indoor modules) in one call, as a table with one row per device and module. Returns data in JSON format.")
+    public TextContent getAllCurrentWeather(
+            @ToolArg(description = "Device IDs comma-separated (optional, all devices if not provided)", required = false) String deviceIds
+    ) {
+        try {
+            List<String> ids = deviceIds == null || deviceIds.isBlank() ? List.of() : List.of(deviceIds.split(","));
+            StationsSnapshot snapshot = weatherService.getStationsSnapshot();
+            long version = snapshot.version();
+            if (ids.isEmpty() && !snapshot.isStale()) {
+                String cached = responseCache.getText(ResponseCache.ALL_CURRENT_WEATHER_KEY, version);
+                if (cached != null) {
+                    return new TextContent(cached);
+                }
+            }
+
+            var apiResponse = weatherService.getAllCurrentWeather(snapshot, ids);
+
+            if (!apiResponse.isSuccess()) {
+                return new TextContent("Error: " + apiResponse.getMessage());
+            }
+
+            var response = ApiResponse.success(apiResponse.getData(), "Successfully retrieved current weather data")
+                .withStaleness(apiResponse.getStale());
+            return ids.isEmpty() && apiResponse.getStale() == null
+                ? new TextContent(responseCache.putText(ResponseCache.ALL_CURRENT_WEATHER_KEY, version, response))
+                : responseSerializer.toTextContent(response);
         } catch (Exception e) {
             return new TextContent("Error: " + e.getMessage());
         }
@@ -37,14 +109,46 @@ public class WeatherMcpTools {
     @Tool(name = "get_available_devices", description = "Get list of available Netatmo weather station devices")
     public TextContent getAvailableDevices() {
         try {
-            var apiResponse = weatherService.getAvailableDevices();
+            StationsSnapshot snapshot = weatherService.getStationsSnapshot();
+            long version = snapshot.version();
+            String cached = snapshot.isStale() ? null : responseCache.getText(ResponseCache.DEVICE_LIST_KEY, version);
+            if (cached != null) {
+                return new TextContent(cached);
+            }
+
+            var apiResponse = weatherService.getAvailableDevices(snapshot);
             
             if (!apiResponse.isSuccess()) {
                 return new TextContent("Error: " + apiResponse.getMessage());
             }
             
-            // Return JSON data instead of formatted text
-            return ApiResponse.success(apiResponse.getData(), "Successfully retrieved available devices").toTextContent();
+            // Return JSON data instead of formatted text, stale data is not cached
+            var response = ApiResponse.success(apiResponse.getData(), "Successfully retrieved available devices");
+            if (apiResponse.getStale() != null) {
+                return responseSerializer.toTextContent(response.withStaleness(apiResponse.getStale()));
+            }
+            return new TextContent(responseCache.putText(ResponseCache.DEVICE_LIST_KEY, version, response));
+        } catch (Exception e) {
+            return new TextContent("Error: " + e.getMessage());
+        }
+    }
+
+    @Tool(name = "get_recent_readings", description = "Get the most recent readings of a Netatmo device or module from memory, without calling the Netatmo API. Returns data in JSON format.")
+    public TextContent getRecentReadings(
+            @ToolArg(description = "Device ID (optional, uses first available device if not provided)", required = false) String deviceId,
+            @ToolArg(description = "Module ID (optional, uses the main device if not provided)", required = false) String moduleId,
+            @ToolArg(description = "Maximum number of readings to return (default: 144)", required = false) String maxDataPoints
+    ) {
+        try {
+            var apiResponse = weatherService.getRecentReadings(deviceId, moduleId,
+                parseDataPoints("maxDataPoints", maxDataPoints, null));
+            
+            if (!apiResponse.isSuccess()) {
+                return new TextContent("Error: " + apiResponse.getMessage());
+            }
+            
+            return responseSerializer.toTextContent(
+                ApiResponse.success(apiResponse.getData(), "Successfully retrieved recent readings"));
         } catch (Exception e) {
             return new TextContent("Error: " + e.getMessage());
         }
@@ -57,41 +161,165 @@ public class WeatherMcpTools {
             @ToolArg(description = "Sensor types comma-separated: Temperature,Humidity,Pressure,CO2,Noise (default: Temperature,Humidity,Pressure)", required = false) String sensorTypes,
             @ToolArg(description = "Begin date in format YYYY-MM-DD (default: 7 days ago)", required = false) String beginDate,
             @ToolArg(description = "End date in format YYYY-MM-DD (default: current date)", required = false) String endDate,
-            @ToolArg(description = "Maximum number of data points to return (default: all)", required = false) String maxDataPoints
+            @ToolArg(description = "Maximum number of data points to return, or all for the whole date range (default: 1024)", required = false) String maxDataPoints,
+            @ToolArg(description = "Output format: json (one object per point), rows (column header plus value arrays) or csv (column header plus comma-separated lines). rows and csv use far fewer tokens (default: json)", required = false) String format,
+            @ToolArg(description = "With rows or csv, write each timestamp as seconds since the previous row, the first row holds the full Unix timestamp (default: false)", required = false) String deltaTimestamps,
+            @ToolArg(description = "Return the data in pages of this many points, with a nextCursor to fetch the following page (default: no paging)", required = false) String pageSize,
+            @ToolArg(description = "Cursor returned as nextCursor by the previous page; the other query parameters are taken from the cursor", required = false) String cursor,
+            Progress progress,
+            Cancellation cancellation
     ) {
-        try {
+        // Long ranges are fetched in windows, the monitor reports each window and stops when the client cancels
+        try (ToolCallMonitor monitor = new ToolCallMonitor(progress, cancellation)) {
             // Parse and normalize parameters
-            final Integer maxPoints = parseMaxDataPoints(maxDataPoints);
-
-            // Call service to get historical data with direct date parameters
-            var apiResponse = weatherService.getHistoricalWeather(
-                deviceId,
-                null,
-                scale,
-                sensorTypes,
-                beginDate,
-                endDate,
-                null
-            );
-            
+            // The whole range only when asked for, it can be years of data
+            final Integer maxPoints = ALL_POINTS.equalsIgnoreCase(maxDataPoints != null ? maxDataPoints.trim() : null)
+                ? null : parseDataPoints("maxDataPoints", maxDataPoints, WeatherService.DEFAULT_LIMIT);
+            final Integer pagePoints = parseDataPoints("pageSize", pageSize, null);
+
+            HistoricalQuery query;
+            if (cursor != null && !cursor.isBlank()) {
+                query = HistoricalCursor.decode(cursor);
+                if (pagePoints != null) {
+                    query = withLimit(query, pagePoints);
+                }
+            } else {
+                // Without paging the range is returned up to maxDataPoints, with a cursor to the rest
+                Integer limit = pagePoints != null ? pagePoints : maxPoints;
+                query = weatherService.resolveHistoricalQuery(deviceId, null, scale, sensorTypes, beginDate, endDate, limit);
+            }
+
+            // Reading the whole range may take longer than the request timeout
+            final HistoricalQuery pageQuery = query;
+            var apiResponse = pageQuery.limit() == null
+                ? RequestDeadline.callUnbounded(() -> weatherService.getHistoricalPage(pageQuery, monitor))
+                : weatherService.getHistoricalPage(pageQuery, monitor);
+            cancellation.skipProcessingIfCancelled();
+
             if (!apiResponse.isSuccess()) {
                 return new TextContent("Error: " + apiResponse.getMessage());
             }
             
-            // Get the data map
-            Map<String, Object> data = apiResponse.getData();
-            
-            // Apply max data points limit if needed
-            if (maxPoints != null && maxPoints > 0) {
-                limitDataPoints(data, maxPoints);
-            }
+            Map<String, Object> data = shapeHistoricalData(apiResponse.getData(), null, format, deltaTimestamps);
             
             // Return JSON data using ApiResponse
-            return ApiResponse.success(data, "Successfully retrieved historical weather data").toTextContent();
+            return responseSerializer.toTextContent(
+                ApiResponse.success(data, "Successfully retrieved historical weather data")
+                    .withStaleness(apiResponse.getStale()));
+        } catch (CancellationException e) {
+            throw new Cancellation.OperationCancellationException();
+        } catch (Cancellation.OperationCancellationException e) {
+            throw e;
+        } catch (Exception e) {
+            return new TextContent("Error: " + e.getMessage());
+        }
+    }
+
+    private static HistoricalQuery withLimit(HistoricalQuery query, int limit) {
+        return new HistoricalQuery(query.deviceId(), query.moduleId(), query.scale(), query.sensorTypes(),
+            query.begin(), query.end(), limit);
+    }
+
+    @Tool(name = "get_weather_statistics", description = "Get statistics of the historical weather data of a date range instead of the data points: minimum and maximum with their time, mean, trend per day, heating and cooling degree-days and hours above a threshold, per measurement. Use this for questions like the coldest night or the average temperature of a period. Returns data in JSON format.")
+    public TextContent getWeatherStatistics(
+            @ToolArg(description = "Device ID (optional, uses first available device if not provided)", required = false) String deviceId,
+            @ToolArg(description = "Begin date in format YYYY-MM-DD (default: 7 days ago)", required = false) String beginDate,
+            @ToolArg(description = "End date in format YYYY-MM-DD (default: current date)", required = false) String endDate,
+            @ToolArg(description = "Scale of the underlying data points: 30min, 1hour, 3hours, 1day (default: 1hour)", required = false) String scale,
+            @ToolArg(description = "Sensor types comma-separated: Temperature,Humidity,Pressure,CO2,Noise (default: Temperature,Humidity,Pressure)", required = false) String sensorTypes,
+            @ToolArg(description = "Base temperature in °C for heating and cooling degree-days (default: 18)", required = false) String degreeDayBase,
+            @ToolArg(description = "Count the hours above this value (optional)", required = false) String threshold,
+            @ToolArg(description = "Measurement the threshold applies to, e.g. outdoorTemperature, indoorHumidity (default: outdoorTemperature)", required = false) String thresholdField,
+            Progress progress,
+            Cancellation cancellation
+    ) {
+        try (ToolCallMonitor monitor = new ToolCallMonitor(progress, cancellation)) {
+            double base = parseDouble(degreeDayBase, DEFAULT_DEGREE_DAY_BASE);
+            Double thresholdValue = threshold != null && !threshold.isBlank() ? parseDouble(threshold, 0) : null;
+            String thresholdColumn = thresholdField != null && !thresholdField.isBlank()
+                ? thresholdField.trim() : "outdoorTemperature";
+
+            HistoricalQuery query = weatherService.resolveHistoricalQuery(
+                deviceId, null, scale, sensorTypes, beginDate, endDate, null);
+            var apiResponse = RequestDeadline.callUnbounded(
+                () -> weatherService.getWeatherStatistics(query, base, thresholdColumn, thresholdValue, monitor));
+            cancellation.skipProcessingIfCancelled();
+
+            if (!apiResponse.isSuccess()) {
+                return new TextContent("Error: " + apiResponse.getMessage());
+            }
+
+            return responseSerializer.toTextContent(
+                ApiResponse.success(apiResponse.getData(), "Successfully computed weather statistics")
+                    .withStaleness(apiResponse.getStale()));
+        } catch (CancellationException e) {
+            throw new Cancellation.OperationCancellationException();
+        } catch (Cancellation.OperationCancellationException e) {
+            throw e;
+        } catch (Exception e) {
+            return new TextContent("Error: " + e.getMessage());
+        }
+    }
+
+    @Tool(name = "get_historical_weather_batch", description = "Get historical weather data for several devices, modules or date ranges in one call. Identical queries are fetched once and the queries run in parallel. Returns one result per query, in order, in JSON format.")
+    public TextContent getHistoricalWeatherBatch(
+            @ToolArg(description = "Queries, each with the optional fields deviceId, moduleId, scale, sensorTypes, beginDate and endDate (YYYY-MM-DD) and limit, with the same defaults as get_historical_weather") List<HistoricalBatchQuery> queries,
+            @ToolArg(description = "Maximum number of data points to return per query (default: the limit of the query, 1024)", required = false) String maxDataPoints,
+            @ToolArg(description = "Output format for every query: json, rows or csv (default: json)", required = false) String format,
+            @ToolArg(description = "With rows or csv, write each timestamp as seconds since the previous row (default: false)", required = false) String deltaTimestamps
+    ) {
+        try {
+            final Integer maxPoints = parseDataPoints("maxDataPoints", maxDataPoints, null);
+
+            var apiResponse = historicalBatchService.getHistoricalWeatherBatch(queries);
+
+            if (!apiResponse.isSuccess()) {
+                return new TextContent("Error: " + apiResponse.getMessage());
+            }
+
+            // Shape every successful result like get_historical_weather does
+            Map<String, Object> data = new LinkedHashMap<>(apiResponse.getData());
+            @SuppressWarnings("unchecked")
+            List<ApiResponse<Map<String, Object>>> results = (List<ApiResponse<Map<String, Object>>>) data.get("results");
+            List<ApiResponse<Map<String, Object>>> shaped = new ArrayList<>(results.size());
+            for (ApiResponse<Map<String, Object>> result : results) {
+                shaped.add(result.isSuccess()
+                    ? ApiResponse.success(shapeHistoricalData(result.getData(), maxPoints, format, deltaTimestamps))
+                        .withStaleness(result.getStale())
+                    : result);
+            }
+            data.put("results", shaped);
+
+            return responseSerializer.toTextContent(
+                ApiResponse.success(data, "Successfully retrieved historical weather data batch"));
         } catch (Exception e) {
             return new TextContent("Error: " + e.getMessage());
         }
     }
+
+    /**
+     * Apply the max data points limit and the output format to a copy of a historical data result
+     */
+    private Map<String, Object> shapeHistoricalData(Map<String, Object> result, Integer maxPoints,
+                                                    String format, String deltaTimestamps) {
+        // Results may be shared between identical batch queries, so they are never modified
+        Map<String, Object> data = new HashMap<>(result);
+
+        // Apply max data points limit if needed
+        if (maxPoints != null) {
+            limitDataPoints(data, maxPoints);
+        }
+
+        // Replace the data points by a compact encoding if requested
+        if (CompactSeriesEncoder.isCompact(format)) {
+            @SuppressWarnings("unchecked")
+            List<Object> values = (List<Object>) data.remove("values");
+            if (values != null) {
+                data.putAll(CompactSeriesEncoder.encode(values, format, Boolean.parseBoolean(deltaTimestamps)));
+            }
+        }
+        return data;
+    }
     
     /**
      * Limit the number of data points in the result map
@@ -110,16 +338,37 @@ public class WeatherMcpTools {
     }
 
     /**
-     * Parse the max data points parameter
+     * Parse a decimal parameter
+     */
+    private static double parseDouble(String value, double defaultValue) {
+        if (value == null || value.isBlank()) {
+            return defaultValue;
+        }
+        try {
+            return Double.parseDouble(value.trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid number: " + value);
+        }
+    }
+
+    /**
+     * Parse a number of data points
+     * @param name The name of the argument, for the error message
+     * @param defaultValue Returned when the argument is missing
+     * @throws IllegalArgumentException if the argument is not a positive number
      */
-    private Integer parseMaxDataPoints(String maxDataPoints) {
-        if (maxDataPoints != null && !maxDataPoints.trim().isEmpty()) {
-            try {
-                return Integer.parseInt(maxDataPoints.trim());
-            } catch (NumberFormatException e) {
-                return null; // Return all data points
+    private static Integer parseDataPoints(String name, String value, Integer defaultValue) {
+        if (value == null || value.isBlank()) {
+            return defaultValue;
+        }
+        try {
+            int points = Integer.parseInt(value.trim());
+            if (points > 0) {
+                return points;
             }
+        } catch (NumberFormatException e) {
+            // Reported below
         }
-        return null; // Return all data points
+        throw new IllegalArgumentException(name + " must be a positive number: " + value);
     }
 }
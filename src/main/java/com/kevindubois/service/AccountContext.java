@@ -0,0 +1,123 @@
+package com.kevindubois.service;
+
+import io.quarkus.arc.Arc;
+import io.quarkus.arc.ArcContainer;
+import io.quarkus.vertx.http.runtime.CurrentVertxRequest;
+import io.vertx.ext.web.RoutingContext;
+
+import java.util.concurrent.Callable;
+
+/**
+ * The Netatmo account the current work is done for.
+ * HTTP and MCP requests carry it in their routing context, which is reachable wherever the request context is active.
+ * Background jobs and tasks handed to executors run with an explicit account on their own thread.
+ * Without either, the default account is used, so a single-account setup needs no changes.
+ */
+public final class AccountContext {
+
+    public static final String DEFAULT_ACCOUNT = "default";
+
+    // Request header selecting the account of an HTTP or MCP request
+    public static final String HEADER = "X-Netatmo-Account";
+
+    private static final String LOCAL_KEY = "netatmo.account";
+    private static final ThreadLocal<String> CURRENT = new ThreadLocal<>();
+
+    private AccountContext() {
+    }
+
+    /**
+     * Get the account of the current work
+     * @return The account ID, the default account if none was selected
+     */
+    public static String current() {
+        String account = CURRENT.get();
+        if (account != null) {
+            return account;
+        }
+        String selected = fromRequest(LOCAL_KEY);
+        return selected != null ? selected : DEFAULT_ACCOUNT;
+    }
+
+    /**
+     * Get a value stored in the routing context of the current HTTP request
+     * @return The value, or null outside of a request or if it is not set
+     */
+    static <T> T fromRequest(String key) {
+        ArcContainer container = Arc.container();
+        if (container != null && container.requestContext().isActive()) {
+            RoutingContext request = container.instance(CurrentVertxRequest.class).get().getCurrent();
+            if (request != null) {
+                return request.get(key);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Select the account of an HTTP request
+     */
+    public static void setForRequest(RoutingContext request, String account) {
+        request.put(LOCAL_KEY, account);
+    }
+
+    /**
+     * Get the partition of a cache key for the current account.
+     * Keys of the default account are not prefixed, so caches and stores written before accounts existed stay valid.
+     */
+    public static String partition(String key) {
+        String account = current();
+        return DEFAULT_ACCOUNT.equals(account) ? key : account + "|" + key;
+    }
+
+    /**
+     * Get the account a key was partitioned for
+     * @param partitionedKey A key returned by partition, for a key without a '|'
+     */
+    public static String accountOf(String partitionedKey) {
+        int separator = partitionedKey.indexOf('|');
+        return separator < 0 ? DEFAULT_ACCOUNT : partitionedKey.substring(0, separator);
+    }
+
+    /**
+     * Run a task for an account on the current thread
+     */
+    public static <T> T callAs(String account, Callable<T> task) throws Exception {
+        String previous = CURRENT.get();
+        CURRENT.set(account);
+        try {
+            return task.call();
+        } finally {
+            if (previous != null) {
+                CURRENT.set(previous);
+            } else {
+                CURRENT.remove();
+            }
+        }
+    }
+
+    /**
+     * Run a task for an account on the current thread
+     */
+    public static void runAs(String account, Runnable task) {
+        try {
+            callAs(account, () -> {
+                task.run();
+                return null;
+            });
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Bind a task to the current account and request deadline, for handing it to an executor
+     */
+    public static <T> Callable<T> wrap(Callable<T> task) {
+        String account = current();
+        long deadline = RequestDeadline.current();
+        return () -> callAs(account, () -> RequestDeadline.callWithin(deadline, task));
+    }
+}
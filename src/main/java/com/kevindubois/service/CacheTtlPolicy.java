@@ -0,0 +1,77 @@
+package com.kevindubois.service;
+
+import jakarta.enterprise.context.ApplicationScoped;
+
+import com.kevindubois.dto.NetatmoStationsDataResponse;
+import com.kevindubois.dto.NetatmoStationsDataResponse.DashboardData;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+
+import java.time.Duration;
+
+/**
+ * Computes cache expiry times from the sensors' own measurement cadence.
+ * A module reports a new reading about every 10 minutes after its last time_utc, so cached stations data
+ * stays valid until the first module is expected to report again. Once a reading is overdue the data is
+ * only cached for a short retry window, until the new reading shows up.
+ */
+@ApplicationScoped
+public class CacheTtlPolicy {
+
+    @ConfigProperty(name = "netatmo.cache.sensor-interval", defaultValue = "600s")
+    Duration sensorInterval;
+
+    @ConfigProperty(name = "netatmo.cache.update-grace", defaultValue = "30s")
+    Duration updateGrace;
+
+    @ConfigProperty(name = "netatmo.cache.retry-window", defaultValue = "30s")
+    Duration retryWindow;
+
+    @ConfigProperty(name = "netatmo.cache.fallback-ttl", defaultValue = "60s")
+    Duration fallbackTtl;
+
+    /**
+     * Compute until when a stations data response can be served from cache
+     * @param response The stations data response
+     * @param nowMillis The current time in milliseconds
+     * @return The expiry time in milliseconds since epoch
+     */
+    public long expiresAt(NetatmoStationsDataResponse response, long nowMillis) {
+        long expiry = Long.MAX_VALUE;
+
+        if (response != null && response.getBody() != null && response.getBody().getDevices() != null) {
+            for (var device : response.getBody().getDevices()) {
+                expiry = Math.min(expiry, expiryFor(device.getDashboardData(), nowMillis));
+                if (device.getModules() != null) {
+                    for (var module : device.getModules()) {
+                        expiry = Math.min(expiry, expiryFor(module.getDashboardData(), nowMillis));
+                    }
+                }
+            }
+        }
+
+        if (expiry == Long.MAX_VALUE) {
+            return nowMillis + fallbackTtl.toMillis();
+        }
+        // Never cache longer than a full reporting interval
+        return Math.min(expiry, nowMillis + sensorInterval.plus(updateGrace).toMillis());
+    }
+
+    /**
+     * Get the expected time of the next reading of a module
+     * @return The expiry in milliseconds, or Long.MAX_VALUE if the module does not constrain it
+     */
+    private long expiryFor(DashboardData data, long nowMillis) {
+        if (data == null || data.getTimeUtc() == null) {
+            return Long.MAX_VALUE;
+        }
+        long nextUpdate = data.getTimeUtc() * 1000 + sensorInterval.toMillis() + updateGrace.toMillis();
+        if (nextUpdate > nowMillis) {
+            return nextUpdate;
+        }
+        // Overdue reading: retry shortly, unless the module has been silent for a whole interval (offline)
+        if (nowMillis - nextUpdate < sensorInterval.toMillis()) {
+            return nowMillis + retryWindow.toMillis();
+        }
+        return Long.MAX_VALUE;
+    }
+}
@@ -0,0 +1,105 @@
+package com.kevindubois.service;
+
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.enterprise.event.Observes;
+
+import com.kevindubois.dto.CurrentWeatherData;
+import com.kevindubois.dto.ModuleReading;
+import com.kevindubois.dto.StationsSnapshot;
+import io.smallrye.mutiny.Multi;
+import io.smallrye.mutiny.operators.multi.processors.BroadcastProcessor;
+import io.smallrye.mutiny.subscription.BackPressureFailure;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+
+/**
+ * Fans out current weather updates from the station poller to streaming clients.
+ * Every subscriber gets a small buffer of its own; a subscriber that falls further behind is disconnected
+ * instead of slowing down the others, and can reconnect to receive the latest reading.
+ * Every account has a channel of its own, publishing and streaming use the account of the current work.
+ */
+@ApplicationScoped
+public class CurrentWeatherBroadcaster {
+
+    private static final Logger logger = Logger.getLogger(CurrentWeatherBroadcaster.class.getName());
+
+    @ConfigProperty(name = "netatmo.stream.buffer-size", defaultValue = "16")
+    int bufferSize;
+
+    /**
+     * Updates of a single account
+     */
+    private static final class Channel {
+        final BroadcastProcessor<CurrentWeatherData> processor = BroadcastProcessor.create();
+        volatile CurrentWeatherData latest;
+    }
+
+    private final Map<String, Channel> channels = new ConcurrentHashMap<>();
+    private final AtomicInteger subscribers = new AtomicInteger();
+
+    private Channel channel() {
+        return channels.computeIfAbsent(AccountContext.current(), account -> new Channel());
+    }
+
+    /**
+     * Publish the current weather of a new snapshot if any of its values changed
+     */
+    void onSnapshot(@Observes StationsSnapshot snapshot) {
+        publish(WeatherService.toCurrentWeatherData(snapshot.response()));
+    }
+
+    /**
+     * Publish current weather data to all subscribers, unless only the reading time differs from the last update
+     * @return true if the data was published
+     */
+    public boolean publish(CurrentWeatherData data) {
+        Channel channel = channel();
+        synchronized (channel) {
+            if (data == null || sameValues(data, channel.latest)) {
+                return false;
+            }
+            channel.latest = data;
+            channel.processor.onNext(data);
+            return true;
+        }
+    }
+
+    private static boolean sameValues(CurrentWeatherData data, CurrentWeatherData previous) {
+        return previous != null && Objects.equals(withoutReadingTimes(data), withoutReadingTimes(previous));
+    }
+
+    private static CurrentWeatherData withoutReadingTimes(CurrentWeatherData data) {
+        List<ModuleReading> modules = data.modules() == null ? null
+            : data.modules().stream().map(module -> module.withTimeUtc(null)).toList();
+        return data.withTimeUtc(null).withModules(modules);
+    }
+
+    /**
+     * Stream the latest current weather data followed by every change
+     */
+    public Multi<CurrentWeatherData> stream() {
+        Channel channel = channel();
+        // Merging subscribes to the updates right away, the buffer decouples them from the client's demand
+        return Multi.createBy().merging().streams(Multi.createFrom().item(() -> channel.latest), channel.processor)
+            .onOverflow().buffer(bufferSize)
+            .onFailure(BackPressureFailure.class).invoke(failure ->
+                logger.fine("Disconnecting a weather stream subscriber that is not keeping up"))
+            .onFailure(BackPressureFailure.class).recoverWithCompletion()
+            .onSubscription().invoke(subscription -> subscribers.incrementAndGet())
+            .onTermination().invoke(() -> subscribers.decrementAndGet());
+    }
+
+    public CurrentWeatherData getLatest() {
+        return channel().latest;
+    }
+
+    public int getSubscriberCount() {
+        return subscribers.get();
+    }
+}
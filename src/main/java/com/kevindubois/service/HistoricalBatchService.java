@@ -0,0 +1,185 @@
+package com.kevindubois.service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import jakarta.ws.rs.core.Response;
+
+import com.kevindubois.dto.ApiResponse;
+import com.kevindubois.dto.HistoricalBatchQuery;
+import com.kevindubois.exception.WeatherApiException;
+import com.kevindubois.service.WeatherService.HistoricalQuery;
+import com.kevindubois.util.WeatherUtil;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+
+/**
+ * Runs several historical data queries as one batch.
+ * Identical queries are fetched once, and the distinct queries of a batch run in parallel, at most parallelism
+ * at a time, only starting a query while the Netatmo quota of the account has room within the batch share.
+ * The limit applies per batch rather than to a shared pool, so one account's large batch does not queue
+ * the batches of other accounts behind it; the call scheduler shares the upstream slots between accounts.
+ */
+@ApplicationScoped
+public class HistoricalBatchService {
+
+    private static final Logger logger = Logger.getLogger(HistoricalBatchService.class.getName());
+
+    private static final long QUOTA_POLL_MS = 250;
+
+    @Inject
+    WeatherService weatherService;
+
+    @Inject
+    NetatmoQuota quota;
+
+    @ConfigProperty(name = "netatmo.batch.max-queries", defaultValue = "20")
+    int maxQueries;
+
+    @ConfigProperty(name = "netatmo.batch.parallelism", defaultValue = "4")
+    int parallelism;
+
+    // Share of the rate limits batch queries may use, the rest stays available for interactive requests
+    @ConfigProperty(name = "netatmo.batch.quota-share", defaultValue = "0.5")
+    double quotaShare;
+
+    @ConfigProperty(name = "netatmo.batch.timeout-seconds", defaultValue = "60")
+    int timeoutSeconds;
+
+    // Threads the queries of all batches run on, queries beyond them wait for a free one
+    @ConfigProperty(name = "netatmo.batch.threads", defaultValue = "16")
+    int threads;
+
+    private ExecutorService executor;
+
+    @PostConstruct
+    void init() {
+        AtomicInteger count = new AtomicInteger();
+        int size = Math.max(1, threads);
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(size, size, 60, TimeUnit.SECONDS,
+            new LinkedBlockingQueue<>(), runnable -> {
+                Thread thread = new Thread(runnable, "historical-batch-" + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+        pool.allowCoreThreadTimeOut(true);
+        executor = pool;
+    }
+
+    @PreDestroy
+    void shutdown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Run a batch of historical data queries
+     * @param queries The queries, each with the parameters of a historical data request
+     * @return Map with one result per query in request order, plus the number of queries and distinct queries
+     */
+    public ApiResponse<Map<String, Object>> getHistoricalWeatherBatch(List<HistoricalBatchQuery> queries) {
+        if (queries == null || queries.isEmpty()) {
+            return ApiResponse.badRequest("At least one query is required");
+        }
+        if (queries.size() > maxQueries) {
+            return ApiResponse.badRequest("A batch can contain at most " + maxQueries + " queries");
+        }
+
+        // The batch timeout, or the request deadline if that comes first; queries make their calls within it
+        long deadline = Math.min(System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(timeoutSeconds),
+            RequestDeadline.current());
+
+        // Resolve every query first, so duplicates are detected with defaults and dates filled in
+        List<Object> resolved = new ArrayList<>(queries.size());
+        Map<HistoricalQuery, Future<ApiResponse<Map<String, Object>>>> tasks = new LinkedHashMap<>();
+        Semaphore slots = new Semaphore(Math.max(1, parallelism));
+        for (HistoricalBatchQuery query : queries) {
+            try {
+                HistoricalQuery historicalQuery = resolve(query);
+                resolved.add(historicalQuery);
+                tasks.computeIfAbsent(historicalQuery, key -> executor.submit(AccountContext.wrap(
+                    () -> RequestDeadline.callWithin(deadline, () -> run(key, slots, deadline)))));
+            } catch (WeatherApiException e) {
+                resolved.add(ApiResponse.error(e.getMessage(), e.getStatus()));
+            } catch (Exception e) {
+                resolved.add(ApiResponse.badRequest("Invalid query: " + e.getMessage()));
+            }
+        }
+
+        // Each distinct query is awaited once, its duplicates share the outcome
+        Map<HistoricalQuery, ApiResponse<?>> outcomes = new LinkedHashMap<>();
+        List<ApiResponse<?>> results = new ArrayList<>(queries.size());
+        for (Object item : resolved) {
+            if (item instanceof HistoricalQuery historicalQuery) {
+                results.add(outcomes.computeIfAbsent(historicalQuery, key -> await(tasks.get(key), deadline)));
+            } else {
+                results.add((ApiResponse<?>) item);
+            }
+        }
+
+        Map<String, Object> resultMap = new LinkedHashMap<>();
+        resultMap.put("totalQueries", queries.size());
+        resultMap.put("distinctQueries", tasks.size());
+        resultMap.put("results", results);
+        return ApiResponse.success(resultMap);
+    }
+
+    private HistoricalQuery resolve(HistoricalBatchQuery query) {
+        HistoricalQuery resolved = weatherService.resolveHistoricalQuery(query.deviceId(), query.moduleId(),
+            query.scale(), query.sensorTypes(), query.beginDate(), query.endDate(), query.limit());
+        String moduleId = resolved.moduleId() == null || resolved.moduleId().isBlank() ? null : resolved.moduleId();
+        return new HistoricalQuery(resolved.deviceId(), moduleId, resolved.scale(), resolved.sensorTypes(),
+            resolved.begin(), resolved.end(), WeatherUtil.normalizeParameter(resolved.limit(), WeatherService.DEFAULT_LIMIT));
+    }
+
+    private ApiResponse<Map<String, Object>> run(HistoricalQuery query, Semaphore slots, long deadline)
+            throws InterruptedException {
+        if (!slots.tryAcquire(Math.max(0, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS)) {
+            return ApiResponse.error("Query did not start before the batch deadline",
+                Response.Status.GATEWAY_TIMEOUT);
+        }
+        try {
+            while (!quota.hasCapacity(quotaShare)) {
+                if (System.currentTimeMillis() + QUOTA_POLL_MS > deadline) {
+                    return ApiResponse.error("Netatmo rate limit budget exhausted, try again later",
+                        Response.Status.TOO_MANY_REQUESTS);
+                }
+                Thread.sleep(QUOTA_POLL_MS);
+            }
+            return weatherService.getHistoricalWeather(query);
+        } finally {
+            slots.release();
+        }
+    }
+
+    private ApiResponse<?> await(Future<ApiResponse<Map<String, Object>>> task, long deadline) {
+        try {
+            return task.get(Math.max(0, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+        } catch (TimeoutException | CancellationException e) {
+            task.cancel(true);
+            return ApiResponse.error("Query did not complete before the batch deadline",
+                Response.Status.GATEWAY_TIMEOUT);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return ApiResponse.serverError("Batch was interrupted");
+        } catch (ExecutionException e) {
+            logger.warning("Error running batch query: " + e.getCause().getMessage());
+            return ApiResponse.serverError("Error retrieving historical weather data: " + e.getCause().getMessage());
+        }
+    }
+}
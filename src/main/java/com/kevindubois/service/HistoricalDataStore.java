@@ -0,0 +1,346 @@
+package com.kevindubois.service;
+
+import jakarta.enterprise.context.ApplicationScoped;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.kevindubois.dto.NetatmoHistoricalDataResponse;
+import com.kevindubois.util.WeatherUtil;
+import io.quarkus.runtime.annotations.RegisterForReflection;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.logging.Logger;
+
+/**
+ * Local store of historical measurements, filled by the backfill job.
+ * Each series keeps its measurement rows by timestamp together with the time ranges it covers,
+ * so a request is only answered locally when the whole range has been fetched.
+ * Rows are kept as primitive arrays to fit years of measurements in a small heap, and are persisted by appending
+ * each fetched range to a journal, so a checkpoint writes only what is new.
+ */
+@ApplicationScoped
+public class HistoricalDataStore {
+
+    private static final Logger logger = Logger.getLogger(HistoricalDataStore.class.getName());
+
+    private final Map<String, Series> series = new ConcurrentHashMap<>();
+    // Ranges stored since the last append to the journal
+    private final Queue<Segment> unsaved = new ConcurrentLinkedQueue<>();
+
+    /**
+     * Measurement rows and covered ranges of a single device/module/scale/types combination.
+     * The rows are sorted by timestamp, with one value per type and NaN for a missing value.
+     */
+    static class Series {
+        final int columns;
+        long[] times = new long[0];
+        double[] values = new double[0];
+        // Types with a fractional value, the others are returned as integers like Netatmo sends them
+        final boolean[] decimal;
+        final List<long[]> covered = new ArrayList<>();
+
+        Series(int columns) {
+            this.columns = columns;
+            this.decimal = new boolean[columns];
+        }
+
+        synchronized void put(long begin, long end, Map<Long, List<Object>> newRows) {
+            long[] newTimes = newRows.keySet().stream().mapToLong(Long::longValue).sorted().toArray();
+            long[] mergedTimes = new long[times.length + newTimes.length];
+            double[] mergedValues = new double[mergedTimes.length * columns];
+            int i = 0;
+            int j = 0;
+            int n = 0;
+            while (i < times.length || j < newTimes.length) {
+                if (j < newTimes.length && (i >= times.length || newTimes[j] <= times[i])) {
+                    if (i < times.length && times[i] == newTimes[j]) {
+                        // The fetched row replaces the stored one
+                        i++;
+                    }
+                    mergedTimes[n] = newTimes[j];
+                    setRow(mergedValues, n, newRows.get(newTimes[j]));
+                    j++;
+                } else {
+                    mergedTimes[n] = times[i];
+                    System.arraycopy(values, i * columns, mergedValues, n * columns, columns);
+                    i++;
+                }
+                n++;
+            }
+            times = n == mergedTimes.length ? mergedTimes : Arrays.copyOf(mergedTimes, n);
+            values = n == mergedTimes.length ? mergedValues : Arrays.copyOf(mergedValues, n * columns);
+
+            if (end >= begin) {
+                covered.add(new long[] {begin, end});
+            }
+            covered.sort((a, b) -> Long.compare(a[0], b[0]));
+
+            // Merge overlapping or adjacent ranges
+            List<long[]> merged = new ArrayList<>();
+            for (long[] range : covered) {
+                if (!merged.isEmpty() && range[0] <= merged.get(merged.size() - 1)[1] + 1) {
+                    long[] last = merged.get(merged.size() - 1);
+                    last[1] = Math.max(last[1], range[1]);
+                } else {
+                    merged.add(new long[] {range[0], range[1]});
+                }
+            }
+            covered.clear();
+            covered.addAll(merged);
+        }
+
+        private void setRow(double[] target, int row, List<Object> value) {
+            for (int column = 0; column < columns; column++) {
+                Object item = column < value.size() ? value.get(column) : null;
+                if (item instanceof Number number) {
+                    if (!(number instanceof Integer || number instanceof Long || number instanceof Short)) {
+                        decimal[column] = true;
+                    }
+                    target[row * columns + column] = number.doubleValue();
+                } else {
+                    target[row * columns + column] = Double.NaN;
+                }
+            }
+        }
+
+        private List<Object> row(int index) {
+            List<Object> row = new ArrayList<>(columns);
+            for (int column = 0; column < columns; column++) {
+                double value = values[index * columns + column];
+                if (Double.isNaN(value)) {
+                    row.add(null);
+                } else if (decimal[column]) {
+                    row.add(value);
+                } else if (value >= Integer.MIN_VALUE && value <= Integer.MAX_VALUE) {
+                    row.add((int) value);
+                } else {
+                    row.add((long) value);
+                }
+            }
+            return row;
+        }
+
+        synchronized boolean covers(long begin, long end) {
+            for (long[] range : covered) {
+                if (range[0] <= begin && range[1] >= end) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        synchronized List<Map.Entry<Long, List<Object>>> rows(long begin, long end, int limit) {
+            List<Map.Entry<Long, List<Object>>> result = new ArrayList<>();
+            int first = Arrays.binarySearch(times, begin);
+            for (int i = first >= 0 ? first : -first - 1; i < times.length && times[i] <= end; i++) {
+                if (result.size() >= limit) {
+                    break;
+                }
+                result.add(Map.entry(times[i], row(i)));
+            }
+            return result;
+        }
+
+        synchronized int size() {
+            return times.length;
+        }
+    }
+
+    private static String key(String deviceId, String moduleId, String scale, String types) {
+        // Stored series are only served to the account they were fetched for
+        return AccountContext.partition(deviceId + "|" + (moduleId != null ? moduleId : "") + "|" + scale + "|" + types);
+    }
+
+    private Series series(String key, String types) {
+        return series.computeIfAbsent(key, k -> new Series(types.split(",").length));
+    }
+
+    /**
+     * Store the measurements returned by Netatmo for a time range
+     * @param begin Begin of the requested range in seconds
+     * @param end End of the range the response completely covers in seconds, rows after it are stored but only
+     * served once a later range covers them
+     * @param response The getmeasure response for that range
+     * @return The number of rows stored
+     */
+    public int put(String deviceId, String moduleId, String scale, String types,
+                   long begin, long end, NetatmoHistoricalDataResponse response) {
+        var parsed = response != null ? response.getParsedMeasurementData() : null;
+        Map<Long, List<Object>> newRows = new HashMap<>();
+
+        if (parsed != null) {
+            for (int i = 0; i < parsed.values.size(); i++) {
+                if (parsed.values.get(i) instanceof List<?> value) {
+                    newRows.put(parsed.beginTime + (long) i * parsed.stepTime, new ArrayList<>(value));
+                }
+            }
+        }
+
+        String key = key(deviceId, moduleId, scale, types);
+        series(key, types).put(begin, end, newRows);
+        unsaved.add(new Segment(key, types, begin, end, newRows));
+        return newRows.size();
+    }
+
+    /**
+     * Look up a time range in the store
+     * @return A response in the getmeasure format, or null if the range is not fully covered
+     */
+    public NetatmoHistoricalDataResponse find(String deviceId, String moduleId, String scale, String types,
+                                              long begin, long end, Integer limit) {
+        Series stored = series.get(key(deviceId, moduleId, scale, types));
+        if (stored == null || !stored.covers(begin, end)) {
+            return null;
+        }
+
+        long step = WeatherUtil.getScaleSeconds(scale);
+        var rows = stored.rows(begin, end, limit != null ? limit : Integer.MAX_VALUE);
+
+        // Group rows into blocks with a regular step, like Netatmo does with optimize=true
+        List<Object> blocks = new ArrayList<>();
+        Map<String, Object> block = null;
+        long expected = 0;
+        for (var row : rows) {
+            if (block == null || row.getKey() != expected) {
+                block = new HashMap<>();
+                block.put("beg_time", row.getKey());
+                block.put("step_time", step);
+                block.put("value", new ArrayList<>());
+                blocks.add(block);
+            }
+            @SuppressWarnings("unchecked")
+            List<Object> values = (List<Object>) block.get("value");
+            values.add(row.getValue());
+            expected = row.getKey() + step;
+        }
+
+        return new NetatmoHistoricalDataResponse(blocks, "ok", 0.0, WeatherUtil.getCurrentTimestamp());
+    }
+
+    /**
+     * Get the number of stored series
+     */
+    public int seriesCount() {
+        return series.size();
+    }
+
+    /**
+     * Get the total number of stored rows
+     */
+    public long rowCount() {
+        long count = 0;
+        for (Series stored : series.values()) {
+            count += stored.size();
+        }
+        return count;
+    }
+
+    /**
+     * A stored time range, as appended to the journal
+     */
+    @RegisterForReflection
+    public record Segment(String key, String types, long begin, long end, Map<Long, List<Object>> rows) {}
+
+    /**
+     * Append the ranges stored since the last call to a journal file, one JSON line per range.
+     * Ranges that could not be written are kept and appended by the next call.
+     */
+    public void append(Path file, ObjectMapper mapper) throws IOException {
+        List<Segment> segments = new ArrayList<>();
+        for (Segment segment; (segment = unsaved.poll()) != null; ) {
+            segments.add(segment);
+        }
+        if (segments.isEmpty()) {
+            return;
+        }
+        try {
+            Files.createDirectories(file.toAbsolutePath().getParent());
+            try (FileOutputStream out = new FileOutputStream(file.toFile(), true);
+                 Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8))) {
+                for (Segment segment : segments) {
+                    writer.write(mapper.writeValueAsString(segment));
+                    writer.write('\n');
+                }
+                writer.flush();
+                out.getFD().sync();
+            }
+        } catch (IOException | RuntimeException e) {
+            // A range written twice replaces itself when the journal is read back
+            unsaved.addAll(segments);
+            throw e;
+        }
+    }
+
+    /**
+     * Load a store previously written with {@link #append(Path, ObjectMapper)}.
+     * A line cut short by a crash while appending is skipped, its range is fetched again.
+     */
+    public void load(Path file, ObjectMapper mapper) throws IOException {
+        if (!Files.exists(file)) {
+            return;
+        }
+        series.clear();
+        int skipped = 0;
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            for (String line; (line = reader.readLine()) != null; ) {
+                if (line.isBlank()) {
+                    continue;
+                }
+                try {
+                    Segment segment = mapper.readValue(line, Segment.class);
+                    series(segment.key(), segment.types()).put(segment.begin(), segment.end(), segment.rows());
+                } catch (IOException e) {
+                    skipped++;
+                }
+            }
+        }
+        if (skipped > 0) {
+            logger.warning("Skipped " + skipped + " unreadable line(s) of " + file);
+        }
+        logger.info("Loaded " + series.size() + " historical series from " + file);
+    }
+
+    /**
+     * Persisted form of a series in the store file written before the journal
+     */
+    @RegisterForReflection
+    public record SeriesState(Map<Long, List<Object>> rows, List<long[]> covered) {}
+
+    /**
+     * Load a store file written before the journal, keeping its ranges for the next append
+     */
+    public void loadLegacy(Path file, ObjectMapper mapper) throws IOException {
+        Map<String, SeriesState> state = mapper.readValue(file.toFile(), new TypeReference<Map<String, SeriesState>>() {});
+        for (var entry : state.entrySet()) {
+            String key = entry.getKey();
+            String types = key.substring(key.lastIndexOf('|') + 1);
+            for (long[] range : entry.getValue().covered()) {
+                Map<Long, List<Object>> rows = new HashMap<>();
+                entry.getValue().rows().forEach((timestamp, row) -> {
+                    if (timestamp >= range[0] && timestamp <= range[1]) {
+                        rows.put(timestamp, row);
+                    }
+                });
+                series(key, types).put(range[0], range[1], rows);
+                unsaved.add(new Segment(key, types, range[0], range[1], rows));
+            }
+        }
+        logger.info("Loaded " + state.size() + " historical series from " + file);
+    }
+}
@@ -0,0 +1,353 @@
+package com.kevindubois.service;
+
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.enterprise.event.Observes;
+import jakarta.inject.Inject;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.kevindubois.client.NetatmoApiClient;
+import com.kevindubois.dto.BackfillStatus;
+import com.kevindubois.dto.NetatmoHistoricalDataResponse;
+import com.kevindubois.dto.NetatmoStationsDataResponse;
+import com.kevindubois.util.ModuleProfile;
+import com.kevindubois.util.WeatherUtil;
+import io.quarkus.runtime.StartupEvent;
+import io.quarkus.runtime.annotations.RegisterForReflection;
+import io.quarkus.scheduler.Scheduled;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.eclipse.microprofile.rest.client.inject.RestClient;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Logger;
+
+/**
+ * Walks every device and module backward in time and fills the {@link HistoricalDataStore},
+ * one getmeasure call per tick and only while the backfill stays within its share of the quota.
+ * Progress is checkpointed to disk together with the store so the backfill resumes after a restart.
+ * Calls and disk writes are made outside the monitor, so status requests and pause never wait for them.
+ */
+@ApplicationScoped
+public class HistoryBackfillService {
+
+    private static final Logger logger = Logger.getLogger(HistoryBackfillService.class.getName());
+
+    // Netatmo returns at most 1024 measurements per getmeasure call
+    private static final int MAX_POINTS_PER_CALL = 1024;
+    // A series that keeps failing is skipped instead of blocking the others
+    private static final int MAX_CONSECUTIVE_ERRORS = 5;
+    private static final String CHECKPOINT_FILE = "backfill-checkpoint.json";
+    private static final String STORE_FILE = "historical-store.jsonl";
+    // Whole store rewritten at every checkpoint by earlier versions, moved into the journal on startup
+    private static final String LEGACY_STORE_FILE = "historical-store.json";
+
+    @Inject
+    @RestClient
+    NetatmoApiClient netatmoApiClient;
+
+    @Inject
+    HistoricalDataStore store;
+
+    @Inject
+    NetatmoQuota quota;
+
+    @Inject
+    ObjectMapper objectMapper;
+
+    @ConfigProperty(name = "netatmo.backfill.scales", defaultValue = "1day,3hours")
+    List<String> scales;
+
+    @ConfigProperty(name = "netatmo.backfill.quota-share", defaultValue = "0.2")
+    double quotaShare;
+
+    @ConfigProperty(name = "netatmo.backfill.max-age", defaultValue = "3650d")
+    Duration maxAge;
+
+    @ConfigProperty(name = "netatmo.backfill.checkpoint-every", defaultValue = "10")
+    int checkpointEvery;
+
+    @ConfigProperty(name = "netatmo.backfill.data-dir", defaultValue = "data")
+    String dataDirectory;
+
+    /**
+     * Persisted progress of the backfill
+     */
+    @RegisterForReflection
+    public record Checkpoint(boolean running, Map<String, Long> cursors, Set<String> done) {}
+
+    /**
+     * A single series to backfill, with the measurement types of the device or module
+     */
+    record Target(String deviceId, String moduleId, String scale, String types) {
+        String key() {
+            return deviceId + "|" + (moduleId != null ? moduleId : "") + "|" + scale;
+        }
+    }
+
+    /**
+     * A time range of a series to fetch
+     * @param coveredEnd End of the part of the range whose measurements are final
+     */
+    record Window(Target target, long begin, long end, long coveredEnd, long floor) {}
+
+    private final List<Target> targets = new ArrayList<>();
+    // Oldest timestamp fetched so far per target
+    private final Map<String, Long> cursors = new LinkedHashMap<>();
+    private final Set<String> done = new HashSet<>();
+
+    private volatile boolean running;
+    private long requestsMade;
+    private long rowsStored;
+    private long errors;
+    private String lastError;
+    private long activeMillis;
+    private long lastTick;
+    private int stepsSinceCheckpoint;
+    private int consecutiveErrors;
+    // Serializes checkpoints, taken before the monitor when both are needed
+    private final Object checkpointLock = new Object();
+
+    void onStart(@Observes StartupEvent event) {
+        try {
+            Path dataDir = Path.of(dataDirectory);
+            Path checkpointFile = dataDir.resolve(CHECKPOINT_FILE);
+            if (Files.exists(checkpointFile)) {
+                Checkpoint checkpoint = objectMapper.readValue(checkpointFile.toFile(), Checkpoint.class);
+                Path legacyFile = dataDir.resolve(LEGACY_STORE_FILE);
+                if (Files.exists(legacyFile)) {
+                    store.loadLegacy(legacyFile, objectMapper);
+                    store.append(dataDir.resolve(STORE_FILE), objectMapper);
+                    Files.delete(legacyFile);
+                } else {
+                    store.load(dataDir.resolve(STORE_FILE), objectMapper);
+                }
+                synchronized (this) {
+                    cursors.putAll(checkpoint.cursors());
+                    done.addAll(checkpoint.done());
+                }
+                if (checkpoint.running()) {
+                    logger.info("Resuming historical backfill from checkpoint");
+                    start();
+                }
+            }
+        } catch (Exception e) {
+            logger.warning("Could not restore backfill checkpoint: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Start or resume the backfill
+     * @return The current status
+     */
+    public BackfillStatus start() {
+        if (!running) {
+            List<Target> resolved = resolveTargets();
+            synchronized (this) {
+                if (!running) {
+                    targets.clear();
+                    targets.addAll(resolved);
+                    running = true;
+                    lastTick = 0;
+                    logger.info("Historical backfill started for " + targets.size() + " series");
+                }
+            }
+        }
+        return getStatus();
+    }
+
+    /**
+     * Pause the backfill and write a checkpoint
+     * @return The current status
+     */
+    public BackfillStatus pause() {
+        boolean paused;
+        synchronized (this) {
+            paused = running;
+            running = false;
+        }
+        if (paused) {
+            checkpoint();
+            logger.info("Historical backfill paused");
+        }
+        return getStatus();
+    }
+
+    @Scheduled(every = "{netatmo.backfill.interval}", concurrentExecution = Scheduled.ConcurrentExecution.SKIP)
+    void tick() {
+        if (running && quota.hasCapacity(quotaShare)) {
+            step();
+        }
+    }
+
+    /**
+     * Fetch the next window of the first unfinished series
+     */
+    void step() {
+        Window window = nextWindow();
+        if (window == null) {
+            return;
+        }
+        Target target = window.target();
+        NetatmoHistoricalDataResponse response = null;
+        Exception failure = null;
+        try {
+            response = netatmoApiClient.getHistoricalData(
+                target.deviceId(), target.moduleId(), target.scale(), target.types(),
+                window.begin(), window.end(), MAX_POINTS_PER_CALL, true, true
+            );
+        } catch (Exception e) {
+            failure = e;
+        }
+        if (record(window, response, failure)) {
+            checkpoint();
+        }
+    }
+
+    /**
+     * Pick the window to fetch next
+     * @return The window, or null if the backfill completed
+     */
+    private Window nextWindow() {
+        synchronized (this) {
+            long now = System.currentTimeMillis();
+            if (lastTick > 0) {
+                activeMillis += now - lastTick;
+            }
+            lastTick = now;
+
+            Target target = targets.stream().filter(t -> !done.contains(t.key())).findFirst().orElse(null);
+            if (target != null) {
+                long timestamp = WeatherUtil.getCurrentTimestamp();
+                long scaleSeconds = WeatherUtil.getScaleSeconds(target.scale());
+                long floor = timestamp - maxAge.toSeconds();
+                long end = cursors.computeIfAbsent(target.key(), k -> timestamp);
+                long begin = Math.max(floor, end - MAX_POINTS_PER_CALL * scaleSeconds);
+                // The newest interval of a scale is still being aggregated, so it is stored but left to Netatmo
+                return new Window(target, begin, end, Math.min(end, timestamp - scaleSeconds), floor);
+            }
+            logger.info("Historical backfill completed");
+            running = false;
+        }
+        checkpoint();
+        return null;
+    }
+
+    /**
+     * Store the outcome of a fetched window
+     * @return Whether a checkpoint is due
+     */
+    private synchronized boolean record(Window window, NetatmoHistoricalDataResponse response, Exception failure) {
+        Target target = window.target();
+        if (failure == null) {
+            requestsMade++;
+
+            int rows = store.put(target.deviceId(), target.moduleId(), target.scale(),
+                                 target.types(), window.begin(), window.coveredEnd(), response);
+            rowsStored += rows;
+            consecutiveErrors = 0;
+            cursors.put(target.key(), window.begin());
+
+            // No data in a whole window means we went back past the installation of the station
+            if (rows == 0 || window.begin() <= window.floor()) {
+                done.add(target.key());
+            }
+        } else {
+            errors++;
+            lastError = failure.getMessage();
+            logger.warning("Error during historical backfill of " + target.key() + ": " + failure.getMessage());
+            if (++consecutiveErrors >= MAX_CONSECUTIVE_ERRORS) {
+                logger.warning("Skipping " + target.key() + " after " + consecutiveErrors + " consecutive errors");
+                done.add(target.key());
+                consecutiveErrors = 0;
+            }
+        }
+        return ++stepsSinceCheckpoint >= checkpointEvery;
+    }
+
+    private List<Target> resolveTargets() {
+        NetatmoStationsDataResponse stations = netatmoApiClient.getStationsData();
+        List<Target> targets = new ArrayList<>();
+        if (stations.getBody() == null || stations.getBody().getDevices() == null) {
+            return targets;
+        }
+        // Coarsest scales first, so long ranges become available quickly
+        for (String scale : scales) {
+            for (var device : stations.getBody().getDevices()) {
+                targets.add(new Target(device.getId(), null, scale, WeatherService.DEFAULT_SENSOR_TYPES));
+                if (device.getModules() != null) {
+                    for (var module : device.getModules()) {
+                        // Modules are stored with the types they are requested with when merged into a series
+                        ModuleProfile profile = ModuleProfile.of(module.getType());
+                        if (profile != null) {
+                            targets.add(new Target(device.getId(), module.getId(), scale, profile.sensorTypes()));
+                        }
+                    }
+                }
+            }
+        }
+        return targets;
+    }
+
+    private void checkpoint() {
+        synchronized (checkpointLock) {
+            Checkpoint checkpoint;
+            synchronized (this) {
+                stepsSinceCheckpoint = 0;
+                checkpoint = new Checkpoint(running, new LinkedHashMap<>(cursors), new HashSet<>(done));
+            }
+            try {
+                // Write the data first, so the checkpoint never points beyond what was saved
+                Path dataDir = Path.of(dataDirectory);
+                store.append(dataDir.resolve(STORE_FILE), objectMapper);
+                Path file = dataDir.resolve(CHECKPOINT_FILE);
+                Path tmp = dataDir.resolve(CHECKPOINT_FILE + ".tmp");
+                objectMapper.writeValue(tmp.toFile(), checkpoint);
+                Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (Exception e) {
+                logger.warning("Could not write backfill checkpoint: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Get the progress and throughput of the backfill
+     */
+    public synchronized BackfillStatus getStatus() {
+        double activeSeconds = activeMillis / 1000.0;
+        List<BackfillStatus.TargetStatus> targetStatus = new ArrayList<>();
+        for (Target target : targets) {
+            Long reached = cursors.get(target.key());
+            targetStatus.add(new BackfillStatus.TargetStatus(
+                target.deviceId(),
+                target.moduleId(),
+                target.scale(),
+                reached,
+                reached != null ? WeatherUtil.formatTimestamp(reached, "yyyy-MM-dd HH:mm:ss") : null,
+                done.contains(target.key())
+            ));
+        }
+
+        return new BackfillStatus(
+            running,
+            requestsMade,
+            rowsStored,
+            errors,
+            activeSeconds > 0 ? requestsMade * 3600.0 / activeSeconds : 0,
+            activeSeconds > 0 ? rowsStored / activeSeconds : 0,
+            quota.callsLastHour(),
+            quotaShare,
+            (int) targetStatus.stream().filter(BackfillStatus.TargetStatus::done).count(),
+            targetStatus.size(),
+            lastError,
+            targetStatus
+        );
+    }
+}
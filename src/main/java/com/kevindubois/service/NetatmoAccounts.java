@@ -0,0 +1,106 @@
+package com.kevindubois.service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.enterprise.context.ApplicationScoped;
+
+import org.eclipse.microprofile.config.Config;
+import org.eclipse.microprofile.config.ConfigProvider;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.logging.Logger;
+
+/**
+ * The Netatmo accounts served by this process.
+ * The default account uses the netatmo.api.* credentials. Additional accounts are listed in netatmo.accounts and
+ * configured under netatmo.account.&lt;id&gt;.*, with the client ID and secret of the default account unless overridden.
+ */
+@ApplicationScoped
+public class NetatmoAccounts {
+
+    private static final Logger logger = Logger.getLogger(NetatmoAccounts.class.getName());
+
+    @ConfigProperty(name = "netatmo.api.client-id")
+    String clientId;
+
+    @ConfigProperty(name = "netatmo.api.client-secret")
+    String clientSecret;
+
+    @ConfigProperty(name = "netatmo.api.refresh-token")
+    String refreshToken;
+
+    @ConfigProperty(name = "netatmo.accounts")
+    Optional<List<String>> additionalAccounts;
+
+    /**
+     * Credentials and scheduling weight of an account
+     *
+     * @param id The account ID, selected with the X-Netatmo-Account header
+     * @param clientId The client ID of the Netatmo app
+     * @param clientSecret The client secret of the Netatmo app
+     * @param refreshToken The initial refresh token of the account
+     * @param weight Number of queued Netatmo calls started for this account per scheduling round
+     */
+    public record Account(String id, String clientId, String clientSecret, String refreshToken, int weight) {}
+
+    private final Map<String, Account> accounts = new LinkedHashMap<>();
+
+    @PostConstruct
+    void init() {
+        Config config = ConfigProvider.getConfig();
+        accounts.put(AccountContext.DEFAULT_ACCOUNT, new Account(AccountContext.DEFAULT_ACCOUNT, clientId, clientSecret,
+            refreshToken, config.getOptionalValue("netatmo.account.default.weight", Integer.class).orElse(1)));
+
+        for (String id : additionalAccounts.orElse(List.of())) {
+            String account = id.trim();
+            if (account.isEmpty() || accounts.containsKey(account)) {
+                continue;
+            }
+            String prefix = "netatmo.account." + account + ".";
+            accounts.put(account, new Account(
+                account,
+                config.getOptionalValue(prefix + "client-id", String.class).orElse(clientId),
+                config.getOptionalValue(prefix + "client-secret", String.class).orElse(clientSecret),
+                config.getValue(prefix + "refresh-token", String.class),
+                Math.max(1, config.getOptionalValue(prefix + "weight", Integer.class).orElse(1))
+            ));
+        }
+        logger.info("Serving " + accounts.size() + " Netatmo account(s): " + accounts.keySet());
+    }
+
+    /**
+     * Get the IDs of all accounts, the default account first
+     */
+    public List<String> ids() {
+        return Collections.unmodifiableList(new ArrayList<>(accounts.keySet()));
+    }
+
+    /**
+     * Get an account
+     * @param id The account ID
+     * @return The account, or null if it is not configured
+     */
+    public Account get(String id) {
+        return accounts.get(id);
+    }
+
+    /**
+     * Check whether an account is configured
+     */
+    public boolean exists(String id) {
+        return accounts.containsKey(id);
+    }
+
+    /**
+     * Get the request headers a response body depends on, for its Vary header. With more than one account the
+     * body depends on the account header, so shared caches must not hand one account's data to another.
+     */
+    public String varyHeaders() {
+        return accounts.size() > 1 ? "Accept-Encoding, " + AccountContext.HEADER : "Accept-Encoding";
+    }
+}
@@ -1,15 +1,14 @@
 package com.kevindubois.service;
 
 import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
 
-import jakarta.ws.rs.client.Client;
-import jakarta.ws.rs.client.ClientBuilder;
-import jakarta.ws.rs.client.Entity;
-import jakarta.ws.rs.core.Form;
-import jakarta.ws.rs.core.MediaType;
+import jakarta.ws.rs.WebApplicationException;
 import jakarta.ws.rs.core.Response;
 
+import com.kevindubois.client.NetatmoOAuthClient;
 import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.eclipse.microprofile.rest.client.inject.RestClient;
 
 import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
 import com.fasterxml.jackson.annotation.JsonProperty;
@@ -17,7 +16,14 @@ import com.fasterxml.jackson.annotation.JsonCreator;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import io.quarkus.runtime.annotations.RegisterForReflection;
 
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
 
 import java.time.Instant;
 import java.util.logging.Logger;
@@ -27,75 +33,192 @@ public class NetatmoAuthService {
 
     private static final Logger logger = Logger.getLogger(NetatmoAuthService.class.getName());
 
-    @ConfigProperty(name = "netatmo.api.base.url")
-    String baseUrl;
+    private static final ObjectMapper MAPPER = new ObjectMapper();
 
-    @ConfigProperty(name = "netatmo.api.client-id")
-    String clientId;
+    // Long-lived client, so refreshes reuse the pooled connections instead of a new handshake each time
+    @Inject
+    @RestClient
+    NetatmoOAuthClient oauthClient;
 
-    @ConfigProperty(name = "netatmo.api.client-secret")
-    String clientSecret;
+    @Inject
+    NetatmoAccounts accounts;
 
-    @ConfigProperty(name = "netatmo.api.refresh-token")
-    String refreshToken;
+    // Netatmo may rotate the refresh token and revoke the previous one; without a directory the latest one is only
+    // kept in memory, so a restart after a rotation falls back to the configured token, which may no longer work
+    @ConfigProperty(name = "netatmo.auth.token-dir")
+    Optional<String> tokenDirectory;
 
-    private volatile String accessToken;
-    private volatile Instant tokenExpiry;
+    /**
+     * Refresh token of an account as last rotated, with the configured token it was rotated from, so a newly
+     * configured token takes precedence over the stored one
+     */
+    @RegisterForReflection
+    public record StoredToken(String configured, String latest) {}
+
+    /**
+     * Token lifecycle of a single account. Refreshes are serialized per account, so a slow refresh of one
+     * account does not hold up the calls of the others.
+     */
+    private static final class TokenState {
+        private final NetatmoAccounts.Account account;
+        // Netatmo may rotate the refresh token, the latest one is kept in memory and in the token directory
+        private volatile String refreshToken;
+        private volatile String accessToken;
+        private volatile Instant tokenExpiry;
+        private volatile Instant refreshedAt;
+
+        TokenState(NetatmoAccounts.Account account, String refreshToken) {
+            this.account = account;
+            this.refreshToken = refreshToken;
+        }
 
+        boolean isExpired() {
+            return accessToken == null || tokenExpiry == null
+                || Instant.now().isAfter(tokenExpiry.minusSeconds(60)); // Refresh 1 minute before expiry
+        }
+    }
+
+    private final Map<String, TokenState> tokens = new ConcurrentHashMap<>();
+
+    /**
+     * Get a valid access token for the account of the current work, refreshing it when it is about to expire
+     */
     public String getAccessToken() {
-        if (accessToken == null || isTokenExpired()) {
-            logger.info("Access token is null or expired, refreshing...");
-            refreshAccessToken();
+        return getAccessToken(AccountContext.current());
+    }
+
+    /**
+     * Get a valid access token for an account, refreshing it when it is about to expire
+     * @param accountId The account ID
+     * @return The access token
+     */
+    public String getAccessToken(String accountId) {
+        TokenState state = tokenState(accountId);
+        if (state.isExpired()) {
+            synchronized (state) {
+                if (state.isExpired()) {
+                    logger.info("Access token of account " + accountId + " is null or expired, refreshing...");
+                    refreshAccessToken(state);
+                }
+            }
         } else {
-            logger.info("Using existing access token");
+            logger.fine("Using existing access token of account " + accountId);
+        }
+        return state.accessToken;
+    }
+
+    /**
+     * Get the time the access token of an account expires
+     * @return The expiry, or null if no token was fetched yet
+     */
+    public Instant getTokenExpiry(String accountId) {
+        TokenState state = tokens.get(accountId);
+        return state != null ? state.tokenExpiry : null;
+    }
+
+    /**
+     * Drop the access token of the account of the current work after Netatmo rejected it, so the next call
+     * refreshes it. A token refreshed after the rejected call was made is kept, it was not the one rejected.
+     * @param callStarted Time the rejected call was made
+     */
+    public void invalidateAccessToken(Instant callStarted) {
+        TokenState state = tokenState(AccountContext.current());
+        synchronized (state) {
+            if (state.refreshedAt == null || state.refreshedAt.isBefore(callStarted)) {
+                logger.info("Access token of account " + state.account.id() + " was rejected, refreshing it");
+                state.accessToken = null;
+            }
+        }
+    }
+
+    private TokenState tokenState(String accountId) {
+        return tokens.computeIfAbsent(accountId, id -> {
+            NetatmoAccounts.Account account = accounts.get(id);
+            if (account == null) {
+                throw new IllegalArgumentException("Unknown Netatmo account: " + id);
+            }
+            return new TokenState(account, loadRefreshToken(account));
+        });
+    }
+
+    private Optional<Path> tokenFile(String accountId) {
+        return tokenDirectory.filter(dir -> !dir.isBlank()).map(dir -> Path.of(dir, accountId + ".token.json"));
+    }
+
+    /**
+     * Get the refresh token an account was last rotated to, or its configured token if there is none or it was
+     * rotated from another configured token
+     */
+    private String loadRefreshToken(NetatmoAccounts.Account account) {
+        Optional<Path> file = tokenFile(account.id());
+        if (file.isEmpty() || !Files.exists(file.get())) {
+            return account.refreshToken();
         }
-        return accessToken;
+        try {
+            StoredToken stored = MAPPER.readValue(file.get().toFile(), StoredToken.class);
+            if (account.refreshToken().equals(stored.configured()) && stored.latest() != null && !stored.latest().isBlank()) {
+                logger.info("Using the rotated refresh token of account " + account.id() + " from " + file.get());
+                return stored.latest();
+            }
+        } catch (IOException e) {
+            logger.warning("Could not read the refresh token of account " + account.id() + " from " + file.get()
+                + ": " + e.getMessage());
+        }
+        return account.refreshToken();
     }
 
-    private boolean isTokenExpired() {
-        return tokenExpiry == null || Instant.now().isAfter(tokenExpiry.minusSeconds(60)); // Refresh 1 minute before expiry
+    private void storeRefreshToken(TokenState state) {
+        Optional<Path> file = tokenFile(state.account.id());
+        if (file.isEmpty()) {
+            return;
+        }
+        try {
+            Files.createDirectories(file.get().toAbsolutePath().getParent());
+            Path tmp = file.get().resolveSibling(file.get().getFileName() + ".tmp");
+            MAPPER.writeValue(tmp.toFile(), new StoredToken(state.account.refreshToken(), state.refreshToken));
+            Files.move(tmp, file.get(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            // The token still works until the next rotation, but a restart before then would fall back to the old one
+            logger.severe("Could not store the rotated refresh token of account " + state.account.id() + " in "
+                + file.get() + ": " + e.getMessage());
+        }
     }
 
-    private synchronized void refreshAccessToken() {
-        Client client = null;
+    private void refreshAccessToken(TokenState state) {
         try {
-            logger.info("Refreshing Netatmo access token");
-            
-            client = ClientBuilder.newClient();
-            
-            Form form = new Form()
-                .param("grant_type", "refresh_token")
-                .param("refresh_token", refreshToken)
-                .param("client_id", clientId)
-                .param("client_secret", clientSecret);
-            
-            Response response = client.target(baseUrl + "/oauth2/token")
-                .request(MediaType.APPLICATION_JSON)
-                .post(Entity.entity(form, MediaType.APPLICATION_FORM_URLENCODED));
-            
-            if (response.getStatus() == 200) {
-                String jsonResponse = response.readEntity(String.class);
-                ObjectMapper mapper = new ObjectMapper();
-                TokenResponse tokenResponse = mapper.readValue(jsonResponse, TokenResponse.class);
-                
-                this.accessToken = tokenResponse.getAccessToken();
-                this.tokenExpiry = Instant.now().plusSeconds(tokenResponse.getExpiresIn() - 60); // Subtract 60 seconds for safety
-                
-                logger.info("Successfully refreshed Netatmo access token, expires in " + tokenResponse.getExpiresIn() + " seconds");
-            } else {
-                String errorBody = response.readEntity(String.class);
-                logger.severe("Failed to refresh token, HTTP status: " + response.getStatus() + ", body: " + errorBody);
-                throw new RuntimeException("Token refresh failed with status: " + response.getStatus());
+            logger.info("Refreshing Netatmo access token of account " + state.account.id());
+
+            String jsonResponse = oauthClient.refreshToken("refresh_token", state.refreshToken,
+                state.account.clientId(), state.account.clientSecret());
+            TokenResponse tokenResponse = MAPPER.readValue(jsonResponse, TokenResponse.class);
+
+            state.accessToken = tokenResponse.getAccessToken();
+            state.tokenExpiry = Instant.now().plusSeconds(tokenResponse.getExpiresIn() - 60); // Subtract 60 seconds for safety
+            state.refreshedAt = Instant.now();
+            if (tokenResponse.getRefreshToken() != null && !tokenResponse.getRefreshToken().isBlank()
+                    && !tokenResponse.getRefreshToken().equals(state.refreshToken)) {
+                state.refreshToken = tokenResponse.getRefreshToken();
+                storeRefreshToken(state);
             }
-            
+
+            logger.info("Successfully refreshed Netatmo access token of account " + state.account.id()
+                + ", expires in " + tokenResponse.getExpiresIn() + " seconds");
+        } catch (WebApplicationException e) {
+            Response response = e.getResponse();
+            String errorBody = readBody(response);
+            logger.severe("Failed to refresh token, HTTP status: " + response.getStatus() + ", body: " + errorBody);
+            throw new RuntimeException("Token refresh failed with status: " + response.getStatus(), e);
         } catch (Exception e) {
             logger.severe("Failed to refresh Netatmo access token: " + e.getClass().getName() + " - " + e.getMessage());
-            e.printStackTrace();
             throw new RuntimeException("Failed to refresh access token", e);
-        } finally {
-            if (client != null) {
-                client.close();
-            }
+        }
+    }
+
+    private static String readBody(Response response) {
+        try {
+            return response.readEntity(String.class);
+        } catch (RuntimeException e) {
+            return "<unreadable>";
         }
     }
 
@@ -0,0 +1,256 @@
+package com.kevindubois.service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+
+import com.kevindubois.exception.NetatmoTimeoutException;
+import com.kevindubois.exception.WeatherApiException;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+
+/**
+ * Bounds Netatmo calls by the deadline of the request they are made for, and hedges slow ones.
+ * Netatmo calls are reads, so when a call has not answered within the recent p95 latency of its operation a
+ * second attempt is started and the first answer wins. Hedges are paid from a budget that grows with every
+ * call, and only made while the account uses less than its share of the Netatmo quota and a call slot is free,
+ * so hedging cannot multiply the load during a slowdown.
+ */
+@ApplicationScoped
+public class NetatmoCallHedger {
+
+    private static final Logger logger = Logger.getLogger(NetatmoCallHedger.class.getName());
+
+    // Latencies kept per operation, and needed before it is hedged
+    private static final int SAMPLES = 256;
+    private static final int MIN_SAMPLES = 20;
+    // Unused hedges saved up for a burst of slow calls
+    private static final double MAX_TOKENS = 10;
+
+    @Inject
+    NetatmoQuota quota;
+
+    @Inject
+    NetatmoCallScheduler scheduler;
+
+    @ConfigProperty(name = "netatmo.hedge.enabled", defaultValue = "true")
+    boolean enabled;
+
+    @ConfigProperty(name = "netatmo.hedge.percentile", defaultValue = "0.95")
+    double percentile;
+
+    @ConfigProperty(name = "netatmo.hedge.min-delay", defaultValue = "100ms")
+    Duration minDelay;
+
+    @ConfigProperty(name = "netatmo.hedge.budget", defaultValue = "0.05")
+    double budget;
+
+    @ConfigProperty(name = "netatmo.hedge.quota-share", defaultValue = "0.5")
+    double quotaShare;
+
+    // Threads the attempts run on; attempts beyond them wait in a queue, within their deadline
+    @ConfigProperty(name = "netatmo.hedge.threads", defaultValue = "64")
+    int threads;
+
+    private ThreadPoolExecutor executor;
+
+    @PostConstruct
+    void init() {
+        AtomicInteger count = new AtomicInteger();
+        int size = Math.max(1, threads);
+        executor = new ThreadPoolExecutor(size, size, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), runnable -> {
+            Thread thread = new Thread(runnable, "netatmo-call-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.allowCoreThreadTimeOut(true);
+    }
+
+    @PreDestroy
+    void shutdown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Latencies of the last successful calls of an operation
+     */
+    private static final class Latencies {
+        final long[] millis = new long[SAMPLES];
+        int count;
+        int next;
+
+        synchronized void add(long value) {
+            millis[next] = value;
+            next = (next + 1) % SAMPLES;
+            count = Math.min(count + 1, SAMPLES);
+        }
+
+        synchronized long percentile(double percentile) {
+            if (count < MIN_SAMPLES) {
+                return -1;
+            }
+            long[] sorted = Arrays.copyOf(millis, count);
+            Arrays.sort(sorted);
+            return sorted[Math.min(count - 1, (int) Math.ceil(percentile * count) - 1)];
+        }
+    }
+
+    private final Map<String, Latencies> latencies = new ConcurrentHashMap<>();
+    private double tokens;
+    private final AtomicLong calls = new AtomicLong();
+    private final AtomicLong hedged = new AtomicLong();
+    private final AtomicLong hedgeWins = new AtomicLong();
+    private final AtomicLong deadlineExceeded = new AtomicLong();
+
+    /**
+     * Make a Netatmo call within the deadline of the current work, hedging it if it is slow
+     * @param operation The name of the API operation, latencies are tracked per operation
+     * @param call The call, run once or twice
+     * @return The result of the first attempt that succeeds
+     * @throws WeatherApiException with status 504 if the deadline passed before the call, or
+     * NetatmoTimeoutException if it passes before an attempt succeeds
+     * @throws CancellationException if the thread was interrupted while waiting
+     */
+    public <T> T execute(String operation, Callable<T> call) throws Exception {
+        long deadline = RequestDeadline.current();
+        if (deadline != RequestDeadline.NONE && System.currentTimeMillis() >= deadline) {
+            deadlineExceeded.incrementAndGet();
+            throw RequestDeadline.exceeded();
+        }
+        calls.incrementAndGet();
+        deposit();
+
+        long hedgeDelay = enabled ? hedgeDelay(operation) : -1;
+        Callable<T> attempt = () -> timed(operation, call);
+        if (hedgeDelay < 0 && deadline == RequestDeadline.NONE) {
+            // Nothing to wait for on another thread
+            return attempt.call();
+        }
+
+        ExecutorCompletionService<T> completion = new ExecutorCompletionService<>(executor);
+        List<Future<T>> attempts = new ArrayList<>(2);
+        attempts.add(completion.submit(AccountContext.wrap(attempt)));
+        int pending = 1;
+        long waitUntil = hedgeDelay >= 0 ? Math.min(System.currentTimeMillis() + hedgeDelay, deadline) : deadline;
+        try {
+            while (true) {
+                Future<T> done = completion.poll(Math.max(0, waitUntil - System.currentTimeMillis()),
+                    TimeUnit.MILLISECONDS);
+                if (done == null) {
+                    if (waitUntil >= deadline) {
+                        deadlineExceeded.incrementAndGet();
+                        throw new NetatmoTimeoutException("Request deadline exceeded while waiting for Netatmo");
+                    }
+                    if (attempts.size() == 1 && tryHedge()) {
+                        logger.fine("Hedging " + operation + " after " + hedgeDelay + "ms");
+                        attempts.add(completion.submit(AccountContext.wrap(attempt)));
+                        pending++;
+                    }
+                    waitUntil = deadline;
+                    continue;
+                }
+
+                pending--;
+                try {
+                    T result = done.get();
+                    if (done != attempts.get(0)) {
+                        hedgeWins.incrementAndGet();
+                    }
+                    return result;
+                } catch (ExecutionException e) {
+                    // The other attempt may still succeed
+                    if (pending == 0) {
+                        if (e.getCause() instanceof Exception cause) {
+                            throw cause;
+                        }
+                        throw e;
+                    }
+                    waitUntil = deadline;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CancellationException("Interrupted while waiting for Netatmo");
+        } finally {
+            for (Future<T> pendingAttempt : attempts) {
+                pendingAttempt.cancel(true);
+            }
+        }
+    }
+
+    private <T> T timed(String operation, Callable<T> call) throws Exception {
+        long started = System.nanoTime();
+        T result = call.call();
+        latencies.computeIfAbsent(operation, key -> new Latencies())
+            .add(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started));
+        return result;
+    }
+
+    private long hedgeDelay(String operation) {
+        Latencies operationLatencies = latencies.get(operation);
+        long delay = operationLatencies != null ? operationLatencies.percentile(percentile) : -1;
+        return delay < 0 ? -1 : Math.max(delay, minDelay.toMillis());
+    }
+
+    private synchronized void deposit() {
+        tokens = Math.min(MAX_TOKENS, tokens + budget);
+    }
+
+    private boolean tryHedge() {
+        if (executor.getActiveCount() >= executor.getMaximumPoolSize()) {
+            // A hedge waiting for a thread would not answer sooner
+            return false;
+        }
+        if (quota != null && !quota.hasCapacity(quotaShare)) {
+            return false;
+        }
+        // A hedge waiting for a slot would only queue behind the calls it is meant to overtake
+        if (scheduler != null && scheduler.isSaturated()) {
+            return false;
+        }
+        synchronized (this) {
+            if (tokens < 1) {
+                return false;
+            }
+            tokens--;
+        }
+        hedged.incrementAndGet();
+        return true;
+    }
+
+    /**
+     * Get the hedging counters and the current hedge delay of every operation
+     * @return Map with calls, hedged calls, hedges that answered first, calls past their deadline and delays in ms
+     */
+    public Map<String, Object> getStatus() {
+        Map<String, Object> status = new LinkedHashMap<>();
+        status.put("enabled", enabled);
+        status.put("calls", calls.get());
+        status.put("hedged", hedged.get());
+        status.put("hedgeWins", hedgeWins.get());
+        status.put("deadlineExceeded", deadlineExceeded.get());
+        Map<String, Long> delays = new LinkedHashMap<>();
+        latencies.keySet().forEach(operation -> delays.put(operation, hedgeDelay(operation)));
+        status.put("hedgeDelayMs", delays);
+        return status;
+    }
+}
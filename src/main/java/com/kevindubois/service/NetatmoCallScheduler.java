@@ -0,0 +1,305 @@
+package com.kevindubois.service;
+
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+
+import com.kevindubois.exception.NetatmoUnavailableException;
+import com.kevindubois.exception.WeatherApiException;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Shares the concurrent Netatmo calls allowed by the concurrency limit between the accounts.
+ * While all slots are taken, calls wait in a queue per account and freed slots go to the accounts in turn,
+ * each account getting as many calls per round as its weight, so a busy account cannot starve the others.
+ * Calls that would wait behind a full queue, or past their request deadline, are shed right away instead, as are
+ * calls of an account that used its whole Netatmo quota; the WeatherService then serves the last known data when it
+ * has it, so an overload adds staleness rather than latency.
+ * The calls, errors and time spent upstream and in the queue are counted per account.
+ */
+@ApplicationScoped
+public class NetatmoCallScheduler {
+
+    @Inject
+    NetatmoAccounts accounts;
+
+    @Inject
+    NetatmoConcurrencyLimit concurrencyLimit;
+
+    @Inject
+    NetatmoQuota quota;
+
+    @ConfigProperty(name = "netatmo.scheduler.max-concurrent-calls", defaultValue = "16")
+    int maxConcurrentCalls;
+
+    @ConfigProperty(name = "netatmo.scheduler.max-wait", defaultValue = "10s")
+    Duration maxWait;
+
+    @ConfigProperty(name = "netatmo.scheduler.queue-per-slot", defaultValue = "4")
+    int queuePerSlot;
+
+    /**
+     * A call waiting for a slot
+     */
+    private static final class Waiter {
+        final String account;
+        boolean granted;
+
+        Waiter(String account) {
+            this.account = account;
+        }
+    }
+
+    /**
+     * Counters of the Netatmo calls made for an account
+     */
+    private static final class Usage {
+        final AtomicLong calls = new AtomicLong();
+        final AtomicLong errors = new AtomicLong();
+        final AtomicLong upstreamNanos = new AtomicLong();
+        final AtomicLong queueNanos = new AtomicLong();
+        final AtomicLong inFlight = new AtomicLong();
+        final AtomicLong rejected = new AtomicLong();
+        final AtomicLong shed = new AtomicLong();
+    }
+
+    private final Object lock = new Object();
+    private int running;
+    private int queued;
+    // Waiting calls per account, in the order the accounts take turns; an account is removed once it has no waiters
+    private final Map<String, Deque<Waiter>> queues = new LinkedHashMap<>();
+    private String turn;
+    private int servedInTurn;
+    private final Map<String, Usage> usage = new ConcurrentHashMap<>();
+
+    /**
+     * Make a Netatmo call for the account of the current work once a slot is free
+     * @param operation The name of the API operation, its latency adjusts the concurrency limit
+     * @param call The call
+     * @return The result of the call
+     * @throws NetatmoUnavailableException with status 503 if the call was shed, the account used its quota, or no slot
+     * became free within the maximum wait
+     * @throws WeatherApiException with status 504 if the deadline of the request passed first
+     * @throws CancellationException if the thread was interrupted while waiting
+     */
+    public <T> T execute(String operation, Callable<T> call) throws Exception {
+        String account = AccountContext.current();
+        Usage accountUsage = usage.computeIfAbsent(account, key -> new Usage());
+        long quotaWait = quota != null ? quota.millisUntilCapacity() : 0;
+        if (quotaWait > 0) {
+            accountUsage.shed.incrementAndGet();
+            throw new NetatmoUnavailableException("Netatmo rate limit of account " + account + " reached, try again in "
+                + (quotaWait + 999) / 1000 + "s", (quotaWait + 999) / 1000);
+        }
+
+        long enqueued = System.nanoTime();
+        int inFlight = acquire(operation, account, accountUsage);
+        long started = System.nanoTime();
+        accountUsage.queueNanos.addAndGet(started - enqueued);
+        accountUsage.inFlight.incrementAndGet();
+        Exception failure = null;
+        try {
+            return call.call();
+        } catch (Exception e) {
+            accountUsage.errors.incrementAndGet();
+            failure = e;
+            throw e;
+        } finally {
+            long latency = System.nanoTime() - started;
+            accountUsage.calls.incrementAndGet();
+            accountUsage.upstreamNanos.addAndGet(latency);
+            accountUsage.inFlight.decrementAndGet();
+            if (concurrencyLimit != null) {
+                concurrencyLimit.onSample(operation, latency, inFlight, failure);
+            }
+            release();
+        }
+    }
+
+    private int limit() {
+        return concurrencyLimit != null ? concurrencyLimit.current() : Math.max(1, maxConcurrentCalls);
+    }
+
+    /**
+     * Take a slot, waiting for one if they are all taken
+     * @return The calls running once the slot is taken, this one included
+     */
+    private int acquire(String operation, String account, Usage accountUsage) {
+        synchronized (lock) {
+            int limit = limit();
+            if (running < limit && queues.isEmpty()) {
+                return ++running;
+            }
+
+            if (queued >= limit * Math.max(0, queuePerSlot)) {
+                throw shed(accountUsage, "Too many Netatmo calls waiting, try again later");
+            }
+            // A slot frees up about every call latency divided by the limit, and the call itself takes one more
+            long latency = concurrencyLimit != null ? concurrencyLimit.latencyMillis(operation) : -1;
+            long requestRemaining = RequestDeadline.remainingMillis();
+            if (latency > 0 && requestRemaining < latency * (queued / limit + 2)) {
+                throw shed(accountUsage, "Netatmo is too slow to answer before the request deadline, try again later");
+            }
+
+            Waiter waiter = new Waiter(account);
+            queues.computeIfAbsent(account, key -> new ArrayDeque<>()).addLast(waiter);
+            queued++;
+            // Wait no longer than the request the call is made for
+            boolean requestDeadline = requestRemaining < maxWait.toMillis();
+            long deadline = System.nanoTime()
+                + (requestDeadline ? TimeUnit.MILLISECONDS.toNanos(requestRemaining) : maxWait.toNanos());
+            try {
+                while (!waiter.granted) {
+                    long remaining = deadline - System.nanoTime();
+                    if (remaining <= 0) {
+                        remove(waiter);
+                        accountUsage.rejected.incrementAndGet();
+                        if (requestDeadline) {
+                            throw RequestDeadline.exceeded();
+                        }
+                        throw new NetatmoUnavailableException("Too many Netatmo calls in progress, try again later");
+                    }
+                    TimeUnit.NANOSECONDS.timedWait(lock, remaining);
+                }
+                return running;
+            } catch (InterruptedException e) {
+                if (waiter.granted) {
+                    releaseLocked();
+                } else {
+                    remove(waiter);
+                }
+                Thread.currentThread().interrupt();
+                throw new CancellationException("Interrupted while waiting for a Netatmo call slot");
+            }
+        }
+    }
+
+    private static NetatmoUnavailableException shed(Usage accountUsage, String message) {
+        accountUsage.shed.incrementAndGet();
+        return new NetatmoUnavailableException(message);
+    }
+
+    private void release() {
+        synchronized (lock) {
+            releaseLocked();
+        }
+    }
+
+    /**
+     * Hand the free slots to the next waiters, keeping the account whose turn it is until it used up its weight.
+     * After the limit was lowered, no slot is free until enough calls finished.
+     */
+    private void releaseLocked() {
+        running--;
+        int limit = limit();
+        boolean granted = false;
+        while (running < limit && !queues.isEmpty()) {
+            if (turn == null || !queues.containsKey(turn) || servedInTurn >= weight(turn)) {
+                turn = nextAccount(turn);
+                servedInTurn = 0;
+            }
+            Deque<Waiter> queue = queues.get(turn);
+            Waiter waiter = queue.pollFirst();
+            if (queue.isEmpty()) {
+                queues.remove(turn);
+            }
+            queued--;
+            servedInTurn++;
+            waiter.granted = true;
+            running++;
+            granted = true;
+        }
+        if (granted) {
+            lock.notifyAll();
+        }
+    }
+
+    private String nextAccount(String previous) {
+        boolean found = previous == null;
+        for (String account : queues.keySet()) {
+            if (found) {
+                return account;
+            }
+            found = account.equals(previous);
+        }
+        // The previous account was the last one or no longer waits, start over with the longest waiting account
+        return queues.keySet().iterator().next();
+    }
+
+    private void remove(Waiter waiter) {
+        Deque<Waiter> queue = queues.get(waiter.account);
+        if (queue != null && queue.remove(waiter)) {
+            queued--;
+            if (queue.isEmpty()) {
+                queues.remove(waiter.account);
+            }
+        }
+    }
+
+    private int weight(String account) {
+        NetatmoAccounts.Account configured = accounts != null ? accounts.get(account) : null;
+        return configured != null ? Math.max(1, configured.weight()) : 1;
+    }
+
+    /**
+     * Whether all slots are taken, so another call would have to wait
+     */
+    public boolean isSaturated() {
+        synchronized (lock) {
+            return running >= limit() || !queues.isEmpty();
+        }
+    }
+
+    /**
+     * Get the calls of all accounts running and waiting for a slot
+     * @return Map with the current limit and the calls running and queued
+     */
+    public Map<String, Object> getLoad() {
+        synchronized (lock) {
+            Map<String, Object> load = new LinkedHashMap<>();
+            load.put("limit", limit());
+            load.put("running", running);
+            load.put("queued", queued);
+            return load;
+        }
+    }
+
+    /**
+     * Get the Netatmo call counters of an account
+     * @param account The account ID
+     * @return Map with calls, errors, rejected and shed calls, calls in flight and queued, and total and average
+     * times in ms
+     */
+    public Map<String, Object> getUsage(String account) {
+        Usage accountUsage = usage.getOrDefault(account, new Usage());
+        long calls = accountUsage.calls.get();
+        int accountQueued;
+        synchronized (lock) {
+            Deque<Waiter> queue = queues.get(account);
+            accountQueued = queue != null ? queue.size() : 0;
+        }
+        Map<String, Object> result = new HashMap<>();
+        result.put("calls", calls);
+        result.put("errors", accountUsage.errors.get());
+        result.put("rejected", accountUsage.rejected.get());
+        result.put("shed", accountUsage.shed.get());
+        result.put("inFlight", accountUsage.inFlight.get());
+        result.put("queued", accountQueued);
+        result.put("upstreamMs", TimeUnit.NANOSECONDS.toMillis(accountUsage.upstreamNanos.get()));
+        result.put("queueMs", TimeUnit.NANOSECONDS.toMillis(accountUsage.queueNanos.get()));
+        result.put("avgUpstreamMs", calls > 0 ? TimeUnit.NANOSECONDS.toMillis(accountUsage.upstreamNanos.get()) / calls : 0);
+        result.put("avgQueueMs", calls > 0 ? TimeUnit.NANOSECONDS.toMillis(accountUsage.queueNanos.get()) / calls : 0);
+        return result;
+    }
+}
@@ -0,0 +1,167 @@
+package com.kevindubois.service;
+
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.ws.rs.ProcessingException;
+import jakarta.ws.rs.WebApplicationException;
+
+import com.kevindubois.exception.NetatmoTimeoutException;
+import com.kevindubois.exception.NetatmoUnavailableException;
+import com.kevindubois.exception.WeatherApiException;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.TimeoutException;
+import java.util.logging.Logger;
+
+/**
+ * Stops calling the Netatmo API after repeated upstream failures, so requests fail fast instead of each waiting
+ * for the client timeout. After the open duration a single probe call is let through: if it succeeds the circuit
+ * closes again, otherwise it stays open for another period.
+ * Only outages count as failures (connection errors, timeouts, calls still unanswered at their request deadline
+ * and 5xx responses); client errors such as an invalid device ID are answers from a working API.
+ */
+@ApplicationScoped
+public class NetatmoCircuitBreaker {
+
+    private static final Logger logger = Logger.getLogger(NetatmoCircuitBreaker.class.getName());
+
+    public enum State { CLOSED, OPEN, HALF_OPEN }
+
+    @ConfigProperty(name = "netatmo.circuit.failure-threshold", defaultValue = "5")
+    int failureThreshold;
+
+    @ConfigProperty(name = "netatmo.circuit.open-duration", defaultValue = "30s")
+    Duration openDuration;
+
+    private State state = State.CLOSED;
+    private int consecutiveFailures;
+    private long openedAt;
+    private boolean probing;
+    private long timesOpened;
+    private long rejectedCalls;
+    private String lastFailure;
+
+    /**
+     * Make a Netatmo call unless the circuit is open
+     * @param call The call
+     * @return The result of the call
+     * @throws NetatmoUnavailableException if the circuit is open or a probe call is already in progress
+     */
+    public <T> T execute(Callable<T> call) throws Exception {
+        boolean probe = acquire();
+        try {
+            T result = call.call();
+            onSuccess();
+            return result;
+        } catch (Exception e) {
+            if (isOutage(e)) {
+                onFailure(e);
+            } else if (e instanceof WeatherApiException || e instanceof CancellationException) {
+                // Rejected or cancelled locally, the API was not asked so nothing is known about it
+                releaseProbe(probe);
+            } else {
+                onSuccess();
+            }
+            throw e;
+        }
+    }
+
+    private synchronized boolean acquire() {
+        if (state == State.CLOSED) {
+            return false;
+        }
+        long retryInMillis = openedAt + openDuration.toMillis() - System.currentTimeMillis();
+        if (state == State.OPEN && retryInMillis <= 0) {
+            state = State.HALF_OPEN;
+        }
+        if (state == State.HALF_OPEN && !probing) {
+            probing = true;
+            logger.info("Probing the Netatmo API after " + consecutiveFailures + " failed calls");
+            return true;
+        }
+        rejectedCalls++;
+        long retryInSeconds = Math.max(0, (retryInMillis + 999) / 1000);
+        throw new NetatmoUnavailableException("Netatmo API unavailable (" + lastFailure + "), retrying in "
+            + retryInSeconds + "s", retryInSeconds);
+    }
+
+    private synchronized void onSuccess() {
+        if (state != State.CLOSED) {
+            logger.info("Netatmo API is available again, closing the circuit");
+        }
+        state = State.CLOSED;
+        consecutiveFailures = 0;
+        probing = false;
+    }
+
+    private synchronized void onFailure(Exception e) {
+        consecutiveFailures++;
+        lastFailure = e.getClass().getSimpleName() + ": " + e.getMessage();
+        if (state == State.HALF_OPEN || consecutiveFailures >= Math.max(1, failureThreshold)) {
+            if (state == State.CLOSED) {
+                timesOpened++;
+                logger.warning("Opening the Netatmo circuit after " + consecutiveFailures + " failed calls, last: "
+                    + lastFailure);
+            }
+            state = State.OPEN;
+            openedAt = System.currentTimeMillis();
+            probing = false;
+        }
+    }
+
+    private synchronized void releaseProbe(boolean probe) {
+        if (probe) {
+            probing = false;
+        }
+    }
+
+    /**
+     * Check whether a failed call shows the API is down or overloaded: a 5xx response, a timeout or a connection error
+     */
+    static boolean isOutage(Exception e) {
+        if (e instanceof NetatmoTimeoutException) {
+            return true;
+        }
+        if (e instanceof WebApplicationException webException) {
+            return webException.getResponse() != null && webException.getResponse().getStatus() >= 500;
+        }
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof ProcessingException || cause instanceof IOException
+                || cause instanceof TimeoutException) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Get the state of the circuit
+     */
+    public synchronized State getState() {
+        return state;
+    }
+
+    /**
+     * Get the state of the circuit and its counters
+     * @return Map with the state, consecutive failures, times opened, rejected calls and the last failure
+     */
+    public synchronized Map<String, Object> getStatus() {
+        Map<String, Object> status = new LinkedHashMap<>();
+        status.put("state", state);
+        status.put("consecutiveFailures", consecutiveFailures);
+        status.put("timesOpened", timesOpened);
+        status.put("rejectedCalls", rejectedCalls);
+        if (lastFailure != null) {
+            status.put("lastFailure", lastFailure);
+        }
+        if (state != State.CLOSED) {
+            status.put("openedAt", openedAt / 1000);
+        }
+        return status;
+    }
+}
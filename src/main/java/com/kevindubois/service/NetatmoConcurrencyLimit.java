@@ -0,0 +1,184 @@
+package com.kevindubois.service;
+
+import jakarta.enterprise.context.ApplicationScoped;
+
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+/**
+ * Adapts the number of concurrent Netatmo calls to the latency Netatmo answers with, in the manner of TCP Vegas.
+ * The lowest recent latency of an operation is taken as its latency without load; when calls take longer, the
+ * difference estimates how many of them are queued at Netatmo. The limit grows by one while few are, shrinks by
+ * one when many are, and is cut by the backoff ratio when a call times out, fails with a 5xx or hits the rate limit.
+ */
+@ApplicationScoped
+public class NetatmoConcurrencyLimit {
+
+    private static final Logger logger = Logger.getLogger(NetatmoConcurrencyLimit.class.getName());
+
+    // Weight of the latest call in the average latency of an operation
+    private static final double SMOOTHING = 0.1;
+
+    @ConfigProperty(name = "netatmo.limit.adaptive", defaultValue = "true")
+    boolean adaptive;
+
+    @ConfigProperty(name = "netatmo.limit.initial", defaultValue = "4")
+    int initialLimit;
+
+    @ConfigProperty(name = "netatmo.limit.min", defaultValue = "1")
+    int minLimit;
+
+    @ConfigProperty(name = "netatmo.scheduler.max-concurrent-calls", defaultValue = "16")
+    int maxLimit;
+
+    @ConfigProperty(name = "netatmo.limit.alpha", defaultValue = "2")
+    int alpha;
+
+    @ConfigProperty(name = "netatmo.limit.beta", defaultValue = "4")
+    int beta;
+
+    @ConfigProperty(name = "netatmo.limit.backoff-ratio", defaultValue = "0.75")
+    double backoffRatio;
+
+    @ConfigProperty(name = "netatmo.limit.window", defaultValue = "100")
+    int window;
+
+    /**
+     * Latency of an operation: the lowest of the current and the previous window, so the baseline follows
+     * Netatmo when it gets slower for good, and the smoothed average
+     */
+    private static final class Baseline {
+        long previousMin = Long.MAX_VALUE;
+        long windowMin = Long.MAX_VALUE;
+        int samples;
+        double avgNanos;
+
+        long noLoadNanos() {
+            return Math.min(previousMin, windowMin);
+        }
+    }
+
+    private final Map<String, Baseline> baselines = new HashMap<>();
+    private int limit = -1;
+    private long increases;
+    private long decreases;
+    private long backoffs;
+
+    /**
+     * Get the number of Netatmo calls that may run at once
+     */
+    public synchronized int current() {
+        return adaptive ? limit() : Math.max(1, maxLimit);
+    }
+
+    private int limit() {
+        if (limit < 0) {
+            limit = clamp(initialLimit);
+        }
+        return limit;
+    }
+
+    private int clamp(int value) {
+        int max = Math.max(1, maxLimit);
+        return Math.max(Math.min(Math.max(1, minLimit), max), Math.min(max, value));
+    }
+
+    /**
+     * Adjust the limit to a finished call
+     * @param operation The name of the API operation, latencies are compared per operation
+     * @param latencyNanos The time the call took
+     * @param inFlight The calls running when it started, itself included
+     * @param failure The exception the call failed with, or null
+     */
+    public synchronized void onSample(String operation, long latencyNanos, int inFlight, Exception failure) {
+        if (!adaptive || cancelled(failure) || Thread.currentThread().isInterrupted()) {
+            // A hedge that lost or a caller that gave up says nothing about Netatmo
+            return;
+        }
+        int current = limit();
+        if (failure != null && NetatmoRetryPolicy.isOverload(failure)) {
+            backoffs++;
+            limit = clamp((int) (current * backoffRatio));
+            if (limit != current) {
+                logger.info("Lowered the Netatmo concurrency limit to " + limit + " after a failed call: "
+                    + failure.getMessage());
+            }
+            return;
+        }
+
+        Baseline baseline = baselines.computeIfAbsent(operation, key -> new Baseline());
+        baseline.windowMin = Math.min(baseline.windowMin, latencyNanos);
+        baseline.avgNanos = baseline.avgNanos == 0 ? latencyNanos
+            : baseline.avgNanos + SMOOTHING * (latencyNanos - baseline.avgNanos);
+        long noLoad = baseline.noLoadNanos();
+        if (++baseline.samples >= Math.max(1, window)) {
+            baseline.previousMin = baseline.windowMin;
+            baseline.windowMin = Long.MAX_VALUE;
+            baseline.samples = 0;
+        }
+        double queued = current * (1 - (double) noLoad / Math.max(1, latencyNanos));
+        if (queued > beta) {
+            limit = clamp(current - 1);
+            if (limit != current) {
+                decreases++;
+                logger.fine("Lowered the Netatmo concurrency limit to " + limit + ", about "
+                    + Math.round(queued) + " calls queued at Netatmo");
+            }
+        } else if (queued < alpha && inFlight * 2 >= current) {
+            // Only grow a limit the calls actually reach
+            limit = clamp(current + 1);
+            if (limit != current) {
+                increases++;
+            }
+        }
+    }
+
+    private static boolean cancelled(Exception e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof CancellationException || cause instanceof InterruptedException) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Get the average latency of an operation
+     * @return The latency in ms, or -1 before its first call
+     */
+    public synchronized long latencyMillis(String operation) {
+        Baseline baseline = baselines.get(operation);
+        return baseline != null ? TimeUnit.NANOSECONDS.toMillis((long) baseline.avgNanos) : -1;
+    }
+
+    /**
+     * Get the limit, how often it changed and the latencies it is based on
+     * @return Map with the limit, its bounds, increases, decreases and backoffs, and per operation the latency
+     * without load and the average latency in ms
+     */
+    public synchronized Map<String, Object> getStatus() {
+        Map<String, Object> status = new LinkedHashMap<>();
+        status.put("adaptive", adaptive);
+        status.put("limit", current());
+        status.put("minLimit", Math.max(1, minLimit));
+        status.put("maxLimit", Math.max(1, maxLimit));
+        status.put("increases", increases);
+        status.put("decreases", decreases);
+        status.put("backoffs", backoffs);
+        Map<String, Object> latencies = new LinkedHashMap<>();
+        baselines.forEach((operation, baseline) -> {
+            Map<String, Object> latency = new LinkedHashMap<>();
+            latency.put("noLoadMs", TimeUnit.NANOSECONDS.toMillis(baseline.noLoadNanos()));
+            latency.put("avgMs", TimeUnit.NANOSECONDS.toMillis((long) baseline.avgNanos));
+            latencies.put(operation, latency);
+        });
+        status.put("latencies", latencies);
+        return status;
+    }
+}
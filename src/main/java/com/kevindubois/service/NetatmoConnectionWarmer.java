@@ -0,0 +1,69 @@
+package com.kevindubois.service;
+
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.enterprise.event.Observes;
+import jakarta.inject.Inject;
+import jakarta.ws.rs.WebApplicationException;
+
+import com.kevindubois.client.NetatmoOAuthClient;
+import io.quarkus.runtime.StartupEvent;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.eclipse.microprofile.rest.client.inject.RestClient;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+/**
+ * Opens connections to the Netatmo API host at startup, so the first requests do not pay for the TCP and TLS
+ * handshakes. The pings go through the OAuth client, which shares its connection pool with the API client,
+ * and use neither the quota nor an access token. Startup does not wait for them.
+ */
+@ApplicationScoped
+public class NetatmoConnectionWarmer {
+
+    private static final Logger logger = Logger.getLogger(NetatmoConnectionWarmer.class.getName());
+
+    private static final long TIMEOUT_SECONDS = 10;
+
+    @Inject
+    @RestClient
+    NetatmoOAuthClient oauthClient;
+
+    @ConfigProperty(name = "netatmo.http.prewarm-connections", defaultValue = "2")
+    int prewarmConnections;
+
+    void onStart(@Observes StartupEvent event) {
+        if (prewarmConnections <= 0) {
+            return;
+        }
+        long started = System.nanoTime();
+        // Concurrent pings, so each needs a connection of its own over HTTP/1.1
+        CompletableFuture<?>[] pings = new CompletableFuture<?>[prewarmConnections];
+        for (int i = 0; i < prewarmConnections; i++) {
+            pings[i] = oauthClient.ping().toCompletableFuture()
+                .handle((response, error) -> {
+                    if (response != null) {
+                        response.close();
+                    }
+                    // Any answer, even an error status, leaves an open connection in the pool
+                    return error == null || unwrap(error) instanceof WebApplicationException;
+                });
+        }
+        CompletableFuture.allOf(pings).orTimeout(TIMEOUT_SECONDS, TimeUnit.SECONDS).whenComplete((ignored, error) -> {
+            long opened = 0;
+            for (CompletableFuture<?> ping : pings) {
+                if (ping.isDone() && Boolean.TRUE.equals(ping.getNow(null))) {
+                    opened++;
+                }
+            }
+            logger.info("Pre-warmed " + opened + " of " + prewarmConnections + " Netatmo connections in "
+                + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started) + "ms");
+        });
+    }
+
+    private static Throwable unwrap(Throwable error) {
+        return error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+    }
+}
@@ -0,0 +1,123 @@
+package com.kevindubois.service;
+
+import jakarta.enterprise.context.ApplicationScoped;
+
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Tracks the Netatmo API rate limits (per 10 seconds and per hour) based on the calls actually made.
+ * Netatmo applies the limits per user, so every account has a budget of its own.
+ * Background jobs use it to stay within their share of the quota, and no call of an account is made once its whole
+ * quota is used.
+ */
+@ApplicationScoped
+public class NetatmoQuota {
+
+    private static final long TEN_SECONDS_MS = 10_000;
+    private static final long ONE_HOUR_MS = 3_600_000;
+    private static final Deque<Long> EMPTY = new ArrayDeque<>();
+
+    @ConfigProperty(name = "netatmo.quota.requests-per-10s", defaultValue = "50")
+    int requestsPer10Seconds;
+
+    @ConfigProperty(name = "netatmo.quota.requests-per-hour", defaultValue = "500")
+    int requestsPerHour;
+
+    // Timestamps of the calls made during the last hour per account, oldest first
+    private final Map<String, Deque<Long>> calls = new HashMap<>();
+
+    /**
+     * Record a call to the Netatmo API for the account of the current work
+     */
+    public synchronized void record() {
+        long now = System.currentTimeMillis();
+        Deque<Long> accountCalls = calls.computeIfAbsent(AccountContext.current(), account -> new ArrayDeque<>());
+        prune(accountCalls, now);
+        accountCalls.addLast(now);
+    }
+
+    /**
+     * Check whether a caller limited to a share of the quota of the current account may make another call
+     * @param share The share of both limits the caller may use, between 0 and 1
+     * @return true if the call fits within the share
+     */
+    public synchronized boolean hasCapacity(double share) {
+        long now = System.currentTimeMillis();
+        Deque<Long> accountCalls = calls.getOrDefault(AccountContext.current(), EMPTY);
+        prune(accountCalls, now);
+        return countSince(accountCalls, now - TEN_SECONDS_MS) < requestsPer10Seconds * share
+            && accountCalls.size() < requestsPerHour * share;
+    }
+
+    /**
+     * Get the time until the current account may make another call within its whole quota
+     * @return The time in ms, 0 if it may call now
+     */
+    public synchronized long millisUntilCapacity() {
+        long now = System.currentTimeMillis();
+        Deque<Long> accountCalls = calls.getOrDefault(AccountContext.current(), EMPTY);
+        prune(accountCalls, now);
+        long wait = 0;
+        int recent = countSince(accountCalls, now - TEN_SECONDS_MS);
+        if (recent >= Math.max(1, requestsPer10Seconds)) {
+            // The call that frees a slot is the one that started the full window
+            wait = nthNewest(accountCalls, Math.max(1, requestsPer10Seconds)) + TEN_SECONDS_MS - now;
+        }
+        if (accountCalls.size() >= Math.max(1, requestsPerHour)) {
+            wait = Math.max(wait, nthNewest(accountCalls, Math.max(1, requestsPerHour)) + ONE_HOUR_MS - now);
+        }
+        return Math.max(0, wait);
+    }
+
+    private static long nthNewest(Deque<Long> calls, int n) {
+        var iterator = calls.descendingIterator();
+        long timestamp = 0;
+        for (int i = 0; i < n && iterator.hasNext(); i++) {
+            timestamp = iterator.next();
+        }
+        return timestamp;
+    }
+
+    /**
+     * Get the number of calls made during the last hour for the account of the current work
+     * @return The number of calls
+     */
+    public int callsLastHour() {
+        return callsLastHour(AccountContext.current());
+    }
+
+    /**
+     * Get the number of calls made during the last hour for an account
+     * @param account The account ID
+     * @return The number of calls
+     */
+    public synchronized int callsLastHour(String account) {
+        Deque<Long> accountCalls = calls.getOrDefault(account, EMPTY);
+        prune(accountCalls, System.currentTimeMillis());
+        return accountCalls.size();
+    }
+
+    public int getRequestsPerHour() {
+        return requestsPerHour;
+    }
+
+    private static int countSince(Deque<Long> calls, long since) {
+        int count = 0;
+        var iterator = calls.descendingIterator();
+        while (iterator.hasNext() && iterator.next() >= since) {
+            count++;
+        }
+        return count;
+    }
+
+    private static void prune(Deque<Long> calls, long now) {
+        while (!calls.isEmpty() && calls.peekFirst() < now - ONE_HOUR_MS) {
+            calls.removeFirst();
+        }
+    }
+}
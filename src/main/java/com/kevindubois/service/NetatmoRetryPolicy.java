@@ -0,0 +1,315 @@
+package com.kevindubois.service;
+
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import jakarta.ws.rs.WebApplicationException;
+import jakarta.ws.rs.core.HttpHeaders;
+import jakarta.ws.rs.core.Response;
+
+import com.kevindubois.exception.WeatherApiException;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Retries Netatmo calls that failed for a transient reason: 5xx responses, timeouts, connection errors and the
+ * rate limit (429, or 403 with Netatmo error code 26). Retries wait an exponential backoff with full jitter, or
+ * longer if Netatmo sent a Retry-After, and are only made within the request deadline and a retry budget that
+ * grows with every call, so retries cannot multiply the load when Netatmo is struggling.
+ * A rejected access token (401, or 403 with error code 2 or 3) is refreshed and the call replayed once.
+ * Stations and measurement calls have their own number of attempts and backoff.
+ */
+@ApplicationScoped
+public class NetatmoRetryPolicy {
+
+    private static final Logger logger = Logger.getLogger(NetatmoRetryPolicy.class.getName());
+
+    // Unused retries saved up for a burst of failures, the budget starts full
+    private static final double MAX_TOKENS = 10;
+
+    // Netatmo error codes
+    private static final int INVALID_TOKEN = 2;
+    private static final int TOKEN_EXPIRED = 3;
+    private static final int USER_USAGE_REACHED = 26;
+    private static final Pattern ERROR_CODE = Pattern.compile("\"code\"\\s*:\\s*(\\d+)");
+
+    @Inject
+    NetatmoAuthService authService;
+
+    @ConfigProperty(name = "netatmo.retry.stations.max-attempts", defaultValue = "3")
+    int stationsMaxAttempts;
+
+    @ConfigProperty(name = "netatmo.retry.stations.initial-backoff", defaultValue = "200ms")
+    Duration stationsInitialBackoff;
+
+    @ConfigProperty(name = "netatmo.retry.stations.max-backoff", defaultValue = "2s")
+    Duration stationsMaxBackoff;
+
+    @ConfigProperty(name = "netatmo.retry.measure.max-attempts", defaultValue = "3")
+    int measureMaxAttempts;
+
+    @ConfigProperty(name = "netatmo.retry.measure.initial-backoff", defaultValue = "500ms")
+    Duration measureInitialBackoff;
+
+    @ConfigProperty(name = "netatmo.retry.measure.max-backoff", defaultValue = "5s")
+    Duration measureMaxBackoff;
+
+    // A longer Retry-After is not waited for, the call fails right away
+    @ConfigProperty(name = "netatmo.retry.max-retry-after", defaultValue = "10s")
+    Duration maxRetryAfter;
+
+    @ConfigProperty(name = "netatmo.retry.budget", defaultValue = "0.1")
+    double budget;
+
+    /**
+     * Type of Netatmo endpoint, retried with its own settings
+     */
+    public enum EndpointType { STATIONS, MEASURE }
+
+    private enum FailureKind { TRANSIENT, RATE_LIMITED, TOKEN_REJECTED, PERMANENT }
+
+    private record Failure(FailureKind kind, long retryAfterMillis) {}
+
+    /**
+     * Retry counters of an endpoint type
+     */
+    private static final class Stats {
+        final AtomicLong calls = new AtomicLong();
+        final AtomicLong retries = new AtomicLong();
+        final AtomicLong recovered = new AtomicLong();
+        final AtomicLong failedAfterRetry = new AtomicLong();
+        final AtomicLong budgetExhausted = new AtomicLong();
+        final AtomicLong tokenRefreshes = new AtomicLong();
+        final AtomicLong backoffNanos = new AtomicLong();
+        final AtomicLong retryNanos = new AtomicLong();
+    }
+
+    private final Map<EndpointType, Stats> stats = new ConcurrentHashMap<>();
+    private double tokens = MAX_TOKENS;
+
+    /**
+     * Make a Netatmo call, retrying it after transient failures
+     * @param operation The name of the API operation
+     * @param call The call
+     * @return The result of the first attempt that succeeds
+     * @throws WeatherApiException with status 429 if Netatmo still reports its rate limit after the retries
+     * @throws CancellationException if the thread was interrupted while waiting to retry
+     */
+    public <T> T execute(String operation, Callable<T> call) throws Exception {
+        EndpointType type = endpointType(operation);
+        Stats typeStats = stats.computeIfAbsent(type, key -> new Stats());
+        typeStats.calls.incrementAndGet();
+        deposit();
+
+        int maxAttempts = Math.max(1, type == EndpointType.MEASURE ? measureMaxAttempts : stationsMaxAttempts);
+        long firstFailure = 0;
+        boolean replayed = false;
+        int attempt = 0;
+        while (true) {
+            attempt++;
+            Instant started = Instant.now();
+            try {
+                T result = call.call();
+                if (firstFailure != 0) {
+                    typeStats.recovered.incrementAndGet();
+                    typeStats.retryNanos.addAndGet(System.nanoTime() - firstFailure);
+                }
+                return result;
+            } catch (Exception e) {
+                Failure failure = classify(e);
+                if (failure.kind() == FailureKind.TOKEN_REJECTED && !replayed && authService != null) {
+                    // Replayed right away with a new token, this is not a retry of a failing call
+                    replayed = true;
+                    attempt--;
+                    typeStats.tokenRefreshes.incrementAndGet();
+                    authService.invalidateAccessToken(started);
+                    continue;
+                }
+                if (failure.kind() != FailureKind.TRANSIENT && failure.kind() != FailureKind.RATE_LIMITED) {
+                    throw giveUp(e, failure, typeStats, attempt, firstFailure);
+                }
+                if (firstFailure == 0) {
+                    firstFailure = System.nanoTime();
+                }
+
+                long delay = backoff(type, attempt);
+                if (failure.retryAfterMillis() >= 0) {
+                    delay = Math.max(delay, failure.retryAfterMillis());
+                }
+                if (attempt >= maxAttempts
+                    || failure.retryAfterMillis() > maxRetryAfter.toMillis()
+                    || delay >= RequestDeadline.remainingMillis()) {
+                    throw giveUp(e, failure, typeStats, attempt, firstFailure);
+                }
+                if (!tryWithdraw()) {
+                    typeStats.budgetExhausted.incrementAndGet();
+                    throw giveUp(e, failure, typeStats, attempt, firstFailure);
+                }
+
+                logger.fine("Retrying " + operation + " in " + delay + "ms after: " + e.getMessage());
+                typeStats.retries.incrementAndGet();
+                typeStats.backoffNanos.addAndGet(TimeUnit.MILLISECONDS.toNanos(delay));
+                try {
+                    Thread.sleep(delay);
+                } catch (InterruptedException interrupted) {
+                    Thread.currentThread().interrupt();
+                    throw new CancellationException("Interrupted while waiting to retry a Netatmo call");
+                }
+            }
+        }
+    }
+
+    private Exception giveUp(Exception e, Failure failure, Stats typeStats, int attempt, long firstFailure) {
+        if (attempt > 1) {
+            typeStats.failedAfterRetry.incrementAndGet();
+            typeStats.retryNanos.addAndGet(System.nanoTime() - firstFailure);
+        }
+        if (failure.kind() == FailureKind.RATE_LIMITED) {
+            return new WeatherApiException("Netatmo rate limit reached, try again later", e,
+                Response.Status.TOO_MANY_REQUESTS);
+        }
+        return e;
+    }
+
+    static EndpointType endpointType(String operation) {
+        return "getHistoricalData".equals(operation) ? EndpointType.MEASURE : EndpointType.STATIONS;
+    }
+
+    /**
+     * Full jitter: a random delay up to the exponential backoff of the attempt
+     */
+    private long backoff(EndpointType type, int attempt) {
+        Duration initial = type == EndpointType.MEASURE ? measureInitialBackoff : stationsInitialBackoff;
+        Duration max = type == EndpointType.MEASURE ? measureMaxBackoff : stationsMaxBackoff;
+        long cap = Math.min(max.toMillis(), initial.toMillis() << Math.min(attempt - 1, 20));
+        return cap > 0 ? ThreadLocalRandom.current().nextLong(cap + 1) : 0;
+    }
+
+    private static Failure classify(Exception e) {
+        if (e instanceof WebApplicationException webException && webException.getResponse() != null) {
+            Response response = webException.getResponse();
+            int status = response.getStatus();
+            if (status == 401) {
+                return new Failure(FailureKind.TOKEN_REJECTED, -1);
+            }
+            if (status == 429) {
+                return new Failure(FailureKind.RATE_LIMITED, retryAfterMillis(response));
+            }
+            if (status == 403) {
+                int code = errorCode(response);
+                if (code == USER_USAGE_REACHED) {
+                    return new Failure(FailureKind.RATE_LIMITED, retryAfterMillis(response));
+                }
+                if (code == INVALID_TOKEN || code == TOKEN_EXPIRED) {
+                    return new Failure(FailureKind.TOKEN_REJECTED, -1);
+                }
+            }
+            if (status >= 500) {
+                return new Failure(FailureKind.TRANSIENT, retryAfterMillis(response));
+            }
+            return new Failure(FailureKind.PERMANENT, -1);
+        }
+        return new Failure(NetatmoCircuitBreaker.isOutage(e) ? FailureKind.TRANSIENT : FailureKind.PERMANENT, -1);
+    }
+
+    /**
+     * Whether a failure tells that Netatmo is overloaded: a timeout, a connection error, a 5xx, or the rate limit,
+     * which Netatmo reports as 429 or as 403 with error code 26
+     */
+    static boolean isOverload(Exception e) {
+        FailureKind kind = classify(e).kind();
+        return kind == FailureKind.TRANSIENT || kind == FailureKind.RATE_LIMITED;
+    }
+
+    /**
+     * Get the Netatmo error code of an error response
+     * @return The code, or -1 if the body has none
+     */
+    private static int errorCode(Response response) {
+        try {
+            response.bufferEntity();
+            String body = response.readEntity(String.class);
+            Matcher matcher = body != null ? ERROR_CODE.matcher(body) : null;
+            return matcher != null && matcher.find() ? Integer.parseInt(matcher.group(1)) : -1;
+        } catch (RuntimeException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Get the wait requested by a Retry-After header, in seconds or as an HTTP date
+     * @return The wait in milliseconds, or -1 if there is no valid header
+     */
+    static long retryAfterMillis(Response response) {
+        String value = response.getHeaderString(HttpHeaders.RETRY_AFTER);
+        if (value == null || value.isBlank()) {
+            return -1;
+        }
+        try {
+            return Math.max(0, TimeUnit.SECONDS.toMillis(Long.parseLong(value.trim())));
+        } catch (NumberFormatException e) {
+            try {
+                ZonedDateTime date = ZonedDateTime.parse(value.trim(), DateTimeFormatter.RFC_1123_DATE_TIME.withLocale(Locale.US));
+                return Math.max(0, date.toInstant().toEpochMilli() - System.currentTimeMillis());
+            } catch (RuntimeException invalid) {
+                return -1;
+            }
+        }
+    }
+
+    private synchronized void deposit() {
+        tokens = Math.min(MAX_TOKENS, tokens + budget);
+    }
+
+    private synchronized boolean tryWithdraw() {
+        if (tokens < 1) {
+            return false;
+        }
+        tokens--;
+        return true;
+    }
+
+    /**
+     * Get the retry counters of every endpoint type
+     * @return Map per endpoint type with calls, retries, calls recovered by a retry and calls that failed anyway,
+     * retries refused by the budget, token refreshes, and the time spent on retries in ms
+     */
+    public Map<String, Object> getStatus() {
+        Map<String, Object> status = new LinkedHashMap<>();
+        for (EndpointType type : EndpointType.values()) {
+            Stats typeStats = stats.getOrDefault(type, new Stats());
+            long recovered = typeStats.recovered.get();
+            long retryMs = TimeUnit.NANOSECONDS.toMillis(typeStats.retryNanos.get());
+            Map<String, Object> typeStatus = new LinkedHashMap<>();
+            typeStatus.put("calls", typeStats.calls.get());
+            typeStatus.put("retries", typeStats.retries.get());
+            typeStatus.put("recovered", recovered);
+            typeStatus.put("failedAfterRetry", typeStats.failedAfterRetry.get());
+            typeStatus.put("budgetExhausted", typeStats.budgetExhausted.get());
+            typeStatus.put("tokenRefreshes", typeStats.tokenRefreshes.get());
+            typeStatus.put("backoffMs", TimeUnit.NANOSECONDS.toMillis(typeStats.backoffNanos.get()));
+            typeStatus.put("retryMs", retryMs);
+            typeStatus.put("retryMsPerRecoveredCall", recovered > 0 ? retryMs / recovered : 0);
+            status.put(type.name().toLowerCase(Locale.ROOT), typeStatus);
+        }
+        synchronized (this) {
+            status.put("budgetTokens", tokens);
+        }
+        return status;
+    }
+}
@@ -0,0 +1,94 @@
+package com.kevindubois.service;
+
+import jakarta.ws.rs.core.Response;
+
+import com.kevindubois.exception.WeatherApiException;
+import io.vertx.ext.web.RoutingContext;
+
+import java.util.concurrent.Callable;
+
+/**
+ * The time by which the current work must be done, so Netatmo calls made for a request stop waiting once the
+ * client has given up. Like the account, it is carried in the routing context of HTTP and MCP requests and
+ * on the thread for work handed to executors. Background jobs have no deadline.
+ */
+public final class RequestDeadline {
+
+    // Request header shortening the deadline of an HTTP or MCP request, in milliseconds
+    public static final String HEADER = "X-Request-Timeout";
+
+    public static final long NONE = Long.MAX_VALUE;
+
+    private static final String LOCAL_KEY = "netatmo.deadline";
+    private static final String REQUESTED_KEY = "netatmo.deadline.requested";
+    private static final ThreadLocal<Long> CURRENT = new ThreadLocal<>();
+
+    private RequestDeadline() {
+    }
+
+    /**
+     * Get the deadline of the current work
+     * @return The deadline in milliseconds since epoch, NONE if there is none
+     */
+    public static long current() {
+        Long deadline = CURRENT.get();
+        if (deadline != null) {
+            return deadline;
+        }
+        Long requestDeadline = AccountContext.fromRequest(LOCAL_KEY);
+        return requestDeadline != null ? requestDeadline : NONE;
+    }
+
+    /**
+     * Get the time left until the deadline of the current work
+     * @return The remaining milliseconds, 0 if the deadline has passed, Long.MAX_VALUE if there is none
+     */
+    public static long remainingMillis() {
+        long deadline = current();
+        return deadline == NONE ? Long.MAX_VALUE : Math.max(0, deadline - System.currentTimeMillis());
+    }
+
+    /**
+     * Set the deadline of an HTTP request
+     * @param deadline The deadline of the request
+     * @param requested The deadline the client asked for with the header, NONE if it did not
+     */
+    public static void setForRequest(RoutingContext request, long deadline, long requested) {
+        request.put(LOCAL_KEY, deadline);
+        request.put(REQUESTED_KEY, requested);
+    }
+
+    /**
+     * Run a task that reads a whole date range, which may take longer than the request timeout,
+     * within the deadline the client asked for only
+     */
+    public static <T> T callUnbounded(Callable<T> task) throws Exception {
+        Long requested = AccountContext.fromRequest(REQUESTED_KEY);
+        return callWithin(requested != null ? requested : NONE, task);
+    }
+
+    /**
+     * Run a task with a deadline on the current thread
+     */
+    public static <T> T callWithin(long deadline, Callable<T> task) throws Exception {
+        Long previous = CURRENT.get();
+        CURRENT.set(deadline);
+        try {
+            return task.call();
+        } finally {
+            if (previous != null) {
+                CURRENT.set(previous);
+            } else {
+                CURRENT.remove();
+            }
+        }
+    }
+
+    /**
+     * Get the error for work that ran past its deadline
+     */
+    public static WeatherApiException exceeded() {
+        return new WeatherApiException("Request deadline exceeded while waiting for Netatmo",
+            Response.Status.GATEWAY_TIMEOUT);
+    }
+}
@@ -0,0 +1,147 @@
+package com.kevindubois.service;
+
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import jakarta.ws.rs.core.EntityTag;
+
+import com.kevindubois.dto.ApiResponse;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Cache of encoded responses for the hot read endpoints, keyed by the stations snapshot version.
+ * The compact JSON bytes served over REST, their gzip-compressed form and the text returned by the MCP tools
+ * are kept, so unchanged data is returned without any serialization or compression work.
+ * Keys are partitioned by the account of the current request, like the snapshot versions they are stored for.
+ */
+@ApplicationScoped
+public class ResponseCache {
+
+    // Cache keys
+    public static final String CURRENT_WEATHER_KEY = "current_weather";
+    public static final String ALL_CURRENT_WEATHER_KEY = "current_weather_all";
+    public static final String DEVICE_LIST_KEY = "device_list";
+    public static final String STATIONS_KEY = "stations";
+
+    // Distinguishes the snapshot versions of this process from those of earlier runs, which start at 1 again
+    private static final String INSTANCE_ID = Long.toString(System.currentTimeMillis(), 36);
+
+    @Inject
+    ResponseSerializer responseSerializer;
+
+    @Inject
+    ResponseCompressor responseCompressor;
+
+    /**
+     * Encoded forms of a response for a single snapshot version, any form may still be missing
+     */
+    record Entry(long version, byte[] json, String text, byte[] gzipJson) {}
+
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+
+    /**
+     * Get the strong entity tag of a response, which changes whenever a module reports a new reading
+     * @param key The cache key
+     * @param version The current snapshot version
+     * @return The entity tag
+     */
+    public EntityTag etag(String key, long version) {
+        return new EntityTag(AccountContext.partition(key) + "-" + INSTANCE_ID + "-" + version);
+    }
+
+    /**
+     * Get the strong entity tag of the gzip-compressed response, whose bytes differ from the JSON ones
+     * @param key The cache key
+     * @param version The current snapshot version
+     * @return The entity tag
+     */
+    public EntityTag gzipEtag(String key, long version) {
+        return new EntityTag(etag(key, version).getValue() + "-gzip");
+    }
+
+    /**
+     * Get the cached JSON bytes of a response
+     * @param key The cache key
+     * @param version The current snapshot version
+     * @return The bytes, or null if they are missing or were encoded for another version
+     */
+    public byte[] getJson(String key, long version) {
+        Entry entry = entries.get(AccountContext.partition(key));
+        return entry != null && entry.version() == version ? entry.json() : null;
+    }
+
+    /**
+     * Get the cached MCP text of a response
+     * @param key The cache key
+     * @param version The current snapshot version
+     * @return The text, or null if it is missing or was encoded for another version
+     */
+    public String getText(String key, long version) {
+        Entry entry = entries.get(AccountContext.partition(key));
+        return entry != null && entry.version() == version ? entry.text() : null;
+    }
+
+    /**
+     * Get the gzip-compressed JSON bytes of a response, compressing and caching them on first use
+     * @param key The cache key
+     * @param version The current snapshot version
+     * @param json The JSON bytes of this version
+     * @return The compressed bytes
+     */
+    public byte[] getGzipJson(String key, long version, byte[] json) {
+        Entry entry = entries.get(AccountContext.partition(key));
+        if (entry != null && entry.version() == version && entry.gzipJson() != null) {
+            return entry.gzipJson();
+        }
+        byte[] gzipJson = responseCompressor.gzip(json);
+        entries.compute(AccountContext.partition(key), (k, existing) -> merge(existing, new Entry(version, json, null, gzipJson)));
+        return gzipJson;
+    }
+
+    /**
+     * Encode a response as compact JSON and cache the bytes
+     * @return The encoded bytes
+     */
+    public byte[] putJson(String key, long version, ApiResponse<?> response) throws Exception {
+        byte[] json = responseSerializer.toBytes(response, ResponseSerializer.Profile.COMPACT);
+        entries.compute(AccountContext.partition(key), (k, entry) -> merge(entry, new Entry(version, json, null, null)));
+        return json;
+    }
+
+    /**
+     * Encode a response as MCP text and cache it
+     * @return The encoded text
+     */
+    public String putText(String key, long version, ApiResponse<?> response) {
+        String text = responseSerializer.toTextContent(response).text();
+        entries.compute(AccountContext.partition(key), (k, entry) -> merge(entry, new Entry(version, null, text, null)));
+        return text;
+    }
+
+    /**
+     * Get the number of cached responses of an account
+     */
+    public long countEntries(String account) {
+        return entries.keySet().stream().filter(key -> account.equals(AccountContext.accountOf(key))).count();
+    }
+
+    /**
+     * Entries are replaced as a whole, so readers never see forms of different versions.
+     * An entry for a newer version is never replaced by an older one.
+     */
+    private static Entry merge(Entry existing, Entry update) {
+        if (existing == null || existing.version() < update.version()) {
+            return update;
+        }
+        if (existing.version() > update.version()) {
+            return existing;
+        }
+        return new Entry(
+            update.version(),
+            update.json() != null ? update.json() : existing.json(),
+            update.text() != null ? update.text() : existing.text(),
+            update.gzipJson() != null ? update.gzipJson() : existing.gzipJson()
+        );
+    }
+}
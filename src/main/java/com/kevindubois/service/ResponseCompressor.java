@@ -0,0 +1,104 @@
+package com.kevindubois.service;
+
+import jakarta.enterprise.context.ApplicationScoped;
+
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Gzip compression of responses for clients that accept it.
+ * Small responses are sent as they are, since compressing them costs more time than it saves on the wire.
+ */
+@ApplicationScoped
+public class ResponseCompressor {
+
+    public static final String GZIP = "gzip";
+
+    @ConfigProperty(name = "netatmo.compression.enabled", defaultValue = "true")
+    boolean enabled;
+
+    @ConfigProperty(name = "netatmo.compression.min-size", defaultValue = "1024")
+    int minSize;
+
+    @ConfigProperty(name = "netatmo.compression.level", defaultValue = "6")
+    int level;
+
+    /**
+     * Check whether an Accept-Encoding header allows a gzip response
+     * @param acceptEncoding The header value, may be null
+     * @return true if gzip is accepted and compression is enabled
+     */
+    public boolean acceptsGzip(String acceptEncoding) {
+        if (!enabled || acceptEncoding == null) {
+            return false;
+        }
+        boolean accepted = false;
+        for (String coding : acceptEncoding.split(",")) {
+            String[] parts = coding.trim().split(";");
+            String name = parts[0].trim();
+            if (!GZIP.equalsIgnoreCase(name) && !"*".equals(name)) {
+                continue;
+            }
+            boolean refused = false;
+            for (int i = 1; i < parts.length; i++) {
+                String parameter = parts[i].trim().replace(" ", "");
+                if (parameter.startsWith("q=")) {
+                    try {
+                        refused = Double.parseDouble(parameter.substring(2)) == 0;
+                    } catch (NumberFormatException e) {
+                        // Ignore malformed quality values
+                    }
+                }
+            }
+            // An explicit gzip entry takes precedence over the wildcard
+            if (GZIP.equalsIgnoreCase(name)) {
+                return !refused;
+            }
+            accepted = !refused;
+        }
+        return accepted;
+    }
+
+    /**
+     * Check whether a response of the given size is worth compressing
+     */
+    public boolean shouldCompress(long size) {
+        return size >= minSize;
+    }
+
+    public int getMinSize() {
+        return minSize;
+    }
+
+    /**
+     * Compress bytes with gzip
+     */
+    public byte[] gzip(byte[] data) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(Math.max(64, data.length / 4));
+        try (OutputStream gzip = newGzipStream(out)) {
+            gzip.write(data);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Create a gzip stream using the configured compression level
+     */
+    public GZIPOutputStream newGzipStream(OutputStream out) throws IOException {
+        int compressionLevel = level >= Deflater.BEST_SPEED && level <= Deflater.BEST_COMPRESSION
+            ? level : Deflater.DEFAULT_COMPRESSION;
+        return new GZIPOutputStream(out, 8192) {
+            {
+                def.setLevel(compressionLevel);
+            }
+        };
+    }
+}
@@ -0,0 +1,162 @@
+package com.kevindubois.service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.enterprise.event.Observes;
+import jakarta.inject.Inject;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.StreamWriteFeature;
+import com.fasterxml.jackson.core.io.SerializedString;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.cbor.CBORGenerator;
+import com.kevindubois.dto.ApiResponse;
+import com.kevindubois.dto.CurrentWeatherData;
+import com.kevindubois.dto.DeviceInfo;
+import io.quarkiverse.mcp.server.TextContent;
+import io.quarkus.runtime.StartupEvent;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Logger;
+
+/**
+ * Shared JSON serialization for REST and MCP responses.
+ * One pre-configured writer per output profile is created from the application's ObjectMapper and
+ * warmed up at startup, so no mapper or serializer is built on the request path. Jackson recycles its
+ * internal buffers between calls, and writes to a stream go straight to it without an intermediate String.
+ */
+@ApplicationScoped
+public class ResponseSerializer {
+
+    private static final Logger logger = Logger.getLogger(ResponseSerializer.class.getName());
+
+    /**
+     * Output profiles
+     */
+    public enum Profile {
+        COMPACT,
+        PRETTY
+    }
+
+    @Inject
+    ObjectMapper objectMapper;
+
+    @ConfigProperty(name = "netatmo.mcp.output-profile", defaultValue = "compact")
+    String mcpOutputProfile;
+
+    private ObjectWriter compactWriter;
+    private ObjectWriter prettyWriter;
+    // Writers for streams owned by the caller, which must not be closed after writing
+    private ObjectWriter compactStreamWriter;
+    private ObjectWriter prettyStreamWriter;
+    private final CBORFactory cborFactory = CBORFactory.builder()
+        .disable(StreamWriteFeature.AUTO_CLOSE_TARGET)
+        .build();
+    // Writer for values written one by one into a streamed document, flushing is left to the output buffer
+    private ObjectWriter generatorWriter;
+
+    @PostConstruct
+    void init() {
+        compactWriter = objectMapper.writer();
+        prettyWriter = objectMapper.writerWithDefaultPrettyPrinter();
+        compactStreamWriter = compactWriter.without(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+        prettyStreamWriter = prettyWriter.without(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+        generatorWriter = compactStreamWriter.without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+    }
+
+    void onStart(@Observes StartupEvent event) {
+        warmUp();
+    }
+
+    /**
+     * Serialize representative responses once, so Jackson builds and caches their serializers
+     */
+    void warmUp() {
+        try {
+            Object[] samples = {
+                ApiResponse.success(new CurrentWeatherData(), "warm-up"),
+                ApiResponse.success(List.of(new DeviceInfo()), "warm-up"),
+                ApiResponse.success(Map.of("values", List.of(Map.of("timestamp", "", "indoorTemperature", 0.0))), "warm-up")
+            };
+            for (Profile profile : Profile.values()) {
+                for (Object sample : samples) {
+                    writer(profile).writeValueAsBytes(sample);
+                }
+            }
+        } catch (Exception e) {
+            logger.warning("Could not warm up JSON serializers: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Get the shared writer for an output profile
+     */
+    public ObjectWriter writer(Profile profile) {
+        return profile == Profile.PRETTY ? prettyWriter : compactWriter;
+    }
+
+    /**
+     * Write an object as JSON directly to a stream, without closing it
+     */
+    public void writeTo(OutputStream out, Object value, Profile profile) throws IOException {
+        (profile == Profile.PRETTY ? prettyStreamWriter : compactStreamWriter).writeValue(out, value);
+    }
+
+    /**
+     * Create a compact JSON generator for a document written piece by piece to a stream, closing it does not close the stream
+     */
+    public JsonGenerator createGenerator(OutputStream out) throws IOException {
+        return compactStreamWriter.createGenerator(out);
+    }
+
+    /**
+     * Create a compact JSON generator that writes every value on its own line (NDJSON), closing it does not close the stream
+     */
+    public JsonGenerator createLineGenerator(OutputStream out) throws IOException {
+        JsonGenerator generator = createGenerator(out);
+        generator.setRootValueSeparator(new SerializedString("\n"));
+        return generator;
+    }
+
+    /**
+     * Create a CBOR generator for a binary document written to a stream, closing it does not close the stream
+     */
+    public CBORGenerator createCborGenerator(OutputStream out) throws IOException {
+        return cborFactory.createGenerator(out);
+    }
+
+    /**
+     * Write a value into a streamed document without flushing the generator
+     */
+    public void writeValue(JsonGenerator generator, Object value) throws IOException {
+        generatorWriter.writeValue(generator, value);
+    }
+
+    /**
+     * Serialize an object to JSON bytes
+     */
+    public byte[] toBytes(Object value, Profile profile) throws IOException {
+        return writer(profile).writeValueAsBytes(value);
+    }
+
+    /**
+     * Create the MCP text content of a response using the configured MCP output profile
+     */
+    public TextContent toTextContent(ApiResponse<?> response) {
+        return response.toTextContent(writer(getMcpProfile()));
+    }
+
+    /**
+     * Get the output profile used for MCP tool responses
+     */
+    public Profile getMcpProfile() {
+        return "pretty".equalsIgnoreCase(mcpOutputProfile) ? Profile.PRETTY : Profile.COMPACT;
+    }
+}
@@ -0,0 +1,259 @@
+package com.kevindubois.service;
+
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.enterprise.event.Event;
+import jakarta.inject.Inject;
+import jakarta.ws.rs.core.Response;
+
+import com.kevindubois.client.NetatmoApiClient;
+import com.kevindubois.dto.NetatmoStationsDataResponse;
+import com.kevindubois.dto.NetatmoStationsDataResponse.DashboardData;
+import com.kevindubois.dto.StationsSnapshot;
+import com.kevindubois.exception.WeatherApiException;
+import com.kevindubois.util.ReadingRingBuffer;
+import io.quarkus.scheduler.Scheduled;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.eclipse.microprofile.rest.client.inject.RestClient;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.logging.Logger;
+
+/**
+ * Polls the stations data once per sensor cadence and keeps the latest snapshot
+ * plus a short history of dashboard readings per module in memory.
+ * The poller checks regularly, but only calls Netatmo once the next sensor reading is expected.
+ * New snapshots are published as CDI events, so push clients never cause extra upstream calls.
+ * Every account has a snapshot and readings of its own; events are fired for the account of the current work.
+ * An account has at most one stations data call in flight: requests finding the snapshot expired, and the poller,
+ * wait for that call instead of making their own.
+ */
+@ApplicationScoped
+public class StationPoller {
+
+    private static final Logger logger = Logger.getLogger(StationPoller.class.getName());
+
+    @Inject
+    @RestClient
+    NetatmoApiClient netatmoApiClient;
+
+    @Inject
+    CacheTtlPolicy cacheTtlPolicy;
+
+    @Inject
+    NetatmoAccounts accounts;
+
+    // Observers are notified whenever a snapshot with new readings is stored
+    @Inject
+    Event<StationsSnapshot> snapshotEvents;
+
+    @ConfigProperty(name = "netatmo.poller.enabled", defaultValue = "true")
+    boolean enabled;
+
+    @ConfigProperty(name = "netatmo.poller.history-size", defaultValue = "144")
+    int historySize;
+
+    /**
+     * Latest snapshot and recent readings of an account
+     */
+    private static final class AccountState {
+        // Ring buffers keyed by device or module ID
+        final Map<String, ReadingRingBuffer> buffers = new ConcurrentHashMap<>();
+        volatile StationsSnapshot snapshot;
+        // The stations data call in flight, guarded by the state
+        CompletableFuture<StationsSnapshot> refresh;
+    }
+
+    private final Map<String, AccountState> states = new ConcurrentHashMap<>();
+
+    @Scheduled(every = "{netatmo.poller.interval}", concurrentExecution = Scheduled.ConcurrentExecution.SKIP)
+    void poll() {
+        if (!enabled) {
+            return;
+        }
+        for (String account : accounts.ids()) {
+            AccountContext.runAs(account, this::pollAccount);
+        }
+    }
+
+    private void pollAccount() {
+        StationsSnapshot current = state().snapshot;
+        if (current != null && !current.isExpired()) {
+            return;
+        }
+        try {
+            logger.fine("Polling weather station dashboard data of account " + AccountContext.current());
+            refresh();
+        } catch (Exception e) {
+            logger.warning("Error polling weather station data of account " + AccountContext.current() + ": "
+                + e.getMessage());
+        }
+    }
+
+    private AccountState state() {
+        return states.computeIfAbsent(AccountContext.current(), account -> new AccountState());
+    }
+
+    /**
+     * Store a stations data response as the latest snapshot of the current account and record its readings
+     * @param response The stations data response
+     * @return The new snapshot
+     */
+    public StationsSnapshot ingest(NetatmoStationsDataResponse response) {
+        AccountState state = state();
+        synchronized (state) {
+            return ingest(state, response);
+        }
+    }
+
+    /**
+     * Fetch the stations data of the current account unless its snapshot is still fresh.
+     * If a fetch is already in flight for the account, its result is returned instead of calling Netatmo again.
+     * @return The fresh or newly fetched snapshot
+     * @throws WeatherApiException with status 504 if the request deadline passes while waiting for another fetch,
+     * or the exception the fetch failed with
+     */
+    public StationsSnapshot refresh() {
+        AccountState state = state();
+        CompletableFuture<StationsSnapshot> inFlight;
+        CompletableFuture<StationsSnapshot> refresh = new CompletableFuture<>();
+        synchronized (state) {
+            StationsSnapshot current = state.snapshot;
+            if (current != null && !current.isExpired()) {
+                return current;
+            }
+            inFlight = state.refresh;
+            if (inFlight == null) {
+                state.refresh = refresh;
+            }
+        }
+        if (inFlight != null) {
+            return await(inFlight);
+        }
+
+        // Fetched on the calling thread, within the deadline of its request
+        try {
+            NetatmoStationsDataResponse response = netatmoApiClient.getStationsData();
+            StationsSnapshot snapshot;
+            synchronized (state) {
+                snapshot = ingest(state, response);
+            }
+            refresh.complete(snapshot);
+            return snapshot;
+        } catch (Throwable e) {
+            // Checked exceptions can escape the client proxy too, the followers must not wait for them forever
+            refresh.completeExceptionally(e);
+            throw e;
+        } finally {
+            synchronized (state) {
+                if (state.refresh == refresh) {
+                    state.refresh = null;
+                }
+            }
+        }
+    }
+
+    private static StationsSnapshot await(CompletableFuture<StationsSnapshot> refresh) {
+        try {
+            long remaining = RequestDeadline.remainingMillis();
+            return remaining == Long.MAX_VALUE ? refresh.get() : refresh.get(remaining, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            throw RequestDeadline.exceeded();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CancellationException("Interrupted while waiting for the stations data");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw new WeatherApiException("Error fetching stations data: " + e.getCause().getMessage(), e.getCause(),
+                Response.Status.BAD_GATEWAY);
+        }
+    }
+
+    private StationsSnapshot ingest(AccountState state, NetatmoStationsDataResponse response) {
+        boolean changed = false;
+        long lastReading = 0;
+
+        if (response != null && response.getBody() != null && response.getBody().getDevices() != null) {
+            for (var device : response.getBody().getDevices()) {
+                changed |= record(state, device.getId(), device.getDashboardData());
+                lastReading = Math.max(lastReading, readingTime(device.getDashboardData()));
+                if (device.getModules() != null) {
+                    for (var module : device.getModules()) {
+                        changed |= record(state, module.getId(), module.getDashboardData());
+                        lastReading = Math.max(lastReading, readingTime(module.getDashboardData()));
+                    }
+                }
+            }
+        }
+
+        long now = System.currentTimeMillis();
+        StationsSnapshot previous = state.snapshot;
+        long version = previous == null ? 1 : previous.version() + (changed ? 1 : 0);
+        long lastModified = lastReading > 0 ? lastReading * 1000 : now;
+        StationsSnapshot snapshot = new StationsSnapshot(response, version, now,
+            cacheTtlPolicy.expiresAt(response, now), lastModified);
+        state.snapshot = snapshot;
+        if (snapshotEvents != null && (previous == null || previous.version() != version)) {
+            snapshotEvents.fire(snapshot);
+        }
+        return snapshot;
+    }
+
+    private static long readingTime(DashboardData data) {
+        return data != null && data.getTimeUtc() != null ? data.getTimeUtc() : 0;
+    }
+
+    private boolean record(AccountState state, String id, DashboardData data) {
+        if (id == null || data == null) {
+            return false;
+        }
+        return state.buffers.computeIfAbsent(id, key -> new ReadingRingBuffer(historySize)).add(data);
+    }
+
+    /**
+     * Get the latest snapshot if it can be served instead of calling Netatmo
+     * @return The snapshot, or null if there is none or a newer reading is expected upstream
+     */
+    public StationsSnapshot getFreshSnapshot() {
+        StationsSnapshot current = state().snapshot;
+        if (current == null || current.isExpired()) {
+            return null;
+        }
+        return current;
+    }
+
+    /**
+     * Get the latest snapshot regardless of its age
+     * @return The snapshot, or null if nothing has been fetched yet
+     */
+    public StationsSnapshot getSnapshot() {
+        return state().snapshot;
+    }
+
+    /**
+     * Get the readings recorded for a device or module, oldest first
+     * @param id The device or module ID
+     * @param maxPoints Maximum number of readings to return
+     * @return The readings, or null if nothing was recorded for this ID
+     */
+    public List<Map<String, Object>> getRecentReadings(String id, int maxPoints) {
+        ReadingRingBuffer buffer = state().buffers.get(id);
+        return buffer != null ? buffer.toList(maxPoints) : null;
+    }
+
+    /**
+     * Get the number of readings buffered for an account
+     */
+    public int countBufferedReadings(String account) {
+        AccountState state = states.get(account);
+        return state == null ? 0 : state.buffers.values().stream().mapToInt(ReadingRingBuffer::size).sum();
+    }
+}
@@ -1,18 +1,41 @@
 package com.kevindubois.service;
 
 import com.kevindubois.dto.*;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import jakarta.enterprise.context.ApplicationScoped;
 import jakarta.inject.Inject;
 import jakarta.ws.rs.core.Response;
 import com.kevindubois.client.NetatmoApiClient;
+import com.kevindubois.exception.NetatmoUnavailableException;
 import com.kevindubois.exception.WeatherApiException;
+import com.kevindubois.util.ColumnarSeries;
+import com.kevindubois.util.HistoricalCursor;
+import com.kevindubois.util.ModuleProfile;
+import com.kevindubois.util.WeatherStatistics;
 import com.kevindubois.util.WeatherUtil;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
 import org.eclipse.microprofile.rest.client.inject.RestClient;
 
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.logging.Logger;
 import java.util.stream.Collectors;
 
@@ -21,30 +44,39 @@ public class WeatherService {
 
     private static final Logger logger = Logger.getLogger(WeatherService.class.getName());
 
-    // Cache to reduce API calls
-    private Map<String, CacheEntry<?>> cache = new HashMap<>();
-    private static final long CACHE_TTL_MS = 60000; // 1 minute cache TTL
+    // Cache to reduce API calls, entries expire when the sensors are expected to report again
+    private final Map<String, CacheEntry<?>> cache = new ConcurrentHashMap<>();
+
+    // Last getmeasure responses, served as stale while the Netatmo API is unavailable
+    private final Map<String, HistoricalChunk> recentChunks = Collections.synchronizedMap(
+        new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, HistoricalChunk> eldest) {
+                return size() > fallbackChunks;
+            }
+        });
     
     // Default values
     public static final String DEFAULT_SCALE = "1hour";
     public static final String DEFAULT_SENSOR_TYPES = "Temperature,Humidity,Pressure";
     public static final int DEFAULT_DAYS_BACK = 7;
     public static final int DEFAULT_LIMIT = 1024;
+    public static final int DEFAULT_RECENT_LIMIT = 144;
     
     // Cache keys
     private static final String DEVICE_LIST_CACHE_KEY = "device_list";
     private static final String STATION_DATA_CACHE_PREFIX = "station_";
     
     /**
-     * Simple cache entry class to store data with timestamp
+     * Simple cache entry class to store data with its expiry time
      */
     private static class CacheEntry<T> {
         private final T data;
-        private final long timestamp;
+        private final long expiresAt;
         
-        public CacheEntry(T data) {
+        public CacheEntry(T data, long expiresAt) {
             this.data = data;
-            this.timestamp = System.currentTimeMillis();
+            this.expiresAt = expiresAt;
         }
         
         public T getData() {
@@ -52,7 +84,7 @@ public class WeatherService {
         }
         
         public boolean isValid() {
-            return (System.currentTimeMillis() - timestamp) < CACHE_TTL_MS;
+            return System.currentTimeMillis() < expiresAt;
         }
     }
 
@@ -60,28 +92,87 @@ public class WeatherService {
     @RestClient
     NetatmoApiClient netatmoApiClient;
 
+    @Inject
+    StationPoller stationPoller;
+
+    @Inject
+    HistoricalDataStore historicalDataStore;
+
+    @Inject
+    CacheTtlPolicy cacheTtlPolicy;
+
+    @ConfigProperty(name = "netatmo.circuit.fallback-chunks", defaultValue = "64")
+    int fallbackChunks;
+
+    // Module series and devices fetched in parallel, by all requests together
+    @ConfigProperty(name = "netatmo.fetch.threads", defaultValue = "16")
+    int fetchThreads;
+
+    // Module series of one window fetched at the same time, the others wait for one of them to finish
+    @ConfigProperty(name = "netatmo.fetch.module-parallelism", defaultValue = "2")
+    int moduleParallelism;
+
+    // Module and device fetches only wait on the Netatmo API. Tasks are wrapped with AccountContext.wrap,
+    // so they call Netatmo for the account of the request.
+    private ExecutorService fetchExecutor;
+
+    @PostConstruct
+    void init() {
+        AtomicInteger threads = new AtomicInteger();
+        int size = Math.max(1, fetchThreads);
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(size, size, 60, TimeUnit.SECONDS,
+            new LinkedBlockingQueue<>(), runnable -> {
+                Thread thread = new Thread(runnable, "netatmo-fetch-" + threads.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+        executor.allowCoreThreadTimeOut(true);
+        fetchExecutor = executor;
+    }
+
+    @PreDestroy
+    void shutdown() {
+        fetchExecutor.shutdownNow();
+    }
+
     /**
      * Fetch all weather stations data
      * @return The raw Netatmo stations data response
      * @throws WeatherApiException if there's an error fetching the data
      */
     public NetatmoStationsDataResponse fetchAllStations() {
+        return fetchAllStationsSnapshot().response();
+    }
+
+    /**
+     * Fetch all weather stations data as a snapshot, which tells whether it is stale
+     * @throws WeatherApiException if there's an error fetching the data
+     */
+    public StationsSnapshot fetchAllStationsSnapshot() {
         try {
             logger.info("Fetching all weather station data");
-            return netatmoApiClient.getStationsData();
+            return getStationsSnapshot();
         } catch (Exception e) {
             logger.severe("Error fetching all stations: " + e.getMessage());
             throw new WeatherApiException("Error fetching all stations: " + e.getMessage(),
-                                         e, Response.Status.BAD_GATEWAY);
+                                         e, upstreamStatus(e));
         }
     }
 
+    /**
+     * Netatmo being unavailable or too slow for the request deadline is reported as such, any other failure as a
+     * bad gateway
+     */
+    private static Response.Status upstreamStatus(Exception e) {
+        return e instanceof WeatherApiException apiException ? apiException.getStatus() : Response.Status.BAD_GATEWAY;
+    }
+
     /**
      * Fetch data for a specific weather station with caching
      */
     public NetatmoStationsDataResponse fetchStation(String deviceId) {
         // Check cache first
-        String cacheKey = STATION_DATA_CACHE_PREFIX + deviceId;
+        String cacheKey = AccountContext.partition(STATION_DATA_CACHE_PREFIX + deviceId);
         
         CacheEntry<NetatmoStationsDataResponse> entry = getCacheEntry(cacheKey, NetatmoStationsDataResponse.class);
         
@@ -94,16 +185,30 @@ public class WeatherService {
             NetatmoStationsDataResponse response = netatmoApiClient.getStationsData(deviceId);
             
             // Update cache
-            cache.put(cacheKey, new CacheEntry<>(response));
+            cache.put(cacheKey, new CacheEntry<>(response, cacheTtlPolicy.expiresAt(response, System.currentTimeMillis())));
             
             return response;
+        } catch (NetatmoUnavailableException e) {
+            if (entry != null) {
+                logger.info("Serving expired station data of " + deviceId + ": " + e.getMessage());
+                return entry.getData();
+            }
+            throw new WeatherApiException("Error fetching station " + deviceId + ": " + e.getMessage(),
+                                         e, Response.Status.SERVICE_UNAVAILABLE);
         } catch (Exception e) {
             logger.severe("Error fetching station " + deviceId + ": " + e.getMessage());
             throw new WeatherApiException("Error fetching station " + deviceId + ": " + e.getMessage(),
-                                         e, Response.Status.BAD_GATEWAY);
+                                         e, upstreamStatus(e));
         }
     }
 
+    /**
+     * Get the number of cache entries of an account
+     */
+    public long countCacheEntries(String account) {
+        return cache.keySet().stream().filter(key -> account.equals(AccountContext.accountOf(key))).count();
+    }
+
     /**
      * Helper method to get a typed cache entry
      */
@@ -121,13 +226,48 @@ public class WeatherService {
         return null;
     }
 
+    /**
+     * Get the snapshot of the stations data for all devices, fetching it when the poller snapshot has expired.
+     * While Netatmo is unavailable the last snapshot is returned, marked as stale.
+     * @return The current snapshot
+     */
+    public StationsSnapshot getStationsSnapshot() {
+        StationsSnapshot snapshot = stationPoller.getFreshSnapshot();
+        if (snapshot != null) {
+            return snapshot;
+        }
+        try {
+            // Concurrent requests and the poller share one call per account
+            return stationPoller.refresh();
+        } catch (NetatmoUnavailableException e) {
+            StationsSnapshot last = stationPoller.getSnapshot();
+            if (last == null) {
+                throw e;
+            }
+            logger.info("Serving the last stations snapshot: " + e.getMessage());
+            return last.asStale(e.getMessage());
+        }
+    }
+
     /**
      * Get current weather data from the first available station
      * @return Processed current weather data or null if error
      */
     public ApiResponse<CurrentWeatherData> getCurrentWeather() {
+        return getCurrentWeather(null);
+    }
+
+    /**
+     * Get current weather data from the first available station of a snapshot
+     * @param snapshot The snapshot to read, or null for the current one
+     * @see #getCurrentWeather()
+     */
+    public ApiResponse<CurrentWeatherData> getCurrentWeather(StationsSnapshot snapshot) {
         try {
-            NetatmoStationsDataResponse response = netatmoApiClient.getStationsData();
+            if (snapshot == null) {
+                snapshot = getStationsSnapshot();
+            }
+            NetatmoStationsDataResponse response = snapshot.response();
             
             if (response.getBody() == null ||
                 response.getBody().getDevices() == null ||
@@ -141,37 +281,238 @@ public class WeatherService {
                 return ApiResponse.error("No dashboard data available", Response.Status.NOT_FOUND);
             }
             
-            var dashboardData = device.getDashboardData();
-            var data = new CurrentWeatherData()
-                .withStationName(device.getStationName())
-                .withIndoorTemperature(dashboardData.getTemperature())
-                .withIndoorHumidity(dashboardData.getHumidity())
-                .withPressure(dashboardData.getPressure())
-                .withCo2(dashboardData.getCo2())
-                .withNoise(dashboardData.getNoise())
-                .withTimeUtc(dashboardData.getTimeUtc());
-            
-            // Set outdoor data if available
-            if (device.getModules() != null && !device.getModules().isEmpty()) {
-                var outdoorModule = device.getModules().get(0);
-                if (outdoorModule.getDashboardData() != null) {
-                    var outdoorData = outdoorModule.getDashboardData();
-                    data = data
-                        .withOutdoorTemperature(outdoorData.getTemperature())
-                        .withOutdoorHumidity(outdoorData.getHumidity())
-                        .withOutdoorMaxTemperature(outdoorData.getMaxTemp())
-                        .withOutdoorMinTemperature(outdoorData.getMinTemp());
-                }
-            }
-            
-            return ApiResponse.success(data);
+            return ApiResponse.success(toCurrentWeatherData(device)).withStaleness(snapshot.staleness());
             
+        } catch (NetatmoUnavailableException e) {
+            return ApiResponse.unavailable("Error retrieving current weather data: " + e.getMessage(),
+                e.getRetryAfterSeconds());
         } catch (Exception e) {
             logger.severe("Error getting current weather: " + e.getMessage());
             return ApiResponse.error("Error retrieving current weather data: " + e.getMessage(), Response.Status.INTERNAL_SERVER_ERROR);
         }
     }
 
+    /**
+     * Get the current weather of the first station in a stations data response
+     * @return The current weather data, or null if the response has no station with dashboard data
+     */
+    public static CurrentWeatherData toCurrentWeatherData(NetatmoStationsDataResponse response) {
+        if (response == null || response.getBody() == null ||
+            response.getBody().getDevices() == null ||
+            response.getBody().getDevices().isEmpty()) {
+            return null;
+        }
+        var device = response.getBody().getDevices().get(0);
+        return device.getDashboardData() != null ? toCurrentWeatherData(device) : null;
+    }
+
+    private static CurrentWeatherData toCurrentWeatherData(NetatmoStationsDataResponse.WeatherStation device) {
+        var dashboardData = device.getDashboardData();
+        var data = new CurrentWeatherData()
+            .withStationName(device.getStationName())
+            .withIndoorTemperature(dashboardData.getTemperature())
+            .withIndoorHumidity(dashboardData.getHumidity())
+            .withPressure(dashboardData.getPressure())
+            .withCo2(dashboardData.getCo2())
+            .withNoise(dashboardData.getNoise())
+            .withTimeUtc(dashboardData.getTimeUtc());
+
+        if (device.getModules() == null || device.getModules().isEmpty()) {
+            return data;
+        }
+
+        // Set outdoor data from the first outdoor module if available
+        var outdoorModule = device.getModules().stream()
+            .filter(module -> ModuleProfile.of(module.getType()) == ModuleProfile.OUTDOOR)
+            .findFirst()
+            .orElse(null);
+        if (outdoorModule != null && outdoorModule.getDashboardData() != null) {
+            var outdoorData = outdoorModule.getDashboardData();
+            data = data
+                .withOutdoorTemperature(outdoorData.getTemperature())
+                .withOutdoorHumidity(outdoorData.getHumidity())
+                .withOutdoorMaxTemperature(outdoorData.getMaxTemp())
+                .withOutdoorMinTemperature(outdoorData.getMinTemp());
+        }
+
+        // Every module with the readings of its type
+        return data.withModules(device.getModules().stream().map(ModuleReading::of).toList());
+    }
+
+    /**
+     * Get the current readings of every device and module as one table.
+     * All devices of the account come from a single stations data payload; requested devices that are not in it,
+     * e.g. stations shared with the account, are fetched concurrently.
+     *
+     * @param deviceIds The devices to include, null or empty for all devices in the payload
+     * @return Map with the number of devices, the columns that have a value in any row, one row per device and
+     *         module, and the error of every device that could not be fetched
+     */
+    public ApiResponse<Map<String, Object>> getAllCurrentWeather(List<String> deviceIds) {
+        return getAllCurrentWeather(null, deviceIds);
+    }
+
+    /**
+     * Get the current readings of every device and module of a snapshot as one table
+     * @param snapshot The snapshot to read, or null for the current one
+     * @see #getAllCurrentWeather(List)
+     */
+    public ApiResponse<Map<String, Object>> getAllCurrentWeather(StationsSnapshot snapshot, List<String> deviceIds) {
+        try {
+            if (snapshot == null) {
+                snapshot = getStationsSnapshot();
+            }
+            NetatmoStationsDataResponse response = snapshot.response();
+            Map<String, NetatmoStationsDataResponse.WeatherStation> devices = new LinkedHashMap<>();
+            if (response.getBody() != null && response.getBody().getDevices() != null) {
+                for (var device : response.getBody().getDevices()) {
+                    devices.put(device.getId(), device);
+                }
+            }
+
+            List<String> requested = deviceIds == null ? List.of() : deviceIds.stream()
+                .filter(id -> id != null && !id.isBlank())
+                .map(String::trim)
+                .distinct()
+                .toList();
+
+            Map<String, String> errors = new LinkedHashMap<>();
+            List<NetatmoStationsDataResponse.WeatherStation> selected = new ArrayList<>();
+            if (requested.isEmpty()) {
+                selected.addAll(devices.values());
+            } else {
+                Map<String, Future<NetatmoStationsDataResponse>> missing = new LinkedHashMap<>();
+                for (String deviceId : requested) {
+                    if (!devices.containsKey(deviceId)) {
+                        missing.put(deviceId, fetchExecutor.submit(
+                            AccountContext.wrap(() -> fetchStation(deviceId))));
+                    }
+                }
+                for (String deviceId : requested) {
+                    var device = devices.get(deviceId);
+                    if (device == null) {
+                        device = awaitDevice(deviceId, missing.get(deviceId), errors);
+                    }
+                    if (device != null) {
+                        selected.add(device);
+                    }
+                }
+            }
+
+            if (selected.isEmpty() && errors.isEmpty()) {
+                return ApiResponse.error("No weather stations found", Response.Status.NOT_FOUND);
+            }
+
+            List<Object[]> rows = new ArrayList<>();
+            for (var device : selected) {
+                rows.add(currentReadingRow(device.getId(), device.getStationName(), null, null, device.getType(),
+                    device.getDashboardData()));
+                if (device.getModules() != null) {
+                    for (var module : device.getModules()) {
+                        rows.add(currentReadingRow(device.getId(), device.getStationName(), module.getId(),
+                            module.getModuleName(), module.getType(), module.getDashboardData()));
+                    }
+                }
+            }
+
+            Map<String, Object> resultMap = new LinkedHashMap<>();
+            resultMap.put("devices", selected.size());
+            resultMap.putAll(compactTable(rows));
+            if (!errors.isEmpty()) {
+                resultMap.put("errors", errors);
+            }
+            return ApiResponse.success(resultMap).withStaleness(snapshot.staleness());
+
+        } catch (CancellationException e) {
+            throw e;
+        } catch (NetatmoUnavailableException e) {
+            return ApiResponse.unavailable("Error retrieving current weather data: " + e.getMessage(),
+                e.getRetryAfterSeconds());
+        } catch (Exception e) {
+            logger.severe("Error getting current weather of all devices: " + e.getMessage());
+            return ApiResponse.serverError("Error retrieving current weather data: " + e.getMessage());
+        }
+    }
+
+    private static NetatmoStationsDataResponse.WeatherStation awaitDevice(
+            String deviceId, Future<NetatmoStationsDataResponse> future, Map<String, String> errors) {
+        try {
+            NetatmoStationsDataResponse response = future.get();
+            if (response.getBody() != null && response.getBody().getDevices() != null) {
+                for (var device : response.getBody().getDevices()) {
+                    if (deviceId.equals(device.getId())) {
+                        return device;
+                    }
+                }
+            }
+            errors.put(deviceId, "Device not found");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CancellationException("Interrupted while fetching device " + deviceId);
+        } catch (ExecutionException e) {
+            logger.warning("Error fetching device " + deviceId + ": " + e.getCause().getMessage());
+            errors.put(deviceId, e.getCause().getMessage());
+        }
+        return null;
+    }
+
+    // Columns of the current readings table, in output order
+    private static final List<String> CURRENT_COLUMNS = List.of(
+        "deviceId", "stationName", "moduleId", "moduleName", "type", "timeUtc",
+        "temperature", "humidity", "pressure", "co2", "noise", "minTemperature", "maxTemperature",
+        "rain", "rainLastHour", "rainLastDay", "windStrength", "windAngle", "gustStrength", "gustAngle"
+    );
+
+    private static Object[] currentReadingRow(String deviceId, String stationName, String moduleId, String moduleName,
+                                              String type, NetatmoStationsDataResponse.DashboardData data) {
+        Object[] row = new Object[CURRENT_COLUMNS.size()];
+        row[0] = deviceId;
+        row[1] = stationName;
+        row[2] = moduleId;
+        row[3] = moduleName;
+        row[4] = type;
+        if (data != null) {
+            Object[] values = {
+                data.getTimeUtc(), data.getTemperature(), data.getHumidity(), data.getPressure(), data.getCo2(),
+                data.getNoise(), data.getMinTemp(), data.getMaxTemp(), data.getRain(), data.getSumRain1(),
+                data.getSumRain24(), data.getWindStrength(), data.getWindAngle(), data.getGustStrength(),
+                data.getGustAngle()
+            };
+            System.arraycopy(values, 0, row, 5, values.length);
+        }
+        return row;
+    }
+
+    /**
+     * Keep only the columns that have a value in at least one row, so a station without a rain or wind gauge
+     * does not get their columns
+     */
+    private static Map<String, Object> compactTable(List<Object[]> rows) {
+        List<Integer> used = new ArrayList<>();
+        for (int c = 0; c < CURRENT_COLUMNS.size(); c++) {
+            for (Object[] row : rows) {
+                if (row[c] != null) {
+                    used.add(c);
+                    break;
+                }
+            }
+        }
+
+        List<String> columns = new ArrayList<>(used.size());
+        used.forEach(c -> columns.add(CURRENT_COLUMNS.get(c)));
+        List<List<Object>> compactRows = new ArrayList<>(rows.size());
+        for (Object[] row : rows) {
+            List<Object> compactRow = new ArrayList<>(used.size());
+            used.forEach(c -> compactRow.add(row[c]));
+            compactRows.add(compactRow);
+        }
+
+        Map<String, Object> table = new LinkedHashMap<>();
+        table.put("columns", columns);
+        table.put("rows", compactRows);
+        return table;
+    }
+
     /**
      * Get a list of available weather station devices with caching
      * @return List of device information
@@ -179,14 +520,26 @@ public class WeatherService {
     public ApiResponse<List<DeviceInfo>> getAvailableDevices() {
         // Check if we have a valid cache
         CacheEntry<ApiResponse<List<DeviceInfo>>> entry = 
-            getCacheEntry(DEVICE_LIST_CACHE_KEY, ApiResponse.class);
+            getCacheEntry(AccountContext.partition(DEVICE_LIST_CACHE_KEY), ApiResponse.class);
         
         if (entry != null && entry.isValid()) {
             return entry.getData();
         }
-        
+        return getAvailableDevices(null);
+    }
+
+    /**
+     * Get the devices of a snapshot
+     * @param snapshot The snapshot to read, or null for the current one, whose device list is then cached
+     * @see #getAvailableDevices()
+     */
+    public ApiResponse<List<DeviceInfo>> getAvailableDevices(StationsSnapshot snapshot) {
+        boolean cacheResult = snapshot == null;
         try {
-            NetatmoStationsDataResponse response = netatmoApiClient.getStationsData();
+            if (snapshot == null) {
+                snapshot = getStationsSnapshot();
+            }
+            NetatmoStationsDataResponse response = snapshot.response();
             
             if (response.getBody() == null ||
                 response.getBody().getDevices() == null ||
@@ -204,105 +557,274 @@ public class WeatherService {
                 ))
                 .collect(Collectors.toList());
             
-            // Create result and update cache
+            // Create result and update cache, stale results are not cached so they are replaced once Netatmo is back
             ApiResponse<List<DeviceInfo>> result = ApiResponse.success(devices);
-            cache.put(DEVICE_LIST_CACHE_KEY, new CacheEntry<>(result));
+            if (snapshot.isStale()) {
+                return result.withStaleness(snapshot.staleness());
+            }
+            if (cacheResult) {
+                cache.put(AccountContext.partition(DEVICE_LIST_CACHE_KEY), new CacheEntry<>(result, cacheTtlPolicy.expiresAt(response, System.currentTimeMillis())));
+            }
             
             return result;
             
+        } catch (NetatmoUnavailableException e) {
+            return ApiResponse.unavailable("Error retrieving device list: " + e.getMessage(), e.getRetryAfterSeconds());
         } catch (Exception e) {
             logger.severe("Error getting available devices: " + e.getMessage());
             return ApiResponse.error("Error retrieving device list: " + e.getMessage(), Response.Status.INTERNAL_SERVER_ERROR);
         }
     }
 
+    /**
+     * Get the most recent dashboard readings recorded in memory by the poller
+     * @param deviceId The device ID (optional, uses first available device if not provided)
+     * @param moduleId The module ID (optional, uses the device itself if not provided)
+     * @param limit Maximum number of readings to return
+     * @return The recent readings, oldest first
+     */
+    public ApiResponse<Map<String, Object>> getRecentReadings(String deviceId, String moduleId, Integer limit) {
+        try {
+            if (deviceId == null || deviceId.trim().isEmpty()) {
+                var devicesResult = getAvailableDevices();
+                if (!devicesResult.isSuccess() || devicesResult.getData().isEmpty()) {
+                    return ApiResponse.error("No weather stations found", Response.Status.NOT_FOUND);
+                }
+                deviceId = devicesResult.getData().get(0).id();
+            }
+            String id = WeatherUtil.normalizeParameter(moduleId, deviceId);
+            limit = WeatherUtil.normalizeParameter(limit, DEFAULT_RECENT_LIMIT);
+
+            var readings = stationPoller.getRecentReadings(id, limit);
+            if (readings == null) {
+                return ApiResponse.error("No recent readings available for " + id, Response.Status.NOT_FOUND);
+            }
+
+            Map<String, Object> resultMap = new HashMap<>();
+            resultMap.put("deviceId", deviceId);
+            resultMap.put("moduleId", id);
+            resultMap.put("values", readings);
+            resultMap.put("totalDataPoints", readings.size());
+            return ApiResponse.success(resultMap);
+
+        } catch (Exception e) {
+            logger.severe("Error getting recent readings: " + e.getMessage());
+            return ApiResponse.serverError("Error retrieving recent readings: " + e.getMessage());
+        }
+    }
 
     /**
-     * Simple record to store outdoor module data
+     * A module of a device with the measurements and columns of its type
      */
-    private record OutdoorModuleData(
+    private record StationModule(
         String moduleId,
         String moduleName,
-        Double currentTemperature,
-        Integer currentHumidity,
-        List<List<Object>> dataPoints
+        ModuleProfile profile,
+        List<String> columns,
+        NetatmoStationsDataResponse.DashboardData dashboardData
     ) {}
 
     /**
-     * Fetches outdoor module data for a specific device
+     * Find the modules of a device, with the handling of their type resolved once for the whole request
+     * @param deviceId The device ID
+     * @param excludedModuleId Module whose series is already the main series, null for none
+     * @return The modules of a known type, in station order
      */
-    private OutdoorModuleData fetchOutdoorModuleData(String deviceId, Long dateBegin, Long dateEnd,
-                                                    String scale, String sensorTypes, Integer limit) {
-        try {
-            // Fetch the station data to get the outdoor module ID
-            NetatmoStationsDataResponse stationResponse = fetchStation(deviceId);
-            
-            if (stationResponse.getBody() == null ||
-                stationResponse.getBody().getDevices() == null ||
-                stationResponse.getBody().getDevices().isEmpty()) {
-                return null;
+    private List<StationModule> findModules(String deviceId, String excludedModuleId) {
+        NetatmoStationsDataResponse stationResponse = fetchStation(deviceId);
+
+        if (stationResponse.getBody() == null ||
+            stationResponse.getBody().getDevices() == null ||
+            stationResponse.getBody().getDevices().isEmpty()) {
+            return List.of();
+        }
+
+        var device = stationResponse.getBody().getDevices().get(0);
+        if (device.getModules() == null) {
+            return List.of();
+        }
+
+        // Modules of the same type are numbered in station order, so their columns stay the same between requests
+        Map<ModuleProfile, Integer> counts = new EnumMap<>(ModuleProfile.class);
+        List<StationModule> modules = new ArrayList<>();
+        for (var module : device.getModules()) {
+            ModuleProfile profile = ModuleProfile.of(module.getType());
+            if (profile == null) {
+                logger.fine("Skipping module " + module.getId() + " of unknown type " + module.getType());
+                continue;
             }
-            
-            var device = stationResponse.getBody().getDevices().get(0);
-            
-            if (device.getModules() == null || device.getModules().isEmpty()) {
+            int index = counts.merge(profile, 1, Integer::sum) - 1;
+            if (!module.getId().equals(excludedModuleId)) {
+                modules.add(new StationModule(module.getId(), module.getModuleName(), profile,
+                    profile.columns(index), module.getDashboardData()));
+            }
+        }
+        return modules;
+    }
+
+    /**
+     * Find the modules of a device for a historical request, without failing the request when they cannot be found
+     */
+    private List<StationModule> findModules(HistoricalQuery query) {
+        try {
+            return findModules(query.deviceId(), query.moduleId());
+        } catch (Exception e) {
+            logger.warning("Error fetching station modules: " + e.getMessage());
+            return List.of();
+        }
+    }
+
+    /**
+     * Start fetching the series of every module, so they are requested alongside the main series.
+     * The modules are split over at most module-parallelism tasks that each fetch theirs one after another, so a
+     * station with many modules does not multiply the calls in flight; cancelling a future stops its task.
+     */
+    private List<Future<NetatmoHistoricalDataResponse.NetatmoMeasurementData>> fetchModuleData(
+            String deviceId, List<StationModule> modules, String scale, Long dateBegin, Long dateEnd, Integer limit) {
+        List<CompletableFuture<NetatmoHistoricalDataResponse.NetatmoMeasurementData>> results =
+            new ArrayList<>(modules.size());
+        for (int i = 0; i < modules.size(); i++) {
+            results.add(new CompletableFuture<>());
+        }
+        int tasks = Math.min(modules.size(), Math.max(1, moduleParallelism));
+        for (int task = 0; task < tasks; task++) {
+            int first = task;
+            Future<?> fetches = fetchExecutor.submit(AccountContext.wrap(() -> {
+                for (int i = first; i < modules.size(); i += tasks) {
+                    StationModule module = modules.get(i);
+                    CompletableFuture<NetatmoHistoricalDataResponse.NetatmoMeasurementData> result = results.get(i);
+                    if (result.isDone()) {
+                        continue;
+                    }
+                    try {
+                        result.complete(fetchHistoricalData(deviceId, module.moduleId(), scale,
+                            module.profile().sensorTypes(), dateBegin, dateEnd, limit
+                        ).response().getParsedMeasurementData());
+                    } catch (Exception e) {
+                        result.completeExceptionally(e);
+                    }
+                }
                 return null;
+            }));
+            for (int i = first; i < modules.size(); i += tasks) {
+                results.get(i).whenComplete((data, failure) -> {
+                    if (failure instanceof CancellationException) {
+                        fetches.cancel(true);
+                    }
+                });
             }
-            
-            // Get the first outdoor module
-            var outdoorModule = device.getModules().get(0);
-            String moduleId = outdoorModule.getId();
-            String moduleName = outdoorModule.getModuleName();
-            
-            // Get current outdoor data
-            Double currentTemperature = null;
-            Integer currentHumidity = null;
-            if (outdoorModule.getDashboardData() != null) {
-                currentTemperature = outdoorModule.getDashboardData().getTemperature();
-                currentHumidity = outdoorModule.getDashboardData().getHumidity();
+        }
+        return new ArrayList<>(results);
+    }
+
+    /**
+     * Wait for the module series and merge them into the data points of the main device.
+     * A module that fails is left out, the other modules and the main device are still returned.
+     *
+     * @throws CancellationException if the calling thread is interrupted while waiting
+     */
+    private List<Object> mergeModuleData(List<Object> dataPoints, List<StationModule> modules,
+                                         List<Future<NetatmoHistoricalDataResponse.NetatmoMeasurementData>> futures) {
+        List<NetatmoHistoricalDataResponse.NetatmoMeasurementData> moduleData = new ArrayList<>(modules.size());
+        List<List<String>> moduleColumns = new ArrayList<>(modules.size());
+        try {
+            for (int i = 0; i < modules.size(); i++) {
+                try {
+                    moduleData.add(futures.get(i).get());
+                    moduleColumns.add(modules.get(i).columns());
+                } catch (ExecutionException e) {
+                    logger.warning("Error fetching data of module " + modules.get(i).moduleId() + ": "
+                        + e.getCause().getMessage());
+                }
             }
-            
-            // Get historical data for the outdoor module
-            NetatmoHistoricalDataResponse outdoorResponse = netatmoApiClient.getHistoricalData(
+        } catch (InterruptedException e) {
+            futures.forEach(future -> future.cancel(true));
+            Thread.currentThread().interrupt();
+            throw new CancellationException("Interrupted while fetching module data");
+        }
+        return WeatherUtil.mergeModuleData(dataPoints, moduleData, moduleColumns);
+    }
+
+    /**
+     * Describe the modules merged into a historical series
+     */
+    private static List<Map<String, Object>> describeModules(List<StationModule> modules) {
+        List<Map<String, Object>> result = new ArrayList<>(modules.size());
+        for (StationModule module : modules) {
+            Map<String, Object> description = new LinkedHashMap<>();
+            description.put("id", module.moduleId());
+            description.put("name", module.moduleName());
+            description.put("type", module.profile().type());
+            description.put("columns", module.columns());
+            result.add(description);
+        }
+        return result;
+    }
+
+    /**
+     * A getmeasure response kept for serving while Netatmo is unavailable
+     */
+    private record HistoricalChunk(String series, Long begin, Long end, NetatmoHistoricalDataResponse response,
+                                   long fetchedAt) {}
+
+    /**
+     * Historical measurements with the staleness marker if they are the last known copy
+     */
+    private record FetchedData(NetatmoHistoricalDataResponse response, Staleness staleness) {}
+
+    /**
+     * Fetch historical measurements, served from the local store when the backfill already covers the range.
+     * While Netatmo is unavailable the last response for the same range, or else the latest one overlapping it,
+     * is served as stale.
+     */
+    private FetchedData fetchHistoricalData(String deviceId, String moduleId, String scale,
+                                            String sensorTypes, Long dateBegin, Long dateEnd, Integer limit) {
+        NetatmoHistoricalDataResponse stored = historicalDataStore.find(
+            deviceId, moduleId, scale, sensorTypes, dateBegin, dateEnd, limit
+        );
+        if (stored != null) {
+            logger.fine("Serving historical data for " + deviceId + " from the local store");
+            return new FetchedData(stored, null);
+        }
+
+        String series = AccountContext.partition(
+            deviceId + "|" + (moduleId != null ? moduleId : "") + "|" + scale + "|" + sensorTypes);
+        try {
+            NetatmoHistoricalDataResponse response = netatmoApiClient.getHistoricalData(
                 deviceId, moduleId, scale, sensorTypes, dateBegin, dateEnd, limit, true, true
             );
-            
-            var outdoorParsedData = outdoorResponse.getParsedMeasurementData();
-            List<List<Object>> dataPoints = null;
-            
-            if (outdoorParsedData != null && outdoorParsedData.values != null) {
-                dataPoints = new ArrayList<>();
-                
-                // Process outdoor data points
-                for (int i = 0; i < outdoorParsedData.values.size(); i++) {
-                    long timestamp = outdoorParsedData.beginTime + (i * outdoorParsedData.stepTime);
-                    Object value = outdoorParsedData.values.get(i);
-                    
-                    List<Object> outdoorPoint = new ArrayList<>();
-                    outdoorPoint.add(timestamp);
-                    
-                    if (value instanceof List<?>) {
-                        List<?> valueList = (List<?>) value;
-                        for (Object item : valueList) {
-                            outdoorPoint.add(item);
-                        }
-                    } else {
-                        outdoorPoint.add(value);
-                    }
-                    
-                    dataPoints.add(outdoorPoint);
-                }
+            if (fallbackChunks > 0) {
+                recentChunks.put(series + "|" + dateBegin + "|" + dateEnd,
+                    new HistoricalChunk(series, dateBegin, dateEnd, response, System.currentTimeMillis()));
             }
-            
-            return new OutdoorModuleData(moduleId, moduleName, currentTemperature, currentHumidity, dataPoints);
-            
-        } catch (Exception e) {
-            logger.warning("Error fetching outdoor module data: " + e.getMessage());
-            return null;
+            return new FetchedData(response, null);
+        } catch (NetatmoUnavailableException e) {
+            HistoricalChunk chunk = findChunk(series, dateBegin, dateEnd);
+            if (chunk == null) {
+                throw e;
+            }
+            logger.info("Serving the last historical data of " + deviceId + ": " + e.getMessage());
+            return new FetchedData(chunk.response(), Staleness.of(chunk.fetchedAt(), e.getMessage()));
         }
     }
 
-    // Using HistoricalDataUtil.processDataPoints instead of duplicate method
+    private HistoricalChunk findChunk(String series, Long begin, Long end) {
+        HistoricalChunk exact = recentChunks.get(series + "|" + begin + "|" + end);
+        if (exact != null || begin == null || end == null) {
+            return exact;
+        }
+        HistoricalChunk latest = null;
+        synchronized (recentChunks) {
+            for (HistoricalChunk chunk : recentChunks.values()) {
+                if (chunk.series().equals(series) && chunk.begin() != null && chunk.end() != null
+                    && chunk.begin() <= end && chunk.end() >= begin
+                    && (latest == null || chunk.fetchedAt() > latest.fetchedAt())) {
+                    latest = chunk;
+                }
+            }
+        }
+        return latest;
+    }
 
     /**
      * Get historical weather data
@@ -318,50 +840,63 @@ public class WeatherService {
     public ApiResponse<Map<String, Object>> getHistoricalWeather(String deviceId, String moduleId, String scale,
                                                        String sensorTypes, String beginDate, String endDate, Integer limit) {
         try {
-            // Normalize parameters
-            scale = WeatherUtil.normalizeParameter(scale, DEFAULT_SCALE);
-            sensorTypes = WeatherUtil.normalizeParameter(sensorTypes, DEFAULT_SENSOR_TYPES);
-            limit = WeatherUtil.normalizeParameter(limit, DEFAULT_LIMIT);
-            
-            Long dateBegin = parseBeginDate(beginDate);
-            Long dateEnd = parseEndDate(endDate);
+            return getHistoricalWeather(resolveHistoricalQuery(deviceId, moduleId, scale, sensorTypes, beginDate, endDate, limit));
+        } catch (WeatherApiException e) {
+            return ApiResponse.error(e.getMessage(), e.getStatus());
+        } catch (Exception e) {
+            logger.severe("Error getting historical weather: " + e.getMessage());
+            return ApiResponse.serverError("Error retrieving historical weather data: " + e.getMessage());
+        }
+    }
 
-            // If no device_id provided, get first available device
-            if (deviceId == null || deviceId.trim().isEmpty()) {
-                var devicesResult = getAvailableDevices();
-                if (!devicesResult.isSuccess() || devicesResult.getData().isEmpty()) {
-                    throw new WeatherApiException("No weather stations found. Please provide a valid device_id.",
-                                                Response.Status.NOT_FOUND);
-                }
-                deviceId = devicesResult.getData().get(0).id();
-                logger.info("Using device_id: " + deviceId);
-            }
+    /**
+     * Get historical weather data for a resolved request
+     * @param query The resolved request, see resolveHistoricalQuery
+     * @return Historical weather data result
+     */
+    public ApiResponse<Map<String, Object>> getHistoricalWeather(HistoricalQuery query) {
+        try {
+            String deviceId = query.deviceId();
+            String moduleId = query.moduleId();
+            String scale = query.scale();
+            String sensorTypes = query.sensorTypes();
+            Integer limit = WeatherUtil.normalizeParameter(query.limit(), DEFAULT_LIMIT);
+            Long dateBegin = query.begin();
+            Long dateEnd = query.end();
 
             logger.info("Requesting historical data with parameters: device_id=" + deviceId +
                        ", scale=" + scale + ", type=" + sensorTypes +
                        ", date_begin=" + dateBegin + ", date_end=" + dateEnd + ", limit=" + limit);
 
-            // Get indoor data
-            NetatmoHistoricalDataResponse response = netatmoApiClient.getHistoricalData(
-                deviceId, moduleId, scale, sensorTypes, dateBegin, dateEnd, limit, true, true
-            );
+            // Get the module series in parallel with the data of the main device
+            List<StationModule> modules = findModules(query);
+            var moduleData = fetchModuleData(deviceId, modules, scale, dateBegin, dateEnd, limit);
+            List<Object> dataPoints;
+            FetchedData fetched;
+            NetatmoHistoricalDataResponse response;
+            Integer stepTime;
+            try {
+                fetched = fetchHistoricalData(
+                    deviceId, moduleId, scale, sensorTypes, dateBegin, dateEnd, limit
+                );
+                response = fetched.response();
 
-            var parsedData = response.getParsedMeasurementData();
-            if (parsedData == null) {
-                throw new WeatherApiException("Could not parse measurement data from Netatmo response",
-                                            Response.Status.BAD_GATEWAY);
-            }
+                var parsedData = response.getParsedMeasurementData();
+                if (parsedData == null) {
+                    throw new WeatherApiException("Could not parse measurement data from Netatmo response",
+                                                Response.Status.BAD_GATEWAY);
+                }
+                stepTime = parsedData.stepTime;
 
-            // Get outdoor module data
-            OutdoorModuleData outdoorData = fetchOutdoorModuleData(deviceId, dateBegin, dateEnd, scale, sensorTypes, limit);
-            
-            // Process and combine data points
-            List<Object> dataPoints = WeatherUtil.processDataPoints(
-                parsedData,
-                outdoorData != null ? outdoorData.dataPoints() : null,
-                parsedData.beginTime,
-                parsedData.stepTime
-            );
+                // Process and combine data points
+                dataPoints = mergeModuleData(
+                    WeatherUtil.processDataPoints(parsedData, null, parsedData.beginTime, parsedData.stepTime),
+                    modules,
+                    moduleData
+                );
+            } finally {
+                moduleData.forEach(future -> future.cancel(true));
+            }
 
             // Build result map
             Map<String, Object> resultMap = new HashMap<>();
@@ -373,19 +908,23 @@ public class WeatherService {
             resultMap.put("endTimeTimestamp", dateEnd);
             resultMap.put("beginTime", WeatherUtil.formatTimestamp(dateBegin, "yyyy-MM-dd HH:mm:ss"));
             resultMap.put("endTime", WeatherUtil.formatTimestamp(dateEnd, "yyyy-MM-dd HH:mm:ss"));
-            resultMap.put("stepTime", parsedData.stepTime);
+            resultMap.put("stepTime", stepTime);
             resultMap.put("values", dataPoints);
             resultMap.put("totalDataPoints", dataPoints != null ? dataPoints.size() : 0);
             
-            // Add outdoor data if available
-            if (outdoorData != null) {
-                resultMap.put("outdoorModuleId", outdoorData.moduleId());
-                resultMap.put("outdoorModuleName", outdoorData.moduleName());
-                resultMap.put("outdoorTemperature", outdoorData.currentTemperature());
-                resultMap.put("outdoorHumidity", outdoorData.currentHumidity());
-            }
+            resultMap.put("modules", describeModules(modules));
+
+            // Add the current readings of the first outdoor module if available
+            modules.stream().filter(module -> module.profile() == ModuleProfile.OUTDOOR).findFirst().ifPresent(outdoor -> {
+                resultMap.put("outdoorModuleId", outdoor.moduleId());
+                resultMap.put("outdoorModuleName", outdoor.moduleName());
+                if (outdoor.dashboardData() != null) {
+                    resultMap.put("outdoorTemperature", outdoor.dashboardData().getTemperature());
+                    resultMap.put("outdoorHumidity", outdoor.dashboardData().getHumidity());
+                }
+            });
             
-            return ApiResponse.success(resultMap);
+            return ApiResponse.success(resultMap).withStaleness(fetched.staleness());
             
         } catch (WeatherApiException e) {
             return ApiResponse.error(e.getMessage(), e.getStatus());
@@ -395,6 +934,301 @@ public class WeatherService {
         }
     }
 
+    /**
+     * Resolved parameters of a historical data request
+     *
+     * @param deviceId The device ID
+     * @param moduleId The module ID, null for the main device
+     * @param scale The time scale
+     * @param sensorTypes The sensor types (comma-separated)
+     * @param begin Begin timestamp in seconds
+     * @param end End timestamp in seconds
+     * @param limit Maximum number of data points, null for the whole range
+     */
+    public record HistoricalQuery(
+        String deviceId,
+        String moduleId,
+        String scale,
+        String sensorTypes,
+        long begin,
+        long end,
+        Integer limit
+    ) {}
+
+    /**
+     * Receives data points one by one while a historical range is streamed
+     */
+    @FunctionalInterface
+    public interface DataPointConsumer {
+        void accept(Map<String, Object> dataPoint) throws IOException;
+    }
+
+    /**
+     * Follows a windowed historical fetch, to report its progress or to stop it early
+     */
+    public interface FetchListener {
+
+        /**
+         * Called after each window
+         * @param windows Number of windows fetched so far
+         * @param totalWindows Expected number of windows, windows cut short by Netatmo can add more
+         * @param dataPoints Number of data points so far
+         */
+        void windowFetched(int windows, int totalWindows, int dataPoints);
+
+        /**
+         * Checked before each window, the fetch stops with a CancellationException once this returns true
+         */
+        boolean isCancelled();
+    }
+
+    /**
+     * Normalize the parameters of a historical data request and resolve the device
+     * @throws WeatherApiException if no device ID is given and no station is found
+     */
+    public HistoricalQuery resolveHistoricalQuery(String deviceId, String moduleId, String scale, String sensorTypes,
+                                                  String beginDate, String endDate, Integer limit) {
+        // Normalize parameters
+        scale = WeatherUtil.normalizeParameter(scale, DEFAULT_SCALE);
+        sensorTypes = WeatherUtil.normalizeParameter(sensorTypes, DEFAULT_SENSOR_TYPES);
+
+        Long dateBegin = parseBeginDate(beginDate);
+        Long dateEnd = parseEndDate(endDate);
+
+        // If no device_id provided, get first available device
+        if (deviceId == null || deviceId.trim().isEmpty()) {
+            var devicesResult = getAvailableDevices();
+            if (!devicesResult.isSuccess() || devicesResult.getData().isEmpty()) {
+                throw new WeatherApiException("No weather stations found. Please provide a valid device_id.",
+                                            Response.Status.NOT_FOUND);
+            }
+            deviceId = devicesResult.getData().get(0).id();
+            logger.info("Using device_id: " + deviceId);
+        }
+
+        return new HistoricalQuery(deviceId, moduleId, scale, sensorTypes, dateBegin, dateEnd, limit);
+    }
+
+    /**
+     * Stream the historical data points of a range, oldest first.
+     * The range is fetched in windows of at most DEFAULT_LIMIT points and every window is handed to the
+     * consumer before the next one is fetched, so memory use does not depend on the length of the range.
+     *
+     * @param query The resolved request
+     * @param consumer Receives every data point
+     * @return The number of data points streamed
+     * @throws IOException if the consumer fails to write a data point
+     */
+    public int streamHistoricalData(HistoricalQuery query, DataPointConsumer consumer) throws IOException {
+        return streamHistoricalData(query, consumer, null);
+    }
+
+    /**
+     * Stream the historical data points of a range, oldest first, reporting every window to a listener
+     * @param listener Follows the fetch, may be null
+     * @throws CancellationException if the listener cancels the fetch, no further windows are requested from Netatmo
+     * @see #streamHistoricalData(HistoricalQuery, DataPointConsumer)
+     */
+    public int streamHistoricalData(HistoricalQuery query, DataPointConsumer consumer, FetchListener listener)
+            throws IOException {
+        return streamHistoricalData(query, findModules(query), consumer, listener, new AtomicReference<>());
+    }
+
+    /**
+     * @param staleness Receives the marker of the first window that was served as stale
+     */
+    private int streamHistoricalData(HistoricalQuery query, List<StationModule> modules, DataPointConsumer consumer,
+                                     FetchListener listener, AtomicReference<Staleness> staleness) throws IOException {
+        long stepSeconds = WeatherUtil.getScaleSeconds(query.scale());
+        int remaining = query.limit() != null && query.limit() > 0 ? query.limit() : Integer.MAX_VALUE;
+        int count = 0;
+        int windows = 0;
+        long rangePoints = (query.end() - query.begin()) / stepSeconds + 1;
+        int totalWindows = (int) Math.max(1, (Math.min(rangePoints, remaining) + DEFAULT_LIMIT - 1) / DEFAULT_LIMIT);
+
+        long from = query.begin();
+        while (from <= query.end() && remaining > 0) {
+            if (listener != null && listener.isCancelled()) {
+                throw new CancellationException("Historical data request was cancelled");
+            }
+            int windowLimit = Math.min(DEFAULT_LIMIT, remaining);
+            long windowEnd = Math.min(query.end(), from + windowLimit * stepSeconds - 1);
+
+            long last = -1;
+            int windowCount = 0;
+            for (Object value : fetchDataPoints(query, modules, from, windowEnd, windowLimit, staleness)) {
+                @SuppressWarnings("unchecked")
+                Map<String, Object> dataPoint = (Map<String, Object>) value;
+                long timestamp = ((Number) dataPoint.get("timeUtc")).longValue();
+                if (timestamp < from || timestamp > windowEnd) {
+                    continue;
+                }
+                consumer.accept(dataPoint);
+                last = timestamp;
+                count++;
+                windowCount++;
+                if (--remaining == 0) {
+                    break;
+                }
+            }
+
+            // Continue after the last point if Netatmo cut the window short, otherwise after the window
+            from = windowCount >= windowLimit && last + stepSeconds <= windowEnd ? last + stepSeconds : windowEnd + 1;
+
+            if (listener != null) {
+                windows++;
+                totalWindows = Math.max(totalWindows, windows + (from <= query.end() && remaining > 0 ? 1 : 0));
+                listener.windowFetched(windows, totalWindows, count);
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Get one page of historical data points.
+     * Only the windows covering the page are fetched, so the work per page does not depend on the length of the range.
+     *
+     * @param query The resolved request, starting at the first point of the page; its limit is the page size
+     * @return The page with a "nextCursor" if more points follow, see HistoricalCursor
+     */
+    public ApiResponse<Map<String, Object>> getHistoricalPage(HistoricalQuery query) {
+        return getHistoricalPage(query, null);
+    }
+
+    /**
+     * Get one page of historical data points, reporting every fetched window to a listener
+     * @param query The resolved request; without a limit the page holds the whole range
+     * @param listener Follows the fetch, may be null
+     * @throws CancellationException if the listener cancels the fetch
+     */
+    public ApiResponse<Map<String, Object>> getHistoricalPage(HistoricalQuery query, FetchListener listener) {
+        try {
+            boolean paged = query.limit() != null && query.limit() > 0;
+            int pageSize = paged ? query.limit() : Integer.MAX_VALUE;
+
+            // One point more than the page tells whether there is a next page and where it starts
+            List<Object> values = new ArrayList<>(Math.min(pageSize, DEFAULT_LIMIT) + 1);
+            HistoricalQuery window = new HistoricalQuery(query.deviceId(), query.moduleId(), query.scale(),
+                query.sensorTypes(), query.begin(), query.end(), paged ? pageSize + 1 : null);
+            List<StationModule> modules = findModules(query);
+            AtomicReference<Staleness> staleness = new AtomicReference<>();
+            streamHistoricalData(window, modules, values::add, listener, staleness);
+
+            String nextCursor = null;
+            if (paged && values.size() > pageSize) {
+                @SuppressWarnings("unchecked")
+                Map<String, Object> next = (Map<String, Object>) values.remove(pageSize);
+                long nextBegin = ((Number) next.get("timeUtc")).longValue();
+                nextCursor = HistoricalCursor.encode(
+                    new HistoricalQuery(query.deviceId(), query.moduleId(), query.scale(), query.sensorTypes(),
+                        nextBegin, query.end(), pageSize), nextBegin);
+            }
+
+            Map<String, Object> resultMap = new HashMap<>();
+            resultMap.put("deviceId", query.deviceId());
+            if (query.moduleId() != null) {
+                resultMap.put("moduleId", query.moduleId());
+            }
+            resultMap.put("scale", query.scale());
+            resultMap.put("sensorTypes", List.of(query.sensorTypes().split(",")));
+            resultMap.put("beginTimeTimestamp", query.begin());
+            resultMap.put("endTimeTimestamp", query.end());
+            resultMap.put("beginTime", WeatherUtil.formatTimestamp(query.begin(), "yyyy-MM-dd HH:mm:ss"));
+            resultMap.put("endTime", WeatherUtil.formatTimestamp(query.end(), "yyyy-MM-dd HH:mm:ss"));
+            resultMap.put("stepTime", WeatherUtil.getScaleSeconds(query.scale()));
+            resultMap.put("values", values);
+            resultMap.put("totalDataPoints", values.size());
+            resultMap.put("modules", describeModules(modules));
+            resultMap.put("hasMore", nextCursor != null);
+            if (nextCursor != null) {
+                resultMap.put("nextCursor", nextCursor);
+            }
+            return ApiResponse.success(resultMap).withStaleness(staleness.get());
+
+        } catch (CancellationException e) {
+            throw e;
+        } catch (WeatherApiException e) {
+            return ApiResponse.error(e.getMessage(), e.getStatus());
+        } catch (Exception e) {
+            logger.severe("Error getting historical weather page: " + e.getMessage());
+            return ApiResponse.serverError("Error retrieving historical weather data: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Get summary statistics of a historical range instead of its data points.
+     * The range is fetched in windows into primitive arrays and every column is reduced in a single pass.
+     *
+     * @param query The resolved request; without a limit the whole range is used
+     * @param degreeDayBase Base temperature of heating and cooling degree-days
+     * @param thresholdColumn Column the threshold applies to, null for none
+     * @param threshold Value above which time is counted, null for none
+     * @param listener Follows the fetch, may be null
+     * @return Map with the range, the number of data points and the statistics per column
+     * @throws CancellationException if the listener cancels the fetch
+     */
+    public ApiResponse<Map<String, Object>> getWeatherStatistics(HistoricalQuery query, double degreeDayBase,
+                                                                 String thresholdColumn, Double threshold,
+                                                                 FetchListener listener) {
+        try {
+            long stepSeconds = WeatherUtil.getScaleSeconds(query.scale());
+            long rangePoints = (query.end() - query.begin()) / stepSeconds + 1;
+            ColumnarSeries series = new ColumnarSeries((int) Math.min(rangePoints, DEFAULT_LIMIT));
+            AtomicReference<Staleness> staleness = new AtomicReference<>();
+            streamHistoricalData(query, findModules(query), series::add, listener, staleness);
+
+            Map<String, Object> resultMap = new LinkedHashMap<>();
+            resultMap.put("deviceId", query.deviceId());
+            resultMap.put("scale", query.scale());
+            resultMap.put("beginTime", WeatherUtil.formatTimestamp(query.begin(), "yyyy-MM-dd HH:mm:ss"));
+            resultMap.put("endTime", WeatherUtil.formatTimestamp(query.end(), "yyyy-MM-dd HH:mm:ss"));
+            resultMap.put("totalDataPoints", series.size());
+            if (threshold != null) {
+                resultMap.put("threshold", Map.of("column", thresholdColumn, "value", threshold));
+            }
+            resultMap.put("degreeDayBase", degreeDayBase);
+            resultMap.put("statistics", WeatherStatistics.compute(series,
+                new WeatherStatistics.Options(stepSeconds, degreeDayBase, thresholdColumn, threshold)));
+            return ApiResponse.success(resultMap).withStaleness(staleness.get());
+
+        } catch (CancellationException e) {
+            throw e;
+        } catch (WeatherApiException e) {
+            return ApiResponse.error(e.getMessage(), e.getStatus());
+        } catch (Exception e) {
+            logger.severe("Error getting weather statistics: " + e.getMessage());
+            return ApiResponse.serverError("Error computing weather statistics: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Fetch the data points of the main device and all its modules for a single window, merged on their timestamps
+     */
+    private List<Object> fetchDataPoints(HistoricalQuery query, List<StationModule> modules,
+                                         long from, long to, int limit, AtomicReference<Staleness> staleness) {
+        var moduleData = fetchModuleData(query.deviceId(), modules, query.scale(), from, to, limit);
+        try {
+            FetchedData fetched = fetchHistoricalData(
+                query.deviceId(), query.moduleId(), query.scale(), query.sensorTypes(), from, to, limit
+            );
+            if (fetched.staleness() != null) {
+                staleness.compareAndSet(null, fetched.staleness());
+            }
+            var parsedData = fetched.response().getParsedMeasurementData();
+            if (parsedData == null) {
+                return List.of();
+            }
+
+            return mergeModuleData(
+                WeatherUtil.processDataPoints(parsedData, null, parsedData.beginTime, parsedData.stepTime),
+                modules,
+                moduleData
+            );
+        } finally {
+            moduleData.forEach(future -> future.cancel(true));
+        }
+    }
+
     /**
      * Parse the begin date parameter
      * @param beginDate Date string in format YYYY-MM-DD
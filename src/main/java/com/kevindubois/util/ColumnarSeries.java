@@ -0,0 +1,136 @@
+package com.kevindubois.util;
+
+import com.fasterxml.jackson.dataformat.cbor.CBORGenerator;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Historical data points stored column by column in primitive arrays.
+ * The columns are written as CBOR typed arrays (RFC 8746): the timestamps as little-endian 64-bit integers and
+ * the measurements as little-endian 32-bit floats with NaN for missing values, so clients can load them into
+ * e.g. a BigInt64Array and Float32Array without parsing every value.
+ */
+public class ColumnarSeries {
+
+    // Measurement columns, in output order
+    public static final List<String> COLUMNS = List.of(
+        "indoorTemperature", "indoorHumidity", "indoorPressure", "outdoorTemperature", "outdoorHumidity",
+        "rain", "windStrength", "windAngle", "gustStrength", "gustAngle"
+    );
+
+    // RFC 8746 typed array tags
+    static final int TAG_INT64_LE = 79;
+    static final int TAG_FLOAT32_LE = 85;
+
+    private long[] times;
+    private final float[][] values;
+    private final boolean[] present;
+    private int size;
+
+    /**
+     * Create an empty series
+     * @param initialCapacity Expected number of data points, the arrays grow when more are added
+     */
+    public ColumnarSeries(int initialCapacity) {
+        int capacity = Math.max(16, initialCapacity);
+        this.times = new long[capacity];
+        this.values = new float[COLUMNS.size()][capacity];
+        this.present = new boolean[COLUMNS.size()];
+    }
+
+    /**
+     * Add a data point as produced by WeatherUtil.processDataPoints
+     * @param dataPoint Map with a "timeUtc" in seconds and the measurements
+     */
+    public void add(Map<String, Object> dataPoint) {
+        if (size == times.length) {
+            int capacity = times.length * 2;
+            times = Arrays.copyOf(times, capacity);
+            for (int c = 0; c < values.length; c++) {
+                values[c] = Arrays.copyOf(values[c], capacity);
+            }
+        }
+
+        Object time = dataPoint.get("timeUtc");
+        times[size] = time instanceof Number number ? number.longValue() : 0;
+        for (int c = 0; c < values.length; c++) {
+            Object value = dataPoint.get(COLUMNS.get(c));
+            if (value instanceof Number number) {
+                values[c][size] = number.floatValue();
+                present[c] = true;
+            } else {
+                values[c][size] = Float.NaN;
+            }
+        }
+        size++;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public long getTime(int index) {
+        return times[index];
+    }
+
+    /**
+     * Get a measurement
+     * @return The value, or NaN if the data point has no value for this column
+     */
+    public float getValue(String column, int index) {
+        return values[COLUMNS.indexOf(column)][index];
+    }
+
+    /**
+     * Direct access to the timestamps for computations in this package, only the first size() entries are valid
+     */
+    long[] times() {
+        return times;
+    }
+
+    /**
+     * Direct access to a measurement column, only the first size() entries are valid
+     */
+    float[] values(int column) {
+        return values[column];
+    }
+
+    /**
+     * Check whether a measurement column has at least one value
+     */
+    boolean hasValues(int column) {
+        return present[column];
+    }
+
+    /**
+     * Write the "timeUtc" field and a "columns" object with every measurement that has at least one value
+     * into the current CBOR object
+     */
+    public void writeCbor(CBORGenerator generator) throws IOException {
+        ByteBuffer timeBytes = ByteBuffer.allocate(size * Long.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        timeBytes.asLongBuffer().put(times, 0, size);
+        generator.writeFieldName("timeUtc");
+        generator.writeTag(TAG_INT64_LE);
+        generator.writeBinary(timeBytes.array());
+
+        // One buffer is reused for all measurement columns
+        ByteBuffer valueBytes = ByteBuffer.allocate(size * Float.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        generator.writeObjectFieldStart("columns");
+        for (int c = 0; c < values.length; c++) {
+            if (!present[c]) {
+                continue;
+            }
+            valueBytes.clear();
+            valueBytes.asFloatBuffer().put(values[c], 0, size);
+            generator.writeFieldName(COLUMNS.get(c));
+            generator.writeTag(TAG_FLOAT32_LE);
+            generator.writeBinary(valueBytes.array());
+        }
+        generator.writeEndObject();
+    }
+}
@@ -0,0 +1,165 @@
+package com.kevindubois.util;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Token-efficient encoding of a series of data points for LLM clients.
+ * Column names are written once in a header instead of for every point, values are rounded to the
+ * precision of the Netatmo sensors, and timestamps can be written as the difference to the previous row.
+ */
+public class CompactSeriesEncoder {
+
+    // Supported formats
+    public static final String FORMAT_JSON = "json";
+    public static final String FORMAT_ROWS = "rows";
+    public static final String FORMAT_CSV = "csv";
+
+    public static final String TIME_COLUMN = "time";
+
+    // Preferred column order, columns not listed here follow in order of appearance
+    private static final List<String> COLUMN_ORDER = List.of(
+        "indoorTemperature", "indoorHumidity", "indoorPressure", "outdoorTemperature", "outdoorHumidity",
+        "rain", "windStrength", "windAngle", "gustStrength", "gustAngle",
+        "temperature", "humidity", "pressure", "co2", "noise"
+    );
+
+    private CompactSeriesEncoder() {
+    }
+
+    /**
+     * Check whether a format is one of the compact formats
+     * @param format The requested format
+     * @return true for "rows" and "csv"
+     */
+    public static boolean isCompact(String format) {
+        return FORMAT_ROWS.equalsIgnoreCase(format) || FORMAT_CSV.equalsIgnoreCase(format);
+    }
+
+    /**
+     * Encode data points in a compact format
+     *
+     * @param values Data points as maps with a "timeUtc" in seconds and one entry per measurement
+     * @param format "rows" for a header plus arrays, "csv" for a header plus comma-separated lines
+     * @param deltaTimestamps Write the first timestamp in full and the others as the difference to the previous one
+     * @return Map with the encoding, the columns and either "rows" or "csv"
+     */
+    public static Map<String, Object> encode(List<?> values, String format, boolean deltaTimestamps) {
+        List<String> columns = columns(values);
+        boolean csv = FORMAT_CSV.equalsIgnoreCase(format);
+
+        List<List<Object>> rows = csv ? null : new ArrayList<>(values.size());
+        StringBuilder text = csv ? new StringBuilder(values.size() * 8 * columns.size()) : null;
+        if (csv) {
+            text.append(String.join(",", columns));
+        }
+
+        long previousTime = 0;
+        boolean first = true;
+        for (Object value : values) {
+            if (!(value instanceof Map<?, ?> point)) {
+                continue;
+            }
+            Long time = point.get("timeUtc") instanceof Number number ? number.longValue() : null;
+            Long timeValue = time;
+            if (deltaTimestamps && time != null) {
+                timeValue = first ? time : time - previousTime;
+                previousTime = time;
+                first = false;
+            }
+
+            if (csv) {
+                text.append('\n');
+                if (timeValue != null) {
+                    text.append(timeValue);
+                }
+                for (int c = 1; c < columns.size(); c++) {
+                    text.append(',');
+                    appendRounded(text, columns.get(c), point.get(columns.get(c)));
+                }
+            } else {
+                List<Object> row = new ArrayList<>(columns.size());
+                row.add(timeValue);
+                for (int c = 1; c < columns.size(); c++) {
+                    row.add(round(columns.get(c), point.get(columns.get(c))));
+                }
+                rows.add(row);
+            }
+        }
+
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("format", csv ? FORMAT_CSV : FORMAT_ROWS);
+        result.put("timeEncoding", deltaTimestamps ? "delta" : "absolute");
+        result.put("columns", columns);
+        if (csv) {
+            result.put("csv", text.toString());
+        } else {
+            result.put("rows", rows);
+        }
+        return result;
+    }
+
+    /**
+     * Get the columns of a series, the time first and then every numeric measurement present in any point
+     */
+    private static List<String> columns(List<?> values) {
+        Set<String> present = new LinkedHashSet<>();
+        for (Object value : values) {
+            if (value instanceof Map<?, ?> point) {
+                for (var entry : point.entrySet()) {
+                    if (entry.getValue() instanceof Number && !"timeUtc".equals(entry.getKey())) {
+                        present.add(String.valueOf(entry.getKey()));
+                    }
+                }
+            }
+        }
+
+        List<String> columns = new ArrayList<>();
+        columns.add(TIME_COLUMN);
+        for (String column : COLUMN_ORDER) {
+            if (present.remove(column)) {
+                columns.add(column);
+            }
+        }
+        columns.addAll(present);
+        return columns;
+    }
+
+    /**
+     * Get the number of decimals a sensor reports for a measurement:
+     * 0.1 for temperature, pressure and rain, whole numbers for humidity, CO2, noise and wind
+     */
+    static int decimals(String column) {
+        String name = column.toLowerCase();
+        return name.contains("temperature") || name.contains("pressure") || name.contains("rain") ? 1 : 0;
+    }
+
+    /**
+     * Round a value to sensor precision, whole values are returned as Long so they are written without decimals
+     */
+    static Object round(String column, Object value) {
+        if (!(value instanceof Number number)) {
+            return null;
+        }
+        double factor = Math.pow(10, decimals(column));
+        long scaled = Math.round(number.doubleValue() * factor);
+        if (scaled % (long) factor == 0) {
+            return scaled / (long) factor;
+        }
+        return scaled / factor;
+    }
+
+    /**
+     * Append a value rounded to sensor precision, without trailing zeros
+     */
+    private static void appendRounded(StringBuilder text, String column, Object value) {
+        Object rounded = round(column, value);
+        if (rounded != null) {
+            text.append(rounded);
+        }
+    }
+}
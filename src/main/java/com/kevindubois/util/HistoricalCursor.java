@@ -0,0 +1,70 @@
+package com.kevindubois.util;
+
+import com.kevindubois.service.WeatherService.HistoricalQuery;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+/**
+ * Opaque continuation cursor for paging through historical data.
+ * The cursor holds the resolved query with its begin moved to the first point of the next page, so the next page
+ * is fetched from Netatmo on its own, without keeping state on the server or fetching the earlier pages again.
+ */
+public class HistoricalCursor {
+
+    private static final String VERSION = "1";
+    private static final String SEPARATOR = "|";
+
+    private HistoricalCursor() {
+    }
+
+    /**
+     * Encode the position of the next page
+     * @param query The resolved query, its limit is the page size
+     * @param from Timestamp in seconds of the first point of the next page
+     * @return The cursor
+     */
+    public static String encode(HistoricalQuery query, long from) {
+        String value = String.join(SEPARATOR,
+            VERSION,
+            query.deviceId(),
+            query.moduleId() != null ? query.moduleId() : "",
+            query.scale(),
+            query.sensorTypes(),
+            Long.toString(from),
+            Long.toString(query.end()),
+            query.limit() != null ? query.limit().toString() : "");
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Decode a cursor
+     * @param cursor The cursor returned with the previous page
+     * @return The query of the next page
+     * @throws IllegalArgumentException if the cursor is malformed
+     */
+    public static HistoricalQuery decode(String cursor) {
+        String[] parts;
+        try {
+            parts = new String(Base64.getUrlDecoder().decode(cursor.trim()), StandardCharsets.UTF_8)
+                .split("\\" + SEPARATOR, -1);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Invalid cursor");
+        }
+        if (parts.length != 8 || !VERSION.equals(parts[0]) || parts[1].isEmpty()) {
+            throw new IllegalArgumentException("Invalid cursor");
+        }
+        try {
+            return new HistoricalQuery(
+                parts[1],
+                parts[2].isEmpty() ? null : parts[2],
+                parts[3],
+                parts[4],
+                Long.parseLong(parts[5]),
+                Long.parseLong(parts[6]),
+                parts[7].isEmpty() ? null : Integer.valueOf(parts[7]));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid cursor");
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package com.kevindubois.util;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Measurements of each Netatmo module type and the columns they are returned in.
+ * Resolved once per module, so merging a module series only maps value positions to column names.
+ */
+public enum ModuleProfile {
+
+    OUTDOOR("NAModule1", "outdoor", 1,
+        List.of("Temperature", "Humidity"), List.of("Temperature", "Humidity")),
+    WIND("NAModule2", "", 1,
+        List.of("WindStrength", "WindAngle", "GustStrength", "GustAngle"),
+        List.of("windStrength", "windAngle", "gustStrength", "gustAngle")),
+    RAIN("NAModule3", "", 1,
+        List.of("sum_rain"), List.of("rain")),
+    // Numbered from 2, the main device is the first indoor module
+    INDOOR("NAModule4", "indoor", 2,
+        List.of("Temperature", "Humidity", "CO2"), List.of("Temperature", "Humidity", "Co2"));
+
+    private final String type;
+    private final String prefix;
+    private final int firstNumber;
+    private final List<String> measurements;
+    private final List<String> suffixes;
+
+    ModuleProfile(String type, String prefix, int firstNumber, List<String> measurements, List<String> suffixes) {
+        this.type = type;
+        this.prefix = prefix;
+        this.firstNumber = firstNumber;
+        this.measurements = measurements;
+        this.suffixes = suffixes;
+    }
+
+    /**
+     * Find the profile of a Netatmo module type
+     * @param type The module type, e.g. NAModule1
+     * @return The profile, or null for unknown types
+     */
+    public static ModuleProfile of(String type) {
+        for (ModuleProfile profile : values()) {
+            if (profile.type.equals(type)) {
+                return profile;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Get the Netatmo module type
+     */
+    public String type() {
+        return type;
+    }
+
+    /**
+     * Get the measurement types to request from getmeasure (comma-separated)
+     */
+    public String sensorTypes() {
+        return String.join(",", measurements);
+    }
+
+    /**
+     * Get the column names of the measurements, in request order
+     * @param index Zero-based index of the module among the modules of this type on the same station
+     * @return e.g. outdoorTemperature for the first outdoor module and outdoor2Temperature for the second
+     */
+    public List<String> columns(int index) {
+        int number = firstNumber + index;
+        String numbered = number > 1 ? Integer.toString(number) : "";
+        List<String> columns = new ArrayList<>(suffixes.size());
+        for (String suffix : suffixes) {
+            columns.add(prefix.isEmpty() ? suffix + numbered : prefix + numbered + suffix);
+        }
+        return columns;
+    }
+}
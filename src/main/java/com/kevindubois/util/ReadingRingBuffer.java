@@ -0,0 +1,118 @@
+package com.kevindubois.util;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.kevindubois.dto.NetatmoStationsDataResponse.DashboardData;
+
+/**
+ * Fixed-size ring buffer holding the most recent dashboard readings of a single module.
+ * Readings are stored in primitive arrays, missing measurements are kept as NaN.
+ */
+public class ReadingRingBuffer {
+
+    /**
+     * Names of the metrics stored for every reading, in column order
+     */
+    public static final String[] METRICS = {"temperature", "humidity", "pressure", "co2", "noise"};
+
+    private final long[] timestamps;
+    private final double[][] values;
+    private int next;
+    private int size;
+
+    /**
+     * Creates a new buffer
+     *
+     * @param capacity The maximum number of readings to keep
+     */
+    public ReadingRingBuffer(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Capacity must be positive: " + capacity);
+        }
+        this.timestamps = new long[capacity];
+        this.values = new double[METRICS.length][capacity];
+    }
+
+    /**
+     * Adds a dashboard reading, overwriting the oldest one when the buffer is full.
+     * Readings that are not newer than the last stored one are ignored.
+     *
+     * @param data The dashboard data of the module
+     * @return true if the reading was stored
+     */
+    public synchronized boolean add(DashboardData data) {
+        if (data == null || data.getTimeUtc() == null) {
+            return false;
+        }
+        long timeUtc = data.getTimeUtc();
+        if (size > 0 && timeUtc <= latestTimestamp()) {
+            return false;
+        }
+
+        timestamps[next] = timeUtc;
+        values[0][next] = toDouble(data.getTemperature());
+        values[1][next] = toDouble(data.getHumidity());
+        values[2][next] = toDouble(data.getPressure());
+        values[3][next] = toDouble(data.getCo2());
+        values[4][next] = toDouble(data.getNoise());
+
+        next = (next + 1) % timestamps.length;
+        if (size < timestamps.length) {
+            size++;
+        }
+        return true;
+    }
+
+    /**
+     * Gets the timestamp of the most recent reading
+     *
+     * @return The timestamp in seconds, or -1 if the buffer is empty
+     */
+    public synchronized long latestTimestamp() {
+        if (size == 0) {
+            return -1;
+        }
+        return timestamps[(next - 1 + timestamps.length) % timestamps.length];
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    public int capacity() {
+        return timestamps.length;
+    }
+
+    /**
+     * Copies the most recent readings, oldest first
+     *
+     * @param maxPoints Maximum number of readings to return
+     * @return List of data points with a formatted timestamp and the available metrics
+     */
+    public synchronized List<Map<String, Object>> toList(int maxPoints) {
+        int count = Math.min(size, Math.max(0, maxPoints));
+        List<Map<String, Object>> result = new ArrayList<>(count);
+        int start = (next - count + timestamps.length) % timestamps.length;
+
+        for (int i = 0; i < count; i++) {
+            int index = (start + i) % timestamps.length;
+            Map<String, Object> point = new LinkedHashMap<>();
+            point.put("timestamp", WeatherUtil.formatTimestamp(timestamps[index], "yyyy-MM-dd HH:mm"));
+            point.put("timeUtc", timestamps[index]);
+            for (int m = 0; m < METRICS.length; m++) {
+                if (!Double.isNaN(values[m][index])) {
+                    point.put(METRICS[m], values[m][index]);
+                }
+            }
+            result.add(point);
+        }
+        return result;
+    }
+
+    private static double toDouble(Number value) {
+        return value != null ? value.doubleValue() : Double.NaN;
+    }
+}
@@ -0,0 +1,129 @@
+package com.kevindubois.util;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Summary statistics of historical data, so clients get the answer instead of the raw series.
+ * Every column is reduced in a single pass over its primitive array: extremes with their time, mean,
+ * linear trend, degree-days for temperatures and the time spent above a threshold.
+ */
+public class WeatherStatistics {
+
+    private static final double SECONDS_PER_DAY = 86400.0;
+    private static final String TIME_PATTERN = "yyyy-MM-dd HH:mm";
+
+    /**
+     * Options of the computation
+     *
+     * @param stepSeconds Time covered by each data point, the scale of the series
+     * @param degreeDayBase Base temperature of heating and cooling degree-days
+     * @param thresholdColumn Column the threshold applies to, null for none
+     * @param threshold Value above which time is counted, null for none
+     */
+    public record Options(long stepSeconds, double degreeDayBase, String thresholdColumn, Double threshold) {}
+
+    private WeatherStatistics() {
+    }
+
+    /**
+     * Compute the statistics of every column that has values
+     * @param series The data points
+     * @param options The options
+     * @return Map from column name to its statistics, rounded for display
+     */
+    public static Map<String, Object> compute(ColumnarSeries series, Options options) {
+        Map<String, Object> result = new LinkedHashMap<>();
+        for (int c = 0; c < ColumnarSeries.COLUMNS.size(); c++) {
+            if (series.hasValues(c)) {
+                String column = ColumnarSeries.COLUMNS.get(c);
+                result.put(column, compute(column, series.times(), series.values(c), series.size(), options));
+            }
+        }
+        return result;
+    }
+
+    private static Map<String, Object> compute(String column, long[] times, float[] values, int size, Options options) {
+        boolean temperature = column.toLowerCase().contains("temperature");
+        boolean thresholded = options.threshold() != null && column.equals(options.thresholdColumn());
+        double base = options.degreeDayBase();
+        double threshold = thresholded ? options.threshold() : 0;
+
+        int count = 0;
+        float min = Float.POSITIVE_INFINITY;
+        float max = Float.NEGATIVE_INFINITY;
+        long minTime = 0;
+        long maxTime = 0;
+        double sum = 0;
+        double heating = 0;
+        double cooling = 0;
+        int above = 0;
+
+        // Least squares sums for the trend, with time in days since the first point to keep the sums small
+        long origin = size > 0 ? times[0] : 0;
+        double sumX = 0;
+        double sumXX = 0;
+        double sumXY = 0;
+
+        for (int i = 0; i < size; i++) {
+            float value = values[i];
+            if (Float.isNaN(value)) {
+                continue;
+            }
+            count++;
+            sum += value;
+            if (value < min) {
+                min = value;
+                minTime = times[i];
+            }
+            if (value > max) {
+                max = value;
+                maxTime = times[i];
+            }
+            double x = (times[i] - origin) / SECONDS_PER_DAY;
+            sumX += x;
+            sumXX += x * x;
+            sumXY += x * value;
+            if (temperature) {
+                heating += Math.max(0, base - value);
+                cooling += Math.max(0, value - base);
+            }
+            if (thresholded && value > threshold) {
+                above++;
+            }
+        }
+
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("count", count);
+        if (count == 0) {
+            return stats;
+        }
+        int decimals = CompactSeriesEncoder.decimals(column);
+        stats.put("min", round(min, decimals));
+        stats.put("minTime", WeatherUtil.formatTimestamp(minTime, TIME_PATTERN));
+        stats.put("max", round(max, decimals));
+        stats.put("maxTime", WeatherUtil.formatTimestamp(maxTime, TIME_PATTERN));
+        stats.put("mean", round(sum / count, decimals + 1));
+
+        double denominator = count * sumXX - sumX * sumX;
+        if (count > 1 && denominator > 0) {
+            stats.put("trendPerDay", round((count * sumXY - sumX * sum) / denominator, 3));
+        }
+
+        // Each point stands for one step, so the sums are integrated over time
+        double daysPerPoint = options.stepSeconds() / SECONDS_PER_DAY;
+        if (temperature) {
+            stats.put("heatingDegreeDays", round(heating * daysPerPoint, 1));
+            stats.put("coolingDegreeDays", round(cooling * daysPerPoint, 1));
+        }
+        if (thresholded) {
+            stats.put("hoursAbove", round(above * options.stepSeconds() / 3600.0, 1));
+        }
+        return stats;
+    }
+
+    private static double round(double value, int decimals) {
+        double factor = Math.pow(10, decimals);
+        return Math.round(value * factor) / factor;
+    }
+}
@@ -8,6 +8,7 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.TreeMap;
 import java.util.logging.Logger;
 
 import com.kevindubois.dto.NetatmoHistoricalDataResponse.NetatmoMeasurementData;
@@ -91,6 +92,7 @@ public class WeatherUtil {
                 // Create a map for this data point
                 Map<String, Object> dataPoint = new HashMap<>();
                 dataPoint.put("timestamp", formattedTimestamp);
+                dataPoint.put("timeUtc", timestamp);
                 
                 // Add indoor values
                 if (indoorValue instanceof List<?>) {
@@ -123,7 +125,87 @@ public class WeatherUtil {
         
         return result;
     }
-    
+
+    /**
+     * Merge the series of station modules into the data points of the main device on a shared time axis.
+     * Points are matched by timestamp rather than position, so a module with gaps or a different first
+     * measurement still lines up. A module timestamp without a main point gets a point of its own, up to the
+     * last main point so a series cut short by the point limit continues where the main series stopped.
+     *
+     * @param dataPoints Data points of the main device, oldest first, see processDataPoints
+     * @param moduleData Measurement data of each module, null for a module that could not be fetched
+     * @param moduleColumns Column names of the values of each module, in the same order as moduleData
+     * @return The merged data points, oldest first
+     */
+    public static List<Object> mergeModuleData(
+            List<Object> dataPoints,
+            List<NetatmoMeasurementData> moduleData,
+            List<List<String>> moduleColumns) {
+
+        if (moduleData.isEmpty()) {
+            return dataPoints;
+        }
+
+        TreeMap<Long, Map<String, Object>> byTime = new TreeMap<>();
+        for (Object value : dataPoints) {
+            @SuppressWarnings("unchecked")
+            Map<String, Object> dataPoint = (Map<String, Object>) value;
+            byTime.put(((Number) dataPoint.get("timeUtc")).longValue(), dataPoint);
+        }
+        long lastMain = byTime.isEmpty() ? Long.MAX_VALUE : byTime.lastKey();
+
+        for (int m = 0; m < moduleData.size(); m++) {
+            NetatmoMeasurementData data = moduleData.get(m);
+            if (data == null || data.values == null) {
+                continue;
+            }
+            List<String> columns = moduleColumns.get(m);
+            for (int i = 0; i < data.values.size(); i++) {
+                Object value = data.values.get(i);
+                long timestamp = data.beginTime + ((long) i * data.stepTime);
+                if (value == null || timestamp > lastMain) {
+                    continue;
+                }
+                Map<String, Object> dataPoint = byTime.computeIfAbsent(timestamp, time -> {
+                    Map<String, Object> point = new HashMap<>();
+                    point.put("timestamp", formatTimestamp(time, "yyyy-MM-dd HH:mm"));
+                    point.put("timeUtc", time);
+                    return point;
+                });
+                if (value instanceof List<?> values) {
+                    for (int c = 0; c < values.size() && c < columns.size(); c++) {
+                        if (values.get(c) != null) {
+                            dataPoint.put(columns.get(c), values.get(c));
+                        }
+                    }
+                } else {
+                    dataPoint.put(columns.get(0), value);
+                }
+            }
+        }
+        return new ArrayList<>(byTime.values());
+    }
+
+    /**
+     * Get the duration of a Netatmo measurement scale
+     *
+     * @param scale The scale (30min, 1hour, 3hours, 1day, 1week, 1month)
+     * @return The duration in seconds, months are counted as 30 days
+     */
+    public static long getScaleSeconds(String scale) {
+        if (scale == null) {
+            return 3600;
+        }
+        return switch (scale) {
+            case "30min" -> 1800;
+            case "3hours" -> 10800;
+            case "1day" -> 86400;
+            case "1week" -> 604800;
+            case "1month" -> 2592000;
+            default -> 3600;
+        };
+    }
+
     /**
      * Normalize a parameter with a default value
      */
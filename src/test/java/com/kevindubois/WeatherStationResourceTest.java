@@ -1,18 +1,32 @@
 package com.kevindubois;
 
+import io.quarkus.test.common.http.TestHTTPResource;
 import io.quarkus.test.junit.QuarkusTest;
+import io.restassured.RestAssured;
+import io.restassured.config.DecoderConfig;
 import jakarta.ws.rs.core.MediaType;
 import jakarta.ws.rs.core.Response;
+import com.kevindubois.client.MockNetatmoApiClient;
 import com.kevindubois.dto.ApiResponse;
 import com.kevindubois.dto.CurrentWeatherData;
+import com.kevindubois.service.RequestDeadline;
 import com.kevindubois.service.WeatherService;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
 
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
 import static io.restassured.RestAssured.given;
 import static org.hamcrest.CoreMatchers.*;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.Mockito.when;
 
@@ -21,6 +35,9 @@ class WeatherStationResourceTest {
 
     @Mock
     WeatherService weatherService;
+
+    @TestHTTPResource("/weather/current/stream")
+    URI currentStreamUri;
     
     @BeforeEach
     void setup() {
@@ -105,6 +122,21 @@ class WeatherStationResourceTest {
              .body("success", is(true));
     }
     
+    @Test
+    void testGetAllCurrentWeather() {
+        // One row for the station and one for its outdoor module, without the columns no row has a value for
+        given()
+          .when().get("/weather/current/all")
+          .then()
+             .statusCode(200)
+             .contentType(MediaType.APPLICATION_JSON)
+             .body("success", is(true))
+             .body("data.devices", is(1))
+             .body("data.rows.size()", is(2))
+             .body("data.columns", hasItems("deviceId", "moduleId", "temperature", "co2"))
+             .body("data.columns", not(hasItem("rain")));
+    }
+
     @Test
     void testGetHistoricalWeatherData() {
         // Test the endpoint - we're not mocking the service here since it's hard to inject
@@ -114,6 +146,257 @@ class WeatherStationResourceTest {
              .statusCode(anyOf(is(200), is(500)))
              .contentType(MediaType.APPLICATION_JSON);
     }
-}
 
+    @Test
+    void testStreamHistoricalWeatherData() {
+        // Two months of hourly data are fetched in two windows and streamed as a single document
+        given()
+          .when().get("/weather/historical?device_id=device1&scale=1hour&date_begin=2024-01-01&date_end=2024-03-01&stream=true")
+          .then()
+             .statusCode(200)
+             .contentType(MediaType.APPLICATION_JSON)
+             .body("success", is(true))
+             .body("data.deviceId", is("device1"))
+             .body("data.totalDataPoints", is(61 * 24))
+             .body("data.values.size()", is(61 * 24));
+    }
+
+    @Test
+    void testStreamHistoricalWeatherDataOutlastsRequestTimeout() {
+        // A year of hourly data takes nine windows, longer than the 2s request timeout of the tests
+        MockNetatmoApiClient.historicalDelayMillis = 300;
+        try {
+            given()
+              .when().get("/weather/historical?device_id=device1&scale=1hour&date_begin=2023-01-01&date_end=2023-12-31&stream=true")
+              .then()
+                 .statusCode(200)
+                 .body("success", is(true))
+                 .body("data.totalDataPoints", is(365 * 24));
+
+            // A deadline the client asks for still applies
+            given()
+              .header(RequestDeadline.HEADER, "500")
+              .when().get("/weather/historical?device_id=device1&scale=1hour&date_begin=2022-01-01&date_end=2022-12-31&stream=true")
+              .then()
+                 .statusCode(200)
+                 .body("success", is(false));
+        } finally {
+            MockNetatmoApiClient.historicalDelayMillis = 0;
+        }
+    }
+
+    @Test
+    void testGetHistoricalWeatherBatch() {
+        // The first two queries are identical once defaults are applied and are fetched once
+        given()
+          .contentType(MediaType.APPLICATION_JSON)
+          .body("""
+              [
+                {"deviceId": "device1", "beginDate": "2024-01-01", "endDate": "2024-01-02"},
+                {"deviceId": "device1", "scale": "1hour", "beginDate": "2024-01-01", "endDate": "2024-01-02"},
+                {"deviceId": "device1", "scale": "1day", "beginDate": "2024-01-01", "endDate": "2024-01-31"}
+              ]""")
+          .when().post("/weather/historical/batch")
+          .then()
+             .statusCode(200)
+             .body("success", is(true))
+             .body("data.totalQueries", is(3))
+             .body("data.distinctQueries", is(2))
+             .body("data.results.size()", is(3))
+             .body("data.results.success", everyItem(is(true)))
+             .body("data.results[2].data.scale", is("1day"));
+
+        given()
+          .contentType(MediaType.APPLICATION_JSON)
+          .body("[]")
+          .when().post("/weather/historical/batch")
+          .then()
+             .statusCode(400);
+    }
+
+    @Test
+    void testHistoricalWeatherBatchDuplicatesPastDeadline() {
+        // Both copies of a query that misses the deadline report the timeout, the batch itself still answers
+        MockNetatmoApiClient.historicalDelayMillis = 1000;
+        try {
+            given()
+              .header(RequestDeadline.HEADER, "300")
+              .contentType(MediaType.APPLICATION_JSON)
+              .body("""
+                  [
+                    {"deviceId": "device1", "scale": "1hour", "beginDate": "2021-05-01", "endDate": "2021-05-02"},
+                    {"deviceId": "device1", "scale": "1hour", "beginDate": "2021-05-01", "endDate": "2021-05-02"}
+                  ]""")
+              .when().post("/weather/historical/batch")
+              .then()
+                 .statusCode(200)
+                 .body("data.distinctQueries", is(1))
+                 .body("data.results.size()", is(2))
+                 .body("data.results.success", everyItem(is(false)))
+                 .body("data.results.message", everyItem(containsString("deadline")));
+        } finally {
+            MockNetatmoApiClient.historicalDelayMillis = 0;
+        }
+    }
+
+    @Test
+    void testExportHistoricalWeatherNdjson() {
+        String body = given()
+          .accept(WeatherStationResource.NDJSON)
+          .when().get("/weather/historical/export?device_id=device1&scale=1hour&date_begin=2024-01-01&date_end=2024-03-01")
+          .then()
+             .statusCode(200)
+             .contentType(WeatherStationResource.NDJSON)
+             .extract().asString();
+
+        String[] lines = body.split("\n");
+        assertEquals(61 * 24, lines.length);
+        assertTrue(lines[0].startsWith("{") && lines[0].contains("\"timestamp\":\"2024-01-01 00:00\""));
+        assertTrue(body.endsWith("\n"));
+    }
 
+    @Test
+    void testExportHistoricalWeatherCsv() {
+        String body = given()
+          .accept(WeatherStationResource.CSV)
+          .when().get("/weather/historical/export?device_id=device1&scale=1hour&date_begin=2024-01-01&date_end=2024-01-02")
+          .then()
+             .statusCode(200)
+             .contentType(containsString(WeatherStationResource.CSV))
+             .header("Content-Disposition", containsString("historical-device1.csv"))
+             .extract().asString();
+
+        String[] lines = body.split("\r\n");
+        assertEquals(1 + 2 * 24, lines.length);
+        assertEquals("timestamp,timeUtc,indoorTemperature,indoorHumidity,indoorPressure,outdoorTemperature,outdoorHumidity,"
+            + "rain,windStrength,windAngle,gustStrength,gustAngle", lines[0]);
+        assertTrue(lines[1].startsWith("2024-01-01 00:00,1704067200,"));
+    }
+
+    @Test
+    void testGetHistoricalWeatherCbor() {
+        byte[] body = given()
+          .accept(WeatherStationResource.CBOR)
+          .when().get("/weather/historical?device_id=device1&scale=1hour&date_begin=2024-01-01&date_end=2024-03-01")
+          .then()
+             .statusCode(200)
+             .contentType(WeatherStationResource.CBOR)
+             .extract().asByteArray();
+
+        // 61 days of hourly timestamps as 64-bit integers, the values as 32-bit floats
+        assertTrue(body.length > 61 * 24 * (8 + 5 * 4));
+        assertTrue(body.length < 61 * 24 * (8 + 5 * 4) + 1024);
+
+        // Ranges beyond the CBOR maximum of the tests (2000 points) are rejected unless limited
+        given()
+          .accept(WeatherStationResource.CBOR)
+          .when().get("/weather/historical?device_id=device1&scale=1hour&date_begin=2024-01-01&date_end=2024-06-01")
+          .then()
+             .statusCode(400)
+             .contentType(MediaType.APPLICATION_JSON)
+             .body("success", is(false));
+        given()
+          .accept(WeatherStationResource.CBOR)
+          .when().get("/weather/historical?device_id=device1&scale=1hour&date_begin=2024-01-01&date_end=2024-06-01&limit=100")
+          .then()
+             .statusCode(200)
+             .contentType(WeatherStationResource.CBOR);
+    }
+
+    @Test
+    void testConditionalGetCurrentWeather() {
+        var response = given()
+          .when().get("/weather/current")
+          .then()
+             .statusCode(200)
+             .header("ETag", notNullValue())
+             .header("Last-Modified", notNullValue())
+             .header("Cache-Control", containsString("max-age="))
+             .extract();
+
+        // Unchanged data is answered with 304 and no body
+        given()
+          .header("If-None-Match", response.header("ETag"))
+          .when().get("/weather/current")
+          .then()
+             .statusCode(304)
+             .header("ETag", is(response.header("ETag")));
+
+        given()
+          .header("If-Modified-Since", response.header("Last-Modified"))
+          .when().get("/weather/current")
+          .then()
+             .statusCode(304);
+
+        // The device list has its own entity tag
+        given()
+          .header("If-None-Match", response.header("ETag"))
+          .when().get("/weather/devices")
+          .then()
+             .statusCode(200);
+    }
+
+    @Test
+    void testStreamCurrentWeather() throws Exception {
+        // Make sure the poller has a snapshot to send on connect
+        given().when().get("/weather/current").then().statusCode(200);
+
+        HttpRequest request = HttpRequest.newBuilder(currentStreamUri)
+            .header("Accept", MediaType.SERVER_SENT_EVENTS)
+            .build();
+        HttpResponse<Stream<String>> response = HttpClient.newHttpClient()
+            .sendAsync(request, HttpResponse.BodyHandlers.ofLines())
+            .get(10, TimeUnit.SECONDS);
+
+        assertEquals(200, response.statusCode());
+        assertTrue(response.headers().firstValue("Content-Type").orElse("").startsWith(MediaType.SERVER_SENT_EVENTS));
+        try (Stream<String> lines = response.body()) {
+            String event = lines.filter(line -> line.startsWith("data:")).findFirst().orElseThrow();
+            assertTrue(event.contains("\"stationName\""), event);
+        }
+    }
+
+    @Test
+    void testResponseCompression() {
+        // Large responses are compressed for clients accepting gzip
+        given()
+          .header("Accept-Encoding", "gzip")
+          .when().get("/weather/historical?device_id=device1&scale=1hour&date_begin=2024-01-01&date_end=2024-01-31&stream=true")
+          .then()
+             .statusCode(200)
+             .header("Content-Encoding", "gzip")
+             .header("Vary", containsString("Accept-Encoding"))
+             .body("data.totalDataPoints", is(31 * 24));
+
+        // Small responses and clients without gzip support get the plain body
+        given()
+          .header("Accept-Encoding", "gzip")
+          .when().get("/weather")
+          .then()
+             .statusCode(200)
+             .header("Content-Encoding", nullValue());
+
+        // JSON entities measured by the filter are sent as serialized there, with a single Vary header
+        given()
+          .config(RestAssured.config().decoderConfig(DecoderConfig.decoderConfig().noContentDecoders()))
+          .when().get("/weather/stations")
+          .then()
+             .statusCode(200)
+             .contentType(containsString(MediaType.APPLICATION_JSON))
+             .body("success", is(true));
+        var vary = given()
+          .header("Accept-Encoding", "gzip")
+          .when().get("/weather/current")
+          .then()
+             .statusCode(200)
+             .extract().headers().getValues("Vary");
+        assertEquals(1, vary.size(), vary.toString());
+
+        given()
+          .config(RestAssured.config().decoderConfig(DecoderConfig.decoderConfig().noContentDecoders()))
+          .when().get("/weather/historical?device_id=device1&scale=1hour&stream=true")
+          .then()
+             .statusCode(200)
+             .header("Content-Encoding", nullValue());
+    }
+}
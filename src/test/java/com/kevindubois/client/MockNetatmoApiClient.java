@@ -4,6 +4,7 @@ import io.quarkus.test.Mock;
 import jakarta.enterprise.context.ApplicationScoped;
 import com.kevindubois.dto.NetatmoHistoricalDataResponse;
 import com.kevindubois.dto.NetatmoStationsDataResponse;
+import com.kevindubois.service.RequestDeadline;
 import org.eclipse.microprofile.rest.client.inject.RestClient;
 
 import java.util.ArrayList;
@@ -19,6 +20,11 @@ import java.util.Map;
 @RestClient
 public class MockNetatmoApiClient implements NetatmoApiClient {
 
+    /**
+     * Time every historical data call takes, in ms
+     */
+    public static volatile long historicalDelayMillis;
+
     @Override
     public NetatmoStationsDataResponse getStationsData(String deviceId) {
         // Create mock dashboard data for main device
@@ -87,7 +93,18 @@ public class MockNetatmoApiClient implements NetatmoApiClient {
     public NetatmoHistoricalDataResponse getHistoricalData(
             String deviceId, String moduleId, String scale, String type,
             Long dateBegin, Long dateEnd, Integer limit, Boolean optimize, Boolean realTime) {
-        
+        if (historicalDelayMillis > 0) {
+            try {
+                Thread.sleep(historicalDelayMillis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            // The interceptor the mock bypasses fails calls that end after the request deadline
+            if (System.currentTimeMillis() > RequestDeadline.current()) {
+                throw RequestDeadline.exceeded();
+            }
+        }
+
         // Create a list of mock measurements
         List<List<Object>> measurements = new ArrayList<>();
         long timestamp = dateBegin;
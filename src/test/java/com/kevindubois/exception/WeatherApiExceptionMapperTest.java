@@ -1,5 +1,6 @@
 package com.kevindubois.exception;
 
+import jakarta.ws.rs.core.HttpHeaders;
 import jakarta.ws.rs.core.Response;
 import com.kevindubois.dto.ApiResponse;
 import org.junit.jupiter.api.Test;
@@ -64,6 +65,16 @@ class WeatherApiExceptionMapperTest {
         assertEquals(errorMessage, apiResponse.getMessage());
         assertEquals(status.getStatusCode(), apiResponse.getStatus());
     }
+
+    @Test
+    void testUnavailableSetsRetryAfter() {
+        WeatherApiExceptionMapper mapper = new WeatherApiExceptionMapper();
+
+        Response response = mapper.toResponse(new NetatmoUnavailableException("Netatmo API unavailable", 12));
+
+        assertEquals(Response.Status.SERVICE_UNAVAILABLE.getStatusCode(), response.getStatus());
+        assertEquals("12", response.getHeaderString(HttpHeaders.RETRY_AFTER));
+    }
 }
 
 
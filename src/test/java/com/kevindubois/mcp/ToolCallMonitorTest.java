@@ -0,0 +1,39 @@
+package com.kevindubois.mcp;
+
+import io.quarkiverse.mcp.server.Cancellation;
+import org.junit.jupiter.api.Test;
+
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ToolCallMonitorTest {
+
+    @Test
+    void testInterruptsCallWhenCancelled() {
+        AtomicBoolean requested = new AtomicBoolean();
+        Cancellation cancellation = () -> new Cancellation.Result(requested.get(), Optional.empty());
+
+        long start = System.currentTimeMillis();
+        try (ToolCallMonitor monitor = new ToolCallMonitor(null, cancellation)) {
+            assertFalse(monitor.isCancelled());
+            requested.set(true);
+
+            // Stands in for a blocking Netatmo call
+            assertThrows(InterruptedException.class, () -> Thread.sleep(10_000));
+            assertTrue(monitor.isCancelled());
+        }
+
+        assertTrue(System.currentTimeMillis() - start < 5_000, "The call should be aborted right away");
+        assertFalse(Thread.currentThread().isInterrupted(), "The interrupt must not leak past the tool call");
+    }
+
+    @Test
+    void testNoCancellation() {
+        try (ToolCallMonitor monitor = new ToolCallMonitor(null, null)) {
+            monitor.windowFetched(1, 2, 1024);
+            assertFalse(monitor.isCancelled());
+        }
+    }
+}
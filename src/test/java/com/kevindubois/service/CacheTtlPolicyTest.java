@@ -0,0 +1,72 @@
+package com.kevindubois.service;
+
+import com.kevindubois.dto.NetatmoStationsDataResponse;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CacheTtlPolicyTest {
+
+    static CacheTtlPolicy createPolicy() {
+        CacheTtlPolicy policy = new CacheTtlPolicy();
+        policy.sensorInterval = Duration.ofSeconds(600);
+        policy.updateGrace = Duration.ofSeconds(30);
+        policy.retryWindow = Duration.ofSeconds(30);
+        policy.fallbackTtl = Duration.ofSeconds(60);
+        return policy;
+    }
+
+    private NetatmoStationsDataResponse response(Long mainTimeUtc, Long moduleTimeUtc) {
+        var mainData = new NetatmoStationsDataResponse.DashboardData(22.5, 45, 1013.2, 800, 40, mainTimeUtc, 21.0, 24.0);
+        var moduleData = new NetatmoStationsDataResponse.DashboardData(18.5, 65, null, null, null, moduleTimeUtc, 16.0, 20.0);
+        var module = new NetatmoStationsDataResponse.Module("module1", "Outdoor", "NAModule1", List.of("Temperature"), moduleData);
+        var station = new NetatmoStationsDataResponse.WeatherStation(
+            "station1", "Home", "NAMain", List.of("Temperature"), mainData, List.of(module));
+        return new NetatmoStationsDataResponse(new NetatmoStationsDataResponse.Body(List.of(station)), "ok", 0.1, 0L);
+    }
+
+    @Test
+    void testExpiresAtNextExpectedReading() {
+        CacheTtlPolicy policy = createPolicy();
+        long now = 1_000_000_000L;
+
+        // Main device reported 2 minutes ago, module 5 minutes ago: the module reports first
+        long expiry = policy.expiresAt(response(now / 1000 - 120, now / 1000 - 300), now);
+
+        assertEquals(now + (600 - 300 + 30) * 1000L, expiry);
+    }
+
+    @Test
+    void testOverdueReadingUsesRetryWindow() {
+        CacheTtlPolicy policy = createPolicy();
+        long now = 1_000_000_000L;
+
+        // Module reading is 11 minutes old, so its next reading is overdue
+        long expiry = policy.expiresAt(response(now / 1000 - 60, now / 1000 - 660), now);
+
+        assertEquals(now + 30_000L, expiry);
+    }
+
+    @Test
+    void testOfflineModuleIsIgnored() {
+        CacheTtlPolicy policy = createPolicy();
+        long now = 1_000_000_000L;
+
+        // Module has been silent for an hour, only the main device drives the expiry
+        long expiry = policy.expiresAt(response(now / 1000 - 60, now / 1000 - 3600), now);
+
+        assertEquals(now + (600 - 60 + 30) * 1000L, expiry);
+    }
+
+    @Test
+    void testFallbackWithoutTimestamps() {
+        CacheTtlPolicy policy = createPolicy();
+        long now = 1_000_000_000L;
+
+        assertEquals(now + 60_000L, policy.expiresAt(response(null, null), now));
+        assertEquals(now + 60_000L, policy.expiresAt(null, now));
+    }
+}
@@ -0,0 +1,63 @@
+package com.kevindubois.service;
+
+import com.kevindubois.dto.CurrentWeatherData;
+import io.smallrye.mutiny.helpers.test.AssertSubscriber;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CurrentWeatherBroadcasterTest {
+
+    private CurrentWeatherBroadcaster broadcaster;
+
+    private static CurrentWeatherData reading(double indoorTemperature, long timeUtc) {
+        return new CurrentWeatherData()
+            .withStationName("Home")
+            .withIndoorTemperature(indoorTemperature)
+            .withIndoorHumidity(45)
+            .withTimeUtc(timeUtc);
+    }
+
+    @BeforeEach
+    void setup() {
+        broadcaster = new CurrentWeatherBroadcaster();
+        broadcaster.bufferSize = 2;
+    }
+
+    @Test
+    void testPublishesOnlyChangedValues() {
+        broadcaster.publish(reading(21.0, 1000));
+        AssertSubscriber<CurrentWeatherData> subscriber = broadcaster.stream()
+            .subscribe().withSubscriber(AssertSubscriber.create(10));
+
+        assertFalse(broadcaster.publish(reading(21.0, 1600)), "Only the reading time changed");
+        assertTrue(broadcaster.publish(reading(21.4, 2200)));
+
+        assertEquals(List.of(reading(21.0, 1000), reading(21.4, 2200)), subscriber.getItems());
+        assertEquals(1, broadcaster.getSubscriberCount());
+
+        subscriber.cancel();
+        assertEquals(0, broadcaster.getSubscriberCount());
+    }
+
+    @Test
+    void testDisconnectsSlowSubscriber() {
+        AssertSubscriber<CurrentWeatherData> fast = broadcaster.stream()
+            .subscribe().withSubscriber(AssertSubscriber.create(Long.MAX_VALUE));
+        AssertSubscriber<CurrentWeatherData> slow = broadcaster.stream()
+            .subscribe().withSubscriber(AssertSubscriber.create(0));
+
+        for (int i = 0; i < 5; i++) {
+            broadcaster.publish(reading(20.0 + i, 1000 + i * 600));
+        }
+
+        assertEquals(5, fast.getItems().size());
+        fast.assertNotTerminated();
+        slow.assertCompleted();
+        assertTrue(slow.getItems().isEmpty());
+        assertEquals(1, broadcaster.getSubscriberCount());
+    }
+}
@@ -0,0 +1,96 @@
+package com.kevindubois.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.kevindubois.dto.NetatmoHistoricalDataResponse;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HistoricalDataStoreTest {
+
+    private static final String TYPES = "Temperature,Humidity,Pressure";
+
+    private NetatmoHistoricalDataResponse response(long begin, int step, int count) {
+        List<Object> values = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            values.add(List.of(20.0 + i, 40 + i, 1010.0));
+        }
+        return new NetatmoHistoricalDataResponse(
+            List.of(Map.of("beg_time", begin, "step_time", step, "value", values)),
+            "ok", 0.1, begin
+        );
+    }
+
+    @Test
+    void testFindCoveredRange() {
+        HistoricalDataStore store = new HistoricalDataStore();
+        int stored = store.put("station1", null, "1day", TYPES, 0L, 864000L, response(0L, 86400, 10));
+
+        assertEquals(10, stored);
+
+        NetatmoHistoricalDataResponse found = store.find("station1", null, "1day", TYPES, 86400L, 259200L, null);
+
+        assertNotNull(found);
+        var parsed = found.getParsedMeasurementData();
+        assertEquals(86400L, parsed.beginTime);
+        assertEquals(86400, parsed.stepTime);
+        assertEquals(3, parsed.values.size());
+        assertEquals(List.of(21.0, 41, 1010.0), parsed.values.get(0));
+    }
+
+    @Test
+    void testFindReturnsNullWhenNotCovered() {
+        HistoricalDataStore store = new HistoricalDataStore();
+        store.put("station1", null, "1day", TYPES, 0L, 864000L, response(0L, 86400, 10));
+
+        assertNull(store.find("station1", null, "1day", TYPES, 0L, 2000000L, null));
+        assertNull(store.find("station1", null, "3hours", TYPES, 0L, 86400L, null));
+        assertNull(store.find("station1", "module1", "1day", TYPES, 0L, 86400L, null));
+    }
+
+    @Test
+    void testAdjacentRangesAreMerged() {
+        HistoricalDataStore store = new HistoricalDataStore();
+        store.put("station1", null, "1day", TYPES, 432000L, 864000L, response(432000L, 86400, 5));
+        store.put("station1", null, "1day", TYPES, 0L, 432000L, response(0L, 86400, 5));
+
+        NetatmoHistoricalDataResponse found = store.find("station1", null, "1day", TYPES, 0L, 864000L, 4);
+
+        assertNotNull(found);
+        assertEquals(4, found.getParsedMeasurementData().values.size());
+    }
+
+    @Test
+    void testAppendAndLoad(@TempDir Path dir) throws Exception {
+        ObjectMapper mapper = new ObjectMapper();
+        Path journal = dir.resolve("store.jsonl");
+        HistoricalDataStore store = new HistoricalDataStore();
+        store.put("station1", null, "1day", TYPES, 432000L, 864000L, response(432000L, 86400, 5));
+        store.append(journal, mapper);
+        store.put("station1", null, "1day", TYPES, 0L, 432000L, response(0L, 86400, 5));
+        store.append(journal, mapper);
+
+        // Each checkpoint only appends the ranges stored since the previous one
+        assertEquals(2, Files.readAllLines(journal).size());
+
+        // A line cut short by a crash is skipped
+        Files.writeString(journal, "{\"key\":\"station1", StandardOpenOption.APPEND);
+
+        HistoricalDataStore loaded = new HistoricalDataStore();
+        loaded.load(journal, mapper);
+
+        assertEquals(1, loaded.seriesCount());
+        assertEquals(10, loaded.rowCount());
+        NetatmoHistoricalDataResponse found = loaded.find("station1", null, "1day", TYPES, 0L, 864000L, null);
+        assertNotNull(found);
+        assertEquals(List.of(20.0, 40, 1010.0), found.getParsedMeasurementData().values.get(0));
+    }
+}
@@ -0,0 +1,89 @@
+package com.kevindubois.service;
+
+import com.kevindubois.exception.WeatherApiException;
+import jakarta.ws.rs.core.Response;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class NetatmoCallHedgerTest {
+
+    private NetatmoCallHedger hedger;
+
+    @BeforeEach
+    void setup() throws Exception {
+        hedger = new NetatmoCallHedger();
+        hedger.enabled = true;
+        hedger.percentile = 0.95;
+        hedger.minDelay = Duration.ofMillis(20);
+        hedger.budget = 0.05;
+        hedger.quotaShare = 1;
+        hedger.threads = 4;
+        hedger.init();
+
+        // Twenty fast calls give the operation a latency profile and the budget one hedge
+        for (int i = 0; i < 20; i++) {
+            hedger.execute("getmeasure", () -> "fast");
+        }
+    }
+
+    @AfterEach
+    void shutdown() {
+        hedger.shutdown();
+    }
+
+    @Test
+    void testHedgesSlowCall() throws Exception {
+        AtomicInteger attempts = new AtomicInteger();
+        long started = System.currentTimeMillis();
+        String result = hedger.execute("getmeasure", () -> {
+            if (attempts.incrementAndGet() == 1) {
+                Thread.sleep(5000);
+                return "slow";
+            }
+            return "hedge";
+        });
+
+        assertEquals("hedge", result);
+        assertTrue(System.currentTimeMillis() - started < 2000);
+        assertEquals(1L, hedger.getStatus().get("hedged"));
+        assertEquals(1L, hedger.getStatus().get("hedgeWins"));
+    }
+
+    @Test
+    void testHedgesStayWithinBudget() throws Exception {
+        hedger.budget = 0;
+        AtomicInteger attempts = new AtomicInteger();
+        for (int i = 0; i < 2; i++) {
+            hedger.execute("getmeasure", () -> {
+                attempts.incrementAndGet();
+                Thread.sleep(60);
+                return "slow";
+            });
+        }
+
+        // The single saved-up hedge is spent on the first slow call
+        assertEquals(3, attempts.get());
+        assertEquals(1L, hedger.getStatus().get("hedged"));
+    }
+
+    @Test
+    void testFailsAtRequestDeadline() {
+        hedger.enabled = false;
+        long started = System.currentTimeMillis();
+        WeatherApiException e = assertThrows(WeatherApiException.class,
+            () -> RequestDeadline.callWithin(System.currentTimeMillis() + 100, () -> hedger.execute("getmeasure", () -> {
+                Thread.sleep(5000);
+                return "late";
+            })));
+
+        assertEquals(Response.Status.GATEWAY_TIMEOUT, e.getStatus());
+        assertTrue(System.currentTimeMillis() - started < 2000);
+        assertEquals(1L, hedger.getStatus().get("deadlineExceeded"));
+    }
+}
@@ -0,0 +1,159 @@
+package com.kevindubois.service;
+
+import com.kevindubois.exception.NetatmoUnavailableException;
+import com.kevindubois.exception.WeatherApiException;
+import jakarta.ws.rs.core.Response;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class NetatmoCallSchedulerTest {
+
+    private NetatmoCallScheduler scheduler;
+    private ExecutorService executor;
+
+    @BeforeEach
+    void setup() {
+        scheduler = new NetatmoCallScheduler();
+        scheduler.maxConcurrentCalls = 1;
+        scheduler.maxWait = Duration.ofSeconds(5);
+        scheduler.queuePerSlot = 4;
+        executor = Executors.newCachedThreadPool();
+    }
+
+    private Future<?> submit(String account, Runnable call) {
+        return executor.submit(() -> AccountContext.callAs(account, () -> scheduler.execute("getStationsData", () -> {
+            call.run();
+            return null;
+        })));
+    }
+
+    private void awaitQueued(String account, int queued) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (((Number) scheduler.getUsage(account).get("queued")).intValue() < queued) {
+            assertTrue(System.currentTimeMillis() < deadline, "Call of " + account + " was not queued");
+            Thread.sleep(5);
+        }
+    }
+
+    @Test
+    void testAccountsTakeTurns() throws Exception {
+        CountDownLatch blocking = new CountDownLatch(1);
+        List<String> started = new CopyOnWriteArrayList<>();
+        Future<?> first = submit("busy", () -> {
+            try {
+                blocking.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        while (((Number) scheduler.getUsage("busy").get("inFlight")).intValue() == 0) {
+            Thread.sleep(5);
+        }
+
+        // The busy account queues three calls before the other account queues one
+        for (int i = 1; i <= 3; i++) {
+            submit("busy", () -> started.add("busy"));
+            awaitQueued("busy", i);
+        }
+        Future<?> other = submit("other", () -> started.add("other"));
+        awaitQueued("other", 1);
+
+        blocking.countDown();
+        first.get(5, TimeUnit.SECONDS);
+        other.get(5, TimeUnit.SECONDS);
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS));
+
+        assertEquals(List.of("busy", "other", "busy", "busy"), started);
+        assertEquals(4L, scheduler.getUsage("busy").get("calls"));
+        assertEquals(1L, scheduler.getUsage("other").get("calls"));
+    }
+
+    @Test
+    void testRejectsCallsWaitingTooLong() throws Exception {
+        scheduler.maxWait = Duration.ofMillis(50);
+        CountDownLatch blocking = new CountDownLatch(1);
+        Future<?> first = submit("busy", () -> {
+            try {
+                blocking.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        while (((Number) scheduler.getUsage("busy").get("inFlight")).intValue() == 0) {
+            Thread.sleep(5);
+        }
+
+        WeatherApiException e = assertThrows(WeatherApiException.class,
+            () -> AccountContext.callAs("other", () -> scheduler.execute("getStationsData", () -> "late")));
+        assertEquals(Response.Status.SERVICE_UNAVAILABLE, e.getStatus());
+        assertEquals(1L, scheduler.getUsage("other").get("rejected"));
+
+        blocking.countDown();
+        first.get(5, TimeUnit.SECONDS);
+        assertEquals("next", scheduler.execute("getStationsData", () -> "next"));
+        executor.shutdownNow();
+    }
+
+    @Test
+    void testShedsCallsBeyondTheQueue() throws Exception {
+        scheduler.queuePerSlot = 1;
+        CountDownLatch blocking = new CountDownLatch(1);
+        Runnable blocked = () -> {
+            try {
+                blocking.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        };
+        Future<?> first = submit("busy", blocked);
+        while (((Number) scheduler.getUsage("busy").get("inFlight")).intValue() == 0) {
+            Thread.sleep(5);
+        }
+        Future<?> waiting = submit("busy", blocked);
+        awaitQueued("busy", 1);
+
+        // One waiter per slot is allowed, the next call fails right away instead of waiting
+        long started = System.currentTimeMillis();
+        assertThrows(NetatmoUnavailableException.class,
+            () -> AccountContext.callAs("other", () -> scheduler.execute("getStationsData", () -> "shed")));
+        assertTrue(System.currentTimeMillis() - started < 1000);
+        assertEquals(1L, scheduler.getUsage("other").get("shed"));
+
+        blocking.countDown();
+        first.get(5, TimeUnit.SECONDS);
+        waiting.get(5, TimeUnit.SECONDS);
+        executor.shutdownNow();
+    }
+
+    @Test
+    void testShedsCallsOfAccountOverQuota() throws Exception {
+        NetatmoQuota quota = new NetatmoQuota();
+        quota.requestsPer10Seconds = 2;
+        quota.requestsPerHour = 500;
+        scheduler.quota = quota;
+
+        AccountContext.runAs("garden", () -> {
+            quota.record();
+            quota.record();
+        });
+
+        // The account over its quota is answered without calling Netatmo, the others still call
+        NetatmoUnavailableException e = assertThrows(NetatmoUnavailableException.class,
+            () -> AccountContext.callAs("garden", () -> scheduler.execute("getStationsData", () -> "called")));
+        assertTrue(e.getRetryAfterSeconds() >= 1 && e.getRetryAfterSeconds() <= 10);
+        assertEquals(1L, scheduler.getUsage("garden").get("shed"));
+        assertEquals("called", AccountContext.callAs("home", () -> scheduler.execute("getStationsData", () -> "called")));
+    }
+}
@@ -0,0 +1,111 @@
+package com.kevindubois.service;
+
+import com.kevindubois.exception.NetatmoTimeoutException;
+import com.kevindubois.exception.NetatmoUnavailableException;
+import com.kevindubois.exception.WeatherApiException;
+import jakarta.ws.rs.ProcessingException;
+import jakarta.ws.rs.WebApplicationException;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class NetatmoCircuitBreakerTest {
+
+    private NetatmoCircuitBreaker circuitBreaker;
+    private final AtomicInteger calls = new AtomicInteger();
+
+    @BeforeEach
+    void setup() {
+        circuitBreaker = new NetatmoCircuitBreaker();
+        circuitBreaker.failureThreshold = 2;
+        circuitBreaker.openDuration = Duration.ofMillis(50);
+    }
+
+    private String fail() throws Exception {
+        return circuitBreaker.execute(() -> {
+            calls.incrementAndGet();
+            throw new ProcessingException("connect timed out");
+        });
+    }
+
+    private String succeed() throws Exception {
+        return circuitBreaker.execute(() -> {
+            calls.incrementAndGet();
+            return "ok";
+        });
+    }
+
+    @Test
+    void testOpensAfterConsecutiveFailures() {
+        assertThrows(ProcessingException.class, this::fail);
+        assertEquals(NetatmoCircuitBreaker.State.CLOSED, circuitBreaker.getState());
+        assertThrows(ProcessingException.class, this::fail);
+        assertEquals(NetatmoCircuitBreaker.State.OPEN, circuitBreaker.getState());
+
+        // Open circuit fails fast without calling Netatmo
+        assertThrows(NetatmoUnavailableException.class, this::succeed);
+        assertEquals(2, calls.get());
+        assertEquals(1L, circuitBreaker.getStatus().get("rejectedCalls"));
+    }
+
+    @Test
+    void testProbeClosesOrReopensCircuit() throws Exception {
+        assertThrows(ProcessingException.class, this::fail);
+        assertThrows(ProcessingException.class, this::fail);
+
+        // Failed probe keeps the circuit open for another period
+        Thread.sleep(60);
+        assertThrows(ProcessingException.class, this::fail);
+        assertEquals(NetatmoCircuitBreaker.State.OPEN, circuitBreaker.getState());
+        assertThrows(NetatmoUnavailableException.class, this::succeed);
+
+        // Successful probe closes it
+        Thread.sleep(60);
+        assertEquals("ok", succeed());
+        assertEquals(NetatmoCircuitBreaker.State.CLOSED, circuitBreaker.getState());
+        assertEquals(1L, circuitBreaker.getStatus().get("timesOpened"));
+    }
+
+    @Test
+    void testClientErrorsDoNotOpenCircuit() {
+        for (int i = 0; i < 3; i++) {
+            assertThrows(WebApplicationException.class, () -> circuitBreaker.execute(() -> {
+                throw new WebApplicationException(400);
+            }));
+        }
+        assertEquals(NetatmoCircuitBreaker.State.CLOSED, circuitBreaker.getState());
+
+        for (int i = 0; i < 2; i++) {
+            assertThrows(WebApplicationException.class, () -> circuitBreaker.execute(() -> {
+                throw new WebApplicationException(503);
+            }));
+        }
+        assertEquals(NetatmoCircuitBreaker.State.OPEN, circuitBreaker.getState());
+    }
+
+    @Test
+    void testCallsUnansweredAtDeadlineOpenCircuit() {
+        // Running out of time before the call was made says nothing about Netatmo
+        for (int i = 0; i < 3; i++) {
+            assertThrows(WeatherApiException.class, () -> circuitBreaker.execute(() -> {
+                throw RequestDeadline.exceeded();
+            }));
+        }
+        assertEquals(NetatmoCircuitBreaker.State.CLOSED, circuitBreaker.getState());
+
+        // A call Netatmo did not answer in time does
+        for (int i = 0; i < 2; i++) {
+            assertThrows(NetatmoTimeoutException.class, () -> circuitBreaker.execute(() -> {
+                throw new NetatmoTimeoutException("Request deadline exceeded while waiting for Netatmo");
+            }));
+        }
+        assertEquals(NetatmoCircuitBreaker.State.OPEN, circuitBreaker.getState());
+
+        NetatmoUnavailableException rejected = assertThrows(NetatmoUnavailableException.class, this::succeed);
+        assertEquals(1, rejected.getRetryAfterSeconds());
+    }
+}
@@ -0,0 +1,81 @@
+package com.kevindubois.service;
+
+import jakarta.ws.rs.ProcessingException;
+import jakarta.ws.rs.WebApplicationException;
+import jakarta.ws.rs.core.Response;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class NetatmoConcurrencyLimitTest {
+
+    private static final long FAST = TimeUnit.MILLISECONDS.toNanos(100);
+
+    private NetatmoConcurrencyLimit limit;
+
+    @BeforeEach
+    void setup() {
+        limit = new NetatmoConcurrencyLimit();
+        limit.adaptive = true;
+        limit.initialLimit = 4;
+        limit.minLimit = 1;
+        limit.maxLimit = 16;
+        limit.alpha = 2;
+        limit.beta = 4;
+        limit.backoffRatio = 0.5;
+        limit.window = 100;
+    }
+
+    private void sample(long latencyNanos) {
+        limit.onSample("getStationsData", latencyNanos, limit.current(), null);
+    }
+
+    @Test
+    void testGrowsWhileLatencyStaysLow() {
+        for (int i = 0; i < 4; i++) {
+            sample(FAST);
+        }
+        assertEquals(8, limit.current());
+
+        // Calls that do not reach the limit do not grow it
+        limit.onSample("getStationsData", FAST, 1, null);
+        assertEquals(8, limit.current());
+    }
+
+    @Test
+    void testShrinksWhenCallsQueueAtNetatmo() {
+        for (int i = 0; i < 6; i++) {
+            sample(FAST);
+        }
+        assertEquals(10, limit.current());
+
+        // At twice the latency without load, about half of the calls wait at Netatmo
+        sample(2 * FAST);
+        assertEquals(9, limit.current());
+        sample(2 * FAST);
+        assertEquals(8, limit.current());
+    }
+
+    @Test
+    void testBacksOffAfterOverloadFailures() {
+        limit.onSample("getStationsData", FAST, 4, new ProcessingException("Read timed out"));
+        assertEquals(2, limit.current());
+        limit.onSample("getStationsData", FAST, 2, new WebApplicationException(429));
+        assertEquals(1, limit.current());
+
+        // Client errors are no sign of overload, and cancelled hedges are not counted
+        limit.onSample("getStationsData", FAST, 1, new WebApplicationException(404));
+        limit.onSample("getStationsData", FAST, 1, new CancellationException());
+        assertEquals(2L, limit.getStatus().get("backoffs"));
+
+        // Netatmo reports its rate limit as 403 with error code 26
+        Response usageReached = Response.status(403)
+            .entity("{\"error\":{\"code\":26,\"message\":\"User usage reached\"}}").build();
+        limit.onSample("getStationsData", FAST, 2, new WebApplicationException(usageReached));
+        assertEquals(3L, limit.getStatus().get("backoffs"));
+    }
+}
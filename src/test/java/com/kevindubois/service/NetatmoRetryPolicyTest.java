@@ -0,0 +1,100 @@
+package com.kevindubois.service;
+
+import com.kevindubois.exception.WeatherApiException;
+import jakarta.ws.rs.ProcessingException;
+import jakarta.ws.rs.WebApplicationException;
+import jakarta.ws.rs.core.Response;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+class NetatmoRetryPolicyTest {
+
+    private NetatmoRetryPolicy retryPolicy;
+    private final AtomicInteger attempts = new AtomicInteger();
+
+    @BeforeEach
+    void setup() {
+        retryPolicy = new NetatmoRetryPolicy();
+        retryPolicy.authService = mock(NetatmoAuthService.class);
+        retryPolicy.stationsMaxAttempts = 3;
+        retryPolicy.stationsInitialBackoff = Duration.ofMillis(5);
+        retryPolicy.stationsMaxBackoff = Duration.ofMillis(20);
+        retryPolicy.measureMaxAttempts = 3;
+        retryPolicy.measureInitialBackoff = Duration.ofMillis(5);
+        retryPolicy.measureMaxBackoff = Duration.ofMillis(20);
+        retryPolicy.maxRetryAfter = Duration.ofSeconds(10);
+        retryPolicy.budget = 0.1;
+    }
+
+    private String failTimes(int failures, RuntimeException error) throws Exception {
+        return retryPolicy.execute("getStationsData", () -> {
+            if (attempts.incrementAndGet() <= failures) {
+                throw error;
+            }
+            return "ok";
+        });
+    }
+
+    @SuppressWarnings("unchecked")
+    private Map<String, Object> stations() {
+        return (Map<String, Object>) retryPolicy.getStatus().get("stations");
+    }
+
+    @Test
+    void testRetriesTransientFailures() throws Exception {
+        assertEquals("ok", failTimes(2, new ProcessingException("Read timed out")));
+
+        assertEquals(3, attempts.get());
+        assertEquals(2L, stations().get("retries"));
+        assertEquals(1L, stations().get("recovered"));
+    }
+
+    @Test
+    void testDoesNotRetryClientErrors() {
+        assertThrows(WebApplicationException.class, () -> failTimes(1, new WebApplicationException(404)));
+        assertEquals(1, attempts.get());
+    }
+
+    @Test
+    void testRateLimitWithLongRetryAfterFailsRightAway() {
+        Response response = Response.status(429).header("Retry-After", "60").build();
+        WeatherApiException e = assertThrows(WeatherApiException.class,
+            () -> failTimes(1, new WebApplicationException(response)));
+
+        assertEquals(Response.Status.TOO_MANY_REQUESTS, e.getStatus());
+        assertEquals(1, attempts.get());
+    }
+
+    @Test
+    void testRetryBudgetCapsRetries() {
+        retryPolicy.budget = 0;
+        retryPolicy.stationsMaxAttempts = 100;
+
+        // The reserve of 10 retries is spent, then the call fails
+        assertThrows(ProcessingException.class, () -> failTimes(Integer.MAX_VALUE, new ProcessingException("down")));
+        assertEquals(11, attempts.get());
+        assertEquals(1L, stations().get("budgetExhausted"));
+        assertEquals(1L, stations().get("failedAfterRetry"));
+    }
+
+    @Test
+    void testRefreshesRejectedTokenAndReplays() throws Exception {
+        assertEquals("ok", failTimes(1, new WebApplicationException(401)));
+
+        assertEquals(2, attempts.get());
+        verify(retryPolicy.authService, times(1)).invalidateAccessToken(any(Instant.class));
+        assertEquals(0L, stations().get("retries"));
+        assertEquals(1L, stations().get("tokenRefreshes"));
+    }
+}
@@ -0,0 +1,89 @@
+package com.kevindubois.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.kevindubois.dto.ApiResponse;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ResponseCacheTest {
+
+    ResponseCache responseCache;
+
+    @BeforeEach
+    void setup() {
+        ResponseSerializer responseSerializer = new ResponseSerializer();
+        responseSerializer.objectMapper = new ObjectMapper();
+        responseSerializer.mcpOutputProfile = "compact";
+        responseSerializer.init();
+
+        responseCache = new ResponseCache();
+        responseCache.responseSerializer = responseSerializer;
+        responseCache.responseCompressor = ResponseCompressorTest.createCompressor();
+    }
+
+    @Test
+    void testJsonCachedPerVersion() throws Exception {
+        byte[] json = responseCache.putJson("key", 1, ApiResponse.success("data", "message"));
+
+        assertSame(json, responseCache.getJson("key", 1));
+        assertNull(responseCache.getJson("key", 2));
+        assertNull(responseCache.getJson("other", 1));
+        assertTrue(new String(json, StandardCharsets.UTF_8).contains("\"data\":\"data\""));
+    }
+
+    @Test
+    void testBothFormsKeptForSameVersion() throws Exception {
+        byte[] json = responseCache.putJson("key", 1, ApiResponse.success("data", "message"));
+        String text = responseCache.putText("key", 1, ApiResponse.success("data", "message"));
+
+        assertSame(json, responseCache.getJson("key", 1));
+        assertSame(text, responseCache.getText("key", 1));
+    }
+
+    @Test
+    void testNewVersionInvalidatesBothForms() throws Exception {
+        responseCache.putJson("key", 1, ApiResponse.success("old", "message"));
+        responseCache.putText("key", 1, ApiResponse.success("old", "message"));
+
+        String text = responseCache.putText("key", 2, ApiResponse.success("new", "message"));
+
+        assertNull(responseCache.getJson("key", 1));
+        assertNull(responseCache.getJson("key", 2));
+        assertEquals(text, responseCache.getText("key", 2));
+    }
+
+    @Test
+    void testOlderVersionDoesNotReplaceNewer() throws Exception {
+        byte[] newer = responseCache.putJson("key", 3, ApiResponse.success("new", "message"));
+        responseCache.putJson("key", 2, ApiResponse.success("old", "message"));
+
+        assertSame(newer, responseCache.getJson("key", 3));
+        assertNull(responseCache.getJson("key", 2));
+    }
+
+    @Test
+    void testGzipCompressedOncePerVersion() throws Exception {
+        byte[] json = responseCache.putJson("key", 1, ApiResponse.success("data".repeat(500), "message"));
+
+        byte[] gzip = responseCache.getGzipJson("key", 1, json);
+
+        assertSame(gzip, responseCache.getGzipJson("key", 1, json));
+        assertSame(json, responseCache.getJson("key", 1));
+        try (var in = new GZIPInputStream(new ByteArrayInputStream(gzip))) {
+            assertArrayEquals(json, in.readAllBytes());
+        }
+    }
+
+    @Test
+    void testGzipVariantHasItsOwnEtag() {
+        assertEquals(responseCache.etag("key", 1).getValue() + "-gzip", responseCache.gzipEtag("key", 1).getValue());
+        assertFalse(responseCache.gzipEtag("key", 1).isWeak());
+        assertNotEquals(responseCache.gzipEtag("key", 1), responseCache.gzipEtag("key", 2));
+    }
+}
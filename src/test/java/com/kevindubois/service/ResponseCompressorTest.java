@@ -0,0 +1,56 @@
+package com.kevindubois.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ResponseCompressorTest {
+
+    static ResponseCompressor createCompressor() {
+        ResponseCompressor compressor = new ResponseCompressor();
+        compressor.enabled = true;
+        compressor.minSize = 1024;
+        compressor.level = 6;
+        return compressor;
+    }
+
+    @Test
+    void testAcceptsGzip() {
+        ResponseCompressor compressor = createCompressor();
+
+        assertTrue(compressor.acceptsGzip("gzip"));
+        assertTrue(compressor.acceptsGzip("deflate, gzip;q=0.5, br"));
+        assertTrue(compressor.acceptsGzip("*"));
+        assertFalse(compressor.acceptsGzip(null));
+        assertFalse(compressor.acceptsGzip("br, deflate"));
+        assertFalse(compressor.acceptsGzip("gzip;q=0"));
+        assertFalse(compressor.acceptsGzip("*, gzip; q=0"));
+    }
+
+    @Test
+    void testDisabled() {
+        ResponseCompressor compressor = createCompressor();
+        compressor.enabled = false;
+
+        assertFalse(compressor.acceptsGzip("gzip"));
+    }
+
+    @Test
+    void testGzipRoundTrip() throws Exception {
+        ResponseCompressor compressor = createCompressor();
+        byte[] data = "{\"indoorTemperature\":21.5},".repeat(200).getBytes(StandardCharsets.UTF_8);
+
+        byte[] compressed = compressor.gzip(data);
+
+        assertTrue(compressed.length < data.length / 10);
+        assertTrue(compressor.shouldCompress(data.length));
+        assertFalse(compressor.shouldCompress(100));
+        try (var in = new GZIPInputStream(new ByteArrayInputStream(compressed))) {
+            assertArrayEquals(data, in.readAllBytes());
+        }
+    }
+}
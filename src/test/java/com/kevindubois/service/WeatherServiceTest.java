@@ -2,20 +2,33 @@ package com.kevindubois.service;
 
 import com.kevindubois.dto.*;
 import io.quarkus.test.junit.QuarkusTest;
+import jakarta.ws.rs.core.HttpHeaders;
 import jakarta.ws.rs.core.Response;
 import com.kevindubois.client.NetatmoApiClient;
+import com.kevindubois.exception.NetatmoUnavailableException;
 import com.kevindubois.exception.WeatherApiException;
+import com.kevindubois.util.HistoricalCursor;
+import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
 
+import java.io.IOException;
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 @QuarkusTest
@@ -36,6 +49,25 @@ class WeatherServiceTest {
         
         // Manually inject the mock
         weatherService.netatmoApiClient = netatmoApiClient;
+
+        CacheTtlPolicy cacheTtlPolicy = CacheTtlPolicyTest.createPolicy();
+        weatherService.cacheTtlPolicy = cacheTtlPolicy;
+
+        // Poller without a snapshot, so the service falls back to the client
+        StationPoller stationPoller = new StationPoller();
+        stationPoller.netatmoApiClient = netatmoApiClient;
+        stationPoller.cacheTtlPolicy = cacheTtlPolicy;
+        stationPoller.historySize = 144;
+        weatherService.stationPoller = stationPoller;
+        weatherService.historicalDataStore = new HistoricalDataStore();
+        weatherService.fetchThreads = 4;
+        weatherService.moduleParallelism = 2;
+        weatherService.init();
+    }
+
+    @AfterEach
+    void shutdown() {
+        weatherService.shutdown();
     }
 
     private NetatmoStationsDataResponse createMockStationsResponse() {
@@ -264,6 +296,379 @@ class WeatherServiceTest {
         // might be complex and we don't want to make the test too brittle
         assertNotNull(result);
     }
-}
 
+    @Test
+    void testGetCurrentWeatherServedFromSnapshot() {
+        // Setup mock response
+        NetatmoStationsDataResponse mockResponse = createMockStationsResponse();
+        when(netatmoApiClient.getStationsData()).thenReturn(mockResponse);
+
+        // First call fetches and stores the snapshot, the following ones are served from memory
+        weatherService.getCurrentWeather();
+        weatherService.getCurrentWeather();
+        ApiResponse<CurrentWeatherData> result = weatherService.getCurrentWeather();
 
+        assertTrue(result.isSuccess());
+        assertEquals(22.5, result.getData().indoorTemperature());
+        assertEquals(18.5, result.getData().outdoorTemperature());
+        assertEquals(1, result.getData().modules().size());
+        assertEquals("module1", result.getData().modules().get(0).id());
+        verify(netatmoApiClient, times(1)).getStationsData();
+    }
+
+    @Test
+    void testResponsesBuiltFromGivenSnapshot() {
+        // A snapshot held by the caller is read as is, even after it expired
+        weatherService.stationPoller.cacheTtlPolicy.fallbackTtl = Duration.ZERO;
+        StationsSnapshot snapshot = weatherService.stationPoller.ingest(createMockStationsResponse());
+
+        assertEquals(22.5, weatherService.getCurrentWeather(snapshot).getData().indoorTemperature());
+        assertEquals(1, weatherService.getAvailableDevices(snapshot).getData().size());
+        assertEquals(1, weatherService.getAllCurrentWeather(snapshot, null).getData().get("devices"));
+        verify(netatmoApiClient, times(0)).getStationsData();
+    }
+
+    @Test
+    void testGetRecentReadings() {
+        // Setup mock response
+        NetatmoStationsDataResponse mockResponse = createMockStationsResponse();
+        when(netatmoApiClient.getStationsData()).thenReturn(mockResponse);
+
+        // Call the method for the outdoor module
+        ApiResponse<Map<String, Object>> result = weatherService.getRecentReadings(null, "module1", null);
+
+        // Verify the result
+        assertTrue(result.isSuccess());
+        assertEquals("station1", result.getData().get("deviceId"));
+        assertEquals("module1", result.getData().get("moduleId"));
+        assertEquals(1, result.getData().get("totalDataPoints"));
+
+        // Unknown modules are reported as not found
+        ApiResponse<Map<String, Object>> missing = weatherService.getRecentReadings("station1", "unknown", null);
+        assertFalse(missing.isSuccess());
+        assertEquals(Response.Status.NOT_FOUND.getStatusCode(), missing.getStatus());
+    }
+
+    @Test
+    void testStreamHistoricalDataInWindows() throws Exception {
+        // Netatmo returns hourly points from date_begin, up to the requested limit
+        when(netatmoApiClient.getStationsData("station1")).thenReturn(createMockStationsResponse());
+        when(netatmoApiClient.getHistoricalData(
+                eq("station1"), any(), eq("1hour"), anyString(), anyLong(), anyLong(), anyInt(), eq(true), eq(true)
+        )).thenAnswer(invocation -> {
+            long begin = invocation.getArgument(4);
+            int limit = invocation.getArgument(6);
+            List<Object> values = new ArrayList<>();
+            for (int i = 0; i < limit; i++) {
+                values.add(List.of(21.0, 45, 1013.0));
+            }
+            return new NetatmoHistoricalDataResponse(
+                List.of(Map.of("beg_time", begin, "step_time", 3600, "value", values)), "ok", 0.1, begin);
+        });
+
+        // Two months of hourly data need two windows of at most 1024 points
+        WeatherService.HistoricalQuery query = weatherService.resolveHistoricalQuery(
+            "station1", null, "1hour", null, "2021-08-01", "2021-09-30", null);
+        List<Long> timestamps = new ArrayList<>();
+        int count = weatherService.streamHistoricalData(query,
+            dataPoint -> timestamps.add((Long) dataPoint.get("timeUtc")));
+
+        assertEquals(61 * 24, count);
+        assertEquals(61 * 24, timestamps.size());
+        assertEquals(query.begin(), timestamps.get(0));
+        for (int i = 1; i < timestamps.size(); i++) {
+            assertEquals(timestamps.get(i - 1) + 3600, timestamps.get(i));
+        }
+        verify(netatmoApiClient, times(2)).getHistoricalData(
+            eq("station1"), isNull(), eq("1hour"), anyString(), anyLong(), anyLong(), anyInt(), eq(true), eq(true));
+    }
+
+    @Test
+    void testHistoricalPagesWithCursor() {
+        when(netatmoApiClient.getStationsData("station1")).thenReturn(createMockStationsResponse());
+        when(netatmoApiClient.getHistoricalData(
+                eq("station1"), any(), eq("1hour"), anyString(), anyLong(), anyLong(), anyInt(), eq(true), eq(true)
+        )).thenAnswer(invocation -> {
+            long begin = invocation.getArgument(4);
+            long end = invocation.getArgument(5);
+            int limit = invocation.getArgument(6);
+            List<Object> values = new ArrayList<>();
+            for (long time = begin; time <= end && values.size() < limit; time += 3600) {
+                values.add(List.of(21.0, 45, 1013.0));
+            }
+            return new NetatmoHistoricalDataResponse(
+                List.of(Map.of("beg_time", begin, "step_time", 3600, "value", values)), "ok", 0.1, begin);
+        });
+
+        // Two days of hourly data in pages of 20 points
+        WeatherService.HistoricalQuery query = weatherService.resolveHistoricalQuery(
+            "station1", null, "1hour", null, "2021-08-01", "2021-08-02", 20);
+        List<Long> timestamps = new ArrayList<>();
+        int pages = 0;
+        String cursor;
+        do {
+            var page = weatherService.getHistoricalPage(query);
+            assertTrue(page.isSuccess());
+            @SuppressWarnings("unchecked")
+            List<Map<String, Object>> values = (List<Map<String, Object>>) page.getData().get("values");
+            assertTrue(values.size() <= 20);
+            values.forEach(value -> timestamps.add((Long) value.get("timeUtc")));
+            cursor = (String) page.getData().get("nextCursor");
+            assertEquals(cursor != null, page.getData().get("hasMore"));
+            if (cursor != null) {
+                query = HistoricalCursor.decode(cursor);
+            }
+            pages++;
+        } while (cursor != null);
+
+        // Every point is returned once, and each page only fetches its own window
+        assertEquals(3, pages);
+        assertEquals(48, timestamps.size());
+        for (int i = 1; i < timestamps.size(); i++) {
+            assertEquals(timestamps.get(i - 1) + 3600, timestamps.get(i));
+        }
+        verify(netatmoApiClient, times(3)).getHistoricalData(
+            eq("station1"), isNull(), eq("1hour"), anyString(), anyLong(), anyLong(), eq(21), eq(true), eq(true));
+    }
+
+    @Test
+    void testCancelHistoricalFetch() {
+        when(netatmoApiClient.getStationsData("station1")).thenReturn(createMockStationsResponse());
+        when(netatmoApiClient.getHistoricalData(
+                eq("station1"), any(), eq("1hour"), anyString(), anyLong(), anyLong(), anyInt(), eq(true), eq(true)
+        )).thenAnswer(invocation -> {
+            long begin = invocation.getArgument(4);
+            List<Object> values = new ArrayList<>();
+            for (int i = 0; i < (int) invocation.getArgument(6); i++) {
+                values.add(List.of(21.0, 45, 1013.0));
+            }
+            return new NetatmoHistoricalDataResponse(
+                List.of(Map.of("beg_time", begin, "step_time", 3600, "value", values)), "ok", 0.1, begin);
+        });
+
+        // Three months of hourly data need three windows, the client cancels after the first
+        WeatherService.HistoricalQuery query = weatherService.resolveHistoricalQuery(
+            "station1", null, "1hour", null, "2021-08-01", "2021-10-31", null);
+        List<String> progress = new ArrayList<>();
+        WeatherService.FetchListener listener = new WeatherService.FetchListener() {
+            @Override
+            public void windowFetched(int windows, int totalWindows, int dataPoints) {
+                progress.add(windows + "/" + totalWindows + ":" + dataPoints);
+            }
+
+            @Override
+            public boolean isCancelled() {
+                return !progress.isEmpty();
+            }
+        };
+
+        assertThrows(CancellationException.class, () -> weatherService.getHistoricalPage(query, listener));
+        assertEquals(List.of("1/3:1024"), progress);
+        verify(netatmoApiClient, times(1)).getHistoricalData(
+            eq("station1"), isNull(), eq("1hour"), anyString(), anyLong(), anyLong(), anyInt(), eq(true), eq(true));
+    }
+
+    @Test
+    void testHistoricalWeatherMergesAllModules() {
+        long begin = 1628097600L;
+        NetatmoStationsDataResponse.DashboardData empty = new NetatmoStationsDataResponse.DashboardData(
+                null, null, null, null, null, begin, null, null);
+        NetatmoStationsDataResponse.WeatherStation station = new NetatmoStationsDataResponse.WeatherStation(
+                "station1", "Home Weather Station", "NAMain", List.of("Temperature", "Humidity", "Pressure"),
+                empty,
+                List.of(
+                    new NetatmoStationsDataResponse.Module("module1", "Garden", "NAModule1", List.of("Temperature"), empty),
+                    new NetatmoStationsDataResponse.Module("rain1", "Rain", "NAModule3", List.of("Rain"), empty),
+                    new NetatmoStationsDataResponse.Module("wind1", "Wind", "NAModule2", List.of("Wind"), empty),
+                    new NetatmoStationsDataResponse.Module("indoor1", "Bedroom", "NAModule4", List.of("Temperature"), empty)
+                ));
+        when(netatmoApiClient.getStationsData("station1")).thenReturn(new NetatmoStationsDataResponse(
+                new NetatmoStationsDataResponse.Body(List.of(station)), "ok", 0.1, begin));
+
+        // Every module has its own series, the wind gauge reports between the hourly points of the others.
+        // The four modules are fetched no more than module-parallelism at a time.
+        AtomicInteger moduleCalls = new AtomicInteger();
+        AtomicInteger maxModuleCalls = new AtomicInteger();
+        Map<String, Map<String, Object>> series = Map.of(
+            "main", Map.of("beg_time", begin, "step_time", 3600, "value",
+                List.of(List.of(21.0, 45, 1013.0), List.of(21.5, 46, 1012.0), List.of(22.0, 47, 1011.0))),
+            "module1", Map.of("beg_time", begin, "step_time", 3600, "value",
+                List.of(List.of(15.0, 70), List.of(15.5, 71), List.of(16.0, 72))),
+            "rain1", Map.of("beg_time", begin + 3600, "step_time", 3600, "value",
+                List.of(List.of(0.5), List.of(1.2))),
+            "wind1", Map.of("beg_time", begin + 1800, "step_time", 3600, "value",
+                List.of(List.of(10, 180, 20, 190))),
+            "indoor1", Map.of("beg_time", begin, "step_time", 3600, "value",
+                List.of(List.of(19.5, 50, 600)))
+        );
+        when(netatmoApiClient.getHistoricalData(
+                eq("station1"), any(), eq("1hour"), anyString(), anyLong(), anyLong(), anyInt(), eq(true), eq(true)
+        )).thenAnswer(invocation -> {
+            String moduleId = invocation.getArgument(1);
+            if (moduleId != null) {
+                maxModuleCalls.accumulateAndGet(moduleCalls.incrementAndGet(), Math::max);
+                Thread.sleep(50);
+                moduleCalls.decrementAndGet();
+            }
+            return new NetatmoHistoricalDataResponse(
+                List.of(series.get(moduleId != null ? moduleId : "main")), "ok", 0.1, begin);
+        });
+
+        ApiResponse<Map<String, Object>> result = weatherService.getHistoricalWeather(new WeatherService.HistoricalQuery(
+            "station1", null, "1hour", WeatherService.DEFAULT_SENSOR_TYPES, begin, begin + 7200, 3));
+
+        assertTrue(result.isSuccess());
+        @SuppressWarnings("unchecked")
+        List<Map<String, Object>> values = (List<Map<String, Object>>) result.getData().get("values");
+        assertEquals(List.of(begin, begin + 1800, begin + 3600, begin + 7200),
+            values.stream().map(value -> value.get("timeUtc")).toList());
+
+        Map<String, Object> first = values.get(0);
+        assertEquals(21.0, first.get("indoorTemperature"));
+        assertEquals(15.0, first.get("outdoorTemperature"));
+        assertEquals(70, first.get("outdoorHumidity"));
+        assertEquals(19.5, first.get("indoor2Temperature"));
+        assertEquals(600, first.get("indoor2Co2"));
+        assertNull(first.get("rain"));
+
+        Map<String, Object> wind = values.get(1);
+        assertEquals(10, wind.get("windStrength"));
+        assertEquals(190, wind.get("gustAngle"));
+        assertNull(wind.get("indoorTemperature"));
+
+        assertEquals(0.5, values.get(2).get("rain"));
+        assertEquals(1.2, values.get(3).get("rain"));
+        assertEquals(16.0, values.get(3).get("outdoorTemperature"));
+
+        @SuppressWarnings("unchecked")
+        List<Map<String, Object>> modules = (List<Map<String, Object>>) result.getData().get("modules");
+        assertEquals(List.of("module1", "rain1", "wind1", "indoor1"), modules.stream().map(module -> module.get("id")).toList());
+        assertEquals("module1", result.getData().get("outdoorModuleId"));
+
+        // Each module is requested with the measurements of its type
+        verify(netatmoApiClient).getHistoricalData(
+            eq("station1"), eq("rain1"), eq("1hour"), eq("sum_rain"), anyLong(), anyLong(), anyInt(), eq(true), eq(true));
+        verify(netatmoApiClient).getHistoricalData(
+            eq("station1"), eq("wind1"), eq("1hour"), eq("WindStrength,WindAngle,GustStrength,GustAngle"),
+            anyLong(), anyLong(), anyInt(), eq(true), eq(true));
+        assertEquals(2, maxModuleCalls.get());
+    }
+
+    @Test
+    void testGetAllCurrentWeather() {
+        when(netatmoApiClient.getStationsData()).thenReturn(createMockStationsResponse());
+        // A station shared with the account is not in the payload and fetched on its own
+        NetatmoStationsDataResponse.WeatherStation shared = new NetatmoStationsDataResponse.WeatherStation(
+                "station2", "Office", "NAMain", List.of("Temperature"),
+                new NetatmoStationsDataResponse.DashboardData(20.0, 40, 1010.0, 500, 35, 1628097600L, 19.0, 21.0),
+                List.of(new NetatmoStationsDataResponse.Module("rain2", "Rain", "NAModule3", List.of("Rain"),
+                    new NetatmoStationsDataResponse.DashboardData(null, null, null, null, null, 1628097600L, null, null,
+                        0.2, 1.1, 4.5, null, null, null, null))));
+        when(netatmoApiClient.getStationsData("station2")).thenReturn(new NetatmoStationsDataResponse(
+                new NetatmoStationsDataResponse.Body(List.of(shared)), "ok", 0.1, 1628097600L));
+        when(netatmoApiClient.getStationsData("station3")).thenThrow(new RuntimeException("Device not accessible"));
+
+        ApiResponse<Map<String, Object>> result = weatherService.getAllCurrentWeather(
+            List.of("station1", "station2", "station3"));
+
+        assertTrue(result.isSuccess());
+        assertEquals(2, result.getData().get("devices"));
+        @SuppressWarnings("unchecked")
+        List<String> columns = (List<String>) result.getData().get("columns");
+        @SuppressWarnings("unchecked")
+        List<List<Object>> rows = (List<List<Object>>) result.getData().get("rows");
+        assertEquals(4, rows.size());
+        assertTrue(columns.contains("rain"));
+        assertFalse(columns.contains("windStrength"));
+        assertEquals("module1", rows.get(1).get(columns.indexOf("moduleId")));
+        assertEquals(18.5, rows.get(1).get(columns.indexOf("temperature")));
+        assertEquals("station2", rows.get(3).get(columns.indexOf("deviceId")));
+        assertEquals(1.1, rows.get(3).get(columns.indexOf("rainLastHour")));
+        assertEquals(Map.of("station3", "Error fetching station station3: Device not accessible"),
+            result.getData().get("errors"));
+        verify(netatmoApiClient, times(1)).getStationsData();
+    }
+
+    @Test
+    void testServesLastKnownDataWhileNetatmoIsUnavailable() {
+        // Snapshots expire right away, so every request asks Netatmo first
+        weatherService.stationPoller.cacheTtlPolicy.fallbackTtl = Duration.ZERO;
+        weatherService.fallbackChunks = 64;
+        when(netatmoApiClient.getStationsData()).thenReturn(createMockStationsResponse())
+            .thenThrow(new NetatmoUnavailableException("Netatmo API unavailable"));
+        when(netatmoApiClient.getStationsData("station1")).thenReturn(createMockStationsResponse());
+        when(netatmoApiClient.getHistoricalData(eq("station1"), anyString(), eq("1hour"), anyString(),
+                anyLong(), anyLong(), anyInt(), eq(true), eq(true)))
+            .thenReturn(createMockHistoricalResponse())
+            .thenThrow(new NetatmoUnavailableException("Netatmo API unavailable"));
+
+        ApiResponse<CurrentWeatherData> fresh = weatherService.getCurrentWeather();
+        ApiResponse<Map<String, Object>> freshHistory = weatherService.getHistoricalWeather(
+            "station1", "module1", "1hour", "Temperature", "1628097600", "1628184000", 24);
+        assertNull(fresh.getStale());
+        assertNull(freshHistory.getStale());
+
+        ApiResponse<CurrentWeatherData> stale = weatherService.getCurrentWeather();
+        ApiResponse<Map<String, Object>> staleHistory = weatherService.getHistoricalWeather(
+            "station1", "module1", "1hour", "Temperature", "1628097600", "1628184000", 24);
+        assertTrue(stale.isSuccess());
+        assertEquals(22.5, stale.getData().indoorTemperature());
+        assertEquals("Netatmo API unavailable", stale.getStale().reason());
+        assertTrue(staleHistory.isSuccess());
+        assertNotNull(staleHistory.getStale());
+        assertEquals(freshHistory.getData().get("values"), staleHistory.getData().get("values"));
+        assertEquals(2, staleHistory.getData().get("totalDataPoints"));
+    }
+
+    @Test
+    void testConcurrentRequestsShareOneStationsDataCall() throws Exception {
+        when(netatmoApiClient.getStationsData()).thenAnswer(invocation -> {
+            Thread.sleep(200);
+            return createMockStationsResponse();
+        });
+
+        ExecutorService requests = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<StationsSnapshot>> snapshots = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                snapshots.add(requests.submit(weatherService::getStationsSnapshot));
+            }
+            StationsSnapshot first = snapshots.get(0).get();
+            for (Future<StationsSnapshot> snapshot : snapshots) {
+                assertSame(first, snapshot.get());
+            }
+        } finally {
+            requests.shutdownNow();
+        }
+        verify(netatmoApiClient, times(1)).getStationsData();
+    }
+
+    @Test
+    void testStationsDataRefreshRecoversFromCheckedException() {
+        // The client proxy can throw checked exceptions it does not declare
+        when(netatmoApiClient.getStationsData())
+            .thenAnswer(invocation -> {
+                throw new IOException("Connection reset");
+            })
+            .thenReturn(createMockStationsResponse());
+
+        assertThrows(IOException.class, () -> weatherService.stationPoller.refresh());
+        StationsSnapshot snapshot = assertTimeoutPreemptively(Duration.ofSeconds(5),
+            () -> weatherService.stationPoller.refresh());
+        assertNotNull(snapshot);
+        verify(netatmoApiClient, times(2)).getStationsData();
+    }
+
+    @Test
+    void testUnavailableWithoutLastKnownData() {
+        when(netatmoApiClient.getStationsData())
+            .thenThrow(new NetatmoUnavailableException("Netatmo API unavailable", 20));
+
+        ApiResponse<CurrentWeatherData> current = weatherService.getCurrentWeather();
+        ApiResponse<List<DeviceInfo>> devices = weatherService.getAvailableDevices();
+        assertEquals(503, current.getStatus());
+        assertEquals(20L, current.getRetryAfterSeconds());
+        assertEquals(503, devices.getStatus());
+        assertEquals("20", current.toResponse().getHeaderString(HttpHeaders.RETRY_AFTER));
+    }
+}
@@ -0,0 +1,82 @@
+package com.kevindubois.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.HashMap;
+import java.util.Map;
+
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.cbor.CBORGenerator;
+import com.fasterxml.jackson.dataformat.cbor.CBORParser;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ColumnarSeriesTest {
+
+    private static Map<String, Object> point(long timeUtc, Double indoorTemperature, Integer indoorHumidity) {
+        Map<String, Object> point = new HashMap<>();
+        point.put("timeUtc", timeUtc);
+        if (indoorTemperature != null) point.put("indoorTemperature", indoorTemperature);
+        if (indoorHumidity != null) point.put("indoorHumidity", indoorHumidity);
+        return point;
+    }
+
+    @Test
+    void testAddGrowsArrays() {
+        ColumnarSeries series = new ColumnarSeries(1);
+        for (int i = 0; i < 100; i++) {
+            series.add(point(1628097600L + i * 3600L, i % 2 == 0 ? 21.5 : null, 45));
+        }
+
+        assertEquals(100, series.size());
+        assertEquals(1628097600L + 99 * 3600L, series.getTime(99));
+        assertEquals(21.5f, series.getValue("indoorTemperature", 0));
+        assertTrue(Float.isNaN(series.getValue("indoorTemperature", 1)));
+        assertTrue(Float.isNaN(series.getValue("outdoorTemperature", 0)));
+    }
+
+    @Test
+    void testWriteCborTypedArrays() throws Exception {
+        ColumnarSeries series = new ColumnarSeries(2);
+        series.add(point(1628097600L, 22.5, 45));
+        series.add(point(1628101200L, null, 46));
+
+        CBORFactory factory = new CBORFactory();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (CBORGenerator generator = factory.createGenerator(out)) {
+            generator.writeStartObject();
+            series.writeCbor(generator);
+            generator.writeEndObject();
+        }
+
+        Map<String, Integer> tags = new HashMap<>();
+        Map<String, byte[]> arrays = new HashMap<>();
+        try (CBORParser parser = factory.createParser(out.toByteArray())) {
+            String field = null;
+            JsonToken token;
+            while ((token = parser.nextToken()) != null) {
+                if (token == JsonToken.FIELD_NAME) {
+                    field = parser.currentName();
+                } else if (token == JsonToken.VALUE_EMBEDDED_OBJECT) {
+                    tags.put(field, parser.getCurrentTag());
+                    arrays.put(field, parser.getBinaryValue());
+                }
+            }
+        }
+
+        // Only columns with values are written
+        assertEquals(Map.of("timeUtc", 79, "indoorTemperature", 85, "indoorHumidity", 85), tags);
+
+        ByteBuffer times = ByteBuffer.wrap(arrays.get("timeUtc")).order(ByteOrder.LITTLE_ENDIAN);
+        assertEquals(1628097600L, times.getLong());
+        assertEquals(1628101200L, times.getLong());
+
+        ByteBuffer temperatures = ByteBuffer.wrap(arrays.get("indoorTemperature")).order(ByteOrder.LITTLE_ENDIAN);
+        assertEquals(22.5f, temperatures.getFloat());
+        assertTrue(Float.isNaN(temperatures.getFloat()));
+    }
+}
@@ -0,0 +1,138 @@
+package com.kevindubois.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.kevindubois.dto.ApiResponse;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CompactSeriesEncoderTest {
+
+    // Approximates a BPE pre-tokenizer: words, numbers in groups of up to 3 digits, punctuation runs
+    private static final Pattern TOKEN = Pattern.compile("\\p{L}+|\\d{1,3}|[^\\s\\p{L}\\d]+");
+
+    private static final long BEGIN = 1628097600L; // 2021-08-04 16:00:00 UTC
+
+    private static Map<String, Object> point(long timeUtc, Double indoorTemperature, Integer indoorHumidity) {
+        Map<String, Object> point = new HashMap<>();
+        point.put("timestamp", WeatherUtil.formatTimestamp(timeUtc, "yyyy-MM-dd HH:mm"));
+        point.put("timeUtc", timeUtc);
+        if (indoorTemperature != null) point.put("indoorTemperature", indoorTemperature);
+        if (indoorHumidity != null) point.put("indoorHumidity", indoorHumidity);
+        return point;
+    }
+
+    /**
+     * A month of hourly points as produced by WeatherUtil.processDataPoints, with values as reported by Netatmo
+     */
+    private static List<Object> monthOfHourlyPoints() {
+        List<Object> values = new ArrayList<>();
+        for (int i = 0; i < 30 * 24; i++) {
+            double daily = Math.sin(i * Math.PI / 12);
+            Map<String, Object> point = new HashMap<>();
+            long timeUtc = BEGIN + i * 3600L;
+            point.put("timestamp", WeatherUtil.formatTimestamp(timeUtc, "yyyy-MM-dd HH:mm"));
+            point.put("timeUtc", timeUtc);
+            point.put("indoorTemperature", Math.round((21.3 + daily * 1.7) * 10) / 10.0);
+            point.put("indoorHumidity", 48 + (int) (daily * 6));
+            point.put("indoorPressure", Math.round((1013.2 + Math.cos(i / 50.0) * 8.4) * 10) / 10.0);
+            point.put("outdoorTemperature", Math.round((14.6 + daily * 6.3) * 10) / 10.0);
+            point.put("outdoorHumidity", 71 - (int) (daily * 15));
+            values.add(point);
+        }
+        return values;
+    }
+
+    private static int estimateTokens(String text) {
+        Matcher matcher = TOKEN.matcher(text);
+        int count = 0;
+        while (matcher.find()) {
+            count++;
+        }
+        return count;
+    }
+
+    @Test
+    void testEncodeRows() {
+        List<Object> values = List.of(
+            point(BEGIN, 22.54, 45),
+            point(BEGIN + 3600, 23.0, null)
+        );
+
+        Map<String, Object> result = CompactSeriesEncoder.encode(values, "rows", false);
+
+        assertEquals("rows", result.get("format"));
+        assertEquals("absolute", result.get("timeEncoding"));
+        assertEquals(List.of("time", "indoorTemperature", "indoorHumidity"), result.get("columns"));
+        assertEquals(List.of(
+            List.of(BEGIN, 22.5, 45L),
+            Arrays.asList(BEGIN + 3600, 23L, null)
+        ), result.get("rows"));
+    }
+
+    @Test
+    void testEncodeCsvWithDeltaTimestamps() {
+        List<Object> values = List.of(
+            point(BEGIN, -0.06, 45),
+            point(BEGIN + 3600, 23.06, null),
+            point(BEGIN + 7200, 23.1, 47)
+        );
+
+        Map<String, Object> result = CompactSeriesEncoder.encode(values, "csv", true);
+
+        assertEquals("delta", result.get("timeEncoding"));
+        assertEquals(
+            "time,indoorTemperature,indoorHumidity\n" +
+            BEGIN + ",-0.1,45\n" +
+            "3600,23.1,\n" +
+            "3600,23.1,47",
+            result.get("csv"));
+        assertNull(result.get("rows"));
+    }
+
+    @Test
+    void testIsCompact() {
+        assertTrue(CompactSeriesEncoder.isCompact("csv"));
+        assertTrue(CompactSeriesEncoder.isCompact("ROWS"));
+        assertFalse(CompactSeriesEncoder.isCompact("json"));
+        assertFalse(CompactSeriesEncoder.isCompact(null));
+    }
+
+    @Test
+    void testMonthLongSeriesSize() throws Exception {
+        List<Object> values = monthOfHourlyPoints();
+        ObjectMapper objectMapper = new ObjectMapper();
+
+        String pretty = ApiResponse.success(Map.of("values", values)).toTextContent().text();
+        String compactJson = objectMapper.writeValueAsString(ApiResponse.success(Map.of("values", values)));
+        String rows = objectMapper.writeValueAsString(
+            ApiResponse.success(CompactSeriesEncoder.encode(values, "rows", true)));
+        String csv = objectMapper.writeValueAsString(
+            ApiResponse.success(CompactSeriesEncoder.encode(values, "csv", true)));
+
+        int prettyBytes = pretty.getBytes(StandardCharsets.UTF_8).length;
+        int rowsBytes = rows.getBytes(StandardCharsets.UTF_8).length;
+        int csvBytes = csv.getBytes(StandardCharsets.UTF_8).length;
+        int prettyTokens = estimateTokens(pretty);
+        int csvTokens = estimateTokens(csv);
+
+        System.out.printf("Month of hourly points: pretty %d B / ~%d tokens, compact JSON %d B / ~%d tokens, " +
+                "rows %d B / ~%d tokens, csv %d B / ~%d tokens%n",
+            prettyBytes, prettyTokens, compactJson.length(), estimateTokens(compactJson),
+            rowsBytes, estimateTokens(rows), csvBytes, csvTokens);
+
+        assertTrue(rowsBytes * 3 < prettyBytes, "Rows should be less than a third of the pretty JSON");
+        assertTrue(csvBytes * 4 < prettyBytes, "CSV should be less than a quarter of the pretty JSON");
+        assertTrue(csvTokens * 3 < prettyTokens, "CSV should use less than a third of the tokens");
+    }
+}
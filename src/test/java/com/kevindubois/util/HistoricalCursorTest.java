@@ -0,0 +1,36 @@
+package com.kevindubois.util;
+
+import com.kevindubois.service.WeatherService.HistoricalQuery;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HistoricalCursorTest {
+
+    @Test
+    void testRoundTrip() {
+        HistoricalQuery query = new HistoricalQuery(
+            "70:ee:50:00:00:01", null, "1hour", "Temperature,Humidity", 1627776000L, 1627948799L, 100);
+
+        String cursor = HistoricalCursor.encode(query, 1627797600L);
+
+        assertTrue(cursor.matches("[A-Za-z0-9_-]+"), "Cursor should be URL-safe");
+        assertEquals(new HistoricalQuery(
+            "70:ee:50:00:00:01", null, "1hour", "Temperature,Humidity", 1627797600L, 1627948799L, 100),
+            HistoricalCursor.decode(cursor));
+    }
+
+    @Test
+    void testRoundTripWithModule() {
+        HistoricalQuery query = new HistoricalQuery(
+            "70:ee:50:00:00:01", "02:00:00:00:00:01", "1day", "Temperature", 1627776000L, 1659311999L, 30);
+
+        assertEquals(query, HistoricalCursor.decode(HistoricalCursor.encode(query, query.begin())));
+    }
+
+    @Test
+    void testInvalidCursor() {
+        assertThrows(IllegalArgumentException.class, () -> HistoricalCursor.decode("not a cursor"));
+        assertThrows(IllegalArgumentException.class, () -> HistoricalCursor.decode("MXxhfGI"));
+    }
+}
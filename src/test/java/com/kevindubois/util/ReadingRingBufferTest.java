@@ -0,0 +1,76 @@
+package com.kevindubois.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+
+import com.kevindubois.dto.NetatmoStationsDataResponse.DashboardData;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ReadingRingBufferTest {
+
+    private DashboardData reading(long timeUtc, Double temperature, Integer humidity) {
+        return new DashboardData(temperature, humidity, null, null, null, timeUtc, null, null);
+    }
+
+    @Test
+    void testAddAndList() {
+        ReadingRingBuffer buffer = new ReadingRingBuffer(3);
+
+        assertTrue(buffer.add(reading(1628097600L, 21.5, 45)));
+        assertTrue(buffer.add(reading(1628098200L, 21.7, 46)));
+
+        List<Map<String, Object>> points = buffer.toList(10);
+
+        assertEquals(2, points.size());
+        assertEquals(1628097600L, points.get(0).get("timeUtc"));
+        assertEquals(21.5, points.get(0).get("temperature"));
+        assertEquals(46.0, points.get(1).get("humidity"));
+        // Missing measurements are not included
+        assertFalse(points.get(0).containsKey("pressure"));
+    }
+
+    @Test
+    void testOverwritesOldestWhenFull() {
+        ReadingRingBuffer buffer = new ReadingRingBuffer(2);
+
+        buffer.add(reading(100L, 20.0, 40));
+        buffer.add(reading(200L, 21.0, 41));
+        buffer.add(reading(300L, 22.0, 42));
+
+        List<Map<String, Object>> points = buffer.toList(10);
+
+        assertEquals(2, buffer.size());
+        assertEquals(200L, points.get(0).get("timeUtc"));
+        assertEquals(300L, points.get(1).get("timeUtc"));
+        assertEquals(300L, buffer.latestTimestamp());
+    }
+
+    @Test
+    void testIgnoresDuplicateReadings() {
+        ReadingRingBuffer buffer = new ReadingRingBuffer(5);
+
+        assertTrue(buffer.add(reading(100L, 20.0, 40)));
+        assertFalse(buffer.add(reading(100L, 20.0, 40)));
+        assertFalse(buffer.add(reading(50L, 19.0, 39)));
+        assertFalse(buffer.add(null));
+
+        assertEquals(1, buffer.size());
+    }
+
+    @Test
+    void testListReturnsMostRecent() {
+        ReadingRingBuffer buffer = new ReadingRingBuffer(5);
+        for (long t = 1; t <= 5; t++) {
+            buffer.add(reading(t, 20.0 + t, 40));
+        }
+
+        List<Map<String, Object>> points = buffer.toList(2);
+
+        assertEquals(2, points.size());
+        assertEquals(4L, points.get(0).get("timeUtc"));
+        assertEquals(5L, points.get(1).get("timeUtc"));
+    }
+}
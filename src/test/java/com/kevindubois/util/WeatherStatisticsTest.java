@@ -0,0 +1,67 @@
+package com.kevindubois.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class WeatherStatisticsTest {
+
+    private static final long BEGIN = 1704067200L; // 2024-01-01 00:00:00 UTC
+
+    private static Map<String, Object> point(long timeUtc, Double outdoorTemperature, Integer outdoorHumidity) {
+        Map<String, Object> point = new HashMap<>();
+        point.put("timeUtc", timeUtc);
+        if (outdoorTemperature != null) point.put("outdoorTemperature", outdoorTemperature);
+        if (outdoorHumidity != null) point.put("outdoorHumidity", outdoorHumidity);
+        return point;
+    }
+
+    @Test
+    void testStatistics() {
+        // Two days of hourly temperatures, 10 degrees on the first day and 20 on the second
+        ColumnarSeries series = new ColumnarSeries(48);
+        for (int i = 0; i < 48; i++) {
+            double temperature = i < 24 ? 10.0 : 20.0;
+            if (i == 5) temperature = 2.5;
+            series.add(point(BEGIN + i * 3600L, temperature, i == 7 ? null : 60));
+        }
+
+        Map<String, Object> result = WeatherStatistics.compute(series,
+            new WeatherStatistics.Options(3600, 18.0, "outdoorTemperature", 15.0));
+
+        @SuppressWarnings("unchecked")
+        Map<String, Object> temperature = (Map<String, Object>) result.get("outdoorTemperature");
+        assertEquals(48, temperature.get("count"));
+        assertEquals(2.5, temperature.get("min"));
+        assertEquals("2024-01-01 05:00", temperature.get("minTime"));
+        assertEquals(20.0, temperature.get("max"));
+        assertEquals("2024-01-02 00:00", temperature.get("maxTime"));
+        assertEquals(14.84, temperature.get("mean"));
+        assertTrue((Double) temperature.get("trendPerDay") > 0);
+        // 23 hours at 10 and one at 2.5 degrees below a base of 18, two hours in total at 20
+        assertEquals(Math.round((23 * 8 + 15.5) / 24.0 * 10) / 10.0, temperature.get("heatingDegreeDays"));
+        assertEquals(2.0, temperature.get("coolingDegreeDays"));
+        assertEquals(24.0, temperature.get("hoursAbove"));
+
+        @SuppressWarnings("unchecked")
+        Map<String, Object> humidity = (Map<String, Object>) result.get("outdoorHumidity");
+        assertEquals(47, humidity.get("count"));
+        assertEquals(60.0, humidity.get("mean"));
+        assertNull(humidity.get("heatingDegreeDays"));
+        assertNull(humidity.get("hoursAbove"));
+
+        // Columns without values are left out
+        assertFalse(result.containsKey("indoorTemperature"));
+    }
+
+    @Test
+    void testEmptySeries() {
+        Map<String, Object> result = WeatherStatistics.compute(new ColumnarSeries(0),
+            new WeatherStatistics.Options(3600, 18.0, null, null));
+
+        assertTrue(result.isEmpty());
+    }
+}